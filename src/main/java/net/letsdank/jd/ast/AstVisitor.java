@@ -136,6 +136,10 @@ public interface AstVisitor<R, P> {
             case FinallyClause fc -> visitFinallyClause(fc, param);
             case SynchronizedStmt ss -> visitSynchronized(ss, param);
             case CommentStmt cs -> visitComment(cs, param);
+            case BreakStmt bs -> visitBreak(bs, param);
+            case ContinueStmt cs -> visitContinue(cs, param);
+            case LabeledStmt ls -> visitLabeled(ls, param);
+            case ThrowStmt ts -> visitThrow(ts, param);
         };
     }
 
@@ -213,6 +217,9 @@ public interface AstVisitor<R, P> {
         if (stmt.catchBlock() != null) {
             visitBlock(stmt.catchBlock(), param);
         }
+        for (CatchClause cc : stmt.moreCatches()) {
+            visitCatchClause(cc, param);
+        }
         if (stmt.finallyBlock() != null) {
             visitBlock(stmt.finallyBlock(), param);
         }
@@ -245,4 +252,22 @@ public interface AstVisitor<R, P> {
     default R visitComment(CommentStmt stmt, P param) {
         return null;
     }
+
+    default R visitBreak(BreakStmt stmt, P param) {
+        return null;
+    }
+
+    default R visitContinue(ContinueStmt stmt, P param) {
+        return null;
+    }
+
+    default R visitLabeled(LabeledStmt stmt, P param) {
+        visitStmt(stmt.body(), param);
+        return null;
+    }
+
+    default R visitThrow(ThrowStmt stmt, P param) {
+        visitExpr(stmt.value(), param);
+        return null;
+    }
 }
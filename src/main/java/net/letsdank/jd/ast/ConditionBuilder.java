@@ -4,6 +4,7 @@ import net.letsdank.jd.ast.expr.BinaryExpr;
 import net.letsdank.jd.ast.expr.Expr;
 import net.letsdank.jd.ast.expr.IntConstExpr;
 import net.letsdank.jd.ast.expr.NullExpr;
+import net.letsdank.jd.ast.expr.UnaryExpr;
 import net.letsdank.jd.bytecode.Opcode;
 import net.letsdank.jd.bytecode.insn.JumpInsn;
 
@@ -94,6 +95,18 @@ public final class ConditionBuilder {
         };
     }
 
+    /**
+     * Отрицание готового условия: сравнение переворачивается, {@code !c} снимается,
+     * остальное заворачивается в {@code !}.
+     */
+    public Expr negate(Expr condition) {
+        if (condition instanceof UnaryExpr ue && "!".equals(ue.op())) {
+            return ue.expr();
+        }
+        Expr inverted = invertCondition(condition);
+        return inverted != condition ? inverted : new UnaryExpr("!", condition);
+    }
+
     /**
      * Инвертирует условие: == -> !=, < -> >=, и т.д.
      */
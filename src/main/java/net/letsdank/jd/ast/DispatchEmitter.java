@@ -0,0 +1,280 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.Expr;
+import net.letsdank.jd.ast.expr.IntConstExpr;
+import net.letsdank.jd.ast.expr.VarExpr;
+import net.letsdank.jd.ast.stmt.*;
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.JumpInsn;
+import net.letsdank.jd.bytecode.insn.SwitchInsn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.ExceptionEdge;
+
+import java.util.*;
+
+/**
+ * Метод с неприводимым графом в виде автомата:
+ * <pre>
+ * state = 0;
+ * dispatch: while (true) {
+ *     switch (state) {
+ *         case 0: ...; state = 2; continue dispatch;
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Свой case получают вход, обработчики исключений и блоки, в которые ведет
+ * больше одного ребра; блок с единственным предшественником и теми же
+ * обработчиками печатается прямо на ребре. Стек через границу блока
+ * передают синтетические переменные {@link EntryStacks}. Case с
+ * обработчиками обернут в try, а catch сохраняет исключение в локал
+ * обработчика и переключает состояние на него.
+ * <p>
+ * Ничего не ищет и не откатывается локально: либо весь метод, либо null
+ * (неизвестный стек на входе, jsr/ret).
+ */
+final class DispatchEmitter {
+    private static final String LABEL = "dispatch";
+    private static final Failed FAIL = new Failed();
+    // длина цепочки блоков, напечатанных на ребрах одного case
+    private static final int MAX_INLINE = 100;
+
+    private final MethodContext ctx;
+    private final ControlFlowGraph cfg;
+    private final ConditionBuilder conditions = new ConditionBuilder();
+
+    private EntryStacks stacks;
+    // номер case блока или -1, если блок печатается на ребре
+    private int[] state;
+    private VarExpr stateVar;
+    // параметр catch: обработчик в другом case, так что исключение переносится в его локал
+    private String caughtName;
+
+    DispatchEmitter(MethodContext ctx) {
+        this.ctx = ctx;
+        this.cfg = ctx.regionCfg();
+    }
+
+    /**
+     * Тело метода или null, если автомат не построился.
+     */
+    BlockStmt emit() {
+        if (cfg.entryBlock() == null) return null;
+        stacks = ctx.regionEntryStacks();
+        Set<String> locals = localNames();
+        stateVar = new VarExpr(freshName("state", locals));
+        caughtName = freshName("caught", locals);
+        numberStates();
+
+        Map<Integer, BlockStmt> cases = new LinkedHashMap<>();
+        try {
+            for (BasicBlock bb : cfg.reversePostorder()) {
+                int k = state[bb.id()];
+                if (k >= 0) cases.put(k, new BlockStmt(withCatches(bb, caseCode(bb))));
+            }
+        } catch (Failed e) {
+            return null;
+        }
+
+        BlockStmt loopBody = new BlockStmt();
+        loopBody.add(new SwitchStmt(stateVar, cases, null));
+        BlockStmt body = new BlockStmt();
+        body.add(new CommentStmt("/* irreducible control flow: emitted as a state machine */"));
+        body.add(new AssignStmt(stateVar, new IntConstExpr(0)));
+        body.add(new LabeledStmt(LABEL, new LoopStmt(new VarExpr("true"), loopBody)));
+        return body;
+    }
+
+    /**
+     * Номера case. Блок на ребре печатается рекурсивно внутри предшественника,
+     * поэтому цепочка длиннее {@link #MAX_INLINE} рвется новым case: глубина
+     * обхода не зависит от длины метода.
+     */
+    private void numberStates() {
+        int n = cfg.blocks().size();
+        state = new int[n];
+        Arrays.fill(state, -1);
+        int[] chain = new int[n];
+        int next = 0;
+        // в RPO вход первый, а единственный предшественник - раньше блока
+        for (BasicBlock bb : cfg.reversePostorder()) {
+            if (bb == cfg.entryBlock() || needsCase(bb)) {
+                state[bb.id()] = next++;
+                continue;
+            }
+            int depth = chain[cfg.predecessors(bb).getFirst().id()] + 1;
+            if (depth > MAX_INLINE) {
+                state[bb.id()] = next++;
+            } else {
+                chain[bb.id()] = depth;
+            }
+        }
+    }
+
+    private boolean needsCase(BasicBlock bb) {
+        if (cfg.isHandlerBlock(bb) || cfg.predecessorCount(bb) != 1) return true;
+        BasicBlock pred = cfg.predecessors(bb).getFirst();
+        return !pred.exceptionSuccessors().equals(bb.exceptionSuccessors());
+    }
+
+    private Set<String> localNames() {
+        Set<String> taken = new HashSet<>();
+        for (int i = 0; i < ctx.codeAttribute().maxLocals(); i++) {
+            taken.add(ctx.localNames().nameForLocal(i));
+        }
+        return taken;
+    }
+
+    private static String freshName(String base, Set<String> taken) {
+        String name = base;
+        for (int k = 2; taken.contains(name); k++) name = base + k;
+        return name;
+    }
+
+    /**
+     * Case блока вместе со всеми блоками, напечатанными на его ребрах.
+     */
+    private List<Stmt> caseCode(BasicBlock bb) {
+        List<Insn> insns = bb.instructions();
+        if (!cfg.isHandlerBlock(bb)) return blockCode(bb, insns, stacks.entry(bb));
+        // исключение со стека забирает catch
+        if (insns.isEmpty() || !EntryStacks.isExceptionStore(insns.getFirst())) throw FAIL;
+        return blockCode(bb, insns.subList(1, insns.size()), new ArrayDeque<>());
+    }
+
+    private List<Stmt> blockCode(BasicBlock x, List<Insn> insns, Deque<Expr> stack) {
+        if (stack == null) throw FAIL;
+        Insn last = insns.isEmpty() ? null : insns.getLast();
+        Opcode op = last == null ? null : last.opcode();
+        List<Stmt> out;
+        if (last instanceof JumpInsn j) {
+            if (op == Opcode.JSR || op == Opcode.JSR_W) throw FAIL;
+            out = build(insns.subList(0, insns.size() - 1), stack);
+            BasicBlock target = cfg.jumpTarget(j.targetOffset());
+            if (target == null) throw FAIL;
+            if (op.isUnconditionalJump()) {
+                out.addAll(edge(x, target, stack));
+                return out;
+            }
+            List<BasicBlock> succs = x.successors();
+            if (succs.isEmpty() || succs.getFirst() != target || succs.size() > 2) throw FAIL;
+            Expr cond;
+            try {
+                cond = conditions.buildForJump(j, stack);
+            } catch (RuntimeException e) {
+                throw FAIL;
+            }
+            if (cond == null) throw FAIL;
+            for (int k = EntryStacks.branchPops(op); k > 0; k--) stack.pop();
+            BasicBlock fall = succs.getLast();
+            out.add(new IfStmt(cond, new BlockStmt(fall == target ? List.of() : edge(x, target, stack)), null));
+            out.addAll(edge(x, fall, stack));
+            return out;
+        }
+        if (last instanceof SwitchInsn sw) {
+            out = build(insns.subList(0, insns.size() - 1), stack);
+            if (stack.isEmpty()) throw FAIL;
+            Expr selector = stack.pop();
+            Map<BasicBlock, BlockStmt> bodies = new HashMap<>();
+            Map<Integer, BlockStmt> cases = new LinkedHashMap<>();
+            for (int k = 0; k < sw.caseCount(); k++) {
+                cases.put(sw.key(k), caseBody(x, sw.target(k), stack, bodies));
+            }
+            out.add(new SwitchStmt(selector, cases, caseBody(x, sw.defaultTarget(), stack, bodies)));
+            return out;
+        }
+        if (op == Opcode.RET) throw FAIL;
+        out = build(insns, stack);
+        if (op != null && op.isExit()) return out;
+        if (x.successors().isEmpty()) throw FAIL;
+        out.addAll(edge(x, x.successors().getFirst(), stack));
+        return out;
+    }
+
+    private BlockStmt caseBody(BasicBlock x, int targetPc, Deque<Expr> exit, Map<BasicBlock, BlockStmt> bodies) {
+        BasicBlock target = cfg.jumpTarget(targetPc);
+        if (target == null) throw FAIL;
+        BlockStmt body = bodies.get(target);
+        if (body == null) {
+            body = new BlockStmt(edge(x, target, exit));
+            bodies.put(target, body);
+        }
+        return body;
+    }
+
+    /**
+     * Ребро from -> to: значения стека, потом сам блок или смена состояния.
+     */
+    private List<Stmt> edge(BasicBlock from, BasicBlock to, Deque<Expr> exit) {
+        List<Stmt> moves = stacks.transfer(to, exit);
+        if (moves == null) throw FAIL;
+        List<Stmt> out = new ArrayList<>(moves);
+        if (state[to.id()] < 0) {
+            out.addAll(blockCode(to, to.instructions(), stacks.entry(to)));
+        } else {
+            out.addAll(goTo(to));
+        }
+        return out;
+    }
+
+    private List<Stmt> goTo(BasicBlock to) {
+        return List.of(new AssignStmt(stateVar, new IntConstExpr(state[to.id()])), new ContinueStmt(LABEL));
+    }
+
+    /**
+     * try вокруг case, если у блока есть обработчики: по catch на каждый.
+     * Catch кладет исключение туда, куда его сохраняет обработчик
+     * (case обработчика свой astore пропускает), и переключает состояние.
+     */
+    private List<Stmt> withCatches(BasicBlock bb, List<Stmt> code) {
+        if (bb.exceptionSuccessors().isEmpty()) return code;
+        Map<BasicBlock, Set<String>> types = new LinkedHashMap<>();
+        for (ExceptionEdge e : bb.exceptionSuccessors()) {
+            Set<String> t = types.computeIfAbsent(e.handler(), h -> new LinkedHashSet<>());
+            t.add(e.isCatchAll() ? "Throwable" : ctx.cp().getClassName(e.catchTypeIndex()).replace('/', '.'));
+        }
+        List<CatchClause> clauses = new ArrayList<>();
+        for (Map.Entry<BasicBlock, Set<String>> c : types.entrySet()) {
+            Set<String> t = c.getValue();
+            String type = t.contains("Throwable") ? "Throwable" : String.join(" | ", t);
+            clauses.add(new CatchClause(type, caughtName, enterHandler(c.getKey()), null));
+        }
+        CatchClause first = clauses.getFirst();
+        return List.of(new TryCatchStmt(new BlockStmt(code), first.exceptionType(), first.varName(),
+                new BlockStmt(first.body()), null, clauses.subList(1, clauses.size())));
+    }
+
+    private List<Stmt> enterHandler(BasicBlock handler) {
+        List<Insn> insns = handler.instructions();
+        if (insns.isEmpty() || !EntryStacks.isExceptionStore(insns.getFirst())) throw FAIL;
+        List<Stmt> out = new ArrayList<>();
+        if (insns.getFirst().opcode() != Opcode.POP) {
+            VarExpr local = new VarExpr(EntryStacks.exceptionVarName(handler, ctx.localNames()));
+            out.add(new AssignStmt(local, new VarExpr(caughtName)));
+        }
+        out.addAll(goTo(handler));
+        return out;
+    }
+
+    private List<Stmt> build(List<Insn> insns, Deque<Expr> stack) {
+        if (insns.isEmpty()) return new ArrayList<>();
+        try {
+            return new ArrayList<>(ctx.exprBuilder().buildBlock(insns, stack).statements());
+        } catch (RuntimeException e) {
+            throw FAIL;
+        }
+    }
+
+    /**
+     * Автомат не строится; без стека, это обычный способ выйти из рекурсии.
+     */
+    private static final class Failed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failed() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.Expr;
+import net.letsdank.jd.ast.expr.VarExpr;
+import net.letsdank.jd.ast.stmt.AssignStmt;
+import net.letsdank.jd.ast.stmt.Stmt;
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.*;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.StackHeights;
+
+import java.util.*;
+
+/**
+ * Символьный стек операндов на входе каждого блока CFG.
+ * <p>
+ * Считается один раз на метод: блоки в обратном постпорядке прогоняются
+ * через {@link ExpressionBuilder} со стеком предшественника, выход блока
+ * сливается со входом преемников. Слот, в котором с разных ребер приходят
+ * разные выражения, становится синтетической переменной {@code stackN}:
+ * на каждом входящем ребре ей присваивается свое значение
+ * ({@link #transfer}), а блок читает саму переменную. Так выглядят
+ * тернарный оператор и {@code a && b} как значение. Обработчик исключений
+ * начинается со стека из пойманного исключения.
+ * <p>
+ * Вход блока, где {@link StackHeights} видит пустой стек, всегда пуст:
+ * построитель игнорирует часть инструкций и может оставить на стеке мусор.
+ */
+final class EntryStacks {
+    private static final String TEMP_PREFIX = "stack";
+
+    private final ControlFlowGraph cfg;
+    // стек сверху вниз, как при обходе Deque; null - вход неизвестен
+    private final List<List<Expr>> entry;
+    private final List<List<Expr>> beforeBranch;
+    // синтетическая переменная слота на входе или null, если ребра согласны
+    private final VarExpr[][] temps;
+    private final boolean[] conflict;
+    private int tempCount;
+
+    private EntryStacks(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        int n = cfg.blocks().size();
+        this.entry = new ArrayList<>(Collections.nCopies(n, null));
+        this.beforeBranch = new ArrayList<>(Collections.nCopies(n, null));
+        this.temps = new VarExpr[n][];
+        this.conflict = new boolean[n];
+    }
+
+    static EntryStacks compute(ControlFlowGraph cfg, StackHeights heights,
+                               ExpressionBuilder builder, LocalNameProvider names) {
+        EntryStacks stacks = new EntryStacks(cfg);
+        if (cfg.entryBlock() == null) return stacks;
+        stacks.entry.set(cfg.entryBlock().id(), List.of());
+        for (BasicBlock handler : cfg.handlerBlocks()) {
+            stacks.entry.set(handler.id(), List.of(new VarExpr(exceptionVarName(handler, names))));
+        }
+
+        List<BasicBlock> rpo = cfg.reversePostorder();
+        BitSet pending = new BitSet();
+        for (BasicBlock bb : rpo) {
+            if (stacks.entry.get(bb.id()) != null) pending.set(cfg.rpoNumber(bb));
+        }
+        for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(0)) {
+            pending.clear(i);
+            BasicBlock bb = rpo.get(i);
+            List<Expr> exit = stacks.simulate(bb, heights, builder);
+            for (BasicBlock succ : bb.successors()) {
+                if (stacks.merge(succ, exit, heights)) pending.set(cfg.rpoNumber(succ));
+            }
+        }
+        return stacks;
+    }
+
+    /**
+     * Стек на входе блока или null, если он не известен (в том числе когда
+     * ребра приносят разную высоту).
+     */
+    Deque<Expr> entry(BasicBlock bb) {
+        List<Expr> s = entry.get(bb.id());
+        return s == null || conflict[bb.id()] ? null : new ArrayDeque<>(s);
+    }
+
+    /**
+     * Стек перед завершающим переходом или switch блока, null - не известен.
+     */
+    Deque<Expr> beforeBranch(BasicBlock bb) {
+        List<Expr> s = beforeBranch.get(bb.id());
+        return s == null ? null : new ArrayDeque<>(s);
+    }
+
+    /**
+     * Присваивания синтетическим переменным входа {@code to} на ребре,
+     * по которому уходит стек {@code exit}. null - стек ребра не совпадает
+     * по высоте со входом.
+     */
+    List<Stmt> transfer(BasicBlock to, Deque<Expr> exit) {
+        List<Expr> in = entry.get(to.id());
+        if (in == null || conflict[to.id()]) return null;
+        if (in.isEmpty()) return List.of();
+        if (exit.size() != in.size()) return null;
+        VarExpr[] slots = temps[to.id()];
+        if (slots == null) return List.of();
+        List<Stmt> out = new ArrayList<>();
+        Iterator<Expr> values = exit.iterator();
+        for (VarExpr temp : slots) {
+            Expr value = values.next();
+            if (temp != null && !temp.equals(value)) out.add(new AssignStmt(temp, value));
+        }
+        return out;
+    }
+
+    static boolean isTemp(Expr e) {
+        return e instanceof VarExpr v && v.name().startsWith(TEMP_PREFIX);
+    }
+
+    /**
+     * Имя переменной catch: слот первого astore обработчика, иначе "e".
+     */
+    static String exceptionVarName(BasicBlock handler, LocalNameProvider names) {
+        List<Insn> insns = handler.instructions();
+        if (!insns.isEmpty()) {
+            Insn first = insns.getFirst();
+            if (first instanceof LocalVarInsn lv && lv.opcode() == Opcode.ASTORE) {
+                return names.nameForLocal(lv.localIndex());
+            }
+            Integer slot = astoreSlot(first.opcode());
+            if (slot != null) return names.nameForLocal(slot);
+        }
+        return "e";
+    }
+
+    /**
+     * Первая инструкция обработчика, которая снимает исключение со стека.
+     */
+    static boolean isExceptionStore(Insn insn) {
+        Opcode op = insn.opcode();
+        return op == Opcode.ASTORE || op == Opcode.POP || astoreSlot(op) != null;
+    }
+
+    static Integer astoreSlot(Opcode op) {
+        return switch (op) {
+            case ASTORE_0 -> 0;
+            case ASTORE_1 -> 1;
+            case ASTORE_2 -> 2;
+            case ASTORE_3 -> 3;
+            case null, default -> null;
+        };
+    }
+
+    private List<Expr> simulate(BasicBlock bb, StackHeights heights, ExpressionBuilder builder) {
+        List<Expr> in = entry.get(bb.id());
+        if (in == null || conflict[bb.id()]) return null;
+        List<Insn> insns = bb.instructions();
+        if (insns.isEmpty()) return in;
+        Insn last = insns.getLast();
+        boolean branches = last instanceof JumpInsn || last instanceof SwitchInsn;
+        Deque<Expr> stack = new ArrayDeque<>(in);
+        try {
+            builder.buildBlock(branches ? insns.subList(0, insns.size() - 1) : insns, stack);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!branches) return List.copyOf(stack);
+
+        beforeBranch.set(bb.id(), List.copyOf(stack));
+        int pops = last instanceof SwitchInsn ? 1 : branchPops(last.opcode());
+        if (pops < 0 || stack.size() < pops) return null;
+        for (int k = 0; k < pops; k++) stack.pop();
+        return List.copyOf(stack);
+    }
+
+    /**
+     * Сколько значений снимает со стека переход; -1 для jsr/ret.
+     */
+    static int branchPops(Opcode op) {
+        return switch (op) {
+            case GOTO, GOTO_W -> 0;
+            case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL -> 1;
+            case IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE -> 2;
+            // jsr кладет адрес возврата, которого в выражениях нет
+            default -> -1;
+        };
+    }
+
+    /**
+     * Сливает стек ребра со входом блока; true - вход изменился.
+     */
+    private boolean merge(BasicBlock succ, List<Expr> exit, StackHeights heights) {
+        int id = succ.id();
+        if (conflict[id] || cfg.isHandlerBlock(succ)) return false;
+        if (!succ.instructions().isEmpty() && heights.entryHeight(succ) == 0) {
+            if (entry.get(id) != null) return false;
+            entry.set(id, List.of());
+            return true;
+        }
+        if (exit == null || exit.isEmpty()) {
+            // на непустой вход с неизвестным или пустым стеком не построить
+            conflict[id] = true;
+            return true;
+        }
+        List<Expr> old = entry.get(id);
+        if (cfg.predecessorCount(succ) == 1) {
+            // единственный вход просто повторяет выход предшественника
+            if (exit.equals(old)) return false;
+            entry.set(id, exit);
+            return true;
+        }
+        if (old == null) {
+            entry.set(id, exit);
+            return true;
+        }
+        if (old.size() != exit.size()) {
+            conflict[id] = true;
+            return true;
+        }
+        VarExpr[] slots = temps[id] == null ? new VarExpr[old.size()] : temps[id];
+        List<Expr> merged = new ArrayList<>(old);
+        boolean changed = false;
+        for (int k = 0; k < old.size(); k++) {
+            if (slots[k] != null || old.get(k).equals(exit.get(k))) continue;
+            slots[k] = new VarExpr(TEMP_PREFIX + (++tempCount));
+            merged.set(k, slots[k]);
+            changed = true;
+        }
+        if (!changed) return false;
+        temps[id] = slots;
+        entry.set(id, List.copyOf(merged));
+        return true;
+    }
+}
@@ -5,6 +5,7 @@ import net.letsdank.jd.ast.stmt.AssignStmt;
 import net.letsdank.jd.ast.stmt.BlockStmt;
 import net.letsdank.jd.ast.stmt.ExprStmt;
 import net.letsdank.jd.ast.stmt.ReturnStmt;
+import net.letsdank.jd.ast.stmt.ThrowStmt;
 import net.letsdank.jd.bytecode.insn.*;
 import net.letsdank.jd.model.ConstantPool;
 import net.letsdank.jd.model.attribute.BootstrapMethodsAttribute;
@@ -46,8 +47,17 @@ public final class ExpressionBuilder {
      * Для условных блоков можно передать список без последнего JumpInsn.
      */
     public BlockStmt buildBlock(List<Insn> insns) {
+        return buildBlock(insns, new ArrayDeque<>());
+    }
+
+    /**
+     * То же, но на заданном стеке: то, что лежало в нем до начала, доступно
+     * инструкциям куска, а оставшееся после него остается в stack. Так условие
+     * или selector перехода в конце блока строятся тем же проходом, что и
+     * операторы перед ним.
+     */
+    public BlockStmt buildBlock(List<Insn> insns, Deque<Expr> stack) {
         BlockStmt block = new BlockStmt();
-        Deque<Expr> stack = new ArrayDeque<>();
 
         for (Insn insn : insns) {
             if (insn instanceof SimpleInsn s) {
@@ -161,6 +171,10 @@ public final class ExpressionBuilder {
                     case RETURN -> {
                         block.add(new ReturnStmt(null));
                     }
+                    case ATHROW -> {
+                        Expr value = stack.pop();
+                        block.add(new ThrowStmt(value));
+                    }
 
                     // целочисленные константы iconst_*
                     case ICONST_M1 -> stack.push(new IntConstExpr(-1));
@@ -226,76 +240,34 @@ public final class ExpressionBuilder {
                     case ALOAD_3 -> stack.push(varExpr(3));
 
                     // istore_0..3: присваивание
-                    case ISTORE_0 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(0), value));
-                    }
-                    case ISTORE_1 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(1), value));
-                    }
-                    case ISTORE_2 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(2), value));
-                    }
-                    case ISTORE_3 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(3), value));
-                    }
+                    case ISTORE_0 -> storeLocal(block, stack, 0);
+                    case ISTORE_1 -> storeLocal(block, stack, 1);
+                    case ISTORE_2 -> storeLocal(block, stack, 2);
+                    case ISTORE_3 -> storeLocal(block, stack, 3);
 
                     // lstore_0..3: присваивание
-                    case LSTORE_0 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(0), value));
-                    }
-                    case LSTORE_1 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(1), value));
-                    }
-                    case LSTORE_2 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(2), value));
-                    }
-                    case LSTORE_3 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(3), value));
-                    }
+                    case LSTORE_0 -> storeLocal(block, stack, 0);
+                    case LSTORE_1 -> storeLocal(block, stack, 1);
+                    case LSTORE_2 -> storeLocal(block, stack, 2);
+                    case LSTORE_3 -> storeLocal(block, stack, 3);
 
                     // fstore_0..3: присваивание
-                    case FSTORE_0 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(0), value));
-                    }
-                    case FSTORE_1 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(1), value));
-                    }
-                    case FSTORE_2 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(2), value));
-                    }
-                    case FSTORE_3 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(3), value));
-                    }
+                    case FSTORE_0 -> storeLocal(block, stack, 0);
+                    case FSTORE_1 -> storeLocal(block, stack, 1);
+                    case FSTORE_2 -> storeLocal(block, stack, 2);
+                    case FSTORE_3 -> storeLocal(block, stack, 3);
 
                     // dstore_0..3: присваивание
-                    case DSTORE_0 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(0), value));
-                    }
-                    case DSTORE_1 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(1), value));
-                    }
-                    case DSTORE_2 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(2), value));
-                    }
-                    case DSTORE_3 -> {
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(3), value));
-                    }
+                    case DSTORE_0 -> storeLocal(block, stack, 0);
+                    case DSTORE_1 -> storeLocal(block, stack, 1);
+                    case DSTORE_2 -> storeLocal(block, stack, 2);
+                    case DSTORE_3 -> storeLocal(block, stack, 3);
+
+                    // astore_0..3: присваивание ссылки
+                    case ASTORE_0 -> storeLocal(block, stack, 0);
+                    case ASTORE_1 -> storeLocal(block, stack, 1);
+                    case ASTORE_2 -> storeLocal(block, stack, 2);
+                    case ASTORE_3 -> storeLocal(block, stack, 3);
 
                     // операции со стеком
                     case POP -> {
@@ -352,11 +324,7 @@ public final class ExpressionBuilder {
                         int idx = lv.localIndex();
                         stack.push(varExpr(idx)); // this, obj, массив и прочие ссылки
                     }
-                    case ISTORE, LSTORE, FSTORE, DSTORE -> {
-                        int idx = lv.localIndex();
-                        Expr value = stack.pop();
-                        block.add(new AssignStmt(varExpr(idx), value));
-                    }
+                    case ISTORE, LSTORE, FSTORE, DSTORE, ASTORE -> storeLocal(block, stack, lv.localIndex());
                     default -> {
                         // остальное пока игнорируем
                     }
@@ -719,6 +687,29 @@ public final class ExpressionBuilder {
         };
     }
 
+    /**
+     * xstore. Копия значения, оставленная на стеке dup-ом, заменяется самой
+     * переменной: иначе {@code dup; astore} посчитает выражение дважды.
+     */
+    private void storeLocal(BlockStmt block, Deque<Expr> stack, int index) {
+        Expr value = stack.pop();
+        VarExpr var = varExpr(index);
+        block.add(new AssignStmt(var, value));
+        boolean copied = false;
+        for (Expr e : stack) {
+            if (e == value) {
+                copied = true;
+                break;
+            }
+        }
+        if (!copied) return;
+        Expr[] items = stack.toArray(new Expr[0]);
+        stack.clear();
+        for (int i = items.length - 1; i >= 0; i--) {
+            stack.push(items[i] == value ? var : items[i]);
+        }
+    }
+
     private VarExpr varExpr(int index) {
         return new VarExpr(localNames.nameForLocal(index));
     }
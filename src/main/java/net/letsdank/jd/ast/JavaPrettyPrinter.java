@@ -152,6 +152,12 @@ public final class JavaPrettyPrinter {
             printSynchronized(sync);
         } else if (stmt instanceof CommentStmt cs) {
             appendLine(cs.text());
+        } else if (stmt instanceof BreakStmt || stmt instanceof ContinueStmt) {
+            appendLine(stmt.toString());
+        } else if (stmt instanceof ThrowStmt ts) {
+            appendLine("throw " + simplifier.simplify(ts.value()) + ";");
+        } else if (stmt instanceof LabeledStmt ls) {
+            printLabeled(ls);
         } else {
             // временный fallback, чтобы видеть неожиданные типы
             appendLine("// TODO: " + stmt.getClass().getSimpleName() + " -> " + stmt);
@@ -207,26 +213,52 @@ public final class JavaPrettyPrinter {
     private void printSwitch(SwitchStmt sw) {
         appendLine("switch (" + sw.selector() + ") {");
         indent++;
-        for (var entry : sw.cases().entrySet()) {
+        var entries = new ArrayList<>(sw.cases().entrySet());
+        for (int i = 0; i < entries.size(); i++) {
+            var entry = entries.get(i);
             appendLine("case " + entry.getKey() + ":");
-            indent++;
-            for (Stmt s : entry.getValue().statements()) {
-                printStmt(s);
+            // несколько значений с общим телом: case 1: case 2: ...
+            if (i + 1 < entries.size() && entries.get(i + 1).getValue() == entry.getValue()) {
+                continue;
             }
-            appendLine("break;");
-            indent--;
+            printCaseBody(entry.getValue());
         }
         if (sw.defaultBlock() != null && !sw.defaultBlock().statements().isEmpty()) {
             appendLine("default:");
+            printCaseBody(sw.defaultBlock());
+        }
+        indent--;
+        appendLine("}");
+    }
+
+    private void printCaseBody(BlockStmt body) {
+        indent++;
+        for (Stmt s : body.statements()) {
+            printStmt(s);
+        }
+        // после return/throw/break/continue break уже недостижим
+        List<Stmt> stmts = body.statements();
+        Stmt last = stmts.isEmpty() ? null : stmts.getLast();
+        if (!(last instanceof ReturnStmt || last instanceof ThrowStmt
+                || last instanceof BreakStmt || last instanceof ContinueStmt)) {
+            appendLine("break;");
+        }
+        indent--;
+    }
+
+    private void printLabeled(LabeledStmt ls) {
+        if (ls.body() instanceof BlockStmt block) {
+            appendLine(ls.label() + ": {");
             indent++;
-            for (Stmt s : sw.defaultBlock().statements()) {
+            for (Stmt s : block.statements()) {
                 printStmt(s);
             }
-            appendLine("break;");
             indent--;
+            appendLine("}");
+        } else {
+            appendLine(ls.label() + ":");
+            printStmt(ls.body());
         }
-        indent--;
-        appendLine("}");
     }
 
     private void printLoop(LoopStmt loop) {
@@ -291,6 +323,14 @@ public final class JavaPrettyPrinter {
             }
         }
         indent--;
+        for (CatchClause cc : tcs.moreCatches()) {
+            appendLine("} catch (" + cc.exceptionType() + " " + cc.varName() + ") {");
+            indent++;
+            for (Stmt s : cc.body()) {
+                printStmt(s);
+            }
+            indent--;
+        }
 
         // Опциональный finally блок
         if (tcs.finallyBlock() != null && !tcs.finallyBlock().statements().isEmpty()) {
@@ -360,6 +400,9 @@ public final class JavaPrettyPrinter {
 
         if (inductionVar == null) return null;
 
+        // continue в for выполнил бы update, а в while - нет
+        if (containsContinue(body)) return null;
+
         // Проверяем, что условие использует эту переменную
         Expr condition = loop.condition();
         if (!conditionUsesVar(condition, inductionVar)) return null;
@@ -369,6 +412,18 @@ public final class JavaPrettyPrinter {
         return new ForLoopPattern(inductionVar, condition, updateStmt, forBody);
     }
 
+    private boolean containsContinue(List<Stmt> stmts) {
+        boolean[] found = {false};
+        new AstVisitor<Void, Void>() {
+            @Override
+            public Void visitContinue(ContinueStmt stmt, Void param) {
+                found[0] = true;
+                return null;
+            }
+        }.visitBlock(new BlockStmt(stmts), null);
+        return found[0];
+    }
+
     private boolean conditionUsesVar(Expr condition, String varName) {
         if (condition instanceof BinaryExpr be) {
             return exprContainsVar(be.left(), varName) || exprContainsVar(be.right(), varName);
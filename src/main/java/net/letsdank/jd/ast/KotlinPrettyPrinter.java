@@ -121,11 +121,32 @@ public final class KotlinPrettyPrinter {
             printReturn(rs);
         } else if (stmt instanceof ExprStmt es) {
             printExprStmt(es);
+        } else if (stmt instanceof BreakStmt bs) {
+            appendLine(bs.label() == null ? "break" : "break@" + bs.label());
+        } else if (stmt instanceof ContinueStmt cs) {
+            appendLine(cs.label() == null ? "continue" : "continue@" + cs.label());
+        } else if (stmt instanceof ThrowStmt ts) {
+            appendLine("throw " + printExpr(ts.value()));
+        } else if (stmt instanceof LabeledStmt ls) {
+            printLabeled(ls);
         } else {
             appendLine("// TODO: " + stmt.getClass().getSimpleName() + " -> " + stmt);
         }
     }
 
+    private void printLabeled(LabeledStmt ls) {
+        if (ls.body() instanceof BlockStmt block) {
+            // помеченных блоков в Kotlin нет: оставляем метку комментарием
+            appendLine("// " + ls.label() + "@");
+            for (Stmt s : block.statements()) {
+                printStmt(s);
+            }
+        } else {
+            appendLine(ls.label() + "@");
+            printStmt(ls.body());
+        }
+    }
+
     private void printIf(IfStmt ifs) {
         Expr cond = ifs.condition();
 
@@ -0,0 +1,262 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.Expr;
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.CfgSimplifier;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.StackHeights;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.AttributeInfo;
+import net.letsdank.jd.model.attribute.BootstrapMethodsAttribute;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+
+import java.util.*;
+
+/**
+ * Общее состояние декомпиляции одного метода.
+ * <p>
+ * Все стратегии {@link MethodDecompiler} берут отсюда инструкции, CFG,
+ * предшественников, стеки перед ветвлениями и имена локальных переменных.
+ * Каждая величина считается лениво при первом обращении и дальше
+ * переиспользуется, так что перебор стратегий не повторяет базовый анализ.
+ */
+final class MethodContext {
+    private final MethodInfo method;
+    private final ClassFile cf;
+    private final CodeAttribute codeAttr;
+    private final DecompilerOptions options;
+    private final CfgBuilder cfgBuilder;
+    private final String name;
+    private final String desc;
+
+    private LocalNameProvider localNames;
+    private BootstrapMethodsAttribute bootstrap;
+    private boolean bootstrapResolved;
+    private byte[] code;
+    private List<Insn> insns;
+    private int[] pcToIndex;
+    private ControlFlowGraph cfg;
+    private ControlFlowGraph regionCfg;
+    private ExpressionBuilder exprBuilder;
+    private StackHeights stackHeights;
+    private EntryStacks entryStacks;
+    private EntryStacks regionEntryStacks;
+    private final Map<BasicBlock, Deque<Expr>> branchStacks = new HashMap<>();
+
+    MethodContext(MethodInfo method, ClassFile cf, CodeAttribute codeAttr,
+                  DecompilerOptions options, CfgBuilder cfgBuilder) {
+        this.method = method;
+        this.cf = cf;
+        this.codeAttr = codeAttr;
+        this.options = options;
+        this.cfgBuilder = cfgBuilder;
+        ConstantPool cp = cf.constantPool();
+        this.name = cp.getUtf8(method.nameIndex());
+        this.desc = cp.getUtf8(method.descriptorIndex());
+    }
+
+    MethodInfo method() {
+        return method;
+    }
+
+    ClassFile classFile() {
+        return cf;
+    }
+
+    ConstantPool cp() {
+        return cf.constantPool();
+    }
+
+    CodeAttribute codeAttribute() {
+        return codeAttr;
+    }
+
+    DecompilerOptions options() {
+        return options;
+    }
+
+    String name() {
+        return name;
+    }
+
+    String descriptor() {
+        return desc;
+    }
+
+    LocalNameProvider localNames() {
+        if (localNames == null) {
+            LocalNameProvider baseNames = new MethodLocalNameProvider(method.accessFlags(), desc);
+            // если есть LocalVariableTable - накрываем debug-именами
+            if (codeAttr.localVariableAttribute() != null) {
+                localNames = new LocalVariableNameProvider(baseNames, codeAttr.localVariableAttribute(), cp());
+            } else {
+                localNames = baseNames;
+            }
+        }
+        return localNames;
+    }
+
+    /**
+     * BootstrapMethods на уровне класса или null.
+     */
+    BootstrapMethodsAttribute bootstrap() {
+        if (!bootstrapResolved) {
+            for (AttributeInfo attr : cf.attributes()) {
+                if (attr instanceof BootstrapMethodsAttribute bmAttr) {
+                    bootstrap = bmAttr;
+                    break;
+                }
+            }
+            bootstrapResolved = true;
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Байткод метода (для off-heap хранилища {@link CodeAttribute#code()} каждый раз копирует).
+     */
+    byte[] code() {
+        if (code == null) {
+            code = codeAttr.code();
+        }
+        return code;
+    }
+
+    List<Insn> insns() {
+        if (insns == null) {
+            insns = new BytecodeDecoder().decode(code());
+        }
+        return insns;
+    }
+
+    int[] pcToIndex() {
+        if (pcToIndex == null) {
+            pcToIndex = BytecodeDecoder.pcToIndex(insns(), codeAttr.codeLength());
+        }
+        return pcToIndex;
+    }
+
+    ControlFlowGraph cfg() {
+        if (cfg == null) {
+            // обработчики - отдельные блоки с исключительными ребрами, но try-диапазоны
+            // блоки не режут: шаблоны стратегий на это пока не рассчитаны
+            cfg = cfgBuilder.build(code(), insns(), pcToIndex(), codeAttr.exceptionTable(), false);
+        }
+        return cfg;
+    }
+
+    /**
+     * CFG для структурного анализа: блоки дополнительно режутся по границам
+     * try-диапазонов, но только там, где стек пуст. Иначе кусок вроде
+     * {@code invoke; aload; monitorexit; ireturn} развалился бы на блоки
+     * с недостроенным выражением на стеке.
+     * <p>
+     * Граф прогоняется через {@link CfgSimplifier}: без мертвого кода и
+     * цепочек goto. Старые стратегии сверяют блоки с адресами переходов,
+     * поэтому им остается сырой {@link #cfg()}.
+     */
+    ControlFlowGraph regionCfg() {
+        if (regionCfg == null) {
+            var exceptionTable = codeAttr.exceptionTable();
+            ControlFlowGraph raw;
+            if (exceptionTable == null || exceptionTable.isEmpty()) {
+                raw = cfg();
+            } else {
+                int[] pcIndex = pcToIndex();
+                StackHeights heights = stackHeights();
+                raw = cfgBuilder.build(code(), insns(), pcIndex, exceptionTable, pc -> {
+                    if (pc < 0 || pc >= pcIndex.length || pcIndex[pc] < 0) return false;
+                    return heights.heightBefore(pcIndex[pc]) <= 0;
+                });
+            }
+            regionCfg = CfgSimplifier.simplify(raw, insns(), pcToIndex());
+        }
+        return regionCfg;
+    }
+
+    /**
+     * Общий ExpressionBuilder метода: он не хранит состояние между вызовами buildBlock.
+     */
+    ExpressionBuilder exprBuilder() {
+        if (exprBuilder == null) {
+            exprBuilder = new ExpressionBuilder(localNames(), cp(), options, bootstrap());
+        }
+        return exprBuilder;
+    }
+
+    /**
+     * Предшественники блока из {@link #cfg()} в порядке адресов.
+     */
+    List<BasicBlock> predecessors(BasicBlock bb) {
+        return cfg().predecessors(bb);
+    }
+
+    /**
+     * Есть ли в CFG циклы. Решает лес циклов, а не адреса: переход назад
+     * по байткоду еще не цикл, а тело цикла может лежать где угодно.
+     */
+    boolean hasLoops() {
+        return !cfg().loops().isEmpty();
+    }
+
+    /**
+     * Высоты стека по инструкциям {@link #cfg()}.
+     */
+    StackHeights stackHeights() {
+        if (stackHeights == null) {
+            stackHeights = StackHeights.compute(cfg(), code(), cp(), codeAttr.exceptionTable());
+        }
+        return stackHeights;
+    }
+
+    /**
+     * Снимает ли кусок инструкций метода значения, положенные до него:
+     * на таком куске {@link ExpressionBuilder#buildBlock} упадет.
+     */
+    boolean needsIncomingStack(List<Insn> insns) {
+        return stackHeights().needsIncomingStack(insns);
+    }
+
+    /**
+     * Символьные стеки на входе блоков {@link #cfg()}.
+     */
+    EntryStacks entryStacks() {
+        if (entryStacks == null) {
+            entryStacks = EntryStacks.compute(cfg(), stackHeights(), exprBuilder(), localNames());
+        }
+        return entryStacks;
+    }
+
+    /**
+     * То же для {@link #regionCfg()}; без try-диапазонов это один и тот же граф.
+     */
+    EntryStacks regionEntryStacks() {
+        if (regionEntryStacks == null) {
+            regionEntryStacks = regionCfg() == cfg()
+                    ? entryStacks()
+                    : EntryStacks.compute(regionCfg(), stackHeights(), exprBuilder(), localNames());
+        }
+        return regionEntryStacks;
+    }
+
+    /**
+     * Стек перед завершающим переходом блока. Возвращается копия:
+     * построители условий снимают операнды со стека.
+     * Берется из {@link #entryStacks()}, а для блоков, куда тот не дошел, -
+     * из симуляции блока с пустого стека.
+     */
+    Deque<Expr> stackBeforeBranch(BasicBlock bb) {
+        Deque<Expr> stack = branchStacks.get(bb);
+        if (stack == null) {
+            stack = entryStacks().beforeBranch(bb);
+            if (stack == null) stack = exprBuilder().simulateStackBeforeBranch(bb.instructions());
+            branchStacks.put(bb, stack);
+        }
+        return new ArrayDeque<>(stack);
+    }
+}
@@ -2,7 +2,6 @@ package net.letsdank.jd.ast;
 
 import net.letsdank.jd.ast.expr.*;
 import net.letsdank.jd.ast.stmt.*;
-import net.letsdank.jd.bytecode.BytecodeDecoder;
 import net.letsdank.jd.bytecode.Opcode;
 import net.letsdank.jd.bytecode.insn.*;
 import net.letsdank.jd.cfg.BasicBlock;
@@ -11,8 +10,6 @@ import net.letsdank.jd.cfg.ControlFlowGraph;
 import net.letsdank.jd.model.ClassFile;
 import net.letsdank.jd.model.ConstantPool;
 import net.letsdank.jd.model.MethodInfo;
-import net.letsdank.jd.model.attribute.AttributeInfo;
-import net.letsdank.jd.model.attribute.BootstrapMethodsAttribute;
 import net.letsdank.jd.model.attribute.CodeAttribute;
 import net.letsdank.jd.model.cp.CpInfo;
 import net.letsdank.jd.model.cp.CpInterfaceMethodref;
@@ -43,114 +40,113 @@ public final class MethodDecompiler {
             return new MethodAst(name, desc, new BlockStmt());
         }
 
-        LocalNameProvider baseNames = new MethodLocalNameProvider(method.accessFlags(), desc);
-        LocalNameProvider localNames = baseNames;
+        // Инструкции, CFG, имена и т.п. считаются лениво и один раз на метод
+        MethodContext ctx = new MethodContext(method, cf, codeAttr, options, cfgBuilder);
 
-        // если есть LocalVariableTable - накрываем debug-именами
-        if (codeAttr.localVariableAttribute() != null) {
-            localNames = new LocalVariableNameProvider(baseNames, codeAttr.localVariableAttribute(), cp);
-        }
-
-        // Найдем BootstrapMethods на уровне класса (если есть)
-        BootstrapMethodsAttribute bootstrap = null;
-        for (AttributeInfo attr : cf.attributes()) {
-            if (attr instanceof BootstrapMethodsAttribute bmAttr) {
-                bootstrap = bmAttr;
-                break;
+        // Неприводимый граф не разложат ни структурный анализ, ни шаблоны:
+        // сразу автомат на switch, иначе линейный fallback.
+        if (!ctx.regionCfg().isReducible()) {
+            BlockStmt dispatch = new DispatchEmitter(ctx).emit();
+            if (dispatch != null) {
+                return new MethodAst(ctx.name(), ctx.descriptor(), dispatch);
             }
+            return linearized(ctx);
         }
 
-        byte[] code = codeAttr.code();
-
-        // Декодируем один раз
-        BytecodeDecoder decoder = new BytecodeDecoder();
-        List<Insn> insns = decoder.decode(code);
+        // 0. Структурный анализ всего CFG: циклы, ветвления, switch и try любой
+        //    вложенности. Шаблоны ниже остаются запасным вариантом для
+        //    методов, которые он не разложил целиком.
+        BlockStmt regions = new RegionStructurer(ctx).structure();
+        if (regions != null) {
+            return postProcessLoops(new MethodAst(ctx.name(), ctx.descriptor(), regions));
+        }
 
         // 1. Попытка распознать простой try/catch на уровне метода
-        MethodAst tryCatchAst = tryBuildSingleTryCatch(method, cf, codeAttr, insns, localNames, cp, bootstrap, name, desc);
+        MethodAst tryCatchAst = tryBuildSingleTryCatch(ctx);
         if (tryCatchAst != null) {
             return postProcessLoops(tryCatchAst);
         }
 
-        // 2. Строим CFG
-        ControlFlowGraph cfg = cfgBuilder.build(code);
-
         // 2.1. Попытка распознать synchronized блок
-        MethodAst syncAst = tryBuildSynchronized(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst syncAst = tryBuildSynchronized(ctx);
         if (syncAst != null) {
             return postProcessLoops(syncAst);
         }
 
         // 2.2. Попытка распознать простой switch
-        MethodAst switchAst = tryBuildSwitch(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst switchAst = tryBuildSwitch(ctx);
         if (switchAst != null) {
             return postProcessLoops(switchAst);
         }
 
         // 2.3. Попытка распознать for-each цикл
-        MethodAst forEachAst = tryBuildForEach(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst forEachAst = tryBuildForEach(ctx);
         if (forEachAst != null) {
             return postProcessLoops(forEachAst);
         }
 
         // 2.4. Попытка рекурсивной структуризации для ацикличных графов:
         //      if/if-else/последовательности без циклов.
-        if (!hasBackEdge(cfg)) {
-            MethodAst structured = tryStructurizeAcyclicCfg(cfg, localNames, cp, options, bootstrap, name, desc);
+        if (!ctx.hasLoops()) {
+            MethodAst structured = tryStructurizeAcyclicCfg(ctx);
             if (structured != null) {
                 return postProcessLoops(structured);
             }
         }
 
         // 3. Попытка распознать простой while
-        LoopStmt loop = tryBuildWhileLoop(cfg, localNames, cp);
+        LoopStmt loop = tryBuildWhileLoop(ctx);
         if (loop != null) {
             BlockStmt body = new BlockStmt();
             body.add(loop);
-            return postProcessLoops(new MethodAst(name, desc, body));
+            return postProcessLoops(new MethodAst(ctx.name(), ctx.descriptor(), body));
         }
 
         // 4. if/else через CFG
-        IfStmt ifStmt = tryBuildIfFromCfg(cfg, localNames, cp);
+        IfStmt ifStmt = tryBuildIfFromCfg(ctx);
         if (ifStmt != null) {
             BlockStmt body = new BlockStmt();
             body.add(ifStmt);
-            return postProcessLoops(new MethodAst(name, desc, body));
+            return postProcessLoops(new MethodAst(ctx.name(), ctx.descriptor(), body));
         }
 
         // Если в методе вообще нет условные/безусловных переходов -
         // его можно честно разобрать линейным стековым интерпретатором.
+        List<Insn> insns = ctx.insns();
         if (!hasControlFlow(insns)) {
-            ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, bootstrap);
-            BlockStmt linearBody = exprBuilder.buildBlock(insns);
-            return postProcessLoops(new MethodAst(name, desc, linearBody));
+            BlockStmt linearBody = buildLinear(ctx);
+            return postProcessLoops(new MethodAst(ctx.name(), ctx.descriptor(), linearBody));
         }
 
         // Пытаемся распознать if (...) { then } else { else } с join-блоком
-        MethodAst ifWithJoinAst = tryBuildIfWithJoinAtEntry(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst ifWithJoinAst = tryBuildIfWithJoinAtEntry(ctx);
         if (ifWithJoinAst != null) {
             return postProcessLoops(ifWithJoinAst);
         }
 
         // Пытаемся распознать простой if (...) { then } в начале метода
-        MethodAst simpleIfAst = tryBuildSimpleIfAtEntry(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst simpleIfAst = tryBuildSimpleIfAtEntry(ctx);
         if (simpleIfAst != null) {
             return postProcessLoops(simpleIfAst);
         }
 
         // Пытаемся распознать guard-return по CFG
-        MethodAst guardAst = tryBuildGuardReturnAtEntry(cfg, localNames, cp, options, bootstrap, name, desc);
+        MethodAst guardAst = tryBuildGuardReturnAtEntry(ctx);
         if (guardAst != null) {
             return postProcessLoops(guardAst);
         }
 
         // ИНАЧЕ: сложный control flow.
-        // Вместо того чтобы вообще ничего не показывать, честно линейно
-        // интерпретируем байткод и предупреждаем, что семантика может
-        // не соответствовать реальному control flow.
+        return linearized(ctx);
+    }
 
-        ExpressionBuilder fallbackBuilder = new ExpressionBuilder(localNames, cp, options, bootstrap);
-        BlockStmt linearBody = fallbackBuilder.buildBlock(insns);
+    /**
+     * Вместо того чтобы вообще ничего не показывать, честно линейно
+     * интерпретируем байткод и предупреждаем, что семантика может
+     * не соответствовать реальному control flow.
+     */
+    private MethodAst linearized(MethodContext ctx) {
+        BlockStmt linearBody = buildLinear(ctx);
 
         // Оборачиваем в комментарий-предупреждение
         BlockStmt withWarning = new BlockStmt();
@@ -164,7 +160,62 @@ public final class MethodDecompiler {
         // ВАЖНО: здесь НЕ вызываем postProcessLoops,
         // чтобы не пытаться "узнавать" while/if/for там,
         // где мы уже объявили код "слишком сложным".
-        return new MethodAst(name, desc, withWarning);
+        return new MethodAst(ctx.name(), ctx.descriptor(), withWarning);
+    }
+
+    /**
+     * Все инструкции метода подряд на одном стеке. В начале обработчика
+     * на стек кладется пойманное исключение. Это последний fallback, так что
+     * инструкция, которой не хватило операндов, становится комментарием,
+     * а не падением всего метода.
+     */
+    private BlockStmt buildLinear(MethodContext ctx) {
+        List<Insn> insns = ctx.insns();
+        Set<Integer> handlers = new HashSet<>();
+        List<CodeAttribute.ExceptionTableEntry> table = ctx.codeAttribute().exceptionTable();
+        if (table != null) {
+            for (CodeAttribute.ExceptionTableEntry e : table) handlers.add(e.handlerPc());
+        }
+
+        BlockStmt body = new BlockStmt();
+        Deque<Expr> stack = new ArrayDeque<>();
+        int from = 0;
+        for (int i = 0; i <= insns.size(); i++) {
+            boolean handler = i < insns.size() && handlers.contains(insns.get(i).offset());
+            if (!handler && i < insns.size()) continue;
+            buildLenient(ctx, insns.subList(from, i), stack, body);
+            if (handler) {
+                BasicBlock bb = ctx.cfg().blockAt(insns.get(i).offset());
+                stack.push(new VarExpr(bb == null ? "e" : EntryStacks.exceptionVarName(bb, ctx.localNames())));
+            }
+            from = i;
+        }
+        return body;
+    }
+
+    private void buildLenient(MethodContext ctx, List<Insn> insns, Deque<Expr> stack, BlockStmt out) {
+        Deque<Expr> attempt = new ArrayDeque<>(stack);
+        List<Stmt> stmts;
+        try {
+            stmts = ctx.exprBuilder().buildBlock(insns, attempt).statements();
+        } catch (NoSuchElementException e) {
+            stmts = null;
+        }
+        if (stmts != null) {
+            stmts.forEach(out::add);
+            stack.clear();
+            stack.addAll(attempt);
+            return;
+        }
+        // по одной инструкции, чтобы потерять только ту, что сломала стек
+        for (Insn insn : insns) {
+            try {
+                ctx.exprBuilder().buildBlock(List.of(insn), stack).statements().forEach(out::add);
+            } catch (NoSuchElementException e) {
+                out.add(new CommentStmt("/* stack underflow: " + insn.opcode() + " at pc " + insn.offset() + " */"));
+                stack.clear();
+            }
+        }
     }
 
     /**
@@ -175,10 +226,16 @@ public final class MethodDecompiler {
      */
     private Expr buildConditionExpr(JumpInsn j, Deque<Expr> stackBefore) {
         ConditionBuilder conditionBuilder = new ConditionBuilder();
-        return conditionBuilder.buildForJump(j, stackBefore);
+        try {
+            return conditionBuilder.buildForJump(j, stackBefore);
+        } catch (NoSuchElementException e) {
+            // операнды условия не дошли до перехода: паттерн не наш
+            return null;
+        }
     }
 
-    private IfStmt tryBuildIfFromCfg(ControlFlowGraph cfg, LocalNameProvider localNames, ConstantPool cp) {
+    private IfStmt tryBuildIfFromCfg(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
         BasicBlock entry = cfg.entryBlock();
 
         for (BasicBlock condBlock : cfg.blocks()) {
@@ -213,16 +270,16 @@ public final class MethodDecompiler {
             // Очень простой паттерн: обе ветки заканчиваются return
             if (!endsWithReturn(jumpSucc) || !endsWithReturn(fallthrough)) continue;
 
-            ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options);
-            Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(insns);
+            Deque<Expr> stackBefore = ctx.stackBeforeBranch(condBlock);
 
             // ВАЖНО: для if строим условие для FALLTHROUGH-ветки (исходный then)
             Expr condition = buildIfConditionForFallthrough(j, stackBefore);
             if (condition == null) continue;
 
             // then = fallthrough, else = jumpSucc
-            BlockStmt thenBlock = exprBuilder.buildBlock(fallthrough.instructions());
-            BlockStmt elseBlock = exprBuilder.buildBlock(jumpSucc.instructions());
+            BlockStmt thenBlock = safeBuildBlock(ctx, fallthrough.instructions());
+            BlockStmt elseBlock = safeBuildBlock(ctx, jumpSucc.instructions());
+            if (thenBlock == null || elseBlock == null) continue;
 
             return new IfStmt(condition, thenBlock, elseBlock);
         }
@@ -230,10 +287,10 @@ public final class MethodDecompiler {
         return null;
     }
 
-    private MethodAst tryBuildSynchronized(ControlFlowGraph cfg, LocalNameProvider localNames, ConstantPool cp,
-                                           DecompilerOptions options, BootstrapMethodsAttribute bootstrap,
-                                           String name, String desc) {
-        ExpressionBuilder builder = new ExpressionBuilder(localNames, cp, options, bootstrap);
+    private MethodAst tryBuildSynchronized(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
+        LocalNameProvider localNames = ctx.localNames();
+        ExpressionBuilder builder = ctx.exprBuilder();
 
         for (BasicBlock bb : cfg.blocks()) {
             List<Insn> insns = bb.instructions();
@@ -284,7 +341,7 @@ public final class MethodDecompiler {
 
                         BlockStmt methodBody = new BlockStmt();
                         methodBody.add(new SynchronizedStmt(monitor, bodyBlock));
-                        return new MethodAst(name, desc, methodBody);
+                        return new MethodAst(ctx.name(), ctx.descriptor(), methodBody);
                     }
                 }
             } catch (Exception e) {
@@ -309,9 +366,7 @@ public final class MethodDecompiler {
      * Попытка распознать для-каждый цикл (for-each / enhanced for).
      * Паттерн: iterator() -> hasNext() в условии -> next() в теле.
      */
-    private MethodAst tryBuildForEach(ControlFlowGraph cfg, LocalNameProvider localNames, ConstantPool cp,
-                                      DecompilerOptions options, BootstrapMethodsAttribute bootstrap,
-                                      String name, String desc) {
+    private MethodAst tryBuildForEach(MethodContext ctx) {
         // Шаблон для-каждого (итераторный):
         //      init: <iterable>.iterator() -> astore iterVar
         //      cond: aload iterVar; invokeinterface hasNext(); ifeq exit
@@ -319,7 +374,10 @@ public final class MethodDecompiler {
         //            ... body ...
         //            goto cond
 
-        ExpressionBuilder builder = new ExpressionBuilder(localNames, cp, options, bootstrap);
+        ControlFlowGraph cfg = ctx.cfg();
+        LocalNameProvider localNames = ctx.localNames();
+        ConstantPool cp = ctx.cp();
+        ExpressionBuilder builder = ctx.exprBuilder();
 
         for (BasicBlock condBlock : cfg.blocks()) {
             List<Insn> condInsns = condBlock.instructions();
@@ -401,7 +459,7 @@ public final class MethodDecompiler {
             // Удаляем хвостовой goto обратно в cond, если он есть
             if (!bodyInsns.isEmpty()) {
                 Insn tail = bodyInsns.getLast();
-                if (tail instanceof JumpInsn jmp && jmp.opcode() == Opcode.GOTO && jmp.targetOffset() == condBlock.startOffset()) {
+                if (tail instanceof JumpInsn jmp && jmp.opcode().isUnconditionalJump() && jmp.targetOffset() == condBlock.startOffset()) {
                     bodyInsns.removeLast();
                 }
             }
@@ -419,7 +477,7 @@ public final class MethodDecompiler {
             String varName = localNames.nameForLocal(loopVarIdx);
             BlockStmt methodBody = new BlockStmt();
             methodBody.add(new EnhancedForStmt(varType, varName, iterableExpr, bodyBlock));
-            return new MethodAst(name, desc, methodBody);
+            return new MethodAst(ctx.name(), ctx.descriptor(), methodBody);
         }
 
         return null;
@@ -464,24 +522,16 @@ public final class MethodDecompiler {
         return null;
     }
 
-    private MethodAst tryBuildSwitch(ControlFlowGraph cfg, LocalNameProvider localNames, ConstantPool cp,
-                                     DecompilerOptions options, BootstrapMethodsAttribute bootstrap,
-                                     String name, String desc) {
-        ExpressionBuilder builder = new ExpressionBuilder(localNames, cp, options, bootstrap);
+    private MethodAst tryBuildSwitch(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
+        LocalNameProvider localNames = ctx.localNames();
+        ExpressionBuilder builder = ctx.exprBuilder();
 
         for (BasicBlock bb : cfg.blocks()) {
             List<Insn> insns = bb.instructions();
             if (insns.isEmpty()) continue;
 
-            Insn last = insns.getLast();
-            TableSwitchInsn ts = null;
-            LookupSwitchInsn ls = null;
-
-            if (last instanceof TableSwitchInsn t) {
-                ts = t;
-            } else if (last instanceof LookupSwitchInsn l) {
-                ls = l;
-            } else {
+            if (!(insns.getLast() instanceof SwitchInsn sw)) {
                 continue;
             }
 
@@ -490,20 +540,16 @@ public final class MethodDecompiler {
                 continue;
             }
 
-            Map<Integer, Integer> valueToTarget = new LinkedHashMap<>();
-            if (ts != null) {
-                valueToTarget.putAll(ts.caseTargets());
-            } else {
-                valueToTarget.putAll(ls.matchTargets());
-            }
-
-            int defaultTarget = ts != null ? ts.defaultTarget() : ls.defaultTarget();
+            int defaultTarget = sw.defaultTarget();
 
-            // Собираем все уникальные целевые блоки (cases + default)
-            Set<Integer> targetOffsets = new LinkedHashSet<>(valueToTarget.values());
+            // Собираем все уникальные целевые блоки кейсов
+            Set<Integer> targetOffsets = new LinkedHashSet<>();
+            for (int k = 0; k < sw.caseCount(); k++) {
+                targetOffsets.add(sw.target(k));
+            }
 
             // Определяем join (если все case-блоки прыгают на один и тот же GOTO в конце)
-            Integer joinTarget = findCommonGotoTarget(cfg, targetOffsets);
+            Integer joinTarget = findCommonGotoTarget(cfg, sw);
 
             // Строим блоки для каждой цели, переиспользуя, если несколько case указывают на один блок
             Map<Integer, BlockStmt> blockByOffset = new HashMap<>();
@@ -521,24 +567,15 @@ public final class MethodDecompiler {
             }
 
             Map<Integer, BlockStmt> cases = new LinkedHashMap<>();
-            for (Map.Entry<Integer, Integer> e : valueToTarget.entrySet()) {
-                BlockStmt blk = blockByOffset.get(e.getValue());
-                if (blk == null) {
-                    cases = null;
-                    break;
-                }
-                cases.put(e.getKey(), blk);
-            }
-
-            if (cases == null) {
-                continue;
+            for (int k = 0; k < sw.caseCount(); k++) {
+                cases.put(sw.key(k), blockByOffset.get(sw.target(k)));
             }
 
             BlockStmt defaultBlock = blockByOffset.get(defaultTarget);
 
             BlockStmt methodBody = new BlockStmt();
             methodBody.add(new SwitchStmt(selector, cases, defaultBlock));
-            return new MethodAst(name, desc, methodBody);
+            return new MethodAst(ctx.name(), ctx.descriptor(), methodBody);
         }
 
         return null;
@@ -555,7 +592,7 @@ public final class MethodDecompiler {
 
         Insn last = insns.getLast();
         if (last instanceof JumpInsn j) {
-            if (j.opcode() == Opcode.GOTO && joinTarget != null && j.targetOffset() == joinTarget) {
+            if (j.opcode().isUnconditionalJump() && joinTarget != null && j.targetOffset() == joinTarget) {
                 insns.removeLast(); // простой break к общему join
             } else {
                 return null; // fallthrough или сложный переход пока не поддерживаем
@@ -569,13 +606,13 @@ public final class MethodDecompiler {
         }
     }
 
-    private Integer findCommonGotoTarget(ControlFlowGraph cfg, Set<Integer> targetOffsets) {
+    private Integer findCommonGotoTarget(ControlFlowGraph cfg, SwitchInsn sw) {
         Integer common = null;
-        for (Integer off : targetOffsets) {
-            BasicBlock bb = cfg.blockByStartOffset(off);
+        for (int k = 0; k < sw.caseCount(); k++) {
+            BasicBlock bb = cfg.blockByStartOffset(sw.target(k));
             if (bb == null || bb.instructions().isEmpty()) continue;
             Insn last = bb.instructions().getLast();
-            if (last instanceof JumpInsn j && j.opcode() == Opcode.GOTO) {
+            if (last instanceof JumpInsn j && j.opcode().isUnconditionalJump()) {
                 if (common == null) {
                     common = j.targetOffset();
                 } else if (!common.equals(j.targetOffset())) {
@@ -605,7 +642,8 @@ public final class MethodDecompiler {
         return null;
     }
 
-    private LoopStmt tryBuildWhileLoop(ControlFlowGraph cfg, LocalNameProvider localNames, ConstantPool cp) {
+    private LoopStmt tryBuildWhileLoop(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
         // Очень ограниченный шаблон:
         // condBlock: ... if_<cmp> targetExit/body
         // body: одна или несколько линейно связанных вершин, последняя из которых
@@ -623,6 +661,11 @@ public final class MethodDecompiler {
             if (condBlock.successors().size() != 2) {
                 continue;
             }
+            // Тело должно замкнуться обратно на condBlock, значит он лежит в цикле;
+            // остальные ветвления отсекаем без обхода
+            if (cfg.loops().loopOf(condBlock) == null) {
+                continue;
+            }
 
             BasicBlock s0 = condBlock.successors().get(0);
             BasicBlock s1 = condBlock.successors().get(1);
@@ -635,7 +678,7 @@ public final class MethodDecompiler {
             BasicBlock exitBlock = null;
 
             // Кандидат 1: s0 как начало тела
-            List<BasicBlock> candidate0 = collectLoopBody(condBlock, s0, s1);
+            List<BasicBlock> candidate0 = collectLoopBody(cfg, condBlock, s0, s1);
             if (candidate0 != null) {
                 bodyBlocks = candidate0;
                 bodyEntry = s0;
@@ -643,7 +686,7 @@ public final class MethodDecompiler {
             }
 
             // Кандидат 2: s1 как начало тела
-            List<BasicBlock> candidate1 = collectLoopBody(condBlock, s1, s0);
+            List<BasicBlock> candidate1 = collectLoopBody(cfg, condBlock, s1, s0);
             if (candidate1 != null) {
                 // Если уже нашли тело через s0, и через s1 тоже нашли -
                 // это уже странный граф, пока не поддерживаем
@@ -664,8 +707,7 @@ public final class MethodDecompiler {
             }
 
             // теперь строим условие цикла
-            ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options);
-            var stackBefore = exprBuilder.simulateStackBeforeBranch(insns);
+            var stackBefore = ctx.stackBeforeBranch(condBlock);
 
             boolean bodyIsTarget = (j.targetOffset() == bodyEntry.startOffset());
             Expr condition = buildLoopConditionExpr(j, stackBefore, bodyIsTarget);
@@ -674,7 +716,7 @@ public final class MethodDecompiler {
             }
 
             // Пытаемся построить структурированное тело цикла
-            BlockStmt bodyAst = buildStructuredLoopBody(bodyBlocks, localNames, cp);
+            BlockStmt bodyAst = buildStructuredLoopBody(ctx, bodyBlocks);
             if (bodyAst == null) {
                 // тело содержит более сложный control flow, чем мы умеем - не распознаем цикл
                 continue;
@@ -686,18 +728,14 @@ public final class MethodDecompiler {
         return null;
     }
 
-    private MethodAst tryBuildSimpleIfAtEntry(ControlFlowGraph cfg, LocalNameProvider localNames,
-                                              ConstantPool cp, DecompilerOptions options,
-                                              BootstrapMethodsAttribute boostrap, String name, String desc) {
+    private MethodAst tryBuildSimpleIfAtEntry(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
         List<BasicBlock> blocks = cfg.blocks();
         if (blocks.isEmpty()) return null;
 
         BasicBlock entry = cfg.entryBlock();
         if (entry == null) return null;
 
-        int entryIndex = blocks.indexOf(entry);
-        if (entryIndex < 0) return null;
-
         var entryInsns = entry.instructions();
         if (entryInsns.isEmpty()) return null;
 
@@ -735,9 +773,7 @@ public final class MethodDecompiler {
 
         // Требуем простой линейной формы:
         // entry -> thenBlock -> joinBlock, без дополнительных веток.
-        int thenIndex = blocks.indexOf(thenBlock);
-        int joinIndex = blocks.indexOf(joinBlock);
-        if (thenIndex < 0 || joinIndex < 0) return null;
+        int joinIndex = joinBlock.id();
 
         // thenBlock и joinBlock не должны иметь своих jumps (только fallthrough или return)
         if (containsJump(thenBlock)) {
@@ -749,27 +785,28 @@ public final class MethodDecompiler {
             return null;
         }
 
-        ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, boostrap);
         BlockStmt body = new BlockStmt();
 
         // 1. Префикс entry-блока до JumpInsn -> обычный линейный код
         if (entryInsns.size() > 1) {
             List<Insn> prefixInsns = entryInsns.subList(0, entryInsns.size() - 1);
             if (!prefixInsns.isEmpty()) {
-                BlockStmt prefixAst = exprBuilder.buildBlock(prefixInsns);
+                BlockStmt prefixAst = safeBuildBlock(ctx, prefixInsns);
+                if (prefixAst == null) return null;
                 prefixAst.statements().forEach(body::add);
             }
         }
 
         // 2. Условие: ветка перехода ведет в thenBlock
-        Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(entryInsns);
+        Deque<Expr> stackBefore = ctx.stackBeforeBranch(entry);
         Expr condExpr = buildConditionExpr(j, stackBefore);
         if (condExpr == null) {
             return null;
         }
 
         // 3. Тело then-блока
-        BlockStmt thenAst = exprBuilder.buildBlock(thenBlock.instructions());
+        BlockStmt thenAst = safeBuildBlock(ctx, thenBlock.instructions());
+        if (thenAst == null) return null;
         IfStmt ifStmt = new IfStmt(condExpr, thenAst, null);
         body.add(ifStmt);
 
@@ -780,26 +817,24 @@ public final class MethodDecompiler {
                 // дальше начинается сложный control flow - лучше отступить
                 return null;
             }
-            BlockStmt tailAst = exprBuilder.buildBlock(bb.instructions());
+            BlockStmt tailAst = safeBuildBlock(ctx, bb.instructions());
+            if (tailAst == null) return null;
             tailAst.statements().forEach(body::add);
         }
 
-        return new MethodAst(name, desc, body);
+        return new MethodAst(ctx.name(), ctx.descriptor(), body);
     }
 
-    private MethodAst tryBuildGuardReturnAtEntry(ControlFlowGraph cfg, LocalNameProvider localNames,
-                                                 ConstantPool cp, DecompilerOptions options,
-                                                 BootstrapMethodsAttribute bootstrap, String name, String desc) {
+    private MethodAst tryBuildGuardReturnAtEntry(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
         List<BasicBlock> blocks = cfg.blocks();
         if (blocks.isEmpty()) return null;
 
         BasicBlock entry = cfg.entryBlock();
         if (entry == null) return null;
 
-        int entryIndex = blocks.indexOf(entry);
-        if (entryIndex < 0) return null;
+        int entryIndex = entry.id();
 
-        ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, bootstrap);
         BlockStmt body = new BlockStmt();
 
         int i = entryIndex;
@@ -858,21 +893,23 @@ public final class MethodDecompiler {
             if (insns.size() > 1) {
                 List<Insn> prefixInsns = insns.subList(0, insns.size() - 1);
                 if (!prefixInsns.isEmpty()) {
-                    BlockStmt prefixAst = exprBuilder.buildBlock(prefixInsns);
+                    BlockStmt prefixAst = safeBuildBlock(ctx, prefixInsns);
+                    if (prefixAst == null) return null;
                     prefixAst.statements().forEach(body::add);
                 }
             }
 
             // 2. Условие: нужно получить его так, чтобы оно соответствовало ветке,
             //    которая ведет в guardBlock.
-            Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(insns);
+            Deque<Expr> stackBefore = ctx.stackBeforeBranch(bb);
             Expr condExpr = buildConditionExpr(j, stackBefore);
             if (condExpr == null) {
                 break;
             }
 
             // 3. AST guard-блока: собираем его как обычный block и забираем ReturnStmt
-            BlockStmt retAst = exprBuilder.buildBlock(retBlock.instructions());
+            BlockStmt retAst = safeBuildBlock(ctx, retBlock.instructions());
+            if (retAst == null) return null;
             ReturnStmt retStmt = extractLastReturn(retAst);
             if (retStmt == null) {
                 return null;
@@ -902,25 +939,22 @@ public final class MethodDecompiler {
                 // дальше начинается сложный control flow - лучше честно откатиться
                 return null;
             }
-            BlockStmt tailAst = exprBuilder.buildBlock(bb.instructions());
+            BlockStmt tailAst = safeBuildBlock(ctx, bb.instructions());
+            if (tailAst == null) return null;
             tailAst.statements().forEach(body::add);
         }
 
-        return new MethodAst(name, desc, body);
+        return new MethodAst(ctx.name(), ctx.descriptor(), body);
     }
 
-    private MethodAst tryBuildIfWithJoinAtEntry(ControlFlowGraph cfg, LocalNameProvider localNames,
-                                                ConstantPool cp, DecompilerOptions options,
-                                                BootstrapMethodsAttribute bootstrap, String name, String desc) {
+    private MethodAst tryBuildIfWithJoinAtEntry(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
         List<BasicBlock> blocks = cfg.blocks();
         if (blocks.isEmpty()) return null;
 
         BasicBlock entry = cfg.entryBlock();
         if (entry == null) return null;
 
-        int entryIndex = blocks.indexOf(entry);
-        if (entryIndex < 0) return null;
-
         var entryInsns = entry.instructions();
         if (entryInsns.isEmpty()) return null;
 
@@ -970,48 +1004,41 @@ public final class MethodDecompiler {
         BasicBlock joinBlock = joinFromThen;
 
         // Проверим, что joinBlock действительно "соединяет" только эти две ветки
-        int preds = 0;
-        for (BasicBlock bb : blocks) {
-            if (bb.successors().contains(joinBlock)) {
-                preds++;
-            }
-        }
-        if (preds != 2) {
+        if (ctx.predecessors(joinBlock).size() != 2) {
             // joinBlock используется еще кем-то - лучше не лезть
             return null;
         }
 
-        ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, bootstrap);
         BlockStmt body = new BlockStmt();
 
         // 1. Префикс entry-блока до JumpInsn - просто линейный код
         if (entryInsns.size() > 1) {
             List<Insn> prefixInsns = entryInsns.subList(0, entryInsns.size() - 1);
             if (!prefixInsns.isEmpty()) {
-                BlockStmt prefixAst = exprBuilder.buildBlock(prefixInsns);
+                BlockStmt prefixAst = safeBuildBlock(ctx, prefixInsns);
+                if (prefixAst == null) return null;
                 prefixAst.statements().forEach(body::add);
             }
         }
 
         // 2. Условие: строим его так, чтобы THEN соответствовал fallthrough
-        Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(entryInsns);
+        Deque<Expr> stackBefore = ctx.stackBeforeBranch(entry);
         Expr condExpr = buildIfConditionForFallthrough(j, stackBefore);
         if (condExpr == null) {
             return null;
         }
 
         // 3. then/else тела
-        BlockStmt thenAst = exprBuilder.buildBlock(thenBlock.instructions());
-        BlockStmt elseAst = exprBuilder.buildBlock(elseBlock.instructions());
+        BlockStmt thenAst = safeBuildBlock(ctx, thenBlock.instructions());
+        if (thenAst == null) return null;
+        BlockStmt elseAst = safeBuildBlock(ctx, elseBlock.instructions());
+        if (elseAst == null) return null;
 
         IfStmt ifStmt = new IfStmt(condExpr, thenAst, elseAst);
         body.add(ifStmt);
 
         // 4. Хвост: joinBlock и все последующие блоки, пока они линейные (без jump)
-        int joinIndex = blocks.indexOf(joinBlock);
-        if (joinIndex < 0) {
-            return null;
-        }
+        int joinIndex = joinBlock.id();
 
         for (int k = joinIndex; k < blocks.size(); k++) {
             BasicBlock bb = blocks.get(k);
@@ -1019,18 +1046,19 @@ public final class MethodDecompiler {
                 // как только встретили новый переход - лучше отдать метод в общий fallback
                 return null;
             }
-            BlockStmt tailAst = exprBuilder.buildBlock(bb.instructions());
+            BlockStmt tailAst = safeBuildBlock(ctx, bb.instructions());
+            if (tailAst == null) return null;
             tailAst.statements().forEach(body::add);
         }
 
-        return new MethodAst(name, desc, body);
+        return new MethodAst(ctx.name(), ctx.descriptor(), body);
     }
 
     private boolean endsWithGotoTo(BasicBlock bb, int targetOffset) {
         var insns = bb.instructions();
         if (insns.isEmpty()) return false;
         Insn last = insns.getLast();
-        if (last instanceof JumpInsn j && j.opcode() == Opcode.GOTO) {
+        if (last instanceof JumpInsn j && j.opcode().isUnconditionalJump()) {
             return j.targetOffset() == targetOffset;
         }
         return false;
@@ -1039,22 +1067,11 @@ public final class MethodDecompiler {
     private boolean endsWithReturn(BasicBlock bb) {
         var insns = bb.instructions();
         if (insns.isEmpty()) return false;
-        Insn last = insns.getLast();
-        if (last instanceof SimpleInsn s) {
-            return switch (s.opcode()) {
-                case IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN -> true;
-                default -> false;
-            };
-        }
-        return false;
+        return isReturnInsn(insns.getLast());
     }
 
     private boolean isReturnInsn(Insn insn) {
-        if (!(insn instanceof SimpleInsn s)) return false;
-        return switch (s.opcode()) {
-            case RETURN, IRETURN, LRETURN, FRETURN, DRETURN, ARETURN -> true;
-            default -> false;
-        };
+        return insn instanceof SimpleInsn s && s.opcode().isReturn();
     }
 
     private Stmt tryCombineIfReturnAndNextReturn(IfStmt ifs, Stmt next) {
@@ -1139,19 +1156,14 @@ public final class MethodDecompiler {
         чего не умеем. В этом случае возвращаем null и даем шанс
         другим паттернам / линейному fallback'у.
      */
-    private MethodAst tryStructurizeAcyclicCfg(ControlFlowGraph cfg,
-                                               LocalNameProvider localNames,
-                                               ConstantPool cp,
-                                               DecompilerOptions options,
-                                               BootstrapMethodsAttribute bootstrap,
-                                               String name, String desc) {
-        ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, bootstrap);
+    private MethodAst tryStructurizeAcyclicCfg(MethodContext ctx) {
+        ControlFlowGraph cfg = ctx.cfg();
 
         BasicBlock entry = cfg.entryBlock();
         if (entry == null) return null;
 
         Set<BasicBlock> visited = new HashSet<>();
-        BlockStmt body = buildStructuredRegion(entry, visited, Collections.emptySet(), exprBuilder, cfg.blocks());
+        BlockStmt body = buildStructuredRegion(ctx, entry, visited, Collections.emptySet());
 
         if (body == null) {
             return null;
@@ -1160,23 +1172,16 @@ public final class MethodDecompiler {
         // Проверим, что мы ничего существенного не пропустили:
         // все достижимые от entry блоки либо посещены, либо
         // невозможно до них добраться без back-edge'ов (которых нет).
-        // Для простоты пока требуем: посещены все блоки CFG.
-        if (visited.size() != cfg.blocks().size()) {
+        // Недостижимый мертвый код не в счет.
+        if (visited.size() != cfg.reversePostorder().size()) {
             return null;
         }
 
-        return new MethodAst(name, desc, body);
+        return new MethodAst(ctx.name(), ctx.descriptor(), body);
     }
 
-    private MethodAst tryBuildSingleTryCatch(MethodInfo method,
-                                             ClassFile cf,
-                                             CodeAttribute codeAttr,
-                                             List<Insn> insns,
-                                             LocalNameProvider localNames,
-                                             ConstantPool cp,
-                                             BootstrapMethodsAttribute boostrap,
-                                             String name, String desc) {
-        var exTable = codeAttr.exceptionTable();
+    private MethodAst tryBuildSingleTryCatch(MethodContext ctx) {
+        var exTable = ctx.codeAttribute().exceptionTable();
         if (exTable == null || exTable.size() != 1) {
             return null;
         }
@@ -1197,69 +1202,61 @@ public final class MethodDecompiler {
             return null;
         }
 
-        // Разбиваем общий список insns на 4 части:
-        // до true, сам try, catch, после catch.
-        List<Insn> preInsns = new ArrayList<>();
-        List<Insn> tryInsns = new ArrayList<>();
-        List<Insn> catchInsns = new ArrayList<>();
-        List<Insn> postInsns = new ArrayList<>();
+        // startPc и handlerPc - границы инструкций, их номера берем из таблицы
+        List<Insn> insns = ctx.insns();
+        int[] pcToIndex = ctx.pcToIndex();
+        if (handler >= pcToIndex.length) {
+            return null;
+        }
+        int startIdx = pcToIndex[start];
+        int handlerIdx = pcToIndex[handler];
+        if (startIdx < 0 || handlerIdx < 0) {
+            return null;
+        }
 
-        boolean inCatch = false;
-        boolean inPost = false;
+        // Разбиваем общий список insns на 4 части:
+        // до true, сам try, catch (до первого return включительно), после catch.
+        int catchEndIdx = handlerIdx;
+        while (catchEndIdx < insns.size() && !isReturnInsn(insns.get(catchEndIdx))) {
+            catchEndIdx++;
+        }
+        catchEndIdx = Math.min(catchEndIdx + 1, insns.size());
 
-        for (Insn insn : insns) {
-            int off = insn.offset();
-
-            if (!inCatch && !inPost) {
-                if (off < start) {
-                    preInsns.add(insn);
-                } else if (off < handler) {
-                    // все от startPc до handlerPc - тело try
-                    tryInsns.add(insn);
-                } else {
-                    // первая инструкция catch-блока
-                    inCatch = true;
-                    catchInsns.add(insn);
-                    if (isReturnInsn(insn)) {
-                        // catch закончен сразу же (одна инструкция-возврат)
-                        inCatch = false;
-                        inPost = true;
-                    }
-                }
-            } else if (inCatch) {
-                catchInsns.add(insn);
-                if (isReturnInsn(insn)) {
-                    inCatch = false;
-                    inPost = true;
-                }
-            } else {
-                // inPost == true
-                postInsns.add(insn);
+        List<Insn> preInsns = insns.subList(0, startIdx);
+        List<Insn> tryInsns = insns.subList(startIdx, handlerIdx);
+        List<Insn> catchInsns = insns.subList(handlerIdx, catchEndIdx);
+        // исключение со стека забирает сам catch
+        String exceptionVarName = "e";
+        if (!catchInsns.isEmpty() && EntryStacks.isExceptionStore(catchInsns.getFirst())) {
+            BasicBlock handlerBlock = ctx.cfg().blockAt(handler);
+            if (handlerBlock != null) {
+                exceptionVarName = EntryStacks.exceptionVarName(handlerBlock, ctx.localNames());
             }
+            catchInsns = catchInsns.subList(1, catchInsns.size());
         }
+        List<Insn> postInsns = insns.subList(catchEndIdx, insns.size());
 
         if (tryInsns.isEmpty() || catchInsns.isEmpty()) {
             // слишком странный метод - ничего не делаем
             return null;
         }
 
-        ExpressionBuilder builder = new ExpressionBuilder(localNames, cp, options, boostrap);
-
-        BlockStmt preAst = preInsns.isEmpty() ? new BlockStmt() : builder.buildBlock(preInsns);
-        BlockStmt tryAst = builder.buildBlock(tryInsns);
-        BlockStmt catchAst = builder.buildBlock(catchInsns);
-        BlockStmt postAst = postInsns.isEmpty() ? new BlockStmt() : builder.buildBlock(postInsns);
+        BlockStmt preAst = preInsns.isEmpty() ? new BlockStmt() : safeBuildBlock(ctx, preInsns);
+        BlockStmt tryAst = safeBuildBlock(ctx, tryInsns);
+        BlockStmt catchAst = catchInsns.isEmpty() ? new BlockStmt() : safeBuildBlock(ctx, catchInsns);
+        BlockStmt postAst = postInsns.isEmpty() ? new BlockStmt() : safeBuildBlock(ctx, postInsns);
+        if (preAst == null || tryAst == null || catchAst == null || postAst == null) {
+            return null;
+        }
 
         // Для локальных try/catch не выдираем общий эпилог из catch -
         // пусть return остается внутри catch.
         BlockStmt catchBody = catchAst;
 
         // Тип исключения берем constant pool
-        String exceptionInternalName = cp.getClassName(e.catchTypeIndex());
+        String exceptionInternalName = ctx.cp().getClassName(e.catchTypeIndex());
         String exceptionType = exceptionInternalName.replace('/', '.');
 
-        // Иия переменной для catch - просто "e" (KISS)
-        String exceptionVarName = "e";
 
         BlockStmt body = new BlockStmt();
 
@@ -1276,7 +1273,7 @@ public final class MethodDecompiler {
             body.add(s);
         }
 
-        return new MethodAst(name, desc, body);
+        return new MethodAst(ctx.name(), ctx.descriptor(), body);
     }
 
     /*
@@ -1286,13 +1283,12 @@ public final class MethodDecompiler {
         - уже посещенного блока;
         - конца CFG.
 
-        blocks - полный список блоков CFG (нужен для некоторых проверок).
+        ctx - контекст метода (CFG, предшественники, общий ExpressionBuilder).
      */
-    private BlockStmt buildStructuredRegion(BasicBlock start,
+    private BlockStmt buildStructuredRegion(MethodContext ctx,
+                                            BasicBlock start,
                                             Set<BasicBlock> visited,
-                                            Set<BasicBlock> stopSet,
-                                            ExpressionBuilder exprBuilder,
-                                            List<BasicBlock> blocks) {
+                                            Set<BasicBlock> stopSet) {
         BlockStmt result = new BlockStmt();
         BasicBlock cur = start;
 
@@ -1313,7 +1309,7 @@ public final class MethodDecompiler {
                 if (insns.size() > 1) {
                     List<Insn> prefixInsns = insns.subList(0, insns.size() - 1);
                     if (!prefixInsns.isEmpty()) {
-                        BlockStmt prefixAst = safeBuildBlock(exprBuilder, prefixInsns);
+                        BlockStmt prefixAst = safeBuildBlock(ctx, prefixInsns);
                         if (prefixAst == null) return null;
                         prefixAst.statements().forEach(result::add);
                     }
@@ -1341,18 +1337,18 @@ public final class MethodDecompiler {
                 }
 
                 // Попробуем сначала if-else с join-блоком
-                BasicBlock join = findJoinForDiamond(fallthrough, jumpSucc, blocks);
+                BasicBlock join = findJoinForDiamond(ctx, fallthrough, jumpSucc);
                 if (join != null) {
                     // Условие строим так, чтобы THEN = fallthrough
-                    Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(insns);
+                    Deque<Expr> stackBefore = ctx.stackBeforeBranch(cur);
                     Expr cond = buildIfConditionForFallthrough(j, stackBefore);
                     if (cond == null) return null;
 
                     // Рекурсивно структурируем then/else до join
-                    BlockStmt thenAst = buildStructuredRegion(fallthrough, visited, Set.of(join), exprBuilder, blocks);
+                    BlockStmt thenAst = buildStructuredRegion(ctx, fallthrough, visited, Set.of(join));
                     if (thenAst == null) return null;
 
-                    BlockStmt elseAst = buildStructuredRegion(jumpSucc, visited, Set.of(join), exprBuilder, blocks);
+                    BlockStmt elseAst = buildStructuredRegion(ctx, jumpSucc, visited, Set.of(join));
                     if (elseAst == null) return null;
 
                     result.add(new IfStmt(cond, thenAst, elseAst));
@@ -1382,12 +1378,12 @@ public final class MethodDecompiler {
                 }
 
                 // Условие для ветки перехода
-                Deque<Expr> stackBefore = exprBuilder.simulateStackBeforeBranch(insns);
+                Deque<Expr> stackBefore = ctx.stackBeforeBranch(cur);
                 Expr cond = buildConditionExpr(j, stackBefore);
                 if (cond == null) return null;
 
                 // THEN - рекурсивный регион до contBlock
-                BlockStmt thenAst = buildStructuredRegion(thenBlock, visited, Set.of(contBlock), exprBuilder, blocks);
+                BlockStmt thenAst = buildStructuredRegion(ctx, thenBlock, visited, Set.of(contBlock));
                 if (thenAst == null) return null;
 
                 result.add(new IfStmt(cond, thenAst, null));
@@ -1398,14 +1394,14 @@ public final class MethodDecompiler {
             }
 
             // --- Безусловный goto внутри ациклического структуризатора ---
-            if (last instanceof JumpInsn uj && uj.opcode() == Opcode.GOTO) {
+            if (last instanceof JumpInsn uj && uj.opcode().isUnconditionalJump()) {
                 // Прямо переходим в successor, но только если он единственный
                 if (cur.successors().size() != 1) {
                     return null;
                 }
 
                 // Весь блок - линейный код, включая goto (ExpressionBuilder его игнорит)
-                BlockStmt blockAst = safeBuildBlock(exprBuilder, insns);
+                BlockStmt blockAst = safeBuildBlock(ctx, insns);
                 if (blockAst == null) return null;
                 blockAst.statements().forEach(result::add);
 
@@ -1422,7 +1418,7 @@ public final class MethodDecompiler {
                             s.opcode() == Opcode.DRETURN ||
                             s.opcode() == Opcode.ARETURN)) {
 
-                BlockStmt blockAst = safeBuildBlock(exprBuilder, insns);
+                BlockStmt blockAst = safeBuildBlock(ctx, insns);
                 if (blockAst == null) {
                     // Значит, блок нельзя честно интерпретировать (подвешенный стек и пр.) -
                     // признаем, что наш структуризатор "не тянет" этот метод.
@@ -1434,7 +1430,7 @@ public final class MethodDecompiler {
             }
 
             // --- Обычный линейный блок ---
-            BlockStmt blockAst = safeBuildBlock(exprBuilder, insns);
+            BlockStmt blockAst = safeBuildBlock(ctx, insns);
             if (blockAst == null) return null;
             blockAst.statements().forEach(result::add);
 
@@ -1453,15 +1449,24 @@ public final class MethodDecompiler {
     }
 
     private Expr buildIfConditionForFallthrough(JumpInsn j, Deque<Expr> stackBefore) {
+        if (!hasBranchOperands(j, stackBefore)) return null;
         ConditionBuilder conditionBuilder = new ConditionBuilder();
         return conditionBuilder.buildForFallthrough(j, stackBefore);
     }
 
+    /**
+     * Операнды условия дошли до перехода; иначе паттерн не наш, а не ошибка метода.
+     */
+    private static boolean hasBranchOperands(JumpInsn j, Deque<Expr> stackBefore) {
+        return stackBefore != null && stackBefore.size() >= EntryStacks.branchPops(j.opcode());
+    }
+
     private Expr buildLoopConditionExpr(JumpInsn j, Deque<Expr> stackBefore, boolean bodyIsTarget) {
         // bodyIsTarget == true -> условие цикла = condForJump
         // bodyIsTarget == false -> условие цикла = !condForJump
         // (для нескольких часто встречающихся сравнений делаем руками)
 
+        if (!hasBranchOperands(j, stackBefore)) return null;
         Opcode op = j.opcode();
         Deque<Expr> stack = new ArrayDeque<>(stackBefore);
 
@@ -1524,9 +1529,7 @@ public final class MethodDecompiler {
 
         Если control flow сложнее - возвращаем null.
      */
-    private BlockStmt buildStructuredLoopBody(List<BasicBlock> bodyBlocks,
-                                              LocalNameProvider localNames,
-                                              ConstantPool cp) {
+    private BlockStmt buildStructuredLoopBody(MethodContext ctx, List<BasicBlock> bodyBlocks) {
         // Собираем инструкции тела
         List<Insn> bodyInsns = new ArrayList<>();
         for (BasicBlock bb : bodyBlocks) {
@@ -1545,19 +1548,19 @@ public final class MethodDecompiler {
             Insn in = bodyInsns.get(i);
             if (in instanceof JumpInsn j) {
                 jumpCount++;
-                if (i == lastIndex && j.opcode() == Opcode.GOTO) {
+                if (i == lastIndex && j.opcode().isUnconditionalJump()) {
                     onlyFinalGoto = true;
                 }
             }
         }
 
-        ExpressionBuilder exprBuilder = new ExpressionBuilder(localNames, cp, options, null);
+        ExpressionBuilder exprBuilder = ctx.exprBuilder();
 
         // 1. Нет прыжков вообще -> честный линейный код
         // 2. Ровно один прыжок и это GOTO в конце -> тоже честный линейный код:
         //    ExpressionBuilder все равно проигнорирует сам GOTO.
         if (jumpCount == 0 || (jumpCount == 1 && onlyFinalGoto)) {
-            return safeBuildBlock(exprBuilder, bodyInsns);
+            return safeBuildBlock(ctx, bodyInsns);
         }
 
         // Есть какой-то control flow - строим под-CFG
@@ -1606,7 +1609,7 @@ public final class MethodDecompiler {
         if (entryInsns.size() > 1) {
             List<Insn> prefixInsns = entryInsns.subList(0, entryInsns.size() - 1);
             if (!prefixInsns.isEmpty()) {
-                BlockStmt prefixAst = safeBuildBlock(exprBuilder, prefixInsns);
+                BlockStmt prefixAst = safeBuildBlock(ctx, prefixInsns);
                 if (prefixAst == null) return null;
                 prefixAst.statements().forEach(body::add);
             }
@@ -1622,11 +1625,7 @@ public final class MethodDecompiler {
             BasicBlock join = fallthrough.successors().getFirst();
 
             // Убедимся, что join не имеет других предков, кроме этих двух
-            int preds = 0;
-            for (BasicBlock bb : blocks) {
-                if (bb.successors().contains(join)) preds++;
-            }
-            if (preds != 2) {
+            if (subCfg.predecessorCount(join) != 2) {
                 return null;
             }
 
@@ -1635,22 +1634,21 @@ public final class MethodDecompiler {
             Expr cond = buildIfConditionForFallthrough(j, stackBefore);
             if (cond == null) return null;
 
-            BlockStmt thenAst = safeBuildBlock(exprBuilder, fallthrough.instructions());
-            BlockStmt elseAst = safeBuildBlock(exprBuilder, jumpSucc.instructions());
+            BlockStmt thenAst = safeBuildBlock(ctx, fallthrough.instructions());
+            BlockStmt elseAst = safeBuildBlock(ctx, jumpSucc.instructions());
             if (thenAst == null || elseAst == null) return null;
 
             body.add(new IfStmt(cond, thenAst, elseAst));
 
             // хвост с join и дальше - без новых прыжков
-            int joinIndex = blocks.indexOf(join);
-            if (joinIndex < 0) return null;
+            int joinIndex = join.id();
 
             for (int k = joinIndex; k < blocks.size(); k++) {
                 BasicBlock bb = blocks.get(k);
                 if (containsJump(bb)) {
                     return null;
                 }
-                BlockStmt tailAst = safeBuildBlock(exprBuilder, bb.instructions());
+                BlockStmt tailAst = safeBuildBlock(ctx, bb.instructions());
                 if (tailAst == null) return null;
 
                 tailAst.statements().forEach(body::add);
@@ -1687,18 +1685,20 @@ public final class MethodDecompiler {
         Expr cond = buildConditionExpr(j, stackBefore);
         if (cond == null) return null;
 
-        BlockStmt thenAst = exprBuilder.buildBlock(thenBlock.instructions());
+        BlockStmt thenAst = safeBuildBlock(ctx, thenBlock.instructions());
+
+        if (thenAst == null) return null;
         body.add(new IfStmt(cond, thenAst, null));
 
-        int joinIndex = blocks.indexOf(joinBlock);
-        if (joinIndex < 0) return null;
+        int joinIndex = joinBlock.id();
 
         for (int k = joinIndex; k < blocks.size(); k++) {
             BasicBlock bb = blocks.get(k);
             if (containsJump(bb)) {
                 return null;
             }
-            BlockStmt tailAst = exprBuilder.buildBlock(bb.instructions());
+            BlockStmt tailAst = safeBuildBlock(ctx, bb.instructions());
+            if (tailAst == null) return null;
             tailAst.statements().forEach(body::add);
         }
 
@@ -1764,7 +1764,39 @@ public final class MethodDecompiler {
                 BlockStmt catchT = tcs.catchBlock() != null
                         ? transformBlock(tcs.catchBlock(), returnsBoolean)
                         : null;
-                result.add(new TryCatchStmt(tryT, tcs.exceptionType(), tcs.exceptionVarName(), catchT));
+                BlockStmt finallyT = tcs.finallyBlock() != null
+                        ? transformBlock(tcs.finallyBlock(), returnsBoolean)
+                        : null;
+                List<CatchClause> moreT = new ArrayList<>();
+                for (CatchClause c : tcs.moreCatches()) {
+                    BlockStmt bodyT = transformBlock(new BlockStmt(c.body()), returnsBoolean);
+                    moreT.add(new CatchClause(c.exceptionType(), c.varName(), bodyT.statements(), c.filterExpr()));
+                }
+                result.add(new TryCatchStmt(tryT, tcs.exceptionType(), tcs.exceptionVarName(), catchT, finallyT, moreT));
+            } else if (s instanceof LabeledStmt ls) {
+                if (ls.body() instanceof BlockStmt b) {
+                    result.add(new LabeledStmt(ls.label(), transformBlock(b, returnsBoolean)));
+                } else if (ls.body() instanceof LoopStmt loop) {
+                    result.add(new LabeledStmt(ls.label(), transformLoop(loop, returnsBoolean)));
+                } else {
+                    result.add(s);
+                }
+            } else if (s instanceof SwitchStmt sw) {
+                // case-ы с общим телом - один и тот же BlockStmt, так и оставляем
+                Map<BlockStmt, BlockStmt> done = new IdentityHashMap<>();
+                Map<Integer, BlockStmt> casesT = new LinkedHashMap<>();
+                for (Map.Entry<Integer, BlockStmt> e : sw.cases().entrySet()) {
+                    casesT.put(e.getKey(), done.computeIfAbsent(e.getValue(), b -> transformBlock(b, returnsBoolean)));
+                }
+                BlockStmt defaultT = sw.defaultBlock() != null
+                        ? done.computeIfAbsent(sw.defaultBlock(), b -> transformBlock(b, returnsBoolean))
+                        : null;
+                result.add(new SwitchStmt(sw.selector(), casesT, defaultT));
+            } else if (s instanceof SynchronizedStmt sync) {
+                result.add(new SynchronizedStmt(sync.monitor(), transformBlock(sync.body(), returnsBoolean)));
+            } else if (s instanceof EnhancedForStmt ef) {
+                result.add(new EnhancedForStmt(ef.varType(), ef.varName(), ef.iterable(),
+                        transformBlock(ef.body(), returnsBoolean)));
             } else {
                 result.add(s);
             }
@@ -1804,8 +1836,7 @@ public final class MethodDecompiler {
     private boolean hasControlFlow(List<Insn> insns) {
         for (Insn i : insns) {
             if (i instanceof JumpInsn) return true;
-            if (i instanceof TableSwitchInsn) return true;
-            if (i instanceof LookupSwitchInsn) return true;
+            if (i instanceof SwitchInsn) return true;
         }
         return false;
     }
@@ -1828,10 +1859,7 @@ public final class MethodDecompiler {
 
     private boolean isCatchEnd(Insn insn) {
         if (insn instanceof SimpleInsn s) {
-            return switch (s.opcode()) {
-                case RETURN, IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, ATHROW -> true;
-                default -> false;
-            };
+            return s.opcode().isExit();
         }
         // Можно расширить: GOTO, выходящий за try/catch-область, но пока этого достаточно
         return false;
@@ -1850,11 +1878,15 @@ public final class MethodDecompiler {
 
         Если нет back-edge-а в condBlock, или есть странные ребра наружу, возвращаем null.
      */
-    private List<BasicBlock> collectLoopBody(BasicBlock condBlock,
+    private List<BasicBlock> collectLoopBody(ControlFlowGraph cfg,
+                                             BasicBlock condBlock,
                                              BasicBlock bodyEntry,
                                              BasicBlock exitBlock) {
-        // Хотим детерминированный порядок: LinkedHashSet + сортировка по offset
-        Set<BasicBlock> bodySet = new LinkedHashSet<>();
+        // Принадлежность телу - флаг по id блока; id идут в порядке адресов,
+        // так что обход флагов сразу дает детерминированный порядок по offset
+        List<BasicBlock> blocks = cfg.blocks();
+        boolean[] inBody = new boolean[blocks.size()];
+        int bodySize = 0;
         Deque<BasicBlock> work = new ArrayDeque<>();
         work.add(bodyEntry);
 
@@ -1862,10 +1894,12 @@ public final class MethodDecompiler {
 
         while (!work.isEmpty()) {
             BasicBlock bb = work.pop();
-            if (!bodySet.add(bb)) {
+            if (inBody[bb.id()]) {
                 // уже отработали
                 continue;
             }
+            inBody[bb.id()] = true;
+            bodySize++;
 
             for (BasicBlock succ : bb.successors()) {
                 if (succ == condBlock) {
@@ -1887,32 +1921,16 @@ public final class MethodDecompiler {
             return null;
         }
 
-        // Доп. проверка: нет ли ребер из тела в левом месте
-        for (BasicBlock bb : bodySet) {
-            for (BasicBlock succ : bb.successors()) {
-                if (succ != condBlock && succ != exitBlock && !bodySet.contains(succ)) {
-                    // кто-то внутри тела прыгает наружу в непонятный блок - лучше не связываться
-                    return null;
-                }
-            }
-        }
-
-        List<BasicBlock> body = new ArrayList<>(bodySet);
-        body.sort(Comparator.comparingInt(BasicBlock::startOffset));
-        return body;
-    }
+        // Ребер из тела "в левое место" быть не может: обход выше добавляет в тело
+        // каждый successor, кроме condBlock/exitBlock.
 
-    /*
-        Есть ли в CFG "обратные" ребра (succ.offset < bb.offset),
-        которые мы считаем кандидатом в цикл.
-     */
-    private boolean hasBackEdge(ControlFlowGraph cfg) {
-        for (BasicBlock bb : cfg.blocks()) {
-            for (BasicBlock succ : bb.successors()) {
-                if (succ.startOffset() < bb.startOffset()) return true;
+        List<BasicBlock> body = new ArrayList<>(bodySize);
+        for (int id = 0; id < inBody.length; id++) {
+            if (inBody[id]) {
+                body.add(blocks.get(id));
             }
         }
-        return false;
+        return body;
     }
 
     private BasicBlock nextLinearSuccessor(BasicBlock bb) {
@@ -1932,9 +1950,9 @@ public final class MethodDecompiler {
         Возвращаем join, если обе ветки fallthrough/jumpSucc имеют
         ровно одного successor'а и это один и тот же блок.
      */
-    private BasicBlock findJoinForDiamond(BasicBlock fallthrough,
-                                          BasicBlock jumpSucc,
-                                          List<BasicBlock> allBlocks) {
+    private BasicBlock findJoinForDiamond(MethodContext ctx,
+                                          BasicBlock fallthrough,
+                                          BasicBlock jumpSucc) {
         if (fallthrough.successors().size() != 1 || jumpSucc.successors().size() != 1) {
             return null;
         }
@@ -1948,27 +1966,25 @@ public final class MethodDecompiler {
 
         // Дополнительно убедимся, что join не используется кучей других предков,
         // чтобы не перехватить "общий" блок, в который сходятся еще какие-то ветки.
-        int preds = 0;
-        for (BasicBlock bb : allBlocks) {
-            if (bb.successors().contains(join)) {
-                preds++;
-            }
-        }
-
-        if (preds != 2) {
+        if (ctx.predecessors(join).size() != 2) {
             return null;
         }
 
         return join;
     }
 
-    private BlockStmt safeBuildBlock(ExpressionBuilder exprBuilder, List<Insn> insns) {
+    private BlockStmt safeBuildBlock(MethodContext ctx, List<Insn> insns) {
+        // Кусок снимает со стека то, что положили до него: построитель на нем
+        // упадет, так что отказываемся от паттерна без исключения.
+        if (ctx.needsIncomingStack(insns)) {
+            return null;
+        }
         try {
-            return exprBuilder.buildBlock(insns);
+            return ctx.exprBuilder().buildBlock(insns);
         } catch (NoSuchElementException e) {
-            // Значит, мы попытались интерпретировать блок
-            // с неподдерживаемым стеком на входе.
-            // Для структуризации считаем паттерн "не наш".
+            // Построитель не знает части инструкций и может не сойтись со
+            // стеком и там, где высоты в порядке. Для структуризации
+            // считаем паттерн "не наш".
             return null;
         }
     }
@@ -0,0 +1,1262 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.*;
+import net.letsdank.jd.ast.stmt.*;
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.*;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.ExceptionEdge;
+import net.letsdank.jd.cfg.dominance.DominatorTree;
+import net.letsdank.jd.cfg.loop.Loop;
+import net.letsdank.jd.cfg.loop.LoopForest;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Структурный анализ всего метода по дереву доминаторов
+ * (схема из "Beyond Relooper", Ramsey 2022).
+ * <p>
+ * Каждый достижимый блок получает одно место:
+ * <ul>
+ *     <li>продолжение своего единственного предшественника (печатается прямо в ветке);</li>
+ *     <li>"следующий" за конструкциями одного из доминаторов: merge-узел, выход из
+ *     цикла или из try. Такой блок печатается после помеченного блока
+ *     {@code label: {...}}, а переходы в него становятся {@code break label};</li>
+ *     <li>catch своей try-области.</li>
+ * </ul>
+ * Конструкции (цикл {@code while (true)}, try) ставятся на их входной блок,
+ * обратные ребра становятся {@code continue}. Вложение любой глубины
+ * получается само, вся разметка - один проход по дереву.
+ * <p>
+ * Кусок, который так не разложить (стек через границу блока, странный
+ * обработчик, переход мимо меток), линеаризуется локально с предупреждением,
+ * а не весь метод. Неприводимый граф не трогаем: {@link #structure()} вернет null.
+ * <p>
+ * Потом проходы по AST убирают лишние переходы и метки, вытаскивают
+ * условие цикла и собирают synchronized и for-each.
+ */
+final class RegionStructurer {
+    private static final String WARNING =
+            "/* WARNING: unstructured region; linearized bytecode only, semantics may be inaccurate */";
+    private static final Unstructurable FAIL = new Unstructurable();
+
+    private enum Place {ROOT, INLINE, FOLLOW, CATCH}
+
+    private final MethodContext ctx;
+    private final ControlFlowGraph cfg;
+    private final ConditionBuilder conditions = new ConditionBuilder();
+
+    private DominatorTree dom;
+    private LoopForest loops;
+    private EntryStacks stacks;
+    // только циклы с обычным обратным ребром: петля через обработчик исключения циклом не печатается
+    private boolean[] realLoop;
+    private final Map<Loop, BasicBlock> primaryExits = new HashMap<>();
+
+    private Place[] place;
+    private BasicBlock[] parent;
+    private List<List<BasicBlock>> placed;
+    private List<List<BasicBlock>> follows;
+    private TryRegion[] innerTry;
+    private List<List<TryRegion>> triesAt;
+    private final Map<BasicBlock, TryRegion> regionOfHandler = new HashMap<>();
+    private boolean[] bad;
+
+    // активные метки: break к следующему блоку, continue к заголовку
+    private String[] blockLabel;
+    private String[] loopLabel;
+    private final Deque<TryRegion> tryStack = new ArrayDeque<>();
+    private int labelCount;
+
+    RegionStructurer(MethodContext ctx) {
+        this.ctx = ctx;
+        this.cfg = ctx.regionCfg();
+    }
+
+    /**
+     * Тело метода или null, если граф неприводим или метод целиком не разложился.
+     */
+    BlockStmt structure() {
+        if (cfg.entryBlock() == null) return null;
+        if (!cfg.isReducible()) return null;
+        dom = cfg.dominators();
+        loops = cfg.loops();
+        stacks = ctx.regionEntryStacks();
+
+        int n = cfg.blocks().size();
+        blockLabel = new String[n];
+        loopLabel = new String[n];
+        try {
+            prepareLoops();
+            prepareTries();
+            placeBlocks();
+            // корень без локального отката: пусть лучше отработают старые стратегии
+            Emitted root = emitNode(cfg.entryBlock());
+            List<Stmt> code = new ArrayList<>(root.code());
+            if (root.next() != null) code.addAll(emitTree(root.next()));
+            return cleanUp(new BlockStmt(code));
+        } catch (Unstructurable e) {
+            return null;
+        }
+    }
+
+    // --- разметка ---
+
+    private void prepareLoops() {
+        realLoop = new boolean[loops.loops().size()];
+        for (Loop loop : loops.loops()) {
+            BasicBlock header = loop.header();
+            for (BasicBlock p : cfg.predecessors(header)) {
+                if (dom.dominates(header, p)) {
+                    realLoop[loop.index()] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Try-области: записи exception_table группируются по обработчику,
+     * область - покрытые блоки без тех, что под самим обработчиком
+     * (javac покрывает и кусок обработчика synchronized/finally).
+     * Обработчики с одинаковой областью - один try с несколькими catch.
+     */
+    private void prepareTries() {
+        int n = cfg.blocks().size();
+        innerTry = new TryRegion[n];
+        bad = new boolean[n];
+        triesAt = new ArrayList<>(Collections.nCopies(n, null));
+        List<CodeAttribute.ExceptionTableEntry> table = ctx.codeAttribute().exceptionTable();
+        if (table == null || table.isEmpty()) return;
+
+        Map<BasicBlock, Catch> catches = new LinkedHashMap<>();
+        for (CodeAttribute.ExceptionTableEntry e : table) {
+            BasicBlock handler = cfg.jumpTarget(e.handlerPc());
+            if (handler == null || !dom.contains(handler)) continue;
+            Catch c = catches.computeIfAbsent(handler, Catch::new);
+            if (e.catchTypeIndex() == 0) {
+                c.catchAll = true;
+            } else {
+                c.types.add(ctx.cp().getClassName(e.catchTypeIndex()).replace('/', '.'));
+            }
+            // начало диапазона могло попасть в выброшенный недостижимый код
+            BasicBlock from = cfg.blockAt(e.startPc());
+            for (int id = from == null ? 0 : from.id(); id < n; id++) {
+                BasicBlock bb = cfg.blocks().get(id);
+                if (bb.startOffset() >= e.endPc()) break;
+                if (bb.startOffset() < e.startPc() || !dom.contains(bb) || dom.dominates(handler, bb)) continue;
+                c.covered.set(id);
+            }
+        }
+
+        Map<BitSet, TryRegion> byBody = new LinkedHashMap<>();
+        for (Catch c : catches.values()) {
+            TryRegion r = byBody.computeIfAbsent(c.covered, TryRegion::new);
+            r.catches.add(c);
+            regionOfHandler.put(c.handler, r);
+        }
+        List<TryRegion> regions = new ArrayList<>(byBody.values());
+        for (TryRegion r : regions) {
+            r.valid = isValidRegion(r);
+        }
+
+        // области должны вкладываться друг в друга или не пересекаться
+        regions.sort(Comparator.comparingInt((TryRegion r) -> r.body.cardinality()).reversed());
+        for (int i = 0; i < regions.size(); i++) {
+            for (int j = i + 1; j < regions.size(); j++) {
+                TryRegion outer = regions.get(i);
+                TryRegion inner = regions.get(j);
+                if (!outer.body.intersects(inner.body)) continue;
+                BitSet rest = (BitSet) inner.body.clone();
+                rest.andNot(outer.body);
+                if (!rest.isEmpty()) {
+                    outer.valid = false;
+                    inner.valid = false;
+                }
+            }
+        }
+
+        // от внешних к внутренним: innerTry - самая внутренняя область блока
+        for (TryRegion r : regions) {
+            if (!r.valid) {
+                r.body.stream().forEach(id -> bad[id] = true);
+                continue;
+            }
+            r.parent = innerTry[r.entry.id()];
+            r.body.stream().forEach(id -> innerTry[id] = r);
+            List<TryRegion> at = triesAt.get(r.entry.id());
+            if (at == null) {
+                at = new ArrayList<>();
+                triesAt.set(r.entry.id(), at);
+            }
+            at.add(r);
+        }
+
+        // исключительное ребро, которое не выразится ни одним try
+        for (BasicBlock bb : cfg.blocks()) {
+            for (ExceptionEdge edge : bb.exceptionSuccessors()) {
+                TryRegion r = regionOfHandler.get(edge.handler());
+                if (r == null || !r.valid) {
+                    bad[bb.id()] = true;
+                } else if (!r.body.get(bb.id()) && !dom.dominates(edge.handler(), bb)) {
+                    bad[bb.id()] = true;
+                }
+            }
+        }
+    }
+
+    private boolean isValidRegion(TryRegion r) {
+        if (r.body.isEmpty()) return false;
+        BasicBlock entry = dom.immediateDominator(r.catches.getFirst().handler);
+        if (entry == null || !r.body.get(entry.id())) return false;
+        for (Catch c : r.catches) {
+            if (dom.immediateDominator(c.handler) != entry) return false;
+        }
+        for (int id = r.body.nextSetBit(0); id >= 0; id = r.body.nextSetBit(id + 1)) {
+            BasicBlock bb = cfg.blocks().get(id);
+            if (!dom.dominates(entry, bb)) return false;
+            if (bb == entry) continue;
+            // в середину try можно попасть только изнутри
+            for (BasicBlock p : cfg.allPredecessors(bb)) {
+                if (dom.contains(p) && !r.body.get(p.id())) return false;
+            }
+        }
+        r.entry = entry;
+        return true;
+    }
+
+    private void placeBlocks() {
+        int n = cfg.blocks().size();
+        place = new Place[n];
+        parent = new BasicBlock[n];
+        placed = new ArrayList<>(Collections.nCopies(n, null));
+        follows = new ArrayList<>(Collections.nCopies(n, null));
+        place[cfg.entryBlock().id()] = Place.ROOT;
+
+        // в RPO: следующие блоки одной конструкции сразу идут по возрастанию номера
+        for (BasicBlock c : cfg.reversePostorder()) {
+            if (c == cfg.entryBlock()) continue;
+            TryRegion region = regionOfHandler.get(c);
+            if (region != null && region.valid) {
+                attach(c, Place.CATCH, region.entry);
+                continue;
+            }
+
+            BasicBlock idom = dom.immediateDominator(c);
+            BasicBlock single = null;
+            int forward = 0;
+            for (BasicBlock p : cfg.predecessors(c)) {
+                if (!dom.contains(p) || dom.dominates(c, p)) continue;
+                forward++;
+                single = p;
+            }
+            boolean inline = forward == 1 && single == idom;
+            if (inline) {
+                Loop exited = outermostExitedLoop(idom, c);
+                if ((exited != null && !isTerminalExit(c, idom)) || outermostExitedTry(idom, c) != null) {
+                    inline = false;
+                }
+            }
+            if (inline) {
+                attach(c, Place.INLINE, idom);
+                continue;
+            }
+
+            // следующий блок ставится за пределами циклов и try, из которых он выходит
+            BasicBlock x = idom;
+            while (true) {
+                Loop loop = outermostExitedLoop(x, c);
+                TryRegion tr = outermostExitedTry(x, c);
+                if (loop != null && loop.header() != x) {
+                    x = loop.header();
+                } else if (tr != null && tr.entry != x) {
+                    x = tr.entry;
+                } else {
+                    break;
+                }
+            }
+            attach(c, Place.FOLLOW, x);
+            List<BasicBlock> list = follows.get(x.id());
+            if (list == null) {
+                list = new ArrayList<>();
+                follows.set(x.id(), list);
+            }
+            list.add(c);
+        }
+    }
+
+    private void attach(BasicBlock c, Place kind, BasicBlock to) {
+        place[c.id()] = kind;
+        parent[c.id()] = to;
+        List<BasicBlock> list = placed.get(to.id());
+        if (list == null) {
+            list = new ArrayList<>();
+            placed.set(to.id(), list);
+        }
+        list.add(c);
+    }
+
+    /**
+     * Самый внешний настоящий цикл, в котором лежит x, но не c.
+     */
+    private Loop outermostExitedLoop(BasicBlock x, BasicBlock c) {
+        Loop result = null;
+        for (Loop l = loops.loopOf(x); l != null && !loops.contains(l, c); l = l.parent()) {
+            if (realLoop[l.index()]) result = l;
+        }
+        return result;
+    }
+
+    private TryRegion outermostExitedTry(BasicBlock x, BasicBlock c) {
+        TryRegion result = null;
+        for (TryRegion t = innerTry[x.id()]; t != null && !t.body.get(c.id()); t = t.parent) {
+            result = t;
+        }
+        return result;
+    }
+
+    /**
+     * Короткий выход из цикла вроде {@code if (found) return x;} оставляем
+     * внутри цикла, если это не основной выход (условие заголовка).
+     */
+    private boolean isTerminalExit(BasicBlock c, BasicBlock from) {
+        if (!c.successors().isEmpty()) return false;
+        Loop exited = null;
+        for (Loop l = loops.loopOf(from); l != null && !loops.contains(l, c); l = l.parent()) {
+            if (realLoop[l.index()]) {
+                exited = l;
+                break;
+            }
+        }
+        return exited == null || primaryExit(exited) != c;
+    }
+
+    private BasicBlock primaryExit(Loop loop) {
+        return primaryExits.computeIfAbsent(loop, l -> {
+            for (BasicBlock s : l.header().successors()) {
+                if (!loops.contains(l, s)) return s;
+            }
+            BasicBlock best = null;
+            BitSet body = l.body();
+            for (int id = body.nextSetBit(0); id >= 0; id = body.nextSetBit(id + 1)) {
+                for (BasicBlock s : cfg.blocks().get(id).successors()) {
+                    if (loops.contains(l, s) || !dom.contains(s)) continue;
+                    if (best == null || cfg.rpoNumber(s) > cfg.rpoNumber(best)) best = s;
+                }
+            }
+            return best;
+        });
+    }
+
+    // --- печать дерева ---
+
+    /**
+     * Поддерево b. Последовательность блоков (внешний следующий блок
+     * каждого узла) идет циклом, так что стек растет только с вложенностью кода.
+     */
+    private List<Stmt> emitTree(BasicBlock b) {
+        List<Stmt> out = new ArrayList<>();
+        List<BasicBlock> chain = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        for (BasicBlock y = b; y != null; ) {
+            chain.add(y);
+            starts.add(out.size());
+            try {
+                Emitted e = emitNode(y);
+                out.addAll(e.code());
+                y = e.next();
+            } catch (Unstructurable e) {
+                return linearizeTail(out, chain, starts);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Откат с конца цепочки: linearize забирает все, что размещено под блоком,
+     * включая следующие. Если не выходит и он, пробуем блок раньше.
+     */
+    private List<Stmt> linearizeTail(List<Stmt> out, List<BasicBlock> chain, List<Integer> starts) {
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            List<Stmt> flat;
+            try {
+                flat = linearize(chain.get(i));
+            } catch (Unstructurable e) {
+                continue;
+            }
+            List<Stmt> result = new ArrayList<>(out.subList(0, starts.get(i)));
+            result.addAll(flat);
+            return result;
+        }
+        throw FAIL;
+    }
+
+    /**
+     * Узел x без внешнего следующего блока: его печатает вызывающий.
+     */
+    private Emitted emitNode(BasicBlock x) {
+        // конструкции снаружи внутрь: try с обработчиком вне цикла, цикл, try внутри цикла
+        List<Object> constructs = new ArrayList<>();
+        Loop loop = loops.loopWithHeader(x);
+        if (loop != null && !realLoop[loop.index()]) loop = null;
+        List<TryRegion> tries = triesAt.get(x.id());
+        List<TryRegion> inner = new ArrayList<>();
+        if (tries != null) {
+            for (TryRegion t : tries) {
+                if (loop != null && loops.contains(loop, t.catches.getFirst().handler)) {
+                    inner.add(t);
+                } else {
+                    constructs.add(t);
+                }
+            }
+        }
+        if (loop != null) constructs.add(loop);
+        constructs.addAll(inner);
+
+        List<BasicBlock> candidates = follows.get(x.id()) == null ? List.of() : follows.get(x.id());
+        int[] levels = new int[candidates.size()];
+        for (int i = 0; i < levels.length; i++) {
+            BasicBlock c = candidates.get(i);
+            int level = 0;
+            while (level < constructs.size() && encloses(constructs.get(level), c)) level++;
+            levels[i] = level;
+        }
+        List<BasicBlock> here = followsAt(candidates, levels, 0);
+        if (here.isEmpty()) return new Emitted(levelBody(x, constructs, 0, candidates, levels), null);
+        BasicBlock next = here.removeLast();
+        List<Stmt> code = labeled(next, () -> withFollows(here, here.size() - 1,
+                () -> levelBody(x, constructs, 0, candidates, levels)));
+        return new Emitted(code, next);
+    }
+
+    private boolean encloses(Object construct, BasicBlock c) {
+        if (construct instanceof Loop loop) return loops.contains(loop, c);
+        return ((TryRegion) construct).body.get(c.id());
+    }
+
+    private static List<BasicBlock> followsAt(List<BasicBlock> candidates, int[] levels, int level) {
+        List<BasicBlock> here = new ArrayList<>();
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] == level) here.add(candidates.get(i));
+        }
+        return here;
+    }
+
+    private List<Stmt> emitLevel(BasicBlock x, List<Object> constructs, int level,
+                                 List<BasicBlock> candidates, int[] levels) {
+        List<BasicBlock> here = followsAt(candidates, levels, level);
+        return withFollows(here, here.size() - 1, () -> levelBody(x, constructs, level, candidates, levels));
+    }
+
+    private List<Stmt> levelBody(BasicBlock x, List<Object> constructs, int level,
+                                 List<BasicBlock> candidates, int[] levels) {
+        return level == constructs.size()
+                ? ownCode(x)
+                : emitConstruct(x, constructs, level, candidates, levels);
+    }
+
+    /**
+     * {@code label_y: { inner } y...} для каждого следующего блока: у кого
+     * номер в RPO больше, тот снаружи.
+     */
+    private List<Stmt> withFollows(List<BasicBlock> here, int j, Supplier<List<Stmt>> inner) {
+        if (j < 0) return inner.get();
+        BasicBlock y = here.get(j);
+        List<Stmt> out = new ArrayList<>(labeled(y, () -> withFollows(here, j - 1, inner)));
+        out.addAll(emitTree(y));
+        return out;
+    }
+
+    /**
+     * {@code label_y: { inner }}: внутри inner переход к y - это break.
+     */
+    private List<Stmt> labeled(BasicBlock y, Supplier<List<Stmt>> inner) {
+        String label = newLabel();
+        List<Stmt> body;
+        blockLabel[y.id()] = label;
+        try {
+            body = inner.get();
+        } finally {
+            blockLabel[y.id()] = null;
+        }
+        return List.of(new LabeledStmt(label, new BlockStmt(body)));
+    }
+
+    private List<Stmt> emitConstruct(BasicBlock x, List<Object> constructs, int level,
+                                     List<BasicBlock> candidates, int[] levels) {
+        if (constructs.get(level) instanceof Loop) {
+            String label = newLabel();
+            List<Stmt> body;
+            loopLabel[x.id()] = label;
+            try {
+                body = emitLevel(x, constructs, level + 1, candidates, levels);
+            } finally {
+                loopLabel[x.id()] = null;
+            }
+            return List.of(new LabeledStmt(label, new LoopStmt(new VarExpr("true"), new BlockStmt(body))));
+        }
+
+        TryRegion region = (TryRegion) constructs.get(level);
+        List<Stmt> body;
+        tryStack.push(region);
+        try {
+            body = emitLevel(x, constructs, level + 1, candidates, levels);
+        } finally {
+            tryStack.pop();
+        }
+        List<CatchClause> clauses = new ArrayList<>();
+        for (Catch c : region.catches) {
+            String varName = exceptionVarName(c.handler);
+            clauses.add(new CatchClause(c.typeName(), varName, emitTree(c.handler), null));
+        }
+        CatchClause first = clauses.getFirst();
+        return List.of(new TryCatchStmt(new BlockStmt(body), first.exceptionType(), first.varName(),
+                new BlockStmt(first.body()), null, clauses.subList(1, clauses.size())));
+    }
+
+    private String exceptionVarName(BasicBlock handler) {
+        return EntryStacks.exceptionVarName(handler, ctx.localNames());
+    }
+
+    /**
+     * Собственный код блока и его завершающий переход.
+     */
+    private List<Stmt> ownCode(BasicBlock x) {
+        if (bad[x.id()] || !coverageMatches(x)) throw FAIL;
+        List<Insn> insns = x.instructions();
+        Deque<Expr> stack;
+        if (place[x.id()] == Place.CATCH) {
+            // исключение со стека забирает сам catch
+            if (insns.isEmpty() || !EntryStacks.isExceptionStore(insns.getFirst())) throw FAIL;
+            insns = insns.subList(1, insns.size());
+            stack = new ArrayDeque<>();
+        } else {
+            stack = insns.isEmpty() ? null : stacks.entry(x);
+            if (stack == null) throw FAIL;
+        }
+
+        Insn last = insns.isEmpty() ? null : insns.getLast();
+        Opcode op = last == null ? null : last.opcode();
+        List<Stmt> out;
+        if (last instanceof JumpInsn j) {
+            if (op == Opcode.JSR || op == Opcode.JSR_W) throw FAIL;
+            out = build(insns.subList(0, insns.size() - 1), stack);
+            BasicBlock target = cfg.jumpTarget(j.targetOffset());
+            if (target == null) throw FAIL;
+            if (op.isUnconditionalJump()) {
+                out.addAll(branch(x, target, stack));
+                return out;
+            }
+            // successors условного перехода: [target, fall], один, если они совпали
+            List<BasicBlock> succs = x.successors();
+            if (succs.isEmpty() || succs.getFirst() != target || succs.size() > 2) throw FAIL;
+            BasicBlock fall = succs.getLast();
+            Expr cond;
+            try {
+                cond = conditions.buildForFallthrough(j, stack);
+            } catch (RuntimeException e) {
+                throw FAIL;
+            }
+            if (cond == null) throw FAIL;
+            // построитель условий работает на копии стека
+            for (int k = EntryStacks.branchPops(op); k > 0; k--) stack.pop();
+            if (fall == target) {
+                out.add(new IfStmt(cond, new BlockStmt(), null));
+                out.addAll(branch(x, fall, stack));
+            } else {
+                BlockStmt thenBlock = new BlockStmt(branch(x, fall, stack));
+                BlockStmt elseBlock = new BlockStmt(branch(x, target, stack));
+                out.add(new IfStmt(cond, thenBlock, elseBlock));
+            }
+            return out;
+        }
+        if (last instanceof SwitchInsn sw) {
+            out = build(insns.subList(0, insns.size() - 1), stack);
+            if (stack.isEmpty()) throw FAIL;
+            Expr selector = stack.pop();
+            // case-ы с общим таргетом делят один BlockStmt: принтер печатает их подряд
+            Map<BasicBlock, BlockStmt> bodies = new HashMap<>();
+            Map<Integer, BlockStmt> cases = new LinkedHashMap<>();
+            for (int k = 0; k < sw.caseCount(); k++) {
+                cases.put(sw.key(k), caseBody(x, sw.target(k), stack, bodies));
+            }
+            BlockStmt defaultBlock = caseBody(x, sw.defaultTarget(), stack, bodies);
+            out.add(new SwitchStmt(selector, cases, defaultBlock));
+            return out;
+        }
+        if (op == Opcode.RET) throw FAIL;
+        out = build(insns, stack);
+        if (op != null && op.isExit()) return out;
+        if (!x.successors().isEmpty()) {
+            out.addAll(branch(x, x.successors().getFirst(), stack));
+        }
+        return out;
+    }
+
+    private BlockStmt caseBody(BasicBlock x, int targetPc, Deque<Expr> exit, Map<BasicBlock, BlockStmt> bodies) {
+        BasicBlock target = cfg.jumpTarget(targetPc);
+        if (target == null) throw FAIL;
+        BlockStmt body = bodies.get(target);
+        if (body == null) {
+            body = new BlockStmt(branch(x, target, exit));
+            bodies.put(target, body);
+        }
+        return body;
+    }
+
+    private List<Stmt> build(List<Insn> insns, Deque<Expr> stack) {
+        if (insns.isEmpty()) return new ArrayList<>();
+        try {
+            return new ArrayList<>(ctx.exprBuilder().buildBlock(insns, stack).statements());
+        } catch (RuntimeException e) {
+            throw FAIL;
+        }
+    }
+
+    /**
+     * Стек открытых try должен в точности совпадать с областями блока.
+     */
+    private boolean coverageMatches(BasicBlock x) {
+        Iterator<TryRegion> open = tryStack.iterator();
+        for (TryRegion t = innerTry[x.id()]; t != null; t = t.parent) {
+            if (!open.hasNext() || open.next() != t) return false;
+        }
+        return !open.hasNext();
+    }
+
+    /**
+     * Переход from -> to со стеком exit: сначала значения синтетическим
+     * переменным входа to, потом сам переход.
+     */
+    private List<Stmt> branch(BasicBlock from, BasicBlock to, Deque<Expr> exit) {
+        List<Stmt> moves = stacks.transfer(to, exit);
+        if (moves == null) throw FAIL;
+        if (moves.isEmpty()) return jump(from, to);
+        List<Stmt> out = new ArrayList<>(moves);
+        out.addAll(jump(from, to));
+        return out;
+    }
+
+    private List<Stmt> jump(BasicBlock from, BasicBlock to) {
+        int id = to.id();
+        if (loopLabel[id] != null && dom.dominates(to, from)) {
+            return List.of(new ContinueStmt(loopLabel[id]));
+        }
+        if (blockLabel[id] != null) {
+            return List.of(new BreakStmt(blockLabel[id]));
+        }
+        if (place[id] == Place.INLINE && parent[id] == from) {
+            return emitTree(to);
+        }
+        throw FAIL;
+    }
+
+    /**
+     * Локальный откат: все блоки, размещенные под b, подряд по адресам.
+     */
+    private List<Stmt> linearize(BasicBlock b) {
+        List<BasicBlock> region = new ArrayList<>();
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        work.push(b);
+        while (!work.isEmpty()) {
+            BasicBlock bb = work.pop();
+            region.add(bb);
+            List<BasicBlock> children = placed.get(bb.id());
+            if (children != null) children.forEach(work::push);
+        }
+        region.sort(Comparator.comparingInt(BasicBlock::id));
+        List<Insn> insns = new ArrayList<>();
+        for (BasicBlock bb : region) {
+            insns.addAll(bb.instructions());
+        }
+        List<Stmt> out = new ArrayList<>();
+        out.add(new CommentStmt(WARNING));
+        out.addAll(build(insns, new ArrayDeque<>()));
+        return out;
+    }
+
+    private String newLabel() {
+        return "label" + (++labelCount);
+    }
+
+    // --- чистка AST ---
+
+    private BlockStmt cleanUp(BlockStmt body) {
+        body = removeTails(body, Set.of());
+        body = mergeLoopFollows(body);
+        body = unlabelBlock(body, null, null);
+        body = dropUnusedLabels(body);
+        body = normalizeIfs(body);
+        body = removeTails(body, Set.of());
+        body = foldStackTemps(body, countTemps(body));
+        body = extractLoopConditions(body);
+        body = rebuildSynchronized(body);
+        body = rebuildForEach(body);
+        return dropUnusedLabels(body);
+    }
+
+    /**
+     * Убирает переходы, равные простому выходу из позиции: {@code break L;}
+     * в конце блока L, {@code continue;} в конце тела цикла и т.п.
+     */
+    private static BlockStmt removeTails(BlockStmt block, Set<String> tails) {
+        List<Stmt> out = new ArrayList<>(block.statements());
+        while (!out.isEmpty() && isJump(out.getLast()) && tails.contains(out.getLast().toString())) {
+            out.removeLast();
+        }
+        for (int i = 0; i < out.size(); i++) {
+            Set<String> t = i == out.size() - 1 ? tails : Set.of();
+            out.set(i, removeTails(out.get(i), t));
+        }
+        return new BlockStmt(out);
+    }
+
+    private static Stmt removeTails(Stmt s, Set<String> tails) {
+        return switch (s) {
+            case LabeledStmt l when l.body() instanceof BlockStmt b ->
+                    new LabeledStmt(l.label(), removeTails(b, plus(tails, new BreakStmt(l.label()))));
+            case LabeledStmt l when l.body() instanceof LoopStmt loop ->
+                    new LabeledStmt(l.label(), loopTails(loop, l.label()));
+            case LoopStmt loop -> loopTails(loop, null);
+            case SwitchStmt sw -> mapBlocks(sw, b -> removeTails(b, plus(tails, new BreakStmt(null))));
+            case IfStmt ifs -> mapBlocks(ifs, b -> removeTails(b, tails));
+            case TryCatchStmt tcs -> mapBlocks(tcs, b -> removeTails(b, tails));
+            default -> mapBlocks(s, b -> removeTails(b, Set.of()));
+        };
+    }
+
+    private static LoopStmt loopTails(LoopStmt loop, String label) {
+        Set<String> tails = label == null
+                ? Set.of(new ContinueStmt(null).toString())
+                : Set.of(new ContinueStmt(null).toString(), new ContinueStmt(label).toString());
+        return new LoopStmt(loop.condition(), removeTails(loop.body(), tails));
+    }
+
+    private static Set<String> plus(Set<String> tails, Stmt jump) {
+        Set<String> result = new HashSet<>(tails);
+        result.add(jump.toString());
+        return result;
+    }
+
+    private static boolean isJump(Stmt s) {
+        return s instanceof BreakStmt || s instanceof ContinueStmt;
+    }
+
+    /**
+     * {@code L: { ...; M: { ...; Lh: while (...) {... break L; ...} } }}: выход
+     * из цикла и есть выход из L, так что {@code break L} внутри цикла - {@code break Lh}.
+     * То же, если цикл стоит последним в ветке if или в try.
+     */
+    private static BlockStmt mergeLoopFollows(BlockStmt block) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            Stmt t = mapBlocks(s, RegionStructurer::mergeLoopFollows);
+            if (t instanceof LabeledStmt l && l.body() instanceof BlockStmt b) {
+                t = new LabeledStmt(l.label(), retargetTailLoop(b, l.label()));
+            }
+            out.add(t);
+        }
+        return new BlockStmt(out);
+    }
+
+    private static Stmt retargetTailLoop(Stmt s, String from) {
+        return switch (s) {
+            case LabeledStmt l when l.body() instanceof LoopStmt loop -> new LabeledStmt(l.label(), rewriteJumps(loop,
+                    j -> j instanceof BreakStmt br && from.equals(br.label()) ? new BreakStmt(l.label()) : j));
+            // из последнего оператора ветки if, тела try или catch управление уходит в конец L
+            case LabeledStmt l -> mapBlocks(l, b -> retargetTailLoop(b, from));
+            case IfStmt ifs -> mapBlocks(ifs, b -> retargetTailLoop(b, from));
+            case TryCatchStmt tcs -> mapBlocks(tcs, b -> retargetTailLoop(b, from));
+            default -> s;
+        };
+    }
+
+    private static BlockStmt retargetTailLoop(BlockStmt b, String from) {
+        if (b.statements().isEmpty()) return b;
+        List<Stmt> stmts = new ArrayList<>(b.statements());
+        stmts.set(stmts.size() - 1, retargetTailLoop(stmts.getLast(), from));
+        return new BlockStmt(stmts);
+    }
+
+    private static Stmt rewriteJumps(Stmt s, UnaryOperator<Stmt> jumps) {
+        if (isJump(s)) return jumps.apply(s);
+        return mapBlocks(s, b -> {
+            List<Stmt> out = new ArrayList<>();
+            for (Stmt inner : b.statements()) out.add(rewriteJumps(inner, jumps));
+            return new BlockStmt(out);
+        });
+    }
+
+    /**
+     * Снимает метку, если она указывает на ближайший цикл (или switch для break).
+     */
+    private static BlockStmt unlabelBlock(BlockStmt block, String breakTarget, String loopTarget) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) out.add(unlabel(s, breakTarget, loopTarget));
+        return new BlockStmt(out);
+    }
+
+    private static Stmt unlabel(Stmt s, String breakTarget, String loopTarget) {
+        return switch (s) {
+            case BreakStmt b when b.label() != null && b.label().equals(breakTarget) -> new BreakStmt(null);
+            case ContinueStmt c when c.label() != null && c.label().equals(loopTarget) -> new ContinueStmt(null);
+            case LabeledStmt l when l.body() instanceof LoopStmt loop ->
+                    new LabeledStmt(l.label(), mapBlocks(loop, b -> unlabelBlock(b, l.label(), l.label())));
+            case LoopStmt loop -> mapBlocks(loop, b -> unlabelBlock(b, null, null));
+            case SwitchStmt sw -> mapBlocks(sw, b -> unlabelBlock(b, null, loopTarget));
+            default -> mapBlocks(s, b -> unlabelBlock(b, breakTarget, loopTarget));
+        };
+    }
+
+    private static BlockStmt dropUnusedLabels(BlockStmt body) {
+        Set<String> used = new HashSet<>();
+        new AstVisitor<Void, Void>() {
+            @Override
+            public Void visitBreak(BreakStmt stmt, Void param) {
+                if (stmt.label() != null) used.add(stmt.label());
+                return null;
+            }
+
+            @Override
+            public Void visitContinue(ContinueStmt stmt, Void param) {
+                if (stmt.label() != null) used.add(stmt.label());
+                return null;
+            }
+        }.visitBlock(body, null);
+        return dropLabels(body, used);
+    }
+
+    private static BlockStmt dropLabels(BlockStmt block, Set<String> used) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            Stmt t = mapBlocks(s, b -> dropLabels(b, used));
+            if (t instanceof LabeledStmt l && !used.contains(l.label())) {
+                if (l.body() instanceof BlockStmt b) {
+                    out.addAll(b.statements());
+                } else {
+                    out.add(l.body());
+                }
+            } else {
+                out.add(t);
+            }
+        }
+        return new BlockStmt(out);
+    }
+
+    /**
+     * Пустой then меняется с else местами, а ветка, которая заканчивается
+     * переходом, остается одна: {@code if (c) { return; } rest}.
+     */
+    private BlockStmt normalizeIfs(BlockStmt block) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            Stmt t = mapBlocks(s, this::normalizeIfs);
+            if (!(t instanceof IfStmt ifs)) {
+                out.add(t);
+                continue;
+            }
+            Expr cond = ifs.condition();
+            BlockStmt thenBlock = ifs.thenBlock();
+            BlockStmt elseBlock = ifs.elseBlock();
+            if (elseBlock != null && elseBlock.statements().isEmpty()) elseBlock = null;
+            if (elseBlock != null && thenBlock.statements().isEmpty()) {
+                cond = conditions.negate(cond);
+                thenBlock = elseBlock;
+                elseBlock = null;
+            }
+            // if (a) { if (b) {...} } -> if (a && b) {...}
+            if (elseBlock == null && thenBlock.statements().size() == 1
+                    && thenBlock.statements().getFirst() instanceof IfStmt inner && inner.elseBlock() == null) {
+                cond = new BinaryExpr("&&", cond, inner.condition());
+                thenBlock = inner.thenBlock();
+            }
+            if (elseBlock != null) {
+                boolean thenAbrupt = isAbrupt(thenBlock);
+                boolean elseAbrupt = isAbrupt(elseBlock);
+                if (thenAbrupt && !elseAbrupt) {
+                    out.add(new IfStmt(cond, thenBlock, null));
+                    out.addAll(elseBlock.statements());
+                    continue;
+                }
+                if (elseAbrupt && !thenAbrupt) {
+                    out.add(new IfStmt(conditions.negate(cond), elseBlock, null));
+                    out.addAll(thenBlock.statements());
+                    continue;
+                }
+            }
+            out.add(new IfStmt(cond, thenBlock, elseBlock));
+        }
+        return new BlockStmt(out);
+    }
+
+    private static boolean isAbrupt(BlockStmt block) {
+        if (block.statements().isEmpty()) return false;
+        Stmt last = block.statements().getLast();
+        if (last instanceof ReturnStmt || last instanceof ThrowStmt || isJump(last)) return true;
+        return last instanceof IfStmt ifs && ifs.elseBlock() != null
+                && isAbrupt(ifs.thenBlock()) && isAbrupt(ifs.elseBlock());
+    }
+
+    /**
+     * Синтетические переменные стека ({@link EntryStacks}):
+     * {@code if (c) { t = a; } else { t = b; }} -> {@code t = c ? a : b;},
+     * а присваивание, которое читается ровно один раз следующим же оператором,
+     * подставляется в него: {@code f(x, c ? a : b)}.
+     */
+    private static BlockStmt foldStackTemps(BlockStmt block, Map<Expr, Integer> uses) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            Stmt t = mapBlocks(s, b -> foldStackTemps(b, uses));
+            if (t instanceof IfStmt ifs && ifs.elseBlock() != null) {
+                AssignStmt a = singleTempAssign(ifs.thenBlock().statements(), null);
+                AssignStmt b = singleTempAssign(ifs.elseBlock().statements(), null);
+                if (a != null && b != null && a.target().equals(b.target())) {
+                    uses.merge(a.target(), -1, Integer::sum);
+                    t = new AssignStmt(a.target(), new TernaryExpr(ifs.condition(), a.value(), b.value()));
+                }
+            } else if (t instanceof LabeledStmt l && l.body() instanceof BlockStmt lb && lb.statements().size() == 2
+                    && lb.statements().getFirst() instanceof IfStmt ifs && ifs.elseBlock() == null) {
+                // L: { if (c) { t = a; break L; } t = b; }
+                AssignStmt a = singleTempAssign(ifs.thenBlock().statements(), l.label());
+                AssignStmt b = singleTempAssign(lb.statements().subList(1, 2), null);
+                if (a != null && b != null && a.target().equals(b.target())) {
+                    uses.merge(a.target(), -1, Integer::sum);
+                    t = new AssignStmt(a.target(), new TernaryExpr(ifs.condition(), a.value(), b.value()));
+                }
+            }
+            // значения глубже по стеку лежат левее: подставляем, пока получается
+            while (!out.isEmpty() && out.getLast() instanceof AssignStmt prev && EntryStacks.isTemp(prev.target())
+                    && uses.getOrDefault(prev.target(), 0) == 2) {
+                Stmt inlined = replaceInHead(t, prev.target(), prev.value());
+                if (inlined == null) break;
+                out.removeLast();
+                t = inlined;
+            }
+            out.add(t);
+        }
+        return new BlockStmt(out);
+    }
+
+    /**
+     * Единственное присваивание синтетической переменной, за которым
+     * может идти только {@code break label}.
+     */
+    private static AssignStmt singleTempAssign(List<Stmt> stmts, String label) {
+        int size = label == null ? 1 : 2;
+        if (stmts.size() != size || !(stmts.getFirst() instanceof AssignStmt as) || !EntryStacks.isTemp(as.target())) {
+            return null;
+        }
+        if (label != null && !new BreakStmt(label).equals(stmts.get(1))) return null;
+        return as;
+    }
+
+    private static Map<Expr, Integer> countTemps(BlockStmt body) {
+        Map<Expr, Integer> uses = new HashMap<>();
+        new AstVisitor<Void, Void>() {
+            @Override
+            public Void visitVar(VarExpr expr, Void param) {
+                if (EntryStacks.isTemp(expr)) uses.merge(expr, 1, Integer::sum);
+                return null;
+            }
+        }.visitBlock(body, null);
+        return uses;
+    }
+
+    /**
+     * Подставляет value вместо var в выражение, которое оператор вычисляет
+     * первым делом; null - в нем var нет (или оператор не такой).
+     */
+    private static Stmt replaceInHead(Stmt s, Expr var, Expr value) {
+        UnaryOperator<Expr> r = e -> replaceVar(e, var, value);
+        Stmt result = switch (s) {
+            case AssignStmt as -> new AssignStmt(r.apply(as.target()), r.apply(as.value()));
+            case ExprStmt es -> new ExprStmt(r.apply(es.expr()));
+            case ReturnStmt rs when rs.value() != null -> new ReturnStmt(r.apply(rs.value()));
+            case ThrowStmt ts -> new ThrowStmt(r.apply(ts.value()));
+            case IfStmt ifs -> new IfStmt(r.apply(ifs.condition()), ifs.thenBlock(), ifs.elseBlock());
+            case SwitchStmt sw -> new SwitchStmt(r.apply(sw.selector()), sw.cases(), sw.defaultBlock());
+            case LabeledStmt l when l.body() instanceof BlockStmt b && !b.statements().isEmpty() -> {
+                Stmt first = replaceInHead(b.statements().getFirst(), var, value);
+                if (first == null) yield null;
+                List<Stmt> stmts = new ArrayList<>(b.statements());
+                stmts.set(0, first);
+                yield new LabeledStmt(l.label(), new BlockStmt(stmts));
+            }
+            default -> null;
+        };
+        return s.equals(result) ? null : result;
+    }
+
+    private static Expr replaceVar(Expr e, Expr var, Expr value) {
+        if (e == null) return null;
+        if (e.equals(var)) return value;
+        UnaryOperator<Expr> r = x -> replaceVar(x, var, value);
+        return switch (e) {
+            case BinaryExpr be -> new BinaryExpr(be.op(), r.apply(be.left()), r.apply(be.right()));
+            case UnaryExpr ue -> new UnaryExpr(ue.op(), r.apply(ue.expr()));
+            case CallExpr ce -> new CallExpr(r.apply(ce.target()), ce.ownerInternalName(), ce.methodName(),
+                    ce.args().stream().map(r).toList());
+            case FieldAccessExpr fa -> new FieldAccessExpr(r.apply(fa.target()), fa.fieldName());
+            case CastExpr ce -> new CastExpr(ce.typeName(), r.apply(ce.value()));
+            case InstanceOfExpr io -> new InstanceOfExpr(r.apply(io.value()), io.typeName());
+            case NewExpr ne -> new NewExpr(ne.typeName(), ne.args().stream().map(r).toList());
+            case ArrayAccessExpr aa -> new ArrayAccessExpr(r.apply(aa.array()), r.apply(aa.index()));
+            case NewArrayExpr na -> new NewArrayExpr(na.elementType(), r.apply(na.size()));
+            case ArrayLengthExpr al -> new ArrayLengthExpr(r.apply(al.array()));
+            case TernaryExpr te -> new TernaryExpr(r.apply(te.condition()), r.apply(te.thenExpr()), r.apply(te.elseExpr()));
+            default -> e;
+        };
+    }
+
+    /**
+     * {@code while (true) { if (c) break; ... }} -> {@code while (!c) { ... }}.
+     */
+    private BlockStmt extractLoopConditions(BlockStmt block) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            Stmt t = mapBlocks(s, this::extractLoopConditions);
+            if (t instanceof LabeledStmt l && l.body() instanceof LoopStmt loop) {
+                t = new LabeledStmt(l.label(), whileCondition(loop, l.label()));
+            } else if (t instanceof LoopStmt loop) {
+                t = whileCondition(loop, null);
+            }
+            out.add(t);
+        }
+        return new BlockStmt(out);
+    }
+
+    private LoopStmt whileCondition(LoopStmt loop, String label) {
+        if (!(loop.condition() instanceof VarExpr v && "true".equals(v.name()))) return loop;
+        List<Stmt> body = loop.body().statements();
+        if (body.isEmpty() || !(body.getFirst() instanceof IfStmt ifs) || ifs.elseBlock() != null) return loop;
+        List<Stmt> then = ifs.thenBlock().statements();
+        if (then.size() != 1 || !(then.getFirst() instanceof BreakStmt br)) return loop;
+        if (br.label() != null && !br.label().equals(label)) return loop;
+        return new LoopStmt(conditions.negate(ifs.condition()), new BlockStmt(body.subList(1, body.size())));
+    }
+
+    /**
+     * {@code monitorenter(m); try { ... } catch (Throwable t) { monitorexit(tmp); throw t; }}
+     * -> {@code synchronized (m) { ... }} без monitorexit(tmp) в теле.
+     * Форма kotlinc: {@code tmp = m; monitorenter(tmp); try {...} ... monitorexit(tmp);}.
+     */
+    private static BlockStmt rebuildSynchronized(BlockStmt block) {
+        List<Stmt> src = block.statements();
+        List<Stmt> out = new ArrayList<>();
+        for (int i = 0; i < src.size(); i++) {
+            Stmt s = mapBlocks(src.get(i), RegionStructurer::rebuildSynchronized);
+            Expr monitor = monitorCall(s, "monitorenter");
+            if (monitor != null && i + 1 < src.size()
+                    && mapBlocks(src.get(i + 1), RegionStructurer::rebuildSynchronized) instanceof TryCatchStmt tcs) {
+                Expr tmp = monitorTemp(tcs);
+                if (tmp != null) {
+                    if (!out.isEmpty() && out.getLast() instanceof AssignStmt as && as.target().equals(tmp)) {
+                        // kotlinc входит в монитор по самой переменной: берем ее значение
+                        if (monitor.equals(tmp)) monitor = as.value();
+                        out.removeLast();
+                    }
+                    out.add(new SynchronizedStmt(monitor, removeMonitorExits(tcs.tryBlock(), tmp)));
+                    i++;
+                    // у kotlinc обычный monitorexit лежит уже за пределами try
+                    if (i + 1 < src.size() && tmp.equals(monitorCall(src.get(i + 1), "monitorexit"))) i++;
+                    continue;
+                }
+            }
+            out.add(s);
+        }
+        return new BlockStmt(out);
+    }
+
+    private static Expr monitorCall(Stmt s, String name) {
+        if (s instanceof ExprStmt es && es.expr() instanceof CallExpr call && call.target() == null
+                && name.equals(call.methodName()) && call.args().size() == 1) {
+            return call.args().getFirst();
+        }
+        return null;
+    }
+
+    /**
+     * Переменная монитора, если catch - стандартный обработчик synchronized.
+     */
+    private static Expr monitorTemp(TryCatchStmt tcs) {
+        if (!"Throwable".equals(tcs.exceptionType()) || !tcs.moreCatches().isEmpty()
+                || tcs.finallyBlock() != null || tcs.catchBlock() == null) {
+            return null;
+        }
+        List<Stmt> handler = tcs.catchBlock().statements();
+        if (handler.size() != 2) return null;
+        Expr tmp = monitorCall(handler.get(0), "monitorexit");
+        if (tmp == null) return null;
+        if (!(handler.get(1) instanceof ThrowStmt th && th.value() instanceof VarExpr v
+                && v.name().equals(tcs.exceptionVarName()))) {
+            return null;
+        }
+        return tmp;
+    }
+
+    private static BlockStmt removeMonitorExits(BlockStmt block, Expr tmp) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : block.statements()) {
+            if (tmp.equals(monitorCall(s, "monitorexit"))) continue;
+            out.add(mapBlocks(s, b -> removeMonitorExits(b, tmp)));
+        }
+        return new BlockStmt(out);
+    }
+
+    /**
+     * {@code it = xs.iterator(); while (it.hasNext() != 0) { v = (T) it.next(); ... }}
+     * -> {@code for (T v : xs) { ... }}, если больше итератор нигде не нужен.
+     */
+    private static BlockStmt rebuildForEach(BlockStmt block) {
+        List<Stmt> src = block.statements();
+        List<Stmt> out = new ArrayList<>();
+        for (int i = 0; i < src.size(); i++) {
+            Stmt s = mapBlocks(src.get(i), RegionStructurer::rebuildForEach);
+            if (i + 1 < src.size() && s instanceof AssignStmt as && as.target() instanceof VarExpr it
+                    && as.value() instanceof CallExpr call && "iterator".equals(call.methodName())
+                    && call.target() != null && call.args().isEmpty()) {
+                Stmt next = mapBlocks(src.get(i + 1), RegionStructurer::rebuildForEach);
+                Stmt forEach = null;
+                if (next instanceof LoopStmt loop) {
+                    forEach = forEach(it, call.target(), loop);
+                } else if (next instanceof LabeledStmt l && l.body() instanceof LoopStmt loop) {
+                    Stmt f = forEach(it, call.target(), loop);
+                    forEach = f == null ? null : new LabeledStmt(l.label(), f);
+                }
+                if (forEach != null) {
+                    out.add(forEach);
+                    i++;
+                    continue;
+                }
+            }
+            out.add(s);
+        }
+        return new BlockStmt(out);
+    }
+
+    private static EnhancedForStmt forEach(VarExpr it, Expr iterable, LoopStmt loop) {
+        if (!(loop.condition() instanceof BinaryExpr cond && "!=".equals(cond.op())
+                && cond.right() instanceof IntConstExpr zero && zero.value() == 0
+                && isCallOn(cond.left(), it, "hasNext"))) {
+            return null;
+        }
+        List<Stmt> body = loop.body().statements();
+        if (body.isEmpty() || !(body.getFirst() instanceof AssignStmt first && first.target() instanceof VarExpr var)) {
+            return null;
+        }
+        String varType = "var";
+        Expr value = first.value();
+        if (value instanceof CastExpr cast) {
+            varType = cast.typeName();
+            value = cast.value();
+        }
+        if (!isCallOn(value, it, "next")) return null;
+        BlockStmt rest = new BlockStmt(body.subList(1, body.size()));
+        if (mentions(rest, it)) return null;
+        return new EnhancedForStmt(varType, var.name(), iterable, rest);
+    }
+
+    private static boolean isCallOn(Expr e, VarExpr target, String name) {
+        return e instanceof CallExpr call && target.equals(call.target())
+                && name.equals(call.methodName()) && call.args().isEmpty();
+    }
+
+    private static boolean mentions(BlockStmt block, VarExpr var) {
+        boolean[] found = {false};
+        new AstVisitor<Void, Void>() {
+            @Override
+            public Void visitVar(VarExpr expr, Void param) {
+                if (expr.equals(var)) found[0] = true;
+                return null;
+            }
+        }.visitBlock(block, null);
+        return found[0];
+    }
+
+    /**
+     * Пересобирает оператор, применив f к каждому вложенному блоку.
+     * Общие тела case-ов switch остаются общими.
+     */
+    private static Stmt mapBlocks(Stmt s, UnaryOperator<BlockStmt> f) {
+        return switch (s) {
+            case IfStmt ifs -> new IfStmt(ifs.condition(), f.apply(ifs.thenBlock()),
+                    ifs.elseBlock() == null ? null : f.apply(ifs.elseBlock()));
+            case LoopStmt loop -> new LoopStmt(loop.condition(), f.apply(loop.body()));
+            case ForStmt fs -> new ForStmt(fs.init(), fs.condition(), fs.update(), f.apply(fs.body()));
+            case EnhancedForStmt ef -> new EnhancedForStmt(ef.varType(), ef.varName(), ef.iterable(), f.apply(ef.body()));
+            case SynchronizedStmt sync -> new SynchronizedStmt(sync.monitor(), f.apply(sync.body()));
+            case LabeledStmt l -> new LabeledStmt(l.label(),
+                    l.body() instanceof BlockStmt b ? f.apply(b) : mapBlocks(l.body(), f));
+            case TryCatchStmt tcs -> {
+                List<CatchClause> more = new ArrayList<>();
+                for (CatchClause c : tcs.moreCatches()) {
+                    more.add(new CatchClause(c.exceptionType(), c.varName(),
+                            f.apply(new BlockStmt(c.body())).statements(), c.filterExpr()));
+                }
+                yield new TryCatchStmt(f.apply(tcs.tryBlock()), tcs.exceptionType(), tcs.exceptionVarName(),
+                        tcs.catchBlock() == null ? null : f.apply(tcs.catchBlock()),
+                        tcs.finallyBlock() == null ? null : f.apply(tcs.finallyBlock()), more);
+            }
+            case SwitchStmt sw -> {
+                Map<BlockStmt, BlockStmt> done = new IdentityHashMap<>();
+                Map<Integer, BlockStmt> cases = new LinkedHashMap<>();
+                for (Map.Entry<Integer, BlockStmt> e : sw.cases().entrySet()) {
+                    cases.put(e.getKey(), done.computeIfAbsent(e.getValue(), f));
+                }
+                BlockStmt def = sw.defaultBlock() == null ? null : done.computeIfAbsent(sw.defaultBlock(), f);
+                yield new SwitchStmt(sw.selector(), cases, def);
+            }
+            default -> s;
+        };
+    }
+
+    // --- вспомогательные типы ---
+
+    /**
+     * Код узла и его внешний следующий блок (или null).
+     */
+    private record Emitted(List<Stmt> code, BasicBlock next) {
+    }
+
+    private static final class Catch {
+        final BasicBlock handler;
+        final BitSet covered = new BitSet();
+        final Set<String> types = new LinkedHashSet<>();
+        boolean catchAll;
+
+        Catch(BasicBlock handler) {
+            this.handler = handler;
+        }
+
+        String typeName() {
+            return catchAll || types.isEmpty() ? "Throwable" : String.join(" | ", types);
+        }
+    }
+
+    private static final class TryRegion {
+        final BitSet body;
+        final List<Catch> catches = new ArrayList<>();
+        BasicBlock entry;
+        TryRegion parent;
+        boolean valid;
+
+        TryRegion(BitSet body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * Регион не раскладывается; без стека, это обычный способ выйти из рекурсии.
+     */
+    private static final class Unstructurable extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unstructurable() {
+            super(null, null, false, false);
+        }
+    }
+}
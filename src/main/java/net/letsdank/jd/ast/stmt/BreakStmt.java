@@ -0,0 +1,13 @@
+package net.letsdank.jd.ast.stmt;
+
+/**
+ * break; или break label;
+ *
+ * @param label метка или null для ближайшего цикла/switch
+ */
+public record BreakStmt(String label) implements Stmt {
+    @Override
+    public String toString() {
+        return label == null ? "break;" : "break " + label + ";";
+    }
+}
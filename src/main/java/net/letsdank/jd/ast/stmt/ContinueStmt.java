@@ -0,0 +1,13 @@
+package net.letsdank.jd.ast.stmt;
+
+/**
+ * continue; или continue label;
+ *
+ * @param label метка цикла или null для ближайшего цикла
+ */
+public record ContinueStmt(String label) implements Stmt {
+    @Override
+    public String toString() {
+        return label == null ? "continue;" : "continue " + label + ";";
+    }
+}
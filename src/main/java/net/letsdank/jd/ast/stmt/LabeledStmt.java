@@ -0,0 +1,11 @@
+package net.letsdank.jd.ast.stmt;
+
+/**
+ * Помеченный оператор: label: { ... } или label: while (...) { ... }.
+ */
+public record LabeledStmt(String label, Stmt body) implements Stmt {
+    @Override
+    public String toString() {
+        return label + ": " + body;
+    }
+}
@@ -4,5 +4,6 @@ public sealed interface Stmt
         permits AssignStmt, BlockStmt, CatchClause, ExprStmt,
         FinallyClause, ForStmt, IfStmt, LoopStmt, ReturnStmt,
         TryCatchStmt, CommentStmt, SwitchStmt,
-        EnhancedForStmt, SynchronizedStmt {
+        EnhancedForStmt, SynchronizedStmt,
+        BreakStmt, ContinueStmt, LabeledStmt, ThrowStmt {
 }
@@ -0,0 +1,10 @@
+package net.letsdank.jd.ast.stmt;
+
+import net.letsdank.jd.ast.expr.Expr;
+
+public record ThrowStmt(Expr value) implements Stmt {
+    @Override
+    public String toString() {
+        return "throw " + value + ";";
+    }
+}
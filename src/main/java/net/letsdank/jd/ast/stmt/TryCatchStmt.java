@@ -2,11 +2,26 @@ package net.letsdank.jd.ast.stmt;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 /**
  * Узел try/catch(/finally).
+ * <p>
+ * Первый catch лежит в exceptionType/exceptionVarName/catchBlock,
+ * следующие за ним (catch (A a) {...} catch (B b) {...}) - в moreCatches.
  */
 public record TryCatchStmt(BlockStmt tryBlock, String exceptionType,
-                           String exceptionVarName, BlockStmt catchBlock, BlockStmt finallyBlock) implements Stmt {
+                           String exceptionVarName, BlockStmt catchBlock, BlockStmt finallyBlock,
+                           List<CatchClause> moreCatches) implements Stmt {
+
+    public TryCatchStmt {
+        moreCatches = moreCatches == null ? List.of() : List.copyOf(moreCatches);
+    }
+
+    public TryCatchStmt(BlockStmt tryBlock, String exceptionType,
+                        String exceptionVarName, BlockStmt catchBlock, BlockStmt finallyBlock) {
+        this(tryBlock, exceptionType, exceptionVarName, catchBlock, finallyBlock, List.of());
+    }
 
     public TryCatchStmt(BlockStmt tryBlock, String exceptionType,
                         String exceptionVarName, BlockStmt catchBlock) {
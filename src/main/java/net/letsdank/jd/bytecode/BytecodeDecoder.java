@@ -6,19 +6,61 @@ import java.util.*;
 
 /**
  * Примитивный декодер байткода.
+ * <p>
+ * Единственный цикл разбора - {@link #accept(byte[], BytecodeVisitor)};
+ * {@link #decode(byte[])} и {@link #decodeStream(byte[])} построены поверх него.
  */
 public final class BytecodeDecoder {
+    /**
+     * Декодирует байткод в список {@link Insn}.
+     */
     public List<Insn> decode(byte[] code) {
-        List<Insn> insns = new ArrayList<>();
+        InsnListBuilder builder = new InsnListBuilder(code);
+        accept(code, builder);
+        return builder.insns;
+    }
+
+    /**
+     * Декодирует байткод в {@link InsnStream} за один линейный проход
+     * без создания объекта на каждую инструкцию.
+     */
+    public InsnStream decodeStream(byte[] code) {
+        InsnStream stream = new InsnStream(code);
+        accept(code, stream.builder());
+        return stream;
+    }
+
+    /**
+     * Таблица "адрес -> номер инструкции" длины {@code codeLength}.
+     * Для байтов, которые не являются началом инструкции (операнды, padding), хранится -1.
+     */
+    public static int[] pcToIndex(List<Insn> insns, int codeLength) {
+        int[] map = new int[codeLength];
+        Arrays.fill(map, -1);
+        for (int i = 0; i < insns.size(); i++) {
+            int pc = insns.get(i).offset();
+            if (pc >= 0 && pc < codeLength) {
+                map[pc] = i;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Проходит байткод один раз и вызывает callback-и visitor-а.
+     * На инструкцию ничего не аллоцируется.
+     */
+    public void accept(byte[] code, BytecodeVisitor v) {
+        SwitchTable table = new SwitchTable();
         int offset = 0;
 
+        decoding:
         while (offset < code.length) {
             int opByte = code[offset] & 0xFF;
             Opcode opcode = Opcode.fromCode(opByte);
             if (opcode == null) {
                 // Неизвестный/неподдерживаемый опкод - фиксируем и останавливаемся
-                byte[] remaining = Arrays.copyOfRange(code, offset, code.length);
-                insns.add(new UnknownInsn(offset, opByte, remaining));
+                v.visitUnknown(offset, opByte);
                 break;
             }
 
@@ -26,254 +68,228 @@ public final class BytecodeDecoder {
             offset++; // ушли за опкод
 
             switch (opcode.operandType()) {
-                case NONE -> {
-                    insns.add(new SimpleInsn(start, opcode));
-                }
+                case NONE -> v.visitInsn(start, opcode);
                 case LOCAL_INDEX_U1 -> {
                     if (offset >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int index = code[offset] & 0xFF;
+                    v.visitLocalVar(start, opcode, code[offset] & 0xFF);
                     offset++;
-                    insns.add(new LocalVarInsn(start, opcode, index));
                 }
-                case LOCAL_INDEX_U2 -> {
-                    if (offset + 1 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                case BYTE_IMM -> {
+                    if (offset >= code.length) {
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
-                    offset += 2;
-                    int index = (hi << 8) | lo;
-                    insns.add(new LocalVarInsn(start, opcode, index));
+                    v.visitIntOperand(start, opcode, code[offset]); // signed
+                    offset++;
                 }
-                case BYTE_IMM -> {
+                case CONSTPOOL_U1 -> {
+                    // ldc
                     if (offset >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int imm = (byte) code[offset]; // signed
+                    v.visitLdc(start, opcode, code[offset] & 0xFF);
                     offset++;
-                    insns.add(new IntOperandInsn(start, opcode, imm));
+                }
+                case LOCAL_INDEX_U2 -> {
+                    if (offset + 1 >= code.length) {
+                        v.visitUnknown(start, opByte);
+                        break decoding;
+                    }
+                    v.visitLocalVar(start, opcode, readU2(code, offset));
+                    offset += 2;
                 }
                 case SHORT_IMM -> {
                     if (offset + 1 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
+                    v.visitIntOperand(start, opcode, (short) readU2(code, offset)); // signed
                     offset += 2;
-                    int imm = (short) ((hi << 8) | lo); // signed
-                    insns.add(new IntOperandInsn(start, opcode, imm));
+                }
+                case CONSTPOOL_U2 -> {
+                    if (offset + 1 >= code.length) {
+                        v.visitUnknown(start, opByte);
+                        break decoding;
+                    }
+                    int cpIndex = readU2(code, offset);
+                    offset += 2;
+                    if (opcode.isFieldAccess()) {
+                        v.visitField(start, opcode, cpIndex);
+                    } else if (opcode.isInvoke()) {
+                        v.visitInvoke(start, opcode, cpIndex);
+                    } else if (opcode == Opcode.LDC_W || opcode == Opcode.LDC2_W) {
+                        v.visitLdc(start, opcode, cpIndex);
+                    } else {
+                        v.visitType(start, opcode, cpIndex);
+                    }
                 }
                 case BRANCH_S2 -> {
                     if (offset + 1 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
+                    int delta = (short) readU2(code, offset); // signed short
                     offset += 2;
-                    int delta = (short) ((hi << 8) | lo); // signed short
-                    int target = start + delta; // offset уже указывает на следующую инструкцию
-                    insns.add(new JumpInsn(start, opcode, target, delta));
+                    v.visitJump(start, opcode, start + delta, delta);
                 }
                 case BRANCH_S4 -> {
                     // goto_w, jsr_w: delta:int
                     if (offset + 3 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int b1 = code[offset] & 0xFF;
-                    int b2 = code[offset + 1] & 0xFF;
-                    int b3 = code[offset + 2] & 0xFF;
-                    int b4 = code[offset + 3] & 0xFF;
+                    int delta = readInt(code, offset); // signed int
                     offset += 4;
-                    int delta = (b1 << 24) | (b2 << 16) | (b3 << 8) | b4; // signed int
-                    int target = start + delta;
-                    insns.add(new JumpInsn(start, opcode, target, delta));
-                }
-                case CONSTPOOL_U1 -> {
-                    if (offset >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
-                    }
-                    int cpIndex = code[offset] & 0xFF;
-                    offset++;
-                    insns.add(new ConstantPoolInsn(start, opcode, cpIndex));
-                }
-                case CONSTPOOL_U2 -> {
-                    if (offset + 1 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
-                    }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
-                    offset += 2;
-                    int cpIndex = (hi << 8) | lo;
-                    insns.add(new ConstantPoolInsn(start, opcode, cpIndex));
+                    v.visitJump(start, opcode, start + delta, delta);
                 }
                 case IINC -> {
                     // iinc <index:u1> <const:s1>
                     if (offset + 1 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int index = code[offset] & 0xFF;
-                    int delta = (byte) code[offset + 1]; // signed
+                    v.visitIinc(start, opcode, code[offset] & 0xFF, code[offset + 1]);
                     offset += 2;
-                    insns.add(new IincInsn(start, opcode, index, delta));
                 }
-                case INVOKEDYNAMIC -> {
+                case INVOKEINTERFACE, INVOKEDYNAMIC -> {
+                    // invokeinterface <cp_index:u2> <count:u1> <0:u1>
                     // invokedynamic <cp_index:u2> <0:u1> <0:u1>
                     if (offset + 3 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
-                    int cpIndex = (hi << 8) | lo;
-                    offset += 4; // пропускаем два "reserved" байта (обычно 0,0)
-                    insns.add(new ConstantPoolInsn(start, opcode, cpIndex));
+                    int cpIndex = readU2(code, offset);
+                    offset += 4; // count выводится из дескриптора, остальное - "reserved" нули
+                    v.visitInvoke(start, opcode, cpIndex);
                 }
                 case TABLESWITCH -> {
                     // формат:
-                    // [padding до 4-байтовой границы]
+                    // [padding до 4-байтовой границы от начала кода]
                     // default:int, low:int, high:int, затем (high-low+1) int-ов смещений
-                    int relative = offset - start;
-                    int pad = (4 - (relative & 0x3)) & 0x3;
+                    int pad = switchPadding(offset);
                     if (offset + pad + 12 > code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
                     offset += pad;
 
                     int def = readInt(code, offset);
-                    offset += 4;
-                    int low = readInt(code, offset);
-                    offset += 4;
-                    int high = readInt(code, offset);
-                    offset += 4;
+                    int low = readInt(code, offset + 4);
+                    int high = readInt(code, offset + 8);
+                    offset += 12;
 
                     long count = (long) high - (long) low + 1L;
                     if (count < 0 || offset + count * 4 > code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
 
-                    // читаем таргеты и формируем абсолютные адреса
-                    Map<Integer, Integer> targets = new LinkedHashMap<>();
-                    for (int v = low; v <= high; v++) {
-                        int delta = readInt(code, offset);
-                        offset += 4;
-                        int target = start + delta;
-                        targets.put(v, target);
-                    }
-
-                    int defaultTarget = start + def;
-                    insns.add(new TableSwitchInsn(start, defaultTarget, low, high, targets));
+                    table.resetTable(code, start, offset, low, (int) count);
+                    offset += (int) count * 4;
+                    v.visitSwitch(start, opcode, start + def, table);
                 }
                 case LOOKUPSWITCH -> {
                     // формат:
                     // [padding], default:int, npairs:int, затем npairs пар (match:int, offset:int)
-                    int relative = offset - start;
-                    int pad = (4 - (relative & 0x3)) & 0x3;
+                    int pad = switchPadding(offset);
                     if (offset + pad + 8 > code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
                     offset += pad;
 
                     int def = readInt(code, offset);
-                    offset += 4;
-                    int npairs = readInt(code, offset);
-                    offset += 4;
+                    int npairs = readInt(code, offset + 4);
+                    offset += 8;
 
                     long total = (long) npairs * 8L;
                     if (npairs < 0 || offset + total > code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
 
+                    table.resetLookup(code, start, offset, npairs);
                     offset += (int) total;
-
-                    insns.add(new SimpleInsn(start, opcode));
+                    v.visitSwitch(start, opcode, start + def, table);
                 }
                 case MULTIANEWARRAY -> {
                     // multianewarray cp_index:u2 dimensions:u1
                     if (offset + 2 >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code, start, code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
-                    int hi = code[offset] & 0xFF;
-                    int lo = code[offset + 1] & 0xFF;
-                    int cpIndex = (hi << 8) | lo;
+                    int cpIndex = readU2(code, offset);
                     int dims = code[offset + 2] & 0xFF;
-                    // Пока игнорируем dims, но хотя бы держим cpIndex
-                    insns.add(new ConstantPoolInsn(start, opcode, cpIndex));
+                    offset += 3;
+                    v.visitMultiANewArray(start, cpIndex, dims);
                 }
                 case WIDE -> {
                     // Корректная поддержка: читаем следующий опкод и его расширенные операнды.
                     if (offset >= code.length) {
-                        insns.add(new UnknownInsn(start, opByte, Arrays.copyOfRange(code,start,code.length)));
-                        return insns;
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
 
-                    int widenedOp = code[offset]&0xFF;
+                    int widenedOp = code[offset] & 0xFF;
                     offset++; // продвинулись за реальный опкод
                     Opcode widened = Opcode.fromCode(widenedOp);
-                    if(widened==null){
-                        insns.add(new UnknownInsn(start,opByte,Arrays.copyOfRange(code,start,code.length)));
-                        return insns;
+                    if (widened == null) {
+                        v.visitUnknown(start, opByte);
+                        break decoding;
                     }
 
                     // Поддерживаем ILOAD/LLOAD/FLOAD/DLOAD/ALOAD, ISTORE/LSTORE/FSTORE/DSTORE/ASTORE, IINC, RET
-                    switch(widened) {
-                        case ILOAD,LLOAD,FLOAD,DLOAD,ALOAD,
-                             ISTORE,LSTORE,FSTORE,DSTORE,ASTORE,
-                             RET->{
-                            if(offset+1>=code.length){
-                                insns.add(new UnknownInsn(start,opByte,Arrays.copyOfRange(code,start,code.length)));
-                                return insns;
+                    switch (widened) {
+                        case ILOAD, LLOAD, FLOAD, DLOAD, ALOAD,
+                             ISTORE, LSTORE, FSTORE, DSTORE, ASTORE,
+                             RET -> {
+                            if (offset + 1 >= code.length) {
+                                v.visitUnknown(start, opByte);
+                                break decoding;
                             }
-                            int hi=code[offset]&0xFF;
-                            int lo=code[offset+1]&0xFF;
-                            offset+=2;
-                            int idx=(hi<<8)|lo;
-                            insns.add(new LocalVarInsn(start,widened,idx));
+                            int idx = readU2(code, offset);
+                            offset += 2;
+                            v.visitLocalVar(start, widened, idx);
                         }
-                        case IINC->{
+                        case IINC -> {
                             // wide iinc: index:u2, const:s2
-                            if(offset+3>=code.length) {
-                                insns.add(new UnknownInsn(start,opByte, Arrays.copyOfRange(code, start, code.length)));
-                                return insns;
+                            if (offset + 3 >= code.length) {
+                                v.visitUnknown(start, opByte);
+                                break decoding;
                             }
 
-                            int hi = code[offset]&0xFF;
-                            int lo=code[offset+1]&0xFF;
-                            int idx = (hi<<8)|lo;
-
-                            int dhi=code[offset+2]&0xFF;
-                            int dlo=code[offset+3]&0xFF;
-                            int delta=(short)((dhi<<8)|dlo);
-
-                            offset+=4;
-                            insns.add(new IincInsn(start,widened,idx,delta));
+                            int idx = readU2(code, offset);
+                            int delta = (short) readU2(code, offset + 2);
+                            offset += 4;
+                            v.visitIinc(start, widened, idx, delta);
                         }
-                        default->{
+                        default -> {
                             // Неизвестный/неподдерживаемый опкод под wide
-                            insns.add(new UnknownInsn(start,opByte,Arrays.copyOfRange(code,start,code.length)));
-                            return insns;
+                            v.visitUnknown(start, opByte);
+                            break decoding;
                         }
                     }
                 }
             }
         }
 
-        return insns;
+        v.visitEnd();
+    }
+
+    /**
+     * Padding после опкода switch-а: данные выравниваются по 4 байта
+     * относительно начала массива code, а не самой инструкции.
+     */
+    private static int switchPadding(int offsetAfterOpcode) {
+        return (4 - (offsetAfterOpcode & 0x3)) & 0x3;
+    }
+
+    private static int readU2(byte[] code, int offset) {
+        return ((code[offset] & 0xFF) << 8) | (code[offset + 1] & 0xFF);
     }
 
     private static int readInt(byte[] code, int offset) {
@@ -283,4 +299,89 @@ public final class BytecodeDecoder {
         int b4 = code[offset + 3] & 0xFF;
         return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
     }
+
+    /**
+     * Visitor, собирающий привычный список {@link Insn}.
+     */
+    private static final class InsnListBuilder implements BytecodeVisitor {
+        private final byte[] code;
+        private final List<Insn> insns = new ArrayList<>();
+
+        InsnListBuilder(byte[] code) {
+            this.code = code;
+        }
+
+        @Override
+        public void visitInsn(int offset, Opcode opcode) {
+            insns.add(new SimpleInsn(offset, opcode));
+        }
+
+        @Override
+        public void visitLocalVar(int offset, Opcode opcode, int localIndex) {
+            insns.add(new LocalVarInsn(offset, opcode, localIndex));
+        }
+
+        @Override
+        public void visitIntOperand(int offset, Opcode opcode, int operand) {
+            insns.add(new IntOperandInsn(offset, opcode, operand));
+        }
+
+        @Override
+        public void visitIinc(int offset, Opcode opcode, int localIndex, int delta) {
+            insns.add(new IincInsn(offset, opcode, localIndex, delta));
+        }
+
+        @Override
+        public void visitJump(int offset, Opcode opcode, int targetOffset, int delta) {
+            insns.add(new JumpInsn(offset, opcode, targetOffset, delta));
+        }
+
+        @Override
+        public void visitLdc(int offset, Opcode opcode, int cpIndex) {
+            insns.add(new ConstantPoolInsn(offset, opcode, cpIndex));
+        }
+
+        @Override
+        public void visitType(int offset, Opcode opcode, int cpIndex) {
+            insns.add(new ConstantPoolInsn(offset, opcode, cpIndex));
+        }
+
+        @Override
+        public void visitField(int offset, Opcode opcode, int cpIndex) {
+            insns.add(new ConstantPoolInsn(offset, opcode, cpIndex));
+        }
+
+        @Override
+        public void visitInvoke(int offset, Opcode opcode, int cpIndex) {
+            insns.add(new ConstantPoolInsn(offset, opcode, cpIndex));
+        }
+
+        @Override
+        public void visitMultiANewArray(int offset, int cpIndex, int dimensions) {
+            // Пока игнорируем dims, но хотя бы держим cpIndex
+            insns.add(new ConstantPoolInsn(offset, Opcode.MULTIANEWARRAY, cpIndex));
+        }
+
+        @Override
+        public void visitSwitch(int offset, Opcode opcode, int defaultTarget, SwitchTable table) {
+            int[] targets = new int[table.size()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = table.target(i);
+            }
+            if (!table.isLookup()) {
+                insns.add(new TableSwitchInsn(offset, defaultTarget, table.low(), targets));
+                return;
+            }
+            int[] keys = new int[table.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = table.key(i);
+            }
+            insns.add(new LookupSwitchInsn(offset, defaultTarget, keys, targets));
+        }
+
+        @Override
+        public void visitUnknown(int offset, int opcodeByte) {
+            insns.add(new UnknownInsn(offset, opcodeByte, Arrays.copyOfRange(code, offset, code.length)));
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package net.letsdank.jd.bytecode;
+
+/**
+ * Push-обход байткода: {@link BytecodeDecoder#accept(byte[], BytecodeVisitor)}
+ * вызывает типизированный callback на каждую инструкцию и ничего не
+ * создает в куче на инструкцию.
+ * <p>
+ * Все методы по умолчанию пустые, так что анализ переопределяет только то,
+ * что ему нужно (например, только {@link #visitInvoke}).
+ * Инструкции под префиксом wide приходят с расширенным опкодом
+ * (iload, iinc, ...) и 16-битными операндами.
+ */
+public interface BytecodeVisitor {
+    /**
+     * Инструкция без операндов.
+     */
+    default void visitInsn(int offset, Opcode opcode) {
+    }
+
+    /**
+     * xload / xstore / ret.
+     */
+    default void visitLocalVar(int offset, Opcode opcode, int localIndex) {
+    }
+
+    /**
+     * bipush / sipush / newarray (operand - знаковое значение или typecode).
+     */
+    default void visitIntOperand(int offset, Opcode opcode, int operand) {
+    }
+
+    default void visitIinc(int offset, Opcode opcode, int localIndex, int delta) {
+    }
+
+    /**
+     * Условные и безусловные переходы, jsr.
+     *
+     * @param targetOffset абсолютный адрес перехода
+     * @param delta        смещение относительно offset, как в байткоде
+     */
+    default void visitJump(int offset, Opcode opcode, int targetOffset, int delta) {
+    }
+
+    /**
+     * ldc / ldc_w / ldc2_w.
+     */
+    default void visitLdc(int offset, Opcode opcode, int cpIndex) {
+    }
+
+    /**
+     * new / anewarray / checkcast / instanceof.
+     */
+    default void visitType(int offset, Opcode opcode, int cpIndex) {
+    }
+
+    /**
+     * getstatic / putstatic / getfield / putfield.
+     */
+    default void visitField(int offset, Opcode opcode, int cpIndex) {
+    }
+
+    /**
+     * invokevirtual / invokespecial / invokestatic / invokeinterface / invokedynamic.
+     */
+    default void visitInvoke(int offset, Opcode opcode, int cpIndex) {
+    }
+
+    default void visitMultiANewArray(int offset, int cpIndex, int dimensions) {
+    }
+
+    /**
+     * tableswitch / lookupswitch.
+     *
+     * @param table таблица кейсов; объект переиспользуется и валиден только внутри вызова
+     */
+    default void visitSwitch(int offset, Opcode opcode, int defaultTarget, SwitchTable table) {
+    }
+
+    /**
+     * Нераспознанный или обрезанный байткод. После этого декодирование останавливается.
+     */
+    default void visitUnknown(int offset, int opcodeByte) {
+    }
+
+    /**
+     * Конец байткода (вызывается всегда, в том числе после {@link #visitUnknown}).
+     */
+    default void visitEnd() {
+    }
+}
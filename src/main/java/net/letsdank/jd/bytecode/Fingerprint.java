@@ -0,0 +1,33 @@
+package net.letsdank.jd.bytecode;
+
+/**
+ * 128-битный отпечаток нормализованного байткода (см. {@link Fingerprinter}).
+ * <p>
+ * Одинаковые отпечатки означают одинаковое поведение с точностью до
+ * раскладки constant pool и адресов инструкций, так что результат
+ * декомпиляции можно переиспользовать.
+ */
+public record Fingerprint(long high, long low) {
+
+    static Fingerprint of(byte[] digest) {
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (digest[i] & 0xFF);
+            lo = (lo << 8) | (digest[i + 8] & 0xFF);
+        }
+        return new Fingerprint(hi, lo);
+    }
+
+    /**
+     * 32 шестнадцатеричных символа.
+     */
+    public String toHex() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,353 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.FieldInfo;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.AttributeInfo;
+import net.letsdank.jd.model.attribute.BootstrapMethodsAttribute;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.model.cp.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Отпечатки методов и классов по нормализованному байткоду.
+ * <p>
+ * В хеш идет поток инструкций, в котором:
+ * <ul>
+ *     <li>индексы constant pool заменены разрешенными символами
+ *     (владелец, имя, дескриптор, значение константы, bootstrap-метод);</li>
+ *     <li>таргеты переходов, switch-ей и границы exception_table записаны
+ *     в номерах инструкций, относительно текущей;</li>
+ *     <li>ldc/ldc_w, goto/goto_w и jsr/jsr_w не различаются - форма зависит
+ *     только от раскладки пула и длины метода.</li>
+ * </ul>
+ * Поэтому отпечаток не меняется при перекомпиляции с другим порядком
+ * constant pool. Имя метода и отладочные атрибуты в отпечаток метода не входят:
+ * так совпадают одинаковые синтетические аксессоры, copy$default и т.п.
+ * Дескриптор и static входят: от них зависят имена и типы параметров в выводе.
+ * Отпечаток класса строится из имени, флагов, суперкласса, интерфейсов,
+ * полей и методов (имя, дескриптор, флаги, отпечаток).
+ */
+public final class Fingerprinter {
+    // теги, которыми размечены части потока
+    private static final int T_INSN = 1;
+    private static final int T_TARGET = 2;
+    private static final int T_BAD_TARGET = 3;
+    private static final int T_UNKNOWN = 4;
+    private static final int T_HANDLER = 5;
+    private static final int T_METHOD = 6;
+    private static final int T_NO_CODE = 7;
+    private static final int T_BAD_CONSTANT = 8;
+    private static final int T_CLASS = 9;
+    private static final int T_INTERFACE = 10;
+    private static final int T_FIELD = 11;
+
+    // глубина разрешения вложенных констант (MethodHandle -> Methodref, Dynamic -> аргументы)
+    private static final int MAX_CONSTANT_DEPTH = 8;
+
+    private final BytecodeDecoder decoder = new BytecodeDecoder();
+
+    /**
+     * Отпечаток тела метода. Для методов без Code (abstract, native)
+     * отпечаток общий и зависит только от флагов.
+     */
+    public Fingerprint method(MethodInfo method, ClassFile cf) {
+        Hasher h = new Hasher(cf.constantPool(), findBootstrap(cf));
+        h.writeConstant(method.descriptorIndex(), 0);
+        h.writeByte(Modifier.isStatic(method.accessFlags()) ? 1 : 0);
+        CodeAttribute codeAttr = method.findCodeAttribute();
+        if (codeAttr == null) {
+            h.writeByte(T_NO_CODE);
+            h.writeInt(method.accessFlags());
+            return h.finish();
+        }
+        h.writeCode(decoder.decodeStream(codeAttr.code()), codeAttr.exceptionTable());
+        return h.finish();
+    }
+
+    /**
+     * Отпечаток класса: заголовок, поля и методы. Порядок полей и методов
+     * в class-файле не важен.
+     */
+    public Fingerprint classFile(ClassFile cf) {
+        ConstantPool cp = cf.constantPool();
+        Hasher h = new Hasher(cp, null);
+        h.writeByte(T_CLASS);
+        h.writeConstant(cf.thisClassIndex(), 0);
+        h.writeInt(cf.accessFlags());
+        if (cf.superClassIndex() == 0) {
+            h.writeString("");
+        } else {
+            h.writeConstant(cf.superClassIndex(), 0);
+        }
+        for (int itf : cf.interfaceIndices()) {
+            h.writeByte(T_INTERFACE);
+            h.writeConstant(itf, 0);
+        }
+
+        List<String[]> fields = new ArrayList<>(cf.fields().length);
+        for (FieldInfo f : cf.fields()) {
+            fields.add(new String[]{
+                    cp.getUtf8(f.nameIndex()),
+                    cp.getUtf8(f.descriptorIndex()),
+                    Integer.toHexString(f.accessFlags())
+            });
+        }
+        writeSorted(h, T_FIELD, fields);
+
+        List<String[]> methods = new ArrayList<>(cf.methods().length);
+        for (MethodInfo m : cf.methods()) {
+            methods.add(new String[]{
+                    cp.getUtf8(m.nameIndex()),
+                    cp.getUtf8(m.descriptorIndex()),
+                    Integer.toHexString(m.accessFlags()),
+                    method(m, cf).toHex()
+            });
+        }
+        writeSorted(h, T_METHOD, methods);
+        return h.finish();
+    }
+
+    /**
+     * Записи (имя, дескриптор, ...) по имени и дескриптору.
+     */
+    private static void writeSorted(Hasher h, int tag, List<String[]> entries) {
+        entries.sort(Comparator.<String[], String>comparing(e -> e[0]).thenComparing(e -> e[1]));
+        for (String[] e : entries) {
+            h.writeByte(tag);
+            for (String part : e) {
+                h.writeString(part);
+            }
+        }
+    }
+
+    private static BootstrapMethodsAttribute findBootstrap(ClassFile cf) {
+        for (AttributeInfo attr : cf.attributes()) {
+            if (attr instanceof BootstrapMethodsAttribute bm) {
+                return bm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Поток нормализованных токенов поверх MD5.
+     */
+    private static final class Hasher {
+        private final ConstantPool cp;
+        private final BootstrapMethodsAttribute bootstrap;
+        private final MessageDigest md;
+        private final DataOutputStream out;
+
+        Hasher(ConstantPool cp, BootstrapMethodsAttribute bootstrap) {
+            this.cp = cp;
+            this.bootstrap = bootstrap;
+            try {
+                this.md = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                // MD5 обязан быть в любой реализации Java SE
+                throw new IllegalStateException(e);
+            }
+            this.out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md));
+        }
+
+        Fingerprint finish() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return Fingerprint.of(md.digest());
+        }
+
+        void writeCode(InsnStream s, List<CodeAttribute.ExceptionTableEntry> exceptionTable) {
+            int n = s.size();
+            writeInt(n);
+            for (int i = 0; i < n; i++) {
+                if (s.isUnknown(i)) {
+                    writeByte(T_UNKNOWN);
+                    writeInt(s.opcodeCode(i) & 0xFF);
+                    continue;
+                }
+                Opcode op = s.opcode(i);
+                writeByte(T_INSN);
+                writeByte(normalize(op).code());
+                switch (op.operandType()) {
+                    case NONE -> {
+                    }
+                    case LOCAL_INDEX_U1, LOCAL_INDEX_U2, BYTE_IMM, SHORT_IMM -> writeInt(s.operand1(i));
+                    case IINC -> {
+                        writeInt(s.operand1(i));
+                        writeInt(s.operand2(i));
+                    }
+                    case BRANCH_S2, BRANCH_S4 -> writeTarget(s, i, s.operand1(i));
+                    case TABLESWITCH, LOOKUPSWITCH -> {
+                        int sw = s.operand1(i);
+                        writeTarget(s, i, s.switchDefault(sw));
+                        int count = s.switchTargetCount(sw);
+                        writeInt(count);
+                        for (int k = 0; k < count; k++) {
+                            writeInt(s.switchKey(sw, k));
+                            writeTarget(s, i, s.switchTarget(sw, k));
+                        }
+                    }
+                    case MULTIANEWARRAY -> {
+                        writeConstant(s.operand1(i), 0);
+                        writeInt(s.operand2(i));
+                    }
+                    default -> writeConstant(s.operand1(i), 0);
+                }
+            }
+
+            if (exceptionTable == null) return;
+            for (CodeAttribute.ExceptionTableEntry e : exceptionTable) {
+                writeByte(T_HANDLER);
+                writeInt(indexOf(s, e.startPc()));
+                writeInt(indexOf(s, e.endPc()));
+                writeInt(indexOf(s, e.handlerPc()));
+                if (e.catchTypeIndex() == 0) {
+                    writeString("");
+                } else {
+                    writeConstant(e.catchTypeIndex(), 0);
+                }
+            }
+        }
+
+        private static Opcode normalize(Opcode op) {
+            return switch (op) {
+                case LDC_W -> Opcode.LDC;
+                case GOTO_W -> Opcode.GOTO;
+                case JSR_W -> Opcode.JSR;
+                default -> op;
+            };
+        }
+
+        /**
+         * Номер инструкции по адресу; конец кода (endPc) - это size().
+         */
+        private static int indexOf(InsnStream s, int pc) {
+            return pc == s.code().length ? s.size() : s.indexAt(pc);
+        }
+
+        private void writeTarget(InsnStream s, int from, int targetPc) {
+            int target = s.indexAt(targetPc);
+            if (target < 0) {
+                // переход не на начало инструкции - оставляем байтовое смещение
+                writeByte(T_BAD_TARGET);
+                writeInt(targetPc - s.offset(from));
+            } else {
+                writeByte(T_TARGET);
+                writeInt(target - from);
+            }
+        }
+
+        private void writeConstant(int index, int depth) {
+            CpInfo e = index > 0 && index < cp.size() ? cp.entry(index) : null;
+            if (e == null || depth > MAX_CONSTANT_DEPTH) {
+                writeByte(T_BAD_CONSTANT);
+                return;
+            }
+            writeByte(e.tag());
+            switch (e) {
+                case CpUtf8 u -> writeString(u.value());
+                case CpInteger c -> writeInt(c.value());
+                case CpFloat c -> writeInt(Float.floatToRawIntBits(c.value()));
+                case CpLong c -> writeLong(c.value());
+                case CpDouble c -> writeLong(Double.doubleToRawLongBits(c.value()));
+                case CpClass c -> writeConstant(c.nameIndex(), depth + 1);
+                case CpString c -> writeConstant(c.stringIndex(), depth + 1);
+                case CpModule c -> writeConstant(c.nameIndex(), depth + 1);
+                case CpPackage c -> writeConstant(c.nameIndex(), depth + 1);
+                case CpMethodType c -> writeConstant(c.descriptorIndex(), depth + 1);
+                case CpNameAndType c -> {
+                    writeConstant(c.nameIndex(), depth + 1);
+                    writeConstant(c.descriptorIndex(), depth + 1);
+                }
+                case CpFieldref c -> {
+                    writeConstant(c.classIndex(), depth + 1);
+                    writeConstant(c.nameAndTypeIndex(), depth + 1);
+                }
+                case CpMethodref c -> {
+                    writeConstant(c.classIndex(), depth + 1);
+                    writeConstant(c.nameAndTypeIndex(), depth + 1);
+                }
+                case CpInterfaceMethodref c -> {
+                    writeConstant(c.classIndex(), depth + 1);
+                    writeConstant(c.nameAndTypeIndex(), depth + 1);
+                }
+                case CpMethodHandle c -> {
+                    writeInt(c.referenceKind());
+                    writeConstant(c.referenceIndex(), depth + 1);
+                }
+                case CpInvokeDynamic c -> {
+                    writeBootstrap(c.bootstrapMethodAttrIndex(), depth);
+                    writeConstant(c.nameAndTypeIndex(), depth + 1);
+                }
+                case CpDynamic c -> {
+                    writeBootstrap(c.bootstrapMethodAttrIndex(), depth);
+                    writeConstant(c.nameAndTypeIndex(), depth + 1);
+                }
+            }
+        }
+
+        private void writeBootstrap(int bsmIndex, int depth) {
+            if (bootstrap == null || bsmIndex < 0 || bsmIndex >= bootstrap.methods().length) {
+                writeByte(T_BAD_CONSTANT);
+                return;
+            }
+            BootstrapMethodsAttribute.BootstrapMethod bsm = bootstrap.methods()[bsmIndex];
+            writeConstant(bsm.bootstrapMethodRef(), depth + 1);
+            writeInt(bsm.bootstrapArguments().length);
+            for (int arg : bsm.bootstrapArguments()) {
+                writeConstant(arg, depth + 1);
+            }
+        }
+
+        void writeByte(int v) {
+            try {
+                out.writeByte(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void writeInt(int v) {
+            try {
+                out.writeInt(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void writeLong(long v) {
+            try {
+                out.writeLong(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
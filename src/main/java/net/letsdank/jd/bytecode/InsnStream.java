@@ -0,0 +1,463 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.bytecode.insn.*;
+
+import java.util.*;
+
+/**
+ * Декодированный байткод метода в виде "структуры массивов".
+ * <p>
+ * Вместо объекта на каждую инструкцию храним параллельные колонки:
+ * offset, opcode, operand1, operand2. Таргеты switch-инструкций лежат
+ * в отдельных side-таблицах. Смысл операндов зависит от вида инструкции:
+ * <ul>
+ *     <li>локальная переменная (xload/xstore/ret): operand1 = индекс;</li>
+ *     <li>bipush/sipush/newarray: operand1 = значение;</li>
+ *     <li>переход: operand1 = абсолютный таргет, operand2 = относительное смещение;</li>
+ *     <li>ссылка в constant pool: operand1 = индекс, operand2 = dimensions для multianewarray;</li>
+ *     <li>iinc: operand1 = индекс, operand2 = приращение;</li>
+ *     <li>tableswitch/lookupswitch: operand1 = номер switch-а в side-таблицах.</li>
+ * </ul>
+ * Для существующего кода есть адаптер {@link #insn(int)} / {@link #asList()},
+ * который лениво собирает привычные {@link Insn}-объекты.
+ */
+public final class InsnStream {
+    /**
+     * Флаг в колонке opcode: байт не удалось декодировать,
+     * младшие 8 бит - исходный байт опкода.
+     */
+    public static final int UNKNOWN_FLAG = 0x100;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final byte[] code;
+
+    private int size;
+    private int[] offsets;
+    private short[] opcodes;
+    private int[] operand1;
+    private int[] operand2;
+
+    // side-таблицы switch-инструкций
+    private int switchCount;
+    private int[] switchDefault = new int[0];
+    private int[] switchLow = new int[0];
+    private int[] switchStart = new int[0];
+    private int[] switchLength = new int[0];
+    private boolean[] switchLookup = new boolean[0];
+    private int[] switchTargets = new int[0];
+    private int[] switchKeys = new int[0]; // заполняется только для lookupswitch
+    private int switchTargetCount;
+
+    // кеш адаптера к Insn
+    private Insn[] adapted;
+
+    // адрес -> номер инструкции, строится лениво
+    private int[] pcToIndex;
+
+    InsnStream(byte[] code) {
+        this.code = code;
+        // грубая оценка: в среднем инструкция занимает 2-3 байта
+        int capacity = Math.max(INITIAL_CAPACITY, code.length / 2);
+        this.offsets = new int[capacity];
+        this.opcodes = new short[capacity];
+        this.operand1 = new int[capacity];
+        this.operand2 = new int[capacity];
+    }
+
+    // --- заполнение (только для декодера) ---
+
+    void add(int offset, int opcode, int op1, int op2) {
+        if (size == offsets.length) {
+            int capacity = size + (size >> 1) + 1;
+            offsets = Arrays.copyOf(offsets, capacity);
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            operand1 = Arrays.copyOf(operand1, capacity);
+            operand2 = Arrays.copyOf(operand2, capacity);
+        }
+        offsets[size] = offset;
+        opcodes[size] = (short) opcode;
+        operand1[size] = op1;
+        operand2[size] = op2;
+        size++;
+    }
+
+    void addUnknown(int offset, int opcodeByte) {
+        add(offset, UNKNOWN_FLAG | opcodeByte, 0, 0);
+    }
+
+    /**
+     * Начинает запись tableswitch; таргеты затем добавляются через {@link #addSwitchTarget(int)}.
+     */
+    void beginTableSwitch(int offset, int defaultTarget, int low) {
+        beginSwitch(offset, Opcode.TABLESWITCH, defaultTarget, low);
+    }
+
+    /**
+     * Начинает запись lookupswitch; пары затем добавляются через {@link #addSwitchCase(int, int)}.
+     */
+    void beginLookupSwitch(int offset, int defaultTarget) {
+        beginSwitch(offset, Opcode.LOOKUPSWITCH, defaultTarget, 0);
+    }
+
+    private void beginSwitch(int offset, Opcode opcode, int defaultTarget, int low) {
+        if (switchCount == switchDefault.length) {
+            int capacity = switchCount * 2 + 1;
+            switchDefault = Arrays.copyOf(switchDefault, capacity);
+            switchLow = Arrays.copyOf(switchLow, capacity);
+            switchStart = Arrays.copyOf(switchStart, capacity);
+            switchLength = Arrays.copyOf(switchLength, capacity);
+            switchLookup = Arrays.copyOf(switchLookup, capacity);
+        }
+        switchDefault[switchCount] = defaultTarget;
+        switchLow[switchCount] = low;
+        switchStart[switchCount] = switchTargetCount;
+        switchLength[switchCount] = 0;
+        switchLookup[switchCount] = opcode == Opcode.LOOKUPSWITCH;
+        add(offset, opcode.code(), switchCount, 0);
+        switchCount++;
+    }
+
+    void addSwitchTarget(int target) {
+        if (switchTargetCount == switchTargets.length) {
+            switchTargets = Arrays.copyOf(switchTargets, switchTargetCount * 2 + 8);
+        }
+        switchTargets[switchTargetCount++] = target;
+        switchLength[switchCount - 1]++;
+    }
+
+    void addSwitchCase(int key, int target) {
+        if (switchTargetCount >= switchKeys.length) {
+            switchKeys = Arrays.copyOf(switchKeys, Math.max(switchTargetCount * 2 + 8, switchTargets.length));
+        }
+        switchKeys[switchTargetCount] = key;
+        addSwitchTarget(target);
+    }
+
+    /**
+     * Visitor, который заполняет колонки потока при декодировании.
+     */
+    BytecodeVisitor builder() {
+        return new BytecodeVisitor() {
+            @Override
+            public void visitInsn(int offset, Opcode opcode) {
+                add(offset, opcode.code(), 0, 0);
+            }
+
+            @Override
+            public void visitLocalVar(int offset, Opcode opcode, int localIndex) {
+                add(offset, opcode.code(), localIndex, 0);
+            }
+
+            @Override
+            public void visitIntOperand(int offset, Opcode opcode, int operand) {
+                add(offset, opcode.code(), operand, 0);
+            }
+
+            @Override
+            public void visitIinc(int offset, Opcode opcode, int localIndex, int delta) {
+                add(offset, opcode.code(), localIndex, delta);
+            }
+
+            @Override
+            public void visitJump(int offset, Opcode opcode, int targetOffset, int delta) {
+                add(offset, opcode.code(), targetOffset, delta);
+            }
+
+            @Override
+            public void visitLdc(int offset, Opcode opcode, int cpIndex) {
+                add(offset, opcode.code(), cpIndex, 0);
+            }
+
+            @Override
+            public void visitType(int offset, Opcode opcode, int cpIndex) {
+                add(offset, opcode.code(), cpIndex, 0);
+            }
+
+            @Override
+            public void visitField(int offset, Opcode opcode, int cpIndex) {
+                add(offset, opcode.code(), cpIndex, 0);
+            }
+
+            @Override
+            public void visitInvoke(int offset, Opcode opcode, int cpIndex) {
+                add(offset, opcode.code(), cpIndex, 0);
+            }
+
+            @Override
+            public void visitMultiANewArray(int offset, int cpIndex, int dimensions) {
+                add(offset, Opcode.MULTIANEWARRAY.code(), cpIndex, dimensions);
+            }
+
+            @Override
+            public void visitSwitch(int offset, Opcode opcode, int defaultTarget, SwitchTable table) {
+                if (table.isLookup()) {
+                    beginLookupSwitch(offset, defaultTarget);
+                    for (int i = 0; i < table.size(); i++) {
+                        addSwitchCase(table.key(i), table.target(i));
+                    }
+                    return;
+                }
+                beginTableSwitch(offset, defaultTarget, table.low());
+                for (int i = 0; i < table.size(); i++) {
+                    addSwitchTarget(table.target(i));
+                }
+            }
+
+            @Override
+            public void visitUnknown(int offset, int opcodeByte) {
+                addUnknown(offset, opcodeByte);
+            }
+        };
+    }
+
+    // --- доступ по индексу ---
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Исходный байткод, из которого построен поток.
+     */
+    public byte[] code() {
+        return code;
+    }
+
+    public int offset(int index) {
+        Objects.checkIndex(index, size);
+        return offsets[index];
+    }
+
+    /**
+     * Сырое значение колонки opcode: код опкода или {@link #UNKNOWN_FLAG} | байт.
+     */
+    public int opcodeCode(int index) {
+        Objects.checkIndex(index, size);
+        return opcodes[index];
+    }
+
+    /**
+     * Опкод инструкции или {@code null}, если она не декодирована.
+     */
+    public Opcode opcode(int index) {
+        return Opcode.fromCode(opcodeCode(index));
+    }
+
+    public boolean isUnknown(int index) {
+        return (opcodeCode(index) & UNKNOWN_FLAG) != 0;
+    }
+
+    public int operand1(int index) {
+        Objects.checkIndex(index, size);
+        return operand1[index];
+    }
+
+    public int operand2(int index) {
+        Objects.checkIndex(index, size);
+        return operand2[index];
+    }
+
+    /**
+     * Длина инструкции в байтах (до следующей инструкции или до конца кода).
+     */
+    public int length(int index) {
+        int end = index + 1 < size ? offset(index + 1) : code.length;
+        return end - offset(index);
+    }
+
+    /**
+     * Номер инструкции, начинающейся по адресу pc, или -1.
+     */
+    public int indexAt(int pc) {
+        if (pc < 0 || pc >= code.length) return -1;
+        return pcToIndex()[pc];
+    }
+
+    /**
+     * Таблица "адрес -> номер инструкции" длины {@code code().length};
+     * -1 для байтов операндов и padding-а. Массив общий, не модифицировать.
+     */
+    public int[] pcToIndex() {
+        if (pcToIndex == null) {
+            int[] map = new int[code.length];
+            Arrays.fill(map, -1);
+            for (int i = 0; i < size; i++) {
+                map[offsets[i]] = i;
+            }
+            pcToIndex = map;
+        }
+        return pcToIndex;
+    }
+
+    // --- switch side-таблицы ---
+
+    public int switchDefault(int switchIndex) {
+        return switchDefault[Objects.checkIndex(switchIndex, switchCount)];
+    }
+
+    /**
+     * Нижняя граница tableswitch (для lookupswitch всегда 0).
+     */
+    public int switchLow(int switchIndex) {
+        return switchLow[Objects.checkIndex(switchIndex, switchCount)];
+    }
+
+    public boolean isLookupSwitch(int switchIndex) {
+        return switchLookup[Objects.checkIndex(switchIndex, switchCount)];
+    }
+
+    public int switchTargetCount(int switchIndex) {
+        return switchLength[Objects.checkIndex(switchIndex, switchCount)];
+    }
+
+    public int switchTarget(int switchIndex, int i) {
+        Objects.checkIndex(i, switchTargetCount(switchIndex));
+        return switchTargets[switchStart[switchIndex] + i];
+    }
+
+    /**
+     * Значение i-го кейса: для tableswitch это {@code low + i}, для lookupswitch - match из пары.
+     */
+    public int switchKey(int switchIndex, int i) {
+        Objects.checkIndex(i, switchTargetCount(switchIndex));
+        return switchLookup[switchIndex] ? switchKeys[switchStart[switchIndex] + i] : switchLow[switchIndex] + i;
+    }
+
+    // --- курсор ---
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Курсор для последовательного обхода без создания объектов на инструкцию.
+     * <pre>
+     * InsnStream.Cursor c = stream.cursor();
+     * while (c.next()) {
+     *     if (c.opcode() == Opcode.GOTO) ...
+     * }
+     * </pre>
+     */
+    public final class Cursor {
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        public void reset() {
+            index = -1;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public int offset() {
+            return offsets[index];
+        }
+
+        public int opcodeCode() {
+            return opcodes[index];
+        }
+
+        public Opcode opcode() {
+            return Opcode.fromCode(opcodes[index]);
+        }
+
+        public int operand1() {
+            return operand1[index];
+        }
+
+        public int operand2() {
+            return operand2[index];
+        }
+
+        public Insn insn() {
+            return InsnStream.this.insn(index);
+        }
+    }
+
+    // --- адаптер к Insn ---
+
+    /**
+     * Инструкция в виде {@link Insn}. Объект создается при первом обращении
+     * и дальше переиспользуется, так что идентичность стабильна.
+     */
+    public Insn insn(int index) {
+        Objects.checkIndex(index, size);
+        if (adapted == null) {
+            adapted = new Insn[size];
+        }
+        Insn insn = adapted[index];
+        if (insn == null) {
+            insn = materialize(index);
+            adapted[index] = insn;
+        }
+        return insn;
+    }
+
+    /**
+     * Неизменяемое представление потока как списка {@link Insn}.
+     */
+    public List<Insn> asList() {
+        return new InsnListView();
+    }
+
+    private Insn materialize(int index) {
+        int offset = offsets[index];
+        int op = opcodes[index];
+        if ((op & UNKNOWN_FLAG) != 0) {
+            return new UnknownInsn(offset, op & 0xFF, Arrays.copyOfRange(code, offset, code.length));
+        }
+
+        Opcode opcode = Opcode.fromCode(op);
+        int op1 = operand1[index];
+        int op2 = operand2[index];
+        return switch (opcode.operandType()) {
+            case NONE, WIDE -> new SimpleInsn(offset, opcode);
+            case LOCAL_INDEX_U1, LOCAL_INDEX_U2 -> new LocalVarInsn(offset, opcode, op1);
+            case BYTE_IMM, SHORT_IMM -> new IntOperandInsn(offset, opcode, op1);
+            case CONSTPOOL_U1, CONSTPOOL_U2, INVOKEINTERFACE, INVOKEDYNAMIC, MULTIANEWARRAY ->
+                    new ConstantPoolInsn(offset, opcode, op1);
+            case IINC -> new IincInsn(offset, opcode, op1, op2);
+            case BRANCH_S2, BRANCH_S4 -> new JumpInsn(offset, opcode, op1, op2);
+            case TABLESWITCH -> {
+                int from = switchStart[op1];
+                int[] targets = Arrays.copyOfRange(switchTargets, from, from + switchLength[op1]);
+                yield new TableSwitchInsn(offset, switchDefault[op1], switchLow[op1], targets);
+            }
+            case LOOKUPSWITCH -> {
+                int from = switchStart[op1];
+                int to = from + switchLength[op1];
+                yield new LookupSwitchInsn(offset, switchDefault[op1],
+                        Arrays.copyOfRange(switchKeys, from, to), Arrays.copyOfRange(switchTargets, from, to));
+            }
+        };
+    }
+
+    private final class InsnListView extends AbstractList<Insn> implements RandomAccess {
+        @Override
+        public Insn get(int index) {
+            return insn(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -6,6 +6,10 @@ package net.letsdank.jd.bytecode;
  * - числовое значение (byte & 0xFF)
  * - мнемоника
  * - тип операндов (OperandType), если есть
+ * <p>
+ * Дополнительно для каждого опкода заранее посчитаны эффект на стек
+ * (в слотах, long/double занимают два) и флаги управления потоком.
+ * {@link #fromCode(int)} работает через статическую таблицу на 256 элементов.
  */
 public enum Opcode {
     //
@@ -311,7 +315,7 @@ public enum Opcode {
     INVOKEVIRTUAL(0xB6, "invokevirtual", OperandType.CONSTPOOL_U2),
     INVOKESPECIAL(0xB7, "invokespecial", OperandType.CONSTPOOL_U2),
     INVOKESTATIC(0xB8, "invokestatic", OperandType.CONSTPOOL_U2),
-    INVOKEINTERFACE(0xB9, "invokeinterface", OperandType.CONSTPOOL_U2 /* cp_index, count, 0 */),
+    INVOKEINTERFACE(0xB9, "invokeinterface", OperandType.INVOKEINTERFACE),
     INVOKEDYNAMIC(0xBA, "invokedynamic", OperandType.INVOKEDYNAMIC),
 
     //
@@ -362,9 +366,40 @@ public enum Opcode {
 
     ;
 
+    /**
+     * Эффект на стек зависит от дескриптора из constant pool
+     * (поля, вызовы) или от операндов (multianewarray, wide).
+     */
+    public static final int VARIES = -1;
+
+    // Флаги управления потоком и вида инструкции
+    private static final int F_BRANCH = 1;
+    private static final int F_CONDITIONAL = 1 << 1;
+    private static final int F_UNCONDITIONAL = 1 << 2;
+    private static final int F_SWITCH = 1 << 3;
+    private static final int F_RETURN = 1 << 4;
+    private static final int F_THROW = 1 << 5;
+    private static final int F_TERMINATOR = 1 << 6;
+    private static final int F_INVOKE = 1 << 7;
+    private static final int F_FIELD_ACCESS = 1 << 8;
+    private static final int F_LOCAL_LOAD = 1 << 9;
+    private static final int F_LOCAL_STORE = 1 << 10;
+    private static final int F_SUBROUTINE = 1 << 11;
+
+    private static final Opcode[] BY_CODE = new Opcode[256];
+
+    static {
+        for (Opcode op : values()) {
+            BY_CODE[op.code] = op;
+        }
+    }
+
     private final int code;
     private final String mnemonic;
     private final OperandType operandType;
+    private final int stackPop;
+    private final int stackPush;
+    private final int flags;
 
     Opcode(int code, String mnemonic) {
         this(code, mnemonic, OperandType.NONE);
@@ -374,6 +409,10 @@ public enum Opcode {
         this.code = code;
         this.mnemonic = mnemonic;
         this.operandType = operandType;
+        int effect = stackEffect(code);
+        this.stackPop = effect >> 8;
+        this.stackPush = (byte) effect;
+        this.flags = flagsOf(code);
     }
 
     public int code() {
@@ -388,10 +427,197 @@ public enum Opcode {
         return operandType;
     }
 
+    /**
+     * Полная длина инструкции в байтах (вместе с опкодом)
+     * или {@link #VARIES} для switch-таблиц и wide.
+     */
+    public int length() {
+        return operandType.isFixedLength() ? 1 + operandType.length() : VARIES;
+    }
+
+    /**
+     * Сколько слотов снимает со стека или {@link #VARIES}.
+     */
+    public int stackPop() {
+        return stackPop;
+    }
+
+    /**
+     * Сколько слотов кладет на стек или {@link #VARIES}.
+     */
+    public int stackPush() {
+        return stackPush;
+    }
+
+    /**
+     * Любой переход: условный, безусловный, switch, jsr.
+     */
+    public boolean isBranch() {
+        return (flags & F_BRANCH) != 0;
+    }
+
+    /**
+     * Условный переход с двумя исходами (if*, if_icmp*, if_acmp*, ifnull/ifnonnull).
+     */
+    public boolean isConditional() {
+        return (flags & F_CONDITIONAL) != 0;
+    }
+
+    /**
+     * goto / goto_w.
+     */
+    public boolean isUnconditionalJump() {
+        return (flags & F_UNCONDITIONAL) != 0;
+    }
+
+    public boolean isSwitch() {
+        return (flags & F_SWITCH) != 0;
+    }
+
+    /**
+     * *return (без athrow).
+     */
+    public boolean isReturn() {
+        return (flags & F_RETURN) != 0;
+    }
+
+    public boolean isThrow() {
+        return (flags & F_THROW) != 0;
+    }
+
+    /**
+     * После инструкции нет fallthrough: goto, switch, return, athrow, ret.
+     */
+    public boolean isTerminator() {
+        return (flags & F_TERMINATOR) != 0;
+    }
+
+    /**
+     * Выход из метода: return или athrow.
+     */
+    public boolean isExit() {
+        return (flags & (F_RETURN | F_THROW)) != 0;
+    }
+
+    public boolean isInvoke() {
+        return (flags & F_INVOKE) != 0;
+    }
+
+    public boolean isFieldAccess() {
+        return (flags & F_FIELD_ACCESS) != 0;
+    }
+
+    public boolean isLocalLoad() {
+        return (flags & F_LOCAL_LOAD) != 0;
+    }
+
+    public boolean isLocalStore() {
+        return (flags & F_LOCAL_STORE) != 0;
+    }
+
+    /**
+     * jsr / jsr_w / ret.
+     */
+    public boolean isSubroutine() {
+        return (flags & F_SUBROUTINE) != 0;
+    }
+
     public static Opcode fromCode(int code) {
-        for (Opcode op : values()) {
-            if (op.code == code) return op;
+        return (code & ~0xFF) == 0 ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Эффект на стек, упакованный как (pop << 8) | (push & 0xFF).
+     */
+    private static int stackEffect(int code) {
+        return switch (code) {
+            // константы и загрузки
+            case 0x00, 0x84, 0xA7, 0xA9, 0xB1, 0xC8 -> effect(0, 0);
+            case 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08,
+                 0x0B, 0x0C, 0x0D, 0x10, 0x11, 0x12, 0x13,
+                 0x15, 0x17, 0x19,
+                 0x1A, 0x1B, 0x1C, 0x1D, 0x22, 0x23, 0x24, 0x25, 0x2A, 0x2B, 0x2C, 0x2D,
+                 0xA8, 0xBB, 0xC9 -> effect(0, 1);
+            case 0x09, 0x0A, 0x0E, 0x0F, 0x14, 0x16, 0x18,
+                 0x1E, 0x1F, 0x20, 0x21, 0x26, 0x27, 0x28, 0x29 -> effect(0, 2);
+
+            // чтение из массивов
+            case 0x2E, 0x30, 0x32, 0x33, 0x34, 0x35 -> effect(2, 1);
+            case 0x2F, 0x31 -> effect(2, 2);
+
+            // сохранения в локальные
+            case 0x36, 0x38, 0x3A,
+                 0x3B, 0x3C, 0x3D, 0x3E, 0x43, 0x44, 0x45, 0x46, 0x4B, 0x4C, 0x4D, 0x4E,
+                 0x57, 0x99, 0x9A, 0x9B, 0x9C, 0x9D, 0x9E, 0xAA, 0xAB,
+                 0xAC, 0xAE, 0xB0, 0xBF, 0xC2, 0xC3, 0xC6, 0xC7 -> effect(1, 0);
+            case 0x37, 0x39, 0x3F, 0x40, 0x41, 0x42, 0x47, 0x48, 0x49, 0x4A,
+                 0x58, 0x9F, 0xA0, 0xA1, 0xA2, 0xA3, 0xA4, 0xA5, 0xA6,
+                 0xAD, 0xAF -> effect(2, 0);
+
+            // запись в массивы
+            case 0x4F, 0x51, 0x53, 0x54, 0x55, 0x56 -> effect(3, 0);
+            case 0x50, 0x52 -> effect(4, 0);
+
+            // операции со стеком
+            case 0x59 -> effect(1, 2);      // dup
+            case 0x5A -> effect(2, 3);      // dup_x1
+            case 0x5B -> effect(3, 4);      // dup_x2
+            case 0x5C -> effect(2, 4);      // dup2
+            case 0x5D -> effect(3, 5);      // dup2_x1
+            case 0x5E -> effect(4, 6);      // dup2_x2
+            case 0x5F -> effect(2, 2);      // swap
+
+            // арифметика
+            case 0x60, 0x62, 0x64, 0x66, 0x68, 0x6A, 0x6C, 0x6E, 0x70, 0x72,
+                 0x78, 0x7A, 0x7C, 0x7E, 0x80, 0x82, 0x95, 0x96 -> effect(2, 1);
+            case 0x61, 0x63, 0x65, 0x67, 0x69, 0x6B, 0x6D, 0x6F, 0x71, 0x73,
+                 0x7F, 0x81, 0x83 -> effect(4, 2);
+            case 0x79, 0x7B, 0x7D -> effect(3, 2); // сдвиги long на int
+            case 0x74, 0x76, 0x86, 0x8B, 0x91, 0x92, 0x93,
+                 0xBC, 0xBD, 0xBE, 0xC0, 0xC1 -> effect(1, 1);
+            case 0x75, 0x77, 0x8A, 0x8F -> effect(2, 2);
+
+            // преобразования и сравнения
+            case 0x85, 0x87, 0x8C, 0x8D -> effect(1, 2);
+            case 0x88, 0x89, 0x8E, 0x90 -> effect(2, 1);
+            case 0x94, 0x97, 0x98 -> effect(4, 1);
+
+            // поля
+            case 0xB2 -> effect(0, VARIES);
+            case 0xB4 -> effect(1, VARIES);
+            case 0xB3, 0xB5 -> effect(VARIES, 0);
+
+            // multianewarray: dimensions int-ов -> ссылка
+            case 0xC5 -> effect(VARIES, 1);
+
+            // вызовы, wide
+            default -> effect(VARIES, VARIES);
+        };
+    }
+
+    private static int effect(int pop, int push) {
+        return (pop << 8) | (push & 0xFF);
+    }
+
+    private static int flagsOf(int code) {
+        if (code >= 0x99 && code <= 0xA6 || code == 0xC6 || code == 0xC7) {
+            return F_BRANCH | F_CONDITIONAL;
         }
-        return null;
+        return switch (code) {
+            case 0xA7, 0xC8 -> F_BRANCH | F_UNCONDITIONAL | F_TERMINATOR;
+            case 0xA8, 0xC9 -> F_BRANCH | F_SUBROUTINE;
+            case 0xA9 -> F_SUBROUTINE | F_TERMINATOR | F_LOCAL_LOAD;
+            case 0xAA, 0xAB -> F_BRANCH | F_SWITCH | F_TERMINATOR;
+            case 0xAC, 0xAD, 0xAE, 0xAF, 0xB0, 0xB1 -> F_RETURN | F_TERMINATOR;
+            case 0xBF -> F_THROW | F_TERMINATOR;
+            case 0xB2, 0xB3, 0xB4, 0xB5 -> F_FIELD_ACCESS;
+            case 0xB6, 0xB7, 0xB8, 0xB9, 0xBA -> F_INVOKE;
+            default -> {
+                if (code >= 0x15 && code <= 0x2D) yield F_LOCAL_LOAD;
+                if (code >= 0x36 && code <= 0x4E) yield F_LOCAL_STORE;
+                if (code == 0x84) yield F_LOCAL_LOAD | F_LOCAL_STORE;
+                yield 0;
+            }
+        };
     }
 }
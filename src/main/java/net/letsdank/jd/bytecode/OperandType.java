@@ -5,27 +5,46 @@ package net.letsdank.jd.bytecode;
  */
 public enum OperandType {
     // без операндов
-    NONE,
+    NONE(0),
 
     // индексы локальных переменных
-    LOCAL_INDEX_U1, // 1 байт: индекс локальной переменной
-    LOCAL_INDEX_U2, // 2 байта: используется с wide/ret и т.п.
+    LOCAL_INDEX_U1(1), // 1 байт: индекс локальной переменной
+    LOCAL_INDEX_U2(2), // 2 байта: используется с wide/ret и т.п.
 
     // непосредственные значения
-    BYTE_IMM,       // 1-байтовый immediate (bipush)
-    SHORT_IMM,      // 2-байтовый immediate (sipush)
+    BYTE_IMM(1),       // 1-байтовый immediate (bipush)
+    SHORT_IMM(2),      // 2-байтовый immediate (sipush)
 
     // индексы в constant pool
-    CONSTPOOL_U1,   // 1 байт: индекс в constant pool
-    CONSTPOOL_U2,   // 2 байта: индекс в constant pool
+    CONSTPOOL_U1(1),   // 1 байт: индекс в constant pool
+    CONSTPOOL_U2(2),   // 2 байта: индекс в constant pool
 
     // спец-форматы
-    IINC,           // index:u1, const:s1
-    BRANCH_S2,      // относительный переход на short (if_xxx, goto, jsr)
-    BRANCH_S4,      // относительный переход на int (goto_w, jsr_w)
-    TABLESWITCH,    // сложный формат с padding'ом
-    LOOKUPSWITCH,   // сложный формат с padding'ом
-    INVOKEDYNAMIC,  // cp_index:u2, 0:u2
-    MULTIANEWARRAY, // cp_index:u2, dimensions:u1
-    WIDE            // префикс, модифицирующий следующий opcode
+    IINC(2),           // index:u1, const:s1
+    BRANCH_S2(2),      // относительный переход на short (if_xxx, goto, jsr)
+    BRANCH_S4(4),      // относительный переход на int (goto_w, jsr_w)
+    TABLESWITCH(-1),   // сложный формат с padding'ом
+    LOOKUPSWITCH(-1),  // сложный формат с padding'ом
+    INVOKEINTERFACE(4), // cp_index:u2, count:u1, 0:u1
+    INVOKEDYNAMIC(4),  // cp_index:u2, 0:u2
+    MULTIANEWARRAY(3), // cp_index:u2, dimensions:u1
+    WIDE(-1);          // префикс, модифицирующий следующий opcode
+
+    private final int length;
+
+    OperandType(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Длина операндов в байтах или -1, если она зависит от позиции
+     * и содержимого (switch-таблицы, wide).
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isFixedLength() {
+        return length >= 0;
+    }
 }
@@ -0,0 +1,83 @@
+package net.letsdank.jd.bytecode;
+
+/**
+ * Представление таблицы кейсов tableswitch/lookupswitch прямо поверх байткода.
+ * <p>
+ * Ключи и таргеты читаются из массива по запросу, поэтому объект не
+ * копирует таблицу. Декодер переиспользует один экземпляр на весь проход.
+ */
+public final class SwitchTable {
+    private byte[] code;
+    private int insnOffset;
+    private int dataOffset;
+    private int size;
+    private int low;
+    private boolean lookup;
+
+    SwitchTable() {
+    }
+
+    void resetTable(byte[] code, int insnOffset, int dataOffset, int low, int size) {
+        this.code = code;
+        this.insnOffset = insnOffset;
+        this.dataOffset = dataOffset;
+        this.low = low;
+        this.size = size;
+        this.lookup = false;
+    }
+
+    void resetLookup(byte[] code, int insnOffset, int dataOffset, int size) {
+        this.code = code;
+        this.insnOffset = insnOffset;
+        this.dataOffset = dataOffset;
+        this.low = 0;
+        this.size = size;
+        this.lookup = true;
+    }
+
+    /**
+     * Количество кейсов (без default).
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isLookup() {
+        return lookup;
+    }
+
+    /**
+     * Нижняя граница tableswitch (для lookupswitch всегда 0).
+     */
+    public int low() {
+        return low;
+    }
+
+    /**
+     * Значение i-го кейса.
+     */
+    public int key(int i) {
+        checkIndex(i);
+        return lookup ? readInt(dataOffset + i * 8) : low + i;
+    }
+
+    /**
+     * Абсолютный адрес перехода для i-го кейса.
+     */
+    public int target(int i) {
+        checkIndex(i);
+        int pos = lookup ? dataOffset + i * 8 + 4 : dataOffset + i * 4;
+        return insnOffset + readInt(pos);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("case " + i + " out of bounds for size " + size);
+        }
+    }
+
+    private int readInt(int pos) {
+        return ((code[pos] & 0xFF) << 24) | ((code[pos + 1] & 0xFF) << 16)
+                | ((code[pos + 2] & 0xFF) << 8) | (code[pos + 3] & 0xFF);
+    }
+}
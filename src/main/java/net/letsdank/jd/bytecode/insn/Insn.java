@@ -1,11 +1,18 @@
 package net.letsdank.jd.bytecode.insn;
 
+import net.letsdank.jd.bytecode.Opcode;
+
 /**
  * Базовый интерфейс инструкции.
  */
 public sealed interface Insn
         permits SimpleInsn, LocalVarInsn, IntOperandInsn,
         JumpInsn, ConstantPoolInsn, UnknownInsn, IincInsn,
-        TableSwitchInsn, LookupSwitchInsn {
+        SwitchInsn {
     int offset();
+
+    /**
+     * Опкод инструкции или {@code null} для {@link UnknownInsn}.
+     */
+    Opcode opcode();
 }
@@ -2,25 +2,28 @@ package net.letsdank.jd.bytecode.insn;
 
 import net.letsdank.jd.bytecode.Opcode;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
- * Инструкция LOOKUPSWITCH: хранит default-таргет и пары (match -> target).
+ * Инструкция LOOKUPSWITCH: хранит default-таргет и пары (match -> target)
+ * в двух параллельных массивах, отсортированных по match (как в байткоде).
  */
-public final class LookupSwitchInsn implements Insn {
+public final class LookupSwitchInsn implements SwitchInsn {
     private final int offset;
-    private final Opcode opcode;
     private final int defaultTarget;
-    private final Map<Integer, Integer> matchTargets; // match -> targetOffset
+    private final int[] keys;
+    private final int[] targets;
 
-    public LookupSwitchInsn(int offset, int defaultTarget, Map<Integer, Integer> matchTargets) {
+    public LookupSwitchInsn(int offset, int defaultTarget, int[] keys, int[] targets) {
+        if (keys.length != targets.length) {
+            throw new IllegalArgumentException("keys/targets length mismatch: " + keys.length + " vs " + targets.length);
+        }
         this.offset = offset;
-        this.opcode = Opcode.LOOKUPSWITCH;
         this.defaultTarget = defaultTarget;
-        this.matchTargets = Collections.unmodifiableMap(new LinkedHashMap<>(matchTargets));
+        this.keys = keys;
+        this.targets = targets;
     }
 
     @Override
@@ -28,19 +31,46 @@ public final class LookupSwitchInsn implements Insn {
         return offset;
     }
 
+    @Override
     public Opcode opcode() {
-        return opcode;
+        return Opcode.LOOKUPSWITCH;
     }
 
+    @Override
     public int defaultTarget() {
         return defaultTarget;
     }
 
-    public Map<Integer, Integer> matchTargets() {
-        return matchTargets;
+    @Override
+    public int caseCount() {
+        return keys.length;
+    }
+
+    @Override
+    public int key(int i) {
+        return keys[i];
+    }
+
+    @Override
+    public int target(int i) {
+        return targets[i];
+    }
+
+    /**
+     * Значения match по порядку; массив общий, не модифицировать.
+     */
+    public int[] keys() {
+        return keys;
+    }
+
+    /**
+     * Таргеты, параллельные {@link #keys()}; массив общий, не модифицировать.
+     */
+    public int[] targets() {
+        return targets;
     }
 
     public Set<Integer> distinctTargets() {
-        return Set.copyOf(matchTargets.values());
+        return IntStream.of(targets).boxed().collect(Collectors.toUnmodifiableSet());
     }
 }
@@ -0,0 +1,24 @@
+package net.letsdank.jd.bytecode.insn;
+
+/**
+ * Общий вид TABLESWITCH/LOOKUPSWITCH: default-таргет и кейсы (key -> target)
+ * в порядке из байткода. Все таргеты - абсолютные адреса.
+ */
+public sealed interface SwitchInsn extends Insn permits TableSwitchInsn, LookupSwitchInsn {
+    int defaultTarget();
+
+    /**
+     * Количество кейсов (без default).
+     */
+    int caseCount();
+
+    /**
+     * Значение i-го кейса.
+     */
+    int key(int i);
+
+    /**
+     * Абсолютный адрес перехода для i-го кейса.
+     */
+    int target(int i);
+}
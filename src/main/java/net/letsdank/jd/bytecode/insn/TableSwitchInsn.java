@@ -2,30 +2,26 @@ package net.letsdank.jd.bytecode.insn;
 
 import net.letsdank.jd.bytecode.Opcode;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Инструкция TABLESWITCH: хранит default-таргет и диапазон low..high,
  * а также абсолютные адреса таргетов для каждого кейса.
+ * Ключи не хранятся: i-й кейс - это {@code low + i}.
  */
-public final class TableSwitchInsn implements Insn {
+public final class TableSwitchInsn implements SwitchInsn {
     private final int offset;
-    private final Opcode opcode;
     private final int defaultTarget;
     private final int low;
-    private final int high;
-    private final Map<Integer, Integer> caseTargets; // value -> targetOffset
+    private final int[] targets; // targets[value - low] = targetOffset
 
-    public TableSwitchInsn(int offset, int defaultTarget, int low, int high, Map<Integer, Integer> caseTargets) {
+    public TableSwitchInsn(int offset, int defaultTarget, int low, int[] targets) {
         this.offset = offset;
-        this.opcode = Opcode.TABLESWITCH;
         this.defaultTarget = defaultTarget;
         this.low = low;
-        this.high = high;
-        this.caseTargets = Collections.unmodifiableMap(new LinkedHashMap<>(caseTargets));
+        this.targets = targets;
     }
 
     @Override
@@ -33,10 +29,12 @@ public final class TableSwitchInsn implements Insn {
         return offset;
     }
 
+    @Override
     public Opcode opcode() {
-        return opcode;
+        return Opcode.TABLESWITCH;
     }
 
+    @Override
     public int defaultTarget() {
         return defaultTarget;
     }
@@ -46,14 +44,32 @@ public final class TableSwitchInsn implements Insn {
     }
 
     public int high() {
-        return high;
+        return low + targets.length - 1;
+    }
+
+    @Override
+    public int caseCount() {
+        return targets.length;
+    }
+
+    @Override
+    public int key(int i) {
+        return low + i;
+    }
+
+    @Override
+    public int target(int i) {
+        return targets[i];
     }
 
-    public Map<Integer, Integer> caseTargets() {
-        return caseTargets;
+    /**
+     * Таргеты кейсов по порядку; массив общий, не модифицировать.
+     */
+    public int[] targets() {
+        return targets;
     }
 
     public Set<Integer> distinctTargets() {
-        return Set.copyOf(caseTargets.values());
+        return IntStream.of(targets).boxed().collect(Collectors.toUnmodifiableSet());
     }
 }
@@ -1,9 +1,18 @@
 package net.letsdank.jd.bytecode.insn;
 
+import net.letsdank.jd.bytecode.Opcode;
+
 /**
  * Инструкция, которую мы не умеем декодировать.
  * Используем, чтобы не "ломать" декодер на сложных методах:
  * он остановится на этой точке.
  */
 public record UnknownInsn(int offset, int opcodeByte, byte[] remainingBytes) implements Insn {
+    /**
+     * Семантика нераспознанной инструкции неизвестна, поэтому опкода нет.
+     */
+    @Override
+    public Opcode opcode() {
+        return null;
+    }
 }
@@ -8,12 +8,18 @@ import java.util.List;
 
 /**
  * Базовый блок: последовательность инструкций без ветвлений внутри.
+ * <p>
+ * Аксессоры ничего не выделяют: инструкции - неизменяемое окно в общий
+ * список инструкций метода, списки successors и обработчиков обернуты один раз.
  */
 public final class BasicBlock {
     private final int id;
     private final int startOffset;
-    private final List<Insn> instructions = new ArrayList<>();
-    private final List<BasicBlock> successors = new ArrayList<>();
+    private List<Insn> instructions = List.of();
+    private final List<BasicBlock> successors = new ArrayList<>(2);
+    private final List<BasicBlock> successorsView = Collections.unmodifiableList(successors);
+    private final List<ExceptionEdge> exceptionSuccessors = new ArrayList<>(0);
+    private final List<ExceptionEdge> exceptionSuccessorsView = Collections.unmodifiableList(exceptionSuccessors);
 
     public BasicBlock(int id, int startOffset) {
         this.id = id;
@@ -29,21 +35,37 @@ public final class BasicBlock {
     }
 
     public List<Insn> instructions() {
-        return Collections.unmodifiableList(instructions);
+        return instructions;
     }
 
     public List<BasicBlock> successors() {
-        return Collections.unmodifiableList(successors);
+        return successorsView;
     }
 
-    void addInstruction(Insn insn) {
-        instructions.add(insn);
+    /**
+     * Обработчики, в которые может уйти исключение из этого блока,
+     * в порядке exception_table (первый подходящий побеждает).
+     */
+    public List<ExceptionEdge> exceptionSuccessors() {
+        return exceptionSuccessorsView;
     }
 
+    /**
+     * range - окно в список инструкций метода, которым владеет CfgBuilder.
+     */
+    void setInstructions(List<Insn> range) {
+        instructions = Collections.unmodifiableList(range);
+    }
+
+    /**
+     * Без проверки на повтор: вызывающий сам гарантирует, что succ новый.
+     */
     void addSuccessor(BasicBlock succ) {
-        if (!successors.contains(succ)) {
-            successors.add(succ);
-        }
+        successors.add(succ);
+    }
+
+    void addExceptionSuccessor(ExceptionEdge edge) {
+        exceptionSuccessors.add(edge);
     }
 
     @Override
@@ -3,8 +3,10 @@ package net.letsdank.jd.cfg;
 import net.letsdank.jd.bytecode.BytecodeDecoder;
 import net.letsdank.jd.bytecode.Opcode;
 import net.letsdank.jd.bytecode.insn.*;
+import net.letsdank.jd.model.attribute.CodeAttribute;
 
 import java.util.*;
+import java.util.function.IntPredicate;
 
 /**
  * Строит CFG (basic blocks) по байткоду метода.
@@ -14,56 +16,170 @@ public final class CfgBuilder {
 
     public ControlFlowGraph build(byte[] code) {
         List<Insn> insns = decoder.decode(code);
-        return buildFromInsns(insns);
+        return build(code, insns, BytecodeDecoder.pcToIndex(insns, code.length));
+    }
+
+    /**
+     * CFG метода вместе с исключительными ребрами из его exception_table;
+     * блоки режутся и по границам защищенных диапазонов.
+     */
+    public ControlFlowGraph build(CodeAttribute codeAttr) {
+        byte[] code = codeAttr.code();
+        List<Insn> insns = decoder.decode(code);
+        return build(code, insns, BytecodeDecoder.pcToIndex(insns, code.length),
+                codeAttr.exceptionTable(), true);
+    }
+
+    /**
+     * Строит CFG метода по байткоду и уже декодированным из него инструкциям.
+     * Лидеры собираются по тем же инструкциям: второго прохода по байтам нет.
+     */
+    public ControlFlowGraph build(byte[] code, List<Insn> insns, int[] pcToIndex) {
+        return build(code, insns, pcToIndex, List.of(), false);
+    }
+
+    /**
+     * То же, но с учетом exception_table. Начало обработчика всегда становится
+     * лидером, и каждый блок, пересекающий защищенный диапазон, получает
+     * {@link ExceptionEdge} в обработчик.
+     * <p>
+     * С splitRanges лидерами становятся и границы startPc/endPc, так что блок
+     * либо целиком внутри диапазона, либо целиком вне его. Без этого блоки
+     * остаются такими же, как без exception_table (кроме обработчиков): на
+     * это рассчитаны шаблоны структуризации, которые ищут, например,
+     * monitorenter и monitorexit в одном блоке.
+     */
+    public ControlFlowGraph build(byte[] code, List<Insn> insns, int[] pcToIndex,
+                                  List<CodeAttribute.ExceptionTableEntry> exceptionTable,
+                                  boolean splitRanges) {
+        return build(code, insns, pcToIndex, exceptionTable, pc -> splitRanges);
+    }
+
+    /**
+     * То же, но границу защищенного диапазона по адресу pc делаем лидером,
+     * только если splitAt ее пропускает. Так вызывающий может резать блоки
+     * лишь там, где это не рвет выражение на стеке.
+     */
+    public ControlFlowGraph build(byte[] code, List<Insn> insns, int[] pcToIndex,
+                                  List<CodeAttribute.ExceptionTableEntry> exceptionTable,
+                                  IntPredicate splitAt) {
+        if (insns.isEmpty()) {
+            return new ControlFlowGraph(List.of(), null, pcToIndex, new int[0]);
+        }
+        BitSet leaders = leaders(insns, code.length);
+        if (exceptionTable == null || exceptionTable.isEmpty()) {
+            return buildBlocks(insns, pcToIndex, leaders.stream().toArray());
+        }
+
+        for (CodeAttribute.ExceptionTableEntry e : exceptionTable) {
+            // битые адреса (не начало инструкции) не трогаем: блока для них не будет
+            if (splitAt.test(e.startPc())) addInsnLeader(leaders, pcToIndex, e.startPc());
+            if (splitAt.test(e.endPc())) addInsnLeader(leaders, pcToIndex, e.endPc());
+            addInsnLeader(leaders, pcToIndex, e.handlerPc());
+        }
+        ControlFlowGraph cfg = buildBlocks(insns, pcToIndex, leaders.stream().toArray());
+
+        for (CodeAttribute.ExceptionTableEntry e : exceptionTable) {
+            BasicBlock handler = cfg.blockByStartOffset(e.handlerPc());
+            if (handler == null) continue;
+            ExceptionEdge edge = new ExceptionEdge(handler, e.catchTypeIndex());
+            BasicBlock from = cfg.blockAt(e.startPc());
+            for (int id = from == null ? cfg.blocks().size() : from.id(); id < cfg.blocks().size(); id++) {
+                BasicBlock bb = cfg.blocks().get(id);
+                if (bb.startOffset() >= e.endPc()) break;
+                bb.addExceptionSuccessor(edge);
+            }
+        }
+        return cfg;
+    }
+
+    private static void addInsnLeader(BitSet leaders, int[] pcToIndex, int pc) {
+        if (pc >= 0 && pc < pcToIndex.length && pcToIndex[pc] >= 0) {
+            leaders.set(pc);
+        }
     }
 
     public ControlFlowGraph buildFromInsns(List<Insn> insns) {
+        int end = insns.isEmpty() ? 0 : insns.getLast().offset() + 1;
+        return buildFromInsns(insns, BytecodeDecoder.pcToIndex(insns, end));
+    }
+
+    /**
+     * Строит CFG по уже декодированным инструкциям и готовой таблице
+     * {@link BytecodeDecoder#pcToIndex(List, int)} для них. В отличие от
+     * {@link #build(byte[], List, int[])} список может быть фрагментом метода
+     * (например, телом цикла), так что лидеры собираются по самим инструкциям.
+     */
+    public ControlFlowGraph buildFromInsns(List<Insn> insns, int[] pcToIndex) {
         if (insns.isEmpty()) {
-            return new ControlFlowGraph(List.of(), null, Map.of());
+            return new ControlFlowGraph(List.of(), null, pcToIndex, new int[0]);
         }
 
-        // 1. лидеры блоков
-        Set<Integer> leaders = new HashSet<>();
-        leaders.add(insns.get(0).offset());
+        // у фрагмента таргеты за его пределами тоже становятся блоками (пустыми)
+        return buildBlocks(insns, pcToIndex, leaders(insns, Integer.MAX_VALUE).stream().toArray());
+    }
+
+    /**
+     * Лидеры блоков: первая инструкция, таргеты переходов и switch-ей,
+     * инструкция после перехода. BitSet сразу дает их в порядке адресов;
+     * таргеты с адресом limit и дальше отбрасываются.
+     */
+    private static BitSet leaders(List<Insn> insns, int limit) {
+        BitSet leaders = new BitSet();
+        leaders.set(insns.get(0).offset());
 
         for (int i = 0; i < insns.size(); i++) {
             Insn insn = insns.get(i);
             if (insn instanceof JumpInsn j) {
-                leaders.add(j.targetOffset());
+                addLeader(leaders, j.targetOffset(), limit);
                 if (i + 1 < insns.size()) {
-                    leaders.add(insns.get(i + 1).offset());
+                    leaders.set(insns.get(i + 1).offset());
+                }
+            } else if (insn instanceof SwitchInsn sw) {
+                addLeader(leaders, sw.defaultTarget(), limit);
+                for (int k = 0; k < sw.caseCount(); k++) {
+                    addLeader(leaders, sw.target(k), limit);
                 }
-            } else if (insn instanceof TableSwitchInsn ts) {
-                leaders.add(ts.defaultTarget());
-                leaders.addAll(ts.caseTargets().values());
-            } else if (insn instanceof LookupSwitchInsn ls) {
-                leaders.add(ls.defaultTarget());
-                leaders.addAll(ls.matchTargets().values());
             }
         }
+        return leaders;
+    }
 
-        List<Integer> leaderList = new ArrayList<>(leaders);
-        Collections.sort(leaderList);
+    private static void addLeader(BitSet leaders, int offset, int limit) {
+        // отрицательный адрес бывает только в битом байткоде, блока для него нет
+        if (offset >= 0 && offset < limit) {
+            leaders.set(offset);
+        }
+    }
 
+    /**
+     * Общая часть построения: блоки по отсортированным лидерам, раскладка
+     * инструкций и successors.
+     */
+    private ControlFlowGraph buildBlocks(List<Insn> insns, int[] pcToIndex, int[] leaderOffsets) {
         // 2. создаем блоки
-        List<BasicBlock> blocks = new ArrayList<>();
-        Map<Integer, BasicBlock> byStart = new HashMap<>();
-
-        for (int i = 0; i < leaderList.size(); i++) {
-            int startOffset = leaderList.get(i);
-            BasicBlock bb = new BasicBlock(i, startOffset);
-            blocks.add(bb);
-            byStart.put(startOffset, bb);
+        List<BasicBlock> blocks = new ArrayList<>(leaderOffsets.length);
+        for (int i = 0; i < leaderOffsets.length; i++) {
+            blocks.add(new BasicBlock(i, leaderOffsets[i]));
         }
 
-        // 3. раскидываем инструкции по блокам
-        for (Insn insn : insns) {
-            BasicBlock owner = findOwnerBlockForInsn(blocks, insn.offset());
-            if (owner == null) {
-                // такого быть не должно, но на всякий случай
-                continue;
+        // 3. раскидываем инструкции по блокам: инструкции и лидеры отсортированы
+        //    по адресу, так что владелец - последний блок с startOffset <= offset,
+        //    а инструкции каждого блока идут подряд
+        int[] indexToBlock = new int[insns.size()];
+        int owner = -1;
+        for (int i = 0; i < insns.size(); i++) {
+            Insn insn = insns.get(i);
+            while (owner + 1 < blocks.size() && blocks.get(owner + 1).startOffset() <= insn.offset()) {
+                owner++;
             }
-            owner.addInstruction(insn);
+            indexToBlock[i] = owner;
+        }
+
+        ControlFlowGraph cfg = new ControlFlowGraph(blocks, blocks.get(0), pcToIndex, indexToBlock);
+        for (BasicBlock bb : blocks) {
+            // блок получает окно в общий список вместо своей копии инструкций
+            bb.setInstructions(insns.subList(cfg.firstInsnIndex(bb), cfg.endInsnIndex(bb)));
         }
 
         // 4. проставляем successors
@@ -74,7 +190,7 @@ public final class CfgBuilder {
             Insn last = bb.instructions().get(bb.instructions().size() - 1);
             if (last instanceof JumpInsn j) {
                 // переход на цель
-                BasicBlock target = byStart.get(j.targetOffset());
+                BasicBlock target = cfg.blockByStartOffset(j.targetOffset());
                 if (target != null) {
                     bb.addSuccessor(target);
                 }
@@ -85,24 +201,18 @@ public final class CfgBuilder {
                 } else {
                     // условный if_xxx - еще и fall-through блок
                     BasicBlock fallthrough = findNextBlock(blocks, bb);
-                    if (fallthrough != null) {
+                    // переход на следующий же блок дает одно ребро, а не два
+                    if (fallthrough != null && fallthrough != target) {
                         bb.addSuccessor(fallthrough);
                     }
                 }
-            } else if (last instanceof TableSwitchInsn ts) {
-                // switch: все таргеты + default
-                BasicBlock def = byStart.get(ts.defaultTarget());
-                if (def != null) bb.addSuccessor(def);
-                for (Integer t : ts.caseTargets().values()) {
-                    BasicBlock b = byStart.get(t);
-                    if (b != null) bb.addSuccessor(b);
-                }
-            } else if (last instanceof LookupSwitchInsn ls) {
-                BasicBlock def = byStart.get(ls.defaultTarget());
-                if (def != null) bb.addSuccessor(def);
-                for (Integer t : ls.matchTargets().values()) {
-                    BasicBlock b = byStart.get(t);
-                    if (b != null) bb.addSuccessor(b);
+            } else if (last instanceof SwitchInsn sw) {
+                // switch: все таргеты + default; у больших switch-ей много case-ов
+                // ведут в один блок, так что повторы отсекаем по id, а не через contains
+                BitSet seen = new BitSet(blocks.size());
+                addSwitchSuccessor(bb, cfg.blockByStartOffset(sw.defaultTarget()), seen);
+                for (int k = 0; k < sw.caseCount(); k++) {
+                    addSwitchSuccessor(bb, cfg.blockByStartOffset(sw.target(k)), seen);
                 }
             } else if (isReturn(last)) {
                 // return - нет successors
@@ -116,49 +226,27 @@ public final class CfgBuilder {
             }
         }
 
-        BasicBlock entry = blocks.get(0);
-        return new ControlFlowGraph(blocks, entry, byStart);
+        return cfg;
     }
 
-    private static BasicBlock findOwnerBlockForInsn(List<BasicBlock> blocks, int offset) {
-        // Блок с максимальным startOffset <= offset
-        BasicBlock result = null;
-        for (BasicBlock bb : blocks) {
-            if (bb.startOffset() <= offset) {
-                if (result == null || bb.startOffset() > result.startOffset()) {
-                    result = bb;
-                }
-            }
+    private static void addSwitchSuccessor(BasicBlock bb, BasicBlock target, BitSet seen) {
+        if (target != null && !seen.get(target.id())) {
+            seen.set(target.id());
+            bb.addSuccessor(target);
         }
-        return result;
     }
 
     private static BasicBlock findNextBlock(List<BasicBlock> blocks, BasicBlock current) {
-        for (int i = 0; i < blocks.size(); i++) {
-            if (blocks.get(i) == current) {
-                if (i + 1 < blocks.size()) {
-                    return blocks.get(i + 1);
-                }
-                return null;
-            }
-        }
-        return null;
+        int next = current.id() + 1;
+        return next < blocks.size() ? blocks.get(next) : null;
     }
 
     private static boolean isUnconditionalGoto(JumpInsn j) {
-        return j.opcode() == Opcode.GOTO;
+        return j.opcode().isUnconditionalJump();
     }
 
     private static boolean isReturn(Insn insn) {
-        if (insn instanceof SimpleInsn s) {
-            return s.opcode() == Opcode.RETURN
-                    || s.opcode() == Opcode.IRETURN
-                    || s.opcode() == Opcode.LRETURN
-                    || s.opcode() == Opcode.FRETURN
-                    || s.opcode() == Opcode.DRETURN
-                    || s.opcode() == Opcode.ARETURN
-                    || s.opcode() == Opcode.ATHROW;
-        }
-        return false;
+        Opcode op = insn.opcode();
+        return op != null && op.isExit();
     }
 }
@@ -0,0 +1,198 @@
+package net.letsdank.jd.cfg;
+
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.JumpInsn;
+import net.letsdank.jd.bytecode.insn.SwitchInsn;
+
+import java.util.*;
+
+/**
+ * Нормализация CFG перед структурным анализом, за линейное число шагов:
+ * <ul>
+ *     <li>цепочки блоков из одного goto сворачиваются: ребра в них ведут сразу
+ *     в конец цепочки;</li>
+ *     <li>недостижимые блоки (в том числе обойденные goto) выбрасываются;</li>
+ *     <li>блок, в который попадают только проваливаясь из соседа сверху,
+ *     сливается с ним, если у них одни и те же обработчики исключений.</li>
+ * </ul>
+ * Инструкции не меняются: блоки остаются окнами в общий список, а переходы
+ * на выброшенные goto-блоки разрешает {@link ControlFlowGraph#jumpTarget}.
+ * Если упрощать нечего, возвращается тот же граф.
+ */
+public final class CfgSimplifier {
+    private CfgSimplifier() {
+    }
+
+    public static ControlFlowGraph simplify(ControlFlowGraph cfg, List<Insn> insns, int[] pcToIndex) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        if (n == 0 || cfg.entryBlock() == null) return cfg;
+
+        int[] target = threadGotos(cfg);
+
+        // достижимость по свернутым ребрам и ребрам в обработчики
+        boolean[] reachable = new boolean[n];
+        boolean[] handler = new boolean[n];
+        int[] predCount = new int[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        stack[sp++] = cfg.entryBlock().id();
+        reachable[cfg.entryBlock().id()] = true;
+        BitSet seen = new BitSet(n);
+        while (sp > 0) {
+            BasicBlock bb = blocks.get(stack[--sp]);
+            seen.clear();
+            for (BasicBlock s : bb.successors()) {
+                int t = target[s.id()];
+                if (seen.get(t)) continue;
+                seen.set(t);
+                predCount[t]++;
+                if (!reachable[t]) {
+                    reachable[t] = true;
+                    stack[sp++] = t;
+                }
+            }
+            for (ExceptionEdge e : bb.exceptionSuccessors()) {
+                int h = e.handler().id();
+                handler[h] = true;
+                if (!reachable[h]) {
+                    reachable[h] = true;
+                    stack[sp++] = h;
+                }
+            }
+        }
+
+        // группы слияния: group[b] - первый блок группы или -1 для выброшенного
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int groups = 0;
+        boolean changed = false;
+        for (int b = 0; b < n; b++) {
+            if (!reachable[b]) {
+                changed = true;
+                continue;
+            }
+            int prev = b - 1;
+            if (prev >= 0 && reachable[prev] && joinsPrevious(cfg, blocks.get(prev), blocks.get(b),
+                    target, predCount[b], handler[b])) {
+                group[b] = group[prev];
+                changed = true;
+            } else {
+                group[b] = b;
+                groups++;
+            }
+        }
+        if (!changed) return cfg;
+
+        // новые блоки: id по порядку адресов, инструкции - общий отрезок группы
+        int[] newId = new int[n];
+        List<BasicBlock> result = new ArrayList<>(groups);
+        int[] indexToBlock = new int[cfg.instructionCount()];
+        Arrays.fill(indexToBlock, -1);
+        for (int b = 0; b < n; b++) {
+            if (group[b] < 0) continue;
+            if (group[b] == b) {
+                newId[b] = result.size();
+                result.add(new BasicBlock(newId[b], blocks.get(b).startOffset()));
+            } else {
+                newId[b] = newId[group[b]];
+            }
+            Arrays.fill(indexToBlock, cfg.firstInsnIndex(blocks.get(b)), cfg.endInsnIndex(blocks.get(b)), newId[b]);
+        }
+        for (int b = 0; b < n; b++) {
+            if (group[b] != b) continue;
+            BasicBlock first = blocks.get(b);
+            int last = b;
+            while (last + 1 < n && group[last + 1] == b) last++;
+            BasicBlock nb = result.get(newId[b]);
+            nb.setInstructions(insns.subList(cfg.firstInsnIndex(first), cfg.endInsnIndex(blocks.get(last))));
+            seen.clear();
+            for (BasicBlock s : blocks.get(last).successors()) {
+                int t = newId[target[s.id()]];
+                if (seen.get(t)) continue;
+                seen.set(t);
+                nb.addSuccessor(result.get(t));
+            }
+            for (ExceptionEdge e : first.exceptionSuccessors()) {
+                nb.addExceptionSuccessor(new ExceptionEdge(result.get(newId[e.handler().id()]), e.catchTypeIndex()));
+            }
+        }
+
+        Map<Integer, BasicBlock> forwarded = new HashMap<>();
+        for (int b = 0; b < n; b++) {
+            if (group[b] < 0 && target[b] != b && group[target[b]] >= 0) {
+                forwarded.put(blocks.get(b).startOffset(), result.get(newId[target[b]]));
+            }
+        }
+        return new ControlFlowGraph(result, result.get(newId[cfg.entryBlock().id()]),
+                pcToIndex, indexToBlock, forwarded);
+    }
+
+    /**
+     * Конец цепочки goto для каждого блока (сам блок, если он не goto).
+     * Каждый блок проходится один раз; на цикле из goto цепочка остается как есть.
+     */
+    private static int[] threadGotos(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        int[] target = new int[n];
+        // 0 - не смотрели, 1 - на текущем пути, 2 - готово
+        byte[] state = new byte[n];
+        int[] path = new int[n];
+        for (int b = 0; b < n; b++) {
+            if (state[b] == 2) continue;
+            int len = 0;
+            int cur = b;
+            int end;
+            while (true) {
+                if (state[cur] == 2) {
+                    end = target[cur];
+                    break;
+                }
+                if (state[cur] == 1) {
+                    // цикл из goto: его блоки ведут сами в себя
+                    end = -1;
+                    break;
+                }
+                if (!isGotoOnly(cfg, blocks.get(cur))) {
+                    end = cur;
+                    target[cur] = cur;
+                    state[cur] = 2;
+                    break;
+                }
+                state[cur] = 1;
+                path[len++] = cur;
+                cur = blocks.get(cur).successors().getFirst().id();
+            }
+            for (int k = 0; k < len; k++) {
+                target[path[k]] = end < 0 ? path[k] : end;
+                state[path[k]] = 2;
+            }
+        }
+        return target;
+    }
+
+    private static boolean isGotoOnly(ControlFlowGraph cfg, BasicBlock bb) {
+        List<Insn> insns = bb.instructions();
+        return insns.size() == 1 && insns.getFirst() instanceof JumpInsn j
+                && j.opcode().isUnconditionalJump() && bb.successors().size() == 1
+                && bb != cfg.entryBlock() && !cfg.isHandlerBlock(bb);
+    }
+
+    /**
+     * Можно ли приклеить b к блоку над ним: prev просто проваливается в b,
+     * больше в b никто не входит и обработчики у них общие.
+     */
+    private static boolean joinsPrevious(ControlFlowGraph cfg, BasicBlock prev, BasicBlock b,
+                                         int[] target, int predCount, boolean handler) {
+        if (handler || predCount != 1 || b == cfg.entryBlock() || b.instructions().isEmpty()) return false;
+        List<Insn> insns = prev.instructions();
+        if (insns.isEmpty() || cfg.endInsnIndex(prev) != cfg.firstInsnIndex(b)) return false;
+        Insn last = insns.getLast();
+        Opcode op = last.opcode();
+        if (last instanceof JumpInsn || last instanceof SwitchInsn || (op != null && op.isExit())) return false;
+        return prev.successors().size() == 1 && target[prev.successors().getFirst().id()] == b.id()
+                && prev.exceptionSuccessors().equals(b.exceptionSuccessors());
+    }
+}
@@ -1,33 +1,418 @@
 package net.letsdank.jd.cfg;
 
+import net.letsdank.jd.cfg.dominance.DominatorTree;
+import net.letsdank.jd.cfg.loop.LoopForest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * CFG одного метода.
+ * <p>
+ * Кроме списка блоков хранит две плоские таблицы, чтобы запросы по адресу
+ * были обычными чтениями из массива:
+ * <ul>
+ *     <li>{@code pcToIndex[pc]} - номер инструкции, начинающейся по адресу pc, или -1;</li>
+ *     <li>{@code indexToBlock[i]} - id блока, которому принадлежит i-я инструкция.</li>
+ * </ul>
+ * Id блоков совпадают с их позицией в {@link #blocks()}, блоки упорядочены по адресу,
+ * так что инструкции блока - непрерывный отрезок
+ * [{@link #firstInsnIndex}, {@link #endInsnIndex}) в списке инструкций метода.
+ * <p>
+ * Предшественники, порядки обхода (postorder / reverse postorder от входа),
+ * деревья доминаторов, лес циклов и приводимость считаются лениво при первом обращении
+ * и кешируются: после построения ребра графа не меняются.
+ * <p>
+ * Ребра бывают обычные ({@link BasicBlock#successors()}, {@link #predecessors})
+ * и исключительные ({@link BasicBlock#exceptionSuccessors()}).
+ * Обход, доминаторы и циклы идут по тем и другим ({@link #allSuccessors},
+ * {@link #allPredecessors}), иначе обработчики оказались бы недостижимы.
+ * Пост-доминаторы и подсчет предшественников для поиска join-блоков -
+ * только по обычным. Для плотных обходов те же ребра доступны как
+ * {@link CsrGraph} по id блоков ({@link #edges()}, {@link #allEdges()},
+ * {@link #exceptionEdges()}).
+ * <p>
+ * Граф после {@link CfgSimplifier} может не покрывать часть инструкций
+ * (выброшенный недостижимый код: для них {@link #blockOfInsn} - null),
+ * а переходы на выброшенные goto-блоки разрешаются через {@link #jumpTarget}.
  */
 public final class ControlFlowGraph {
     private final List<BasicBlock> blocks;
     private final BasicBlock entryBlock;
-    private final Map<Integer, BasicBlock> blocksByStartOffset;
+    private final int[] pcToIndex;
+    private final int[] indexToBlock;
+    // blockStart[id] - номер первой инструкции блока, blockEnd[id] - за последней
+    private final int[] blockStart;
+    private final int[] blockEnd;
+    // адрес выброшенного блока -> блок, куда он на самом деле ведет
+    private final Map<Integer, BasicBlock> forwarded;
+
+    private CsrGraph edges;
+    private CsrGraph allEdges;
+    private CsrGraph exceptionEdges;
+    private List<List<BasicBlock>> predecessors;
+    private List<List<BasicBlock>> allSuccessors;
+    private List<List<BasicBlock>> allPredecessors;
+    private List<BasicBlock> postorder;
+    private List<BasicBlock> reversePostorder;
+    private int[] rpoNumber;
+    private DominatorTree dominators;
+    private DominatorTree postDominators;
+    private LoopForest loops;
+    private Boolean reducible;
 
     public ControlFlowGraph(List<BasicBlock> blocks, BasicBlock entryBlock,
-                            Map<Integer, BasicBlock> blocksByStartOffset) {
+                            int[] pcToIndex, int[] indexToBlock) {
+        this(blocks, entryBlock, pcToIndex, indexToBlock, Map.of());
+    }
+
+    ControlFlowGraph(List<BasicBlock> blocks, BasicBlock entryBlock,
+                     int[] pcToIndex, int[] indexToBlock, Map<Integer, BasicBlock> forwarded) {
         this.blocks = List.copyOf(blocks);
         this.entryBlock = entryBlock;
-        this.blocksByStartOffset = Map.copyOf(blocksByStartOffset);
+        this.pcToIndex = pcToIndex;
+        this.indexToBlock = indexToBlock;
+        this.forwarded = Map.copyOf(forwarded);
+        this.blockStart = new int[this.blocks.size()];
+        this.blockEnd = new int[this.blocks.size()];
+        blockRanges(indexToBlock, blockStart, blockEnd);
     }
 
     public List<BasicBlock> blocks() {
-        return Collections.unmodifiableList(blocks);
+        // List.copyOf уже неизменяемый, обертка на каждый вызов не нужна
+        return blocks;
     }
 
     public BasicBlock entryBlock() {
         return entryBlock;
     }
 
+    /**
+     * Количество инструкций, разложенных по блокам.
+     */
+    public int instructionCount() {
+        return indexToBlock.length;
+    }
+
+    /**
+     * Номер первой инструкции блока (для пустого - номер, где он был бы).
+     */
+    public int firstInsnIndex(BasicBlock bb) {
+        return blockStart[bb.id()];
+    }
+
+    /**
+     * Номер инструкции сразу за последней инструкцией блока.
+     */
+    public int endInsnIndex(BasicBlock bb) {
+        return blockEnd[bb.id()];
+    }
+
+    /**
+     * Номер инструкции, начинающейся по адресу pc, или -1.
+     */
+    public int insnIndexAt(int pc) {
+        if (pc < 0 || pc >= pcToIndex.length) return -1;
+        return pcToIndex[pc];
+    }
+
+    /**
+     * Блок, содержащий i-ю инструкцию, или null, если она ни в одном блоке.
+     */
+    public BasicBlock blockOfInsn(int index) {
+        int b = indexToBlock[index];
+        return b < 0 ? null : blocks.get(b);
+    }
+
+    /**
+     * Блок, содержащий инструкцию по адресу pc, или null, если там нет
+     * начала инструкции или она ни в одном блоке.
+     */
+    public BasicBlock blockAt(int pc) {
+        int index = insnIndexAt(pc);
+        return index < 0 ? null : blockOfInsn(index);
+    }
+
+    /**
+     * Блок, в который на самом деле ведет переход по адресу offset:
+     * {@link #blockByStartOffset}, а для выброшенной цепочки goto - ее конец.
+     */
+    public BasicBlock jumpTarget(int offset) {
+        BasicBlock bb = forwarded.get(offset);
+        return bb != null ? bb : blockByStartOffset(offset);
+    }
+
     public BasicBlock blockByStartOffset(int offset) {
-        return blocksByStartOffset.get(offset);
+        BasicBlock bb = blockAt(offset);
+        if (bb != null) {
+            return bb.startOffset() == offset ? bb : null;
+        }
+        // лидер вне границ инструкций (битый переход) - пустой блок, ищем по списку
+        int lo = 0;
+        int hi = blocks.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = blocks.get(mid).startOffset();
+            if (start < offset) {
+                lo = mid + 1;
+            } else if (start > offset) {
+                hi = mid - 1;
+            } else {
+                return blocks.get(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Предшественники блока в порядке адресов.
+     */
+    public List<BasicBlock> predecessors(BasicBlock bb) {
+        if (predecessors == null) {
+            predecessors = predecessorLists(edges());
+        }
+        return predecessors.get(bb.id());
+    }
+
+    public int predecessorCount(BasicBlock bb) {
+        return edges().predecessorCount(bb.id());
+    }
+
+    /**
+     * Обычные ребра в виде CSR по id блоков.
+     */
+    public CsrGraph edges() {
+        if (edges == null) {
+            edges = CsrGraph.of(blocks, true, false);
+        }
+        return edges;
+    }
+
+    /**
+     * Обычные и исключительные ребра в виде CSR, в том же порядке, что
+     * {@link #allSuccessors} / {@link #allPredecessors}.
+     */
+    public CsrGraph allEdges() {
+        if (allEdges == null) {
+            allEdges = CsrGraph.of(blocks, true, true);
+        }
+        return allEdges;
+    }
+
+    /**
+     * Только исключительные ребра (блок -> обработчик) в виде CSR.
+     */
+    public CsrGraph exceptionEdges() {
+        if (exceptionEdges == null) {
+            exceptionEdges = CsrGraph.of(blocks, false, true);
+        }
+        return exceptionEdges;
+    }
+
+    /**
+     * Обычные successors, за ними обработчики исключений (без повторов).
+     */
+    public List<BasicBlock> allSuccessors(BasicBlock bb) {
+        if (allSuccessors == null) {
+            CsrGraph g = allEdges();
+            List<List<BasicBlock>> succs = new ArrayList<>(blocks.size());
+            for (BasicBlock from : blocks) {
+                if (from.exceptionSuccessors().isEmpty()) {
+                    succs.add(from.successors());
+                    continue;
+                }
+                int id = from.id();
+                BasicBlock[] list = new BasicBlock[g.successorCount(id)];
+                for (int k = 0; k < list.length; k++) {
+                    list[k] = blocks.get(g.successor(id, k));
+                }
+                succs.add(List.of(list));
+            }
+            allSuccessors = succs;
+        }
+        return allSuccessors.get(bb.id());
+    }
+
+    /**
+     * Предшественники по обычным и исключительным ребрам, в порядке адресов.
+     */
+    public List<BasicBlock> allPredecessors(BasicBlock bb) {
+        if (allPredecessors == null) {
+            allPredecessors = predecessorLists(allEdges());
+        }
+        return allPredecessors.get(bb.id());
+    }
+
+    /**
+     * Блоки, с которых начинаются обработчики исключений, в порядке адресов.
+     */
+    public List<BasicBlock> handlerBlocks() {
+        List<BasicBlock> result = new ArrayList<>();
+        for (BasicBlock bb : blocks) {
+            if (isHandlerBlock(bb)) result.add(bb);
+        }
+        return result;
+    }
+
+    public boolean isHandlerBlock(BasicBlock bb) {
+        for (BasicBlock p : allPredecessors(bb)) {
+            for (ExceptionEdge e : p.exceptionSuccessors()) {
+                if (e.handler() == bb) return true;
+            }
+        }
+        return false;
+    }
+
+    private List<List<BasicBlock>> predecessorLists(CsrGraph g) {
+        List<List<BasicBlock>> result = new ArrayList<>(blocks.size());
+        for (int b = 0; b < blocks.size(); b++) {
+            BasicBlock[] list = new BasicBlock[g.predecessorCount(b)];
+            for (int k = 0; k < list.length; k++) {
+                list[k] = blocks.get(g.predecessor(b, k));
+            }
+            result.add(List.of(list));
+        }
+        return result;
+    }
+
+    private static void blockRanges(int[] indexToBlock, int[] start, int[] end) {
+        // блоки идут по адресу, инструкции блока подряд; -1 (до первого
+        // лидера или выброшенный код) просто пропускаются
+        int i = 0;
+        for (int b = 0; b < end.length; b++) {
+            while (i < indexToBlock.length && indexToBlock[i] < b) i++;
+            start[b] = i;
+            while (i < indexToBlock.length && indexToBlock[i] == b) i++;
+            end[b] = i;
+        }
+    }
+
+    /**
+     * Достижимые от входа блоки в postorder ({@link #allSuccessors} обходятся по порядку).
+     */
+    public List<BasicBlock> postorder() {
+        if (postorder == null) {
+            computeOrders();
+        }
+        return postorder;
+    }
+
+    /**
+     * Достижимые от входа блоки в reverse postorder: вход первым,
+     * каждый блок раньше своих successors, кроме обратных ребер.
+     */
+    public List<BasicBlock> reversePostorder() {
+        if (reversePostorder == null) {
+            computeOrders();
+        }
+        return reversePostorder;
+    }
+
+    /**
+     * Позиция блока в {@link #reversePostorder()} или -1 для недостижимого.
+     */
+    public int rpoNumber(BasicBlock bb) {
+        if (rpoNumber == null) {
+            computeOrders();
+        }
+        return rpoNumber[bb.id()];
+    }
+
+    /**
+     * Позиция блока в {@link #postorder()} или -1 для недостижимого.
+     */
+    public int postorderNumber(BasicBlock bb) {
+        int rpo = rpoNumber(bb);
+        return rpo < 0 ? -1 : postorder.size() - 1 - rpo;
+    }
+
+    public DominatorTree dominators() {
+        if (dominators == null) {
+            dominators = DominatorTree.dominators(this);
+        }
+        return dominators;
+    }
+
+    public DominatorTree postDominators() {
+        if (postDominators == null) {
+            postDominators = DominatorTree.postDominators(this);
+        }
+        return postDominators;
+    }
+
+    public LoopForest loops() {
+        if (loops == null) {
+            loops = LoopForest.compute(this);
+        }
+        return loops;
+    }
+
+    /**
+     * Приводим ли граф: каждое отступающее ребро (в reverse postorder ведет
+     * назад) идет в блок, доминирующий над его началом, т.е. в любой цикл
+     * входят только через заголовок. Один проход по ребрам после доминаторов,
+     * без построения леса циклов. Учитываются и исключительные ребра.
+     */
+    public boolean isReducible() {
+        if (reducible == null) {
+            reducible = computeReducible();
+        }
+        return reducible;
+    }
+
+    private boolean computeReducible() {
+        if (entryBlock == null) return true;
+        CsrGraph g = allEdges();
+        DominatorTree dom = dominators();
+        for (BasicBlock bb : reversePostorder()) {
+            int from = rpoNumber[bb.id()];
+            for (int k = 0; k < g.successorCount(bb.id()); k++) {
+                BasicBlock succ = blocks.get(g.successor(bb.id(), k));
+                if (rpoNumber[succ.id()] <= from && !dom.dominates(succ, bb)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void computeOrders() {
+        int n = blocks.size();
+        int[] number = new int[n];
+        Arrays.fill(number, -1);
+        List<BasicBlock> order = new ArrayList<>(n);
+        if (entryBlock != null) {
+            // итеративный DFS: стек блоков и номер следующего successor-а у каждого
+            CsrGraph g = allEdges();
+            boolean[] visited = new boolean[n];
+            int[] stack = new int[n];
+            int[] nextSucc = new int[n];
+            int sp = 0;
+            stack[sp++] = entryBlock.id();
+            visited[entryBlock.id()] = true;
+            while (sp > 0) {
+                int b = stack[sp - 1];
+                int k = nextSucc[sp - 1];
+                if (k < g.successorCount(b)) {
+                    nextSucc[sp - 1] = k + 1;
+                    int succ = g.successor(b, k);
+                    if (!visited[succ]) {
+                        visited[succ] = true;
+                        nextSucc[sp] = 0;
+                        stack[sp++] = succ;
+                    }
+                } else {
+                    sp--;
+                    order.add(blocks.get(b));
+                }
+            }
+        }
+        for (int i = 0; i < order.size(); i++) {
+            number[order.get(i).id()] = order.size() - 1 - i;
+        }
+        postorder = Collections.unmodifiableList(order);
+        reversePostorder = Collections.unmodifiableList(new ArrayList<>(order.reversed()));
+        rpoNumber = number;
     }
 }
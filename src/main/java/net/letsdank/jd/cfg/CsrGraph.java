@@ -0,0 +1,138 @@
+package net.letsdank.jd.cfg;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый граф на узлах 0..n-1 в сжатом виде (CSR): successors узла b -
+ * {@code succTargets[succOffsets[b] .. succOffsets[b+1])}, предшественники -
+ * так же по второй паре массивов.
+ * <p>
+ * Нужен анализам, которые обходят ребра много раз (доминаторы, циклы,
+ * потоки данных): чтение ребра - два обращения к int[], без списков,
+ * итераторов и упаковки. Порядок successors совпадает с исходным,
+ * предшественники идут по возрастанию номера.
+ */
+public final class CsrGraph {
+    private final int nodeCount;
+    private final int[] succOffsets;
+    private final int[] succTargets;
+    private final int[] predOffsets;
+    private final int[] predTargets;
+
+    private CsrGraph(int nodeCount, int[] succOffsets, int[] succTargets,
+                     int[] predOffsets, int[] predTargets) {
+        this.nodeCount = nodeCount;
+        this.succOffsets = succOffsets;
+        this.succTargets = succTargets;
+        this.predOffsets = predOffsets;
+        this.predTargets = predTargets;
+    }
+
+    /**
+     * Граф по готовым массивам successors; массивы не копируются и не должны
+     * меняться после вызова. Предшественники считаются подсчетом степеней.
+     */
+    public static CsrGraph fromSuccessors(int[] succOffsets, int[] succTargets) {
+        int n = succOffsets.length - 1;
+        int edges = succOffsets[n];
+        int[] predOffsets = new int[n + 1];
+        for (int i = 0; i < edges; i++) {
+            predOffsets[succTargets[i] + 1]++;
+        }
+        for (int b = 0; b < n; b++) {
+            predOffsets[b + 1] += predOffsets[b];
+        }
+        int[] fill = Arrays.copyOf(predOffsets, n);
+        int[] predTargets = new int[edges];
+        // источники перебираются по возрастанию - предшественники сразу отсортированы
+        for (int from = 0; from < n; from++) {
+            for (int i = succOffsets[from]; i < succOffsets[from + 1]; i++) {
+                predTargets[fill[succTargets[i]]++] = from;
+            }
+        }
+        return new CsrGraph(n, succOffsets, succTargets, predOffsets, predTargets);
+    }
+
+    /**
+     * Ребра блоков CFG: обычные (если normal) и ребра в обработчики (если
+     * exceptional, после обычных), без повторов.
+     */
+    static CsrGraph of(List<BasicBlock> blocks, boolean normal, boolean exceptional) {
+        int n = blocks.size();
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[Math.max(4, n * 2)];
+        // mark[t] == from + 1: ребро from -> t уже добавлено
+        int[] mark = new int[n];
+        int size = 0;
+        for (int from = 0; from < n; from++) {
+            BasicBlock bb = blocks.get(from);
+            List<BasicBlock> succs = normal ? bb.successors() : List.of();
+            List<ExceptionEdge> handlers = exceptional ? bb.exceptionSuccessors() : List.of();
+            if (size + succs.size() + handlers.size() > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, size + succs.size() + handlers.size()));
+            }
+            for (int k = 0; k < succs.size(); k++) {
+                int t = succs.get(k).id();
+                mark[t] = from + 1;
+                targets[size++] = t;
+            }
+            for (int k = 0; k < handlers.size(); k++) {
+                int t = handlers.get(k).handler().id();
+                if (mark[t] != from + 1) {
+                    mark[t] = from + 1;
+                    targets[size++] = t;
+                }
+            }
+            offsets[from + 1] = size;
+        }
+        return fromSuccessors(offsets, Arrays.copyOf(targets, size));
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return succTargets.length;
+    }
+
+    public int successorCount(int node) {
+        return succOffsets[node + 1] - succOffsets[node];
+    }
+
+    /**
+     * k-й successor узла (0 <= k < successorCount).
+     */
+    public int successor(int node, int k) {
+        return succTargets[succOffsets[node] + k];
+    }
+
+    public int predecessorCount(int node) {
+        return predOffsets[node + 1] - predOffsets[node];
+    }
+
+    /**
+     * k-й предшественник узла (0 <= k < predecessorCount).
+     */
+    public int predecessor(int node, int k) {
+        return predTargets[predOffsets[node] + k];
+    }
+
+    /**
+     * Есть ли ребро from -> to. Линейно по числу successors from.
+     */
+    public boolean hasEdge(int from, int to) {
+        for (int i = succOffsets[from]; i < succOffsets[from + 1]; i++) {
+            if (succTargets[i] == to) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Тот же граф с развернутыми ребрами; массивы общие, копирования нет.
+     */
+    public CsrGraph reversed() {
+        return new CsrGraph(nodeCount, predOffsets, predTargets, succOffsets, succTargets);
+    }
+}
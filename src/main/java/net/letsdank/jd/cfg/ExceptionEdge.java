@@ -0,0 +1,13 @@
+package net.letsdank.jd.cfg;
+
+/**
+ * Исключительное ребро: из блока внутри защищенного диапазона в обработчик.
+ * <p>
+ * catchTypeIndex - индекс класса исключения в constant pool,
+ * 0 означает "любое" (finally / catch(Throwable)).
+ */
+public record ExceptionEdge(BasicBlock handler, int catchTypeIndex) {
+    public boolean isCatchAll() {
+        return catchTypeIndex == 0;
+    }
+}
@@ -0,0 +1,263 @@
+package net.letsdank.jd.cfg;
+
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.ConstantPoolInsn;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.model.cp.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Высота стека операндов (в слотах, long/double - два) перед каждой
+ * инструкцией метода.
+ * <p>
+ * Считается одним прямым проходом по блокам CFG в порядке адресов:
+ * эффект инструкции берется из таблицы {@link Opcode#stackPop()} /
+ * {@link Opcode#stackPush()}, для полей, вызовов и multianewarray - из
+ * дескрипторов в constant pool. Вход метода начинается с пустого стека,
+ * обработчики исключений - со стека из одного исключения. Так как javac
+ * кладет тело цикла до условия, почти всегда хватает одного прохода;
+ * повторные нужны только для блоков, чей вход стал известен позже.
+ * <p>
+ * Главный вопрос, на который отвечает анализ:
+ * "снимает ли этот кусок кода со стека значения, положенные до него"
+ * ({@link #needsIncomingStack(List)}). Если да, построитель выражений
+ * на нем все равно упадет, и стратегию можно отбросить заранее.
+ */
+public final class StackHeights {
+    /**
+     * Высота не известна: инструкция недостижима или анализ на ней остановился.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final ControlFlowGraph cfg;
+    private final int[] before;
+    private final int[] pops;
+    private final BitSet underflows;
+    // блоки, которые снимают значения, лежавшие на стеке до их входа
+    private final BitSet consumesEntryStack;
+
+    private StackHeights(ControlFlowGraph cfg, int[] before, int[] pops,
+                         BitSet underflows, BitSet consumesEntryStack) {
+        this.cfg = cfg;
+        this.before = before;
+        this.pops = pops;
+        this.underflows = underflows;
+        this.consumesEntryStack = consumesEntryStack;
+    }
+
+    public static StackHeights compute(ControlFlowGraph cfg, byte[] code, ConstantPool cp,
+                                       List<CodeAttribute.ExceptionTableEntry> exceptionTable) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = cfg.instructionCount();
+        int[] before = new int[n];
+        int[] pops = new int[n];
+        Arrays.fill(before, UNKNOWN);
+        Arrays.fill(pops, UNKNOWN);
+        BitSet underflows = new BitSet();
+        BitSet consumesEntryStack = new BitSet();
+
+        int[] entry = new int[blocks.size()];
+        Arrays.fill(entry, UNKNOWN);
+        if (cfg.entryBlock() != null) {
+            entry[cfg.entryBlock().id()] = 0;
+        }
+        if (exceptionTable != null) {
+            for (CodeAttribute.ExceptionTableEntry e : exceptionTable) {
+                BasicBlock handler = cfg.blockByStartOffset(e.handlerPc());
+                if (handler != null) entry[handler.id()] = 1;
+            }
+        }
+
+        BitSet pending = new BitSet(blocks.size());
+        for (int i = 0; i < entry.length; i++) {
+            if (entry[i] != UNKNOWN) pending.set(i);
+        }
+        for (int b = pending.nextSetBit(0); b >= 0; b = pending.nextSetBit(0)) {
+            pending.clear(b);
+            BasicBlock bb = blocks.get(b);
+            int height = entry[b];
+            int lowWater = height;
+            for (Insn insn : bb.instructions()) {
+                int index = cfg.insnIndexAt(insn.offset());
+                int pop = popSlots(insn, code, cp);
+                int push = pushSlots(insn, cp);
+                if (index < 0 || pop == UNKNOWN || push == UNKNOWN) {
+                    height = UNKNOWN;
+                    break;
+                }
+                before[index] = height;
+                pops[index] = pop;
+                if (pop > height) {
+                    // байткод снимает больше, чем лежит: анализ (или код) некорректен
+                    underflows.set(index);
+                    height = UNKNOWN;
+                    break;
+                }
+                lowWater = Math.min(lowWater, height - pop);
+                height = height - pop + push;
+            }
+            if (lowWater < entry[b]) {
+                consumesEntryStack.set(b);
+            }
+            if (height == UNKNOWN) continue;
+            for (BasicBlock succ : bb.successors()) {
+                if (entry[succ.id()] == UNKNOWN) {
+                    entry[succ.id()] = height;
+                    // обычно succ дальше по адресу и будет взят этим же проходом
+                    pending.set(succ.id());
+                }
+            }
+        }
+        return new StackHeights(cfg, before, pops, underflows, consumesEntryStack);
+    }
+
+    /**
+     * Высота стека перед i-й инструкцией или {@link #UNKNOWN}.
+     */
+    public int heightBefore(int insnIndex) {
+        return before[insnIndex];
+    }
+
+    /**
+     * Высота стека на входе в блок или {@link #UNKNOWN}.
+     */
+    public int entryHeight(BasicBlock bb) {
+        if (bb.instructions().isEmpty()) return UNKNOWN;
+        int index = cfg.insnIndexAt(bb.startOffset());
+        return index < 0 ? UNKNOWN : before[index];
+    }
+
+    /**
+     * Инструкции, на которых стек ушел бы в минус.
+     */
+    public BitSet underflows() {
+        return (BitSet) underflows.clone();
+    }
+
+    /**
+     * Снимает ли подряд идущий кусок инструкций метода значения, положенные
+     * до его начала. Для неизвестных высот отвечает false: пусть решает
+     * сам построитель выражений.
+     */
+    public boolean needsIncomingStack(List<Insn> insns) {
+        if (insns.isEmpty()) return false;
+        int first = cfg.insnIndexAt(insns.get(0).offset());
+        if (first < 0 || before[first] == UNKNOWN) return false;
+        int base = before[first];
+        if (base == 0) return false;
+
+        // целый блок - ответ уже посчитан
+        BasicBlock bb = cfg.blockOfInsn(first);
+        if (bb.startOffset() == insns.get(0).offset() && bb.instructions().size() == insns.size()) {
+            return consumesEntryStack.get(bb.id());
+        }
+        for (Insn insn : insns) {
+            int i = cfg.insnIndexAt(insn.offset());
+            if (i < 0 || before[i] == UNKNOWN) return false;
+            if (before[i] - pops[i] < base) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Нужен ли блоку стек, оставшийся от предшественников. O(1).
+     */
+    public boolean needsIncomingStack(BasicBlock bb) {
+        return consumesEntryStack.get(bb.id());
+    }
+
+    // --- эффекты инструкций ---
+
+    private static int popSlots(Insn insn, byte[] code, ConstantPool cp) {
+        Opcode op = insn.opcode();
+        if (op == null) return UNKNOWN;
+        if (op.stackPop() != Opcode.VARIES) return op.stackPop();
+        if (op == Opcode.MULTIANEWARRAY) {
+            // по int-у на измерение: cp_index:u2, dimensions:u1
+            int pos = insn.offset() + 3;
+            return pos < code.length ? code[pos] & 0xFF : UNKNOWN;
+        }
+        if (!(insn instanceof ConstantPoolInsn cpi)) return UNKNOWN;
+        String desc = descriptorOf(cp, cpi.cpIndex());
+        if (desc == null) return UNKNOWN;
+        return switch (op) {
+            case PUTSTATIC -> typeSlots(desc, 0);
+            case PUTFIELD -> 1 + typeSlots(desc, 0);
+            case INVOKESTATIC, INVOKEDYNAMIC -> argSlots(desc);
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKEINTERFACE -> {
+                int args = argSlots(desc);
+                yield args == UNKNOWN ? UNKNOWN : 1 + args;
+            }
+            default -> UNKNOWN;
+        };
+    }
+
+    private static int pushSlots(Insn insn, ConstantPool cp) {
+        Opcode op = insn.opcode();
+        if (op == null) return UNKNOWN;
+        if (op.stackPush() != Opcode.VARIES) return op.stackPush();
+        if (!(insn instanceof ConstantPoolInsn cpi)) return UNKNOWN;
+        String desc = descriptorOf(cp, cpi.cpIndex());
+        if (desc == null) return UNKNOWN;
+        return switch (op) {
+            case GETSTATIC, GETFIELD -> typeSlots(desc, 0);
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC ->
+                    typeSlots(desc, desc.indexOf(')') + 1);
+            default -> UNKNOWN;
+        };
+    }
+
+    /**
+     * Дескриптор поля или метода из Fieldref/Methodref/InterfaceMethodref/InvokeDynamic.
+     */
+    private static String descriptorOf(ConstantPool cp, int index) {
+        if (index <= 0 || index >= cp.size()) return null;
+        int natIndex = switch (cp.entry(index)) {
+            case CpFieldref r -> r.nameAndTypeIndex();
+            case CpMethodref r -> r.nameAndTypeIndex();
+            case CpInterfaceMethodref r -> r.nameAndTypeIndex();
+            case CpInvokeDynamic r -> r.nameAndTypeIndex();
+            case null, default -> 0;
+        };
+        if (natIndex <= 0 || natIndex >= cp.size() || !(cp.entry(natIndex) instanceof CpNameAndType nat)) {
+            return null;
+        }
+        return cp.getUtf8(nat.descriptorIndex());
+    }
+
+    /**
+     * Слоты типа, начинающегося в позиции pos дескриптора (V - 0, J/D - 2, прочие - 1).
+     */
+    private static int typeSlots(String desc, int pos) {
+        if (pos >= desc.length()) return UNKNOWN;
+        return switch (desc.charAt(pos)) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+    }
+
+    private static int argSlots(String desc) {
+        int slots = 0;
+        int i = 1;
+        while (i < desc.length() && desc.charAt(i) != ')') {
+            char c = desc.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else {
+                slots++;
+                while (desc.charAt(i) == '[') i++;
+                if (desc.charAt(i) == 'L') i = desc.indexOf(';', i);
+                i++;
+            }
+            if (i <= 0) return UNKNOWN;
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,70 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import java.util.BitSet;
+
+/**
+ * Прямоугольная матрица бит: по строке на блок, все строки в одном long[].
+ * <p>
+ * Строки одинаковой длины лежат подряд, так что решатель работает с ними
+ * как с отрезками одного массива, без объектов на каждый блок.
+ */
+public final class BitMatrix {
+    final int rows;
+    final int bits;
+    final int stride;
+    final long[] words;
+
+    public BitMatrix(int rows, int bits) {
+        this.rows = rows;
+        this.bits = bits;
+        this.stride = (bits + 63) >>> 6;
+        this.words = new long[rows * stride];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public boolean get(int row, int bit) {
+        return (words[row * stride + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    public void set(int row, int bit) {
+        words[row * stride + (bit >>> 6)] |= 1L << bit;
+    }
+
+    public void clear(int row, int bit) {
+        words[row * stride + (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    /**
+     * Строка целиком: все биты в 1 (только до {@link #bits()}).
+     */
+    void fillRow(int row) {
+        int base = row * stride;
+        for (int i = 0; i < stride; i++) words[base + i] = -1L;
+        int tail = bits & 63;
+        if (tail != 0) words[base + stride - 1] = (1L << tail) - 1;
+    }
+
+    public int cardinality(int row) {
+        int base = row * stride;
+        int count = 0;
+        for (int i = 0; i < stride; i++) count += Long.bitCount(words[base + i]);
+        return count;
+    }
+
+    /**
+     * Копия строки в виде {@link BitSet}.
+     */
+    public BitSet row(int row) {
+        int base = row * stride;
+        long[] copy = new long[stride];
+        System.arraycopy(words, base, copy, 0, stride);
+        return BitSet.valueOf(copy);
+    }
+}
@@ -0,0 +1,234 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.CsrGraph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Решение {@link GenKillProblem}: значения на входе и выходе каждого блока.
+ * <p>
+ * Итеративный решатель со списком работ: блоки берутся в reverse postorder
+ * (для обратных задач - в postorder), и из очереди всегда берется самый
+ * ранний по этому порядку. Без циклов хватает одного прохода, с циклами -
+ * числа проходов порядка глубины вложенности. Значения хранятся в
+ * {@link BitMatrix}, шаг по блоку - несколько проходов по long[] строки.
+ * <p>
+ * Недостижимые от входа блоки не считаются: их строки пустые.
+ */
+public final class DataflowSolution {
+    private final BitMatrix in;
+    private final BitMatrix out;
+    private final int iterations;
+
+    private DataflowSolution(BitMatrix in, BitMatrix out, int iterations) {
+        this.in = in;
+        this.out = out;
+        this.iterations = iterations;
+    }
+
+    public static DataflowSolution solve(ControlFlowGraph cfg, GenKillProblem problem) {
+        int n = cfg.blocks().size();
+        int bits = problem.bits();
+        BitMatrix in = new BitMatrix(n, bits);
+        BitMatrix out = new BitMatrix(n, bits);
+        boolean forward = problem.direction() == GenKillProblem.Direction.FORWARD;
+        List<BasicBlock> order = forward ? cfg.reversePostorder() : cfg.postorder();
+        if (order.isEmpty()) {
+            return new DataflowSolution(in, out, 0);
+        }
+
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < order.size(); i++) {
+            position[order.get(i).id()] = i;
+        }
+        if (problem.meet() == GenKillProblem.Meet.INTERSECTION) {
+            // must-задача стартует с "все биты" и только теряет их
+            for (BasicBlock bb : order) {
+                in.fillRow(bb.id());
+                out.fillRow(bb.id());
+            }
+        }
+
+        Solver solver = new Solver(cfg, problem, in, out, position);
+        CsrGraph all = cfg.allEdges();
+        BitSet pending = new BitSet(order.size());
+        pending.set(0, order.size());
+        int iterations = 0;
+        for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(0)) {
+            pending.clear(i);
+            iterations++;
+            int b = order.get(i).id();
+            boolean changed = forward ? solver.forward(b) : solver.backward(b);
+            if (!changed) continue;
+            // прямой задаче нужны successors (обычные - по out, обработчики - по in),
+            // обратной - предшественники
+            int count = forward ? all.successorCount(b) : all.predecessorCount(b);
+            for (int k = 0; k < count; k++) {
+                int next = forward ? all.successor(b, k) : all.predecessor(b, k);
+                if (position[next] >= 0) pending.set(position[next]);
+            }
+        }
+        return new DataflowSolution(in, out, iterations);
+    }
+
+    /**
+     * Значения на входе блоков (строка - id блока).
+     */
+    public BitMatrix in() {
+        return in;
+    }
+
+    /**
+     * Значения на выходе блоков. Для обратных задач включает и in обработчиков,
+     * куда блок может выбросить исключение.
+     */
+    public BitMatrix out() {
+        return out;
+    }
+
+    public boolean in(BasicBlock bb, int bit) {
+        return in.get(bb.id(), bit);
+    }
+
+    public boolean out(BasicBlock bb, int bit) {
+        return out.get(bb.id(), bit);
+    }
+
+    /**
+     * Сколько раз пересчитывались блоки (для диагностики и тестов).
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * Шаги по блоку; временные строки переиспользуются между шагами.
+     */
+    private static final class Solver {
+        private final CsrGraph normal;
+        private final CsrGraph exceptional;
+        private final int entry;
+        private final boolean must;
+        private final int stride;
+        private final long[] in;
+        private final long[] out;
+        private final long[] gen;
+        private final long[] kill;
+        private final long[] exGen;
+        private final long[] boundary;
+        private final int[] position;
+        private final long[] meet;
+        private final long[] extra;
+        private final long[] top;
+
+        Solver(ControlFlowGraph cfg, GenKillProblem problem, BitMatrix in, BitMatrix out, int[] position) {
+            this.normal = cfg.edges();
+            this.exceptional = cfg.exceptionEdges();
+            this.entry = cfg.entryBlock().id();
+            this.must = problem.meet() == GenKillProblem.Meet.INTERSECTION;
+            this.stride = in.stride;
+            this.in = in.words;
+            this.out = out.words;
+            this.gen = problem.gen().words;
+            this.kill = problem.kill().words;
+            this.exGen = problem.exceptionalGen().words;
+            this.boundary = problem.boundary().words;
+            this.position = position;
+            this.meet = new long[stride];
+            this.extra = new long[stride];
+            BitMatrix ones = new BitMatrix(1, problem.bits());
+            ones.fillRow(0);
+            this.top = ones.words;
+        }
+
+        /**
+         * in = meet(out предшественников, in | exGen бросающих блоков), out = gen | (in & ~kill).
+         */
+        boolean forward(int b) {
+            startMeet();
+            boolean any = false;
+            if (b == entry) {
+                meetWith(boundary, 0);
+                any = true;
+            }
+            for (int k = 0; k < normal.predecessorCount(b); k++) {
+                int p = normal.predecessor(b, k);
+                if (position[p] < 0) continue;
+                meetWith(out, p * stride);
+                any = true;
+            }
+            for (int k = 0; k < exceptional.predecessorCount(b); k++) {
+                int p = exceptional.predecessor(b, k);
+                if (position[p] < 0) continue;
+                int base = p * stride;
+                for (int i = 0; i < stride; i++) extra[i] = in[base + i] | exGen[base + i];
+                meetWith(extra, 0);
+                any = true;
+            }
+            if (!any) Arrays.fill(meet, 0L);
+
+            int base = b * stride;
+            boolean changed = false;
+            for (int i = 0; i < stride; i++) {
+                long newIn = meet[i];
+                long newOut = gen[base + i] | (newIn & ~kill[base + i]);
+                if (in[base + i] != newIn || out[base + i] != newOut) {
+                    in[base + i] = newIn;
+                    out[base + i] = newOut;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * out = meet(in обычных successors) | in обработчиков, in = gen | (out & ~kill) | in обработчиков.
+         */
+        boolean backward(int b) {
+            startMeet();
+            if (normal.successorCount(b) == 0) {
+                meetWith(boundary, 0);
+            }
+            for (int k = 0; k < normal.successorCount(b); k++) {
+                int s = normal.successor(b, k);
+                if (position[s] >= 0) meetWith(in, s * stride);
+            }
+            Arrays.fill(extra, 0L);
+            for (int k = 0; k < exceptional.successorCount(b); k++) {
+                int base = exceptional.successor(b, k) * stride;
+                for (int i = 0; i < stride; i++) extra[i] |= in[base + i];
+            }
+
+            int base = b * stride;
+            boolean changed = false;
+            for (int i = 0; i < stride; i++) {
+                long newOut = meet[i] | extra[i];
+                long newIn = gen[base + i] | (meet[i] & ~kill[base + i]) | extra[i];
+                if (in[base + i] != newIn || out[base + i] != newOut) {
+                    in[base + i] = newIn;
+                    out[base + i] = newOut;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        private void startMeet() {
+            if (must) System.arraycopy(top, 0, meet, 0, stride);
+            else Arrays.fill(meet, 0L);
+        }
+
+        private void meetWith(long[] words, int base) {
+            if (must) {
+                for (int i = 0; i < stride; i++) meet[i] &= words[base + i];
+            } else {
+                for (int i = 0; i < stride; i++) meet[i] |= words[base + i];
+            }
+        }
+    }
+}
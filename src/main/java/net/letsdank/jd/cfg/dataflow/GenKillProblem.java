@@ -0,0 +1,73 @@
+package net.letsdank.jd.cfg.dataflow;
+
+/**
+ * Задача потока данных вида out = gen | (in & ~kill) на блоках CFG.
+ * <p>
+ * Клиент заполняет {@link #gen()} и {@link #kill()} (строка - id блока) и
+ * граничное значение {@link #boundary()}: на входе метода для прямых задач,
+ * на выходах (return/athrow) для обратных.
+ * <p>
+ * Исключение может вылететь из середины блока, поэтому по ребру в
+ * обработчик в прямом направлении уходит не out блока, а
+ * in | {@link #exceptionalGen()} - то, что могло появиться в блоке до
+ * исключения (для reaching definitions - все определения блока). В обратном
+ * направлении in обработчика добавляется к in блока без kill.
+ */
+public final class GenKillProblem {
+    public enum Direction { FORWARD, BACKWARD }
+
+    /**
+     * UNION - "на каком-нибудь пути" (may), INTERSECTION - "на всех путях" (must).
+     */
+    public enum Meet { UNION, INTERSECTION }
+
+    private final Direction direction;
+    private final Meet meet;
+    private final BitMatrix gen;
+    private final BitMatrix kill;
+    private final BitMatrix exceptionalGen;
+    private final BitMatrix boundary;
+
+    public GenKillProblem(Direction direction, Meet meet, int blockCount, int bits) {
+        this.direction = direction;
+        this.meet = meet;
+        this.gen = new BitMatrix(blockCount, bits);
+        this.kill = new BitMatrix(blockCount, bits);
+        this.exceptionalGen = new BitMatrix(blockCount, bits);
+        this.boundary = new BitMatrix(1, bits);
+    }
+
+    public Direction direction() {
+        return direction;
+    }
+
+    public Meet meet() {
+        return meet;
+    }
+
+    public int bits() {
+        return gen.bits();
+    }
+
+    public BitMatrix gen() {
+        return gen;
+    }
+
+    public BitMatrix kill() {
+        return kill;
+    }
+
+    /**
+     * Что уходит в обработчик сверх in блока (только для прямых задач).
+     */
+    public BitMatrix exceptionalGen() {
+        return exceptionalGen;
+    }
+
+    /**
+     * Граничное значение: единственная строка 0.
+     */
+    public BitMatrix boundary() {
+        return boundary;
+    }
+}
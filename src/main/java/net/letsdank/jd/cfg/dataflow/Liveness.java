@@ -0,0 +1,117 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.CsrGraph;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Живость слотов локальных переменных: слот жив в точке, если его текущее
+ * значение еще может быть прочитано. Бит - номер слота.
+ * <p>
+ * Обратная may-задача: gen - слоты, прочитанные в блоке до записи, kill -
+ * записанные. Живое в обработчике считается живым во всем защищенном блоке.
+ */
+public final class Liveness {
+    private final ControlFlowGraph cfg;
+    private final int slots;
+    private final DataflowSolution solution;
+
+    private Liveness(ControlFlowGraph cfg, int slots, DataflowSolution solution) {
+        this.cfg = cfg;
+        this.slots = slots;
+        this.solution = solution;
+    }
+
+    public static Liveness compute(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int slots = LocalSlots.slotCount(cfg);
+        GenKillProblem problem = new GenKillProblem(GenKillProblem.Direction.BACKWARD,
+                GenKillProblem.Meet.UNION, blocks.size(), slots);
+        BitMatrix gen = problem.gen();
+        BitMatrix kill = problem.kill();
+        for (BasicBlock bb : blocks) {
+            int b = bb.id();
+            for (Insn insn : bb.instructions()) {
+                int slot = LocalSlots.slotOf(insn);
+                if (slot == LocalSlots.NONE) continue;
+                // iinc сначала читает, потом пишет
+                if (LocalSlots.reads(insn) && !kill.get(b, slot)) gen.set(b, slot);
+                if (LocalSlots.writes(insn)) {
+                    kill.set(b, slot);
+                    if (LocalSlots.isWide(insn)) kill.set(b, slot + 1);
+                }
+            }
+        }
+        return new Liveness(cfg, slots, DataflowSolution.solve(cfg, problem));
+    }
+
+    /**
+     * Число анализируемых слотов.
+     */
+    public int slotCount() {
+        return slots;
+    }
+
+    public boolean isLiveIn(BasicBlock bb, int slot) {
+        return slot < slots && solution.in(bb, slot);
+    }
+
+    public boolean isLiveOut(BasicBlock bb, int slot) {
+        return slot < slots && solution.out(bb, slot);
+    }
+
+    public BitSet liveIn(BasicBlock bb) {
+        return solution.in().row(bb.id());
+    }
+
+    public BitSet liveOut(BasicBlock bb) {
+        return solution.out().row(bb.id());
+    }
+
+    /**
+     * Слоты, живые сразу после i-й инструкции метода. Проход от конца блока
+     * назад: O(длины блока).
+     */
+    public BitSet liveAfter(int insnIndex) {
+        BasicBlock bb = cfg.blockOfInsn(insnIndex);
+        BitSet live = liveOut(bb);
+        BitSet handlers = handlersLiveIn(bb);
+        int first = cfg.firstInsnIndex(bb);
+        List<Insn> insns = bb.instructions();
+        for (int i = cfg.endInsnIndex(bb) - 1; i > insnIndex; i--) {
+            Insn insn = insns.get(i - first);
+            int slot = LocalSlots.slotOf(insn);
+            if (slot == LocalSlots.NONE) continue;
+            if (LocalSlots.writes(insn)) {
+                live.clear(slot);
+                if (LocalSlots.isWide(insn)) live.clear(slot + 1);
+            }
+            if (LocalSlots.reads(insn)) live.set(slot);
+            live.or(handlers);
+        }
+        return live;
+    }
+
+    /**
+     * Будет ли значение, записанное i-й инструкцией, когда-нибудь прочитано.
+     * Для инструкций, которые не пишут в слот, - false.
+     */
+    public boolean isStoreLive(int insnIndex) {
+        BasicBlock bb = cfg.blockOfInsn(insnIndex);
+        Insn insn = bb.instructions().get(insnIndex - cfg.firstInsnIndex(bb));
+        return LocalSlots.writes(insn) && liveAfter(insnIndex).get(LocalSlots.slotOf(insn));
+    }
+
+    private BitSet handlersLiveIn(BasicBlock bb) {
+        BitSet result = new BitSet(slots);
+        CsrGraph exceptional = cfg.exceptionEdges();
+        for (int k = 0; k < exceptional.successorCount(bb.id()); k++) {
+            result.or(solution.in().row(exceptional.successor(bb.id(), k)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.IincInsn;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.LocalVarInsn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+
+/**
+ * Какие слоты локальных переменных читает и пишет инструкция.
+ * <p>
+ * Покрывает все формы: xload/xstore с операндом (и через wide),
+ * короткие xload_n/xstore_n, iinc (читает и пишет) и ret (читает).
+ * long/double занимают два слота: запись в k портит и k+1.
+ */
+public final class LocalSlots {
+    public static final int NONE = -1;
+
+    private LocalSlots() {
+    }
+
+    /**
+     * Слот, к которому обращается инструкция, или {@link #NONE}.
+     */
+    public static int slotOf(Insn insn) {
+        if (insn instanceof LocalVarInsn lv) return lv.localIndex();
+        if (insn instanceof IincInsn inc) return inc.localIndex();
+        Opcode op = insn.opcode();
+        if (op == null) return NONE;
+        int code = op.code();
+        // iload_0..aload_3 и istore_0..astore_3: по четыре на тип
+        if (code >= 0x1A && code <= 0x2D) return (code - 0x1A) & 3;
+        if (code >= 0x3B && code <= 0x4E) return (code - 0x3B) & 3;
+        return NONE;
+    }
+
+    public static boolean reads(Insn insn) {
+        Opcode op = insn.opcode();
+        return op != null && op.isLocalLoad() && slotOf(insn) != NONE;
+    }
+
+    public static boolean writes(Insn insn) {
+        Opcode op = insn.opcode();
+        return op != null && op.isLocalStore() && slotOf(insn) != NONE;
+    }
+
+    /**
+     * Занимает ли значение два слота (long/double).
+     */
+    public static boolean isWide(Insn insn) {
+        Opcode op = insn.opcode();
+        if (op == null) return false;
+        return switch (op) {
+            case LLOAD, DLOAD, LSTORE, DSTORE,
+                 LLOAD_0, LLOAD_1, LLOAD_2, LLOAD_3, DLOAD_0, DLOAD_1, DLOAD_2, DLOAD_3,
+                 LSTORE_0, LSTORE_1, LSTORE_2, LSTORE_3, DSTORE_0, DSTORE_1, DSTORE_2, DSTORE_3 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Число слотов, достаточное для всех обращений в методе. Считается по
+     * самим инструкциям, а не по max_locals: так битый заголовок не выведет
+     * анализ за границы.
+     */
+    public static int slotCount(ControlFlowGraph cfg) {
+        int count = 0;
+        for (BasicBlock bb : cfg.blocks()) {
+            for (Insn insn : bb.instructions()) {
+                int slot = slotOf(insn);
+                if (slot != NONE) count = Math.max(count, slot + (isWide(insn) ? 2 : 1));
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,201 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Достигающие определения слотов локальных переменных.
+ * <p>
+ * Определение - инструкция записи в слот (xstore, iinc) либо значение слота
+ * на входе метода: параметр или, для остальных слотов, "еще не записан".
+ * Биты 0..slotCount-1 - входные значения слотов, дальше - записи в порядке
+ * инструкций. Прямая may-задача; в обработчик доходят все записи
+ * защищенного блока, а не только последние.
+ */
+public final class ReachingDefinitions {
+    private final ControlFlowGraph cfg;
+    private final int slots;
+    // для записи k (бит slots + k): номер инструкции и слот
+    private final int[] defInsn;
+    private final int[] defSlot;
+    // номер инструкции -> бит ее определения или -1
+    private final int[] defOfInsn;
+    // slotDefs[s] - все определения, затирающие слот s
+    private final BitSet[] slotDefs;
+    private final DataflowSolution solution;
+
+    private ReachingDefinitions(ControlFlowGraph cfg, int slots, int[] defInsn, int[] defSlot,
+                                int[] defOfInsn, BitSet[] slotDefs, DataflowSolution solution) {
+        this.cfg = cfg;
+        this.slots = slots;
+        this.defInsn = defInsn;
+        this.defSlot = defSlot;
+        this.defOfInsn = defOfInsn;
+        this.slotDefs = slotDefs;
+        this.solution = solution;
+    }
+
+    public static ReachingDefinitions compute(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int slots = LocalSlots.slotCount(cfg);
+
+        // 1. нумеруем записи
+        int[] defOfInsn = new int[cfg.instructionCount()];
+        int stores = 0;
+        for (BasicBlock bb : blocks) {
+            int index = cfg.firstInsnIndex(bb);
+            for (Insn insn : bb.instructions()) {
+                defOfInsn[index++] = LocalSlots.writes(insn) ? slots + stores++ : -1;
+            }
+        }
+        int bits = slots + stores;
+        int[] defInsn = new int[stores];
+        int[] defSlot = new int[stores];
+        BitSet[] slotDefs = new BitSet[slots];
+        for (int s = 0; s < slots; s++) {
+            slotDefs[s] = new BitSet(bits);
+            slotDefs[s].set(s);
+        }
+        for (BasicBlock bb : blocks) {
+            int index = cfg.firstInsnIndex(bb);
+            for (Insn insn : bb.instructions()) {
+                int d = defOfInsn[index];
+                if (d >= 0) {
+                    int slot = LocalSlots.slotOf(insn);
+                    defInsn[d - slots] = index;
+                    defSlot[d - slots] = slot;
+                    slotDefs[slot].set(d);
+                    if (LocalSlots.isWide(insn)) slotDefs[slot + 1].set(d);
+                }
+                index++;
+            }
+        }
+
+        // 2. gen/kill по блокам
+        GenKillProblem problem = new GenKillProblem(GenKillProblem.Direction.FORWARD,
+                GenKillProblem.Meet.UNION, blocks.size(), bits);
+        BitMatrix gen = problem.gen();
+        BitMatrix kill = problem.kill();
+        BitMatrix exGen = problem.exceptionalGen();
+        for (int s = 0; s < slots; s++) {
+            problem.boundary().set(0, s);
+        }
+        BitSet written = new BitSet(slots);
+        for (BasicBlock bb : blocks) {
+            int b = bb.id();
+            // с конца блока: запись попадает в gen, если ее слоты дальше не перезаписаны
+            written.clear();
+            List<Insn> insns = bb.instructions();
+            for (int i = insns.size() - 1; i >= 0; i--) {
+                int d = defOfInsn[cfg.firstInsnIndex(bb) + i];
+                if (d < 0) continue;
+                int slot = defSlot[d - slots];
+                boolean wide = LocalSlots.isWide(insns.get(i));
+                if (!written.get(slot) && !(wide && written.get(slot + 1))) gen.set(b, d);
+                exGen.set(b, d);
+                written.set(slot);
+                if (wide) written.set(slot + 1);
+            }
+            for (int w = written.nextSetBit(0); w >= 0; w = written.nextSetBit(w + 1)) {
+                BitSet killed = slotDefs[w];
+                for (int k = killed.nextSetBit(0); k >= 0; k = killed.nextSetBit(k + 1)) {
+                    kill.set(b, k);
+                }
+            }
+        }
+
+        return new ReachingDefinitions(cfg, slots, defInsn, defSlot, defOfInsn, slotDefs,
+                DataflowSolution.solve(cfg, problem));
+    }
+
+    /**
+     * Число анализируемых слотов (и входных определений).
+     */
+    public int slotCount() {
+        return slots;
+    }
+
+    /**
+     * Всего определений: входные значения слотов и записи.
+     */
+    public int definitionCount() {
+        return slots + defInsn.length;
+    }
+
+    /**
+     * Входное ли это значение слота (параметр или незаписанный слот).
+     */
+    public boolean isEntryDefinition(int def) {
+        return def < slots;
+    }
+
+    /**
+     * Номер инструкции записи или -1 для входного значения.
+     */
+    public int definitionInsn(int def) {
+        return def < slots ? -1 : defInsn[def - slots];
+    }
+
+    public int definitionSlot(int def) {
+        return def < slots ? def : defSlot[def - slots];
+    }
+
+    /**
+     * Определение, которое создает i-я инструкция, или -1.
+     */
+    public int definitionOf(int insnIndex) {
+        return defOfInsn[insnIndex];
+    }
+
+    /**
+     * Определения, достигающие входа блока.
+     */
+    public BitSet reachingIn(BasicBlock bb) {
+        return solution.in().row(bb.id());
+    }
+
+    /**
+     * Определения слота, достигающие i-й инструкции (до ее выполнения).
+     * Проход от начала блока: O(длины блока).
+     */
+    public BitSet reaching(int insnIndex, int slot) {
+        BitSet result = new BitSet();
+        if (slot < 0 || slot >= slots) return result;
+        BasicBlock bb = cfg.blockOfInsn(insnIndex);
+        BitSet current = reachingIn(bb);
+        for (int i = cfg.firstInsnIndex(bb); i < insnIndex; i++) {
+            int d = defOfInsn[i];
+            if (d < 0) continue;
+            Insn insn = bb.instructions().get(i - cfg.firstInsnIndex(bb));
+            current.andNot(killedBy(slotDefs, defSlot[d - slots], LocalSlots.isWide(insn)));
+            current.set(d);
+        }
+        for (int d = current.nextSetBit(0); d >= 0; d = current.nextSetBit(d + 1)) {
+            if (definitionSlot(d) == slot) result.set(d);
+        }
+        return result;
+    }
+
+    /**
+     * Единственное определение, которое читает i-я инструкция, или -1,
+     * если их несколько (или инструкция не читает слот).
+     */
+    public int uniqueReaching(int insnIndex) {
+        BasicBlock bb = cfg.blockOfInsn(insnIndex);
+        Insn insn = bb.instructions().get(insnIndex - cfg.firstInsnIndex(bb));
+        if (!LocalSlots.reads(insn)) return -1;
+        BitSet defs = reaching(insnIndex, LocalSlots.slotOf(insn));
+        return defs.cardinality() == 1 ? defs.nextSetBit(0) : -1;
+    }
+
+    private static BitSet killedBy(BitSet[] slotDefs, int slot, boolean wide) {
+        if (!wide) return slotDefs[slot];
+        BitSet killed = (BitSet) slotDefs[slot].clone();
+        killed.or(slotDefs[slot + 1]);
+        return killed;
+    }
+}
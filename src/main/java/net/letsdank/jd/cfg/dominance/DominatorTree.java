@@ -0,0 +1,323 @@
+package net.letsdank.jd.cfg.dominance;
+
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Дерево доминаторов (или пост-доминаторов) CFG.
+ * <p>
+ * Строится итеративным алгоритмом Cooper-Harvey-Kennedy ("A Simple, Fast
+ * Dominance Algorithm") по массивам, индексированным id блока: на графах
+ * из javac он сходится за два-три прохода. Для пост-доминаторов граф
+ * разворачивается, а все блоки без successors подвешиваются к
+ * виртуальному выходу. Доминаторы учитывают исключительные ребра
+ * ({@link ControlFlowGraph#allPredecessors}), пост-доминаторы - только
+ * обычные: иначе любой блок внутри try пост-доминировался бы лишь выходом.
+ * Блоки, недостижимые от корня (для пост-доминаторов - не доходящие до
+ * выхода, например бесконечный цикл), в дерево не входят. Ребра читаются
+ * из {@link CsrGraph} графа, без промежуточных списков.
+ * <p>
+ * Проверка {@link #dominates} - O(1) по номерам входа/выхода обхода дерева,
+ * границы доминирования считаются лениво при первом обращении.
+ */
+public final class DominatorTree {
+    private static final int NONE = -1;
+
+    private final List<BasicBlock> blocks;
+    private final boolean post;
+    // узел blocks.size() - виртуальный выход (только для пост-доминаторов)
+    private final int root;
+    private final int[] idom;
+    // граф, по которому строилось дерево (для пост-доминаторов - развернутый)
+    private final CsrGraph graph;
+    private final int[] pre;
+    private final int[] postNum;
+    private final List<List<BasicBlock>> children;
+    private List<List<BasicBlock>> frontiers;
+
+    private DominatorTree(List<BasicBlock> blocks, boolean post, int root, int[] idom, CsrGraph graph) {
+        this.blocks = blocks;
+        this.post = post;
+        this.root = root;
+        this.idom = idom;
+        this.graph = graph;
+
+        int n = idom.length;
+        int[][] kids = childrenOf(idom, root);
+        this.pre = new int[n];
+        this.postNum = new int[n];
+        Arrays.fill(pre, NONE);
+        Arrays.fill(postNum, NONE);
+        number(kids);
+
+        List<List<BasicBlock>> byBlock = new ArrayList<>(blocks.size());
+        for (int b = 0; b < blocks.size(); b++) {
+            List<BasicBlock> list = new ArrayList<>(kids[b].length);
+            for (int c : kids[b]) list.add(blocks.get(c));
+            byBlock.add(Collections.unmodifiableList(list));
+        }
+        this.children = byBlock;
+    }
+
+    /**
+     * Доминаторы от входного блока.
+     */
+    public static DominatorTree dominators(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        CsrGraph graph = cfg.allEdges();
+        if (cfg.entryBlock() == null) {
+            int[] idom = new int[n];
+            Arrays.fill(idom, NONE);
+            return new DominatorTree(blocks, false, NONE, idom, graph);
+        }
+
+        int[] rpo = ids(cfg.reversePostorder());
+        int root = cfg.entryBlock().id();
+        return new DominatorTree(blocks, false, root, solve(n, root, rpo, graph), graph);
+    }
+
+    /**
+     * Пост-доминаторы: доминаторы развернутого графа от виртуального выхода.
+     */
+    public static DominatorTree postDominators(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        int exit = n;
+
+        // развернутый граф: блок ведет в свои предшественники, выход -
+        // во все блоки без successors
+        CsrGraph edges = cfg.edges();
+        int[] offsets = new int[n + 2];
+        int[] targets = new int[edges.edgeCount() + n];
+        int size = 0;
+        for (int b = 0; b < n; b++) {
+            for (int k = 0; k < edges.predecessorCount(b); k++) {
+                targets[size++] = edges.predecessor(b, k);
+            }
+            offsets[b + 1] = size;
+        }
+        for (int b = 0; b < n; b++) {
+            if (edges.successorCount(b) == 0) targets[size++] = b;
+        }
+        offsets[n + 1] = size;
+        CsrGraph reversed = CsrGraph.fromSuccessors(offsets, Arrays.copyOf(targets, size));
+
+        int[] rpo = reversePostorder(exit, reversed);
+        return new DominatorTree(blocks, true, exit, solve(n + 1, exit, rpo, reversed), reversed);
+    }
+
+    /**
+     * Непосредственный доминатор блока; null для корня, недостижимых блоков
+     * и блоков, которых пост-доминирует только виртуальный выход.
+     */
+    public BasicBlock immediateDominator(BasicBlock bb) {
+        int d = idom[bb.id()];
+        if (d == NONE || bb.id() == root || d == blocks.size()) return null;
+        return blocks.get(d);
+    }
+
+    /**
+     * Блоки, для которых bb - непосредственный доминатор, в порядке адресов.
+     */
+    public List<BasicBlock> children(BasicBlock bb) {
+        return children.get(bb.id());
+    }
+
+    /**
+     * Входит ли блок в дерево.
+     */
+    public boolean contains(BasicBlock bb) {
+        return pre[bb.id()] != NONE;
+    }
+
+    /**
+     * Доминирует ли a над b (рефлексивно). Для блоков вне дерева - false.
+     */
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        int x = a.id();
+        int y = b.id();
+        if (pre[x] == NONE || pre[y] == NONE) return false;
+        return pre[x] <= pre[y] && postNum[y] <= postNum[x];
+    }
+
+    public boolean strictlyDominates(BasicBlock a, BasicBlock b) {
+        return a != b && dominates(a, b);
+    }
+
+    /**
+     * Граница доминирования блока: блоки, где его доминирование кончается
+     * (для пост-доминаторов - граница пост-доминирования, т.е. ветвления,
+     * от которых блок зависит по управлению).
+     */
+    public List<BasicBlock> frontier(BasicBlock bb) {
+        if (frontiers == null) {
+            frontiers = computeFrontiers();
+        }
+        return frontiers.get(bb.id());
+    }
+
+    public boolean isPostDominatorTree() {
+        return post;
+    }
+
+    // --- алгоритм ---
+
+    private static int[] solve(int n, int root, int[] rpo, CsrGraph graph) {
+        int[] rpoNum = new int[n];
+        Arrays.fill(rpoNum, NONE);
+        for (int i = 0; i < rpo.length; i++) {
+            rpoNum[rpo[i]] = i;
+        }
+
+        int[] idom = new int[n];
+        Arrays.fill(idom, NONE);
+        idom[root] = root;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b : rpo) {
+                if (b == root) continue;
+                int newIdom = NONE;
+                for (int k = 0; k < graph.predecessorCount(b); k++) {
+                    int p = graph.predecessor(b, k);
+                    if (idom[p] == NONE) continue;
+                    newIdom = newIdom == NONE ? p : intersect(p, newIdom, idom, rpoNum);
+                }
+                if (newIdom != NONE && idom[b] != newIdom) {
+                    idom[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        return idom;
+    }
+
+    private static int intersect(int a, int b, int[] idom, int[] rpoNum) {
+        while (a != b) {
+            while (rpoNum[a] > rpoNum[b]) a = idom[a];
+            while (rpoNum[b] > rpoNum[a]) b = idom[b];
+        }
+        return a;
+    }
+
+    private List<List<BasicBlock>> computeFrontiers() {
+        int n = idom.length;
+        List<List<BasicBlock>> df = new ArrayList<>(blocks.size());
+        for (int b = 0; b < blocks.size(); b++) {
+            df.add(new ArrayList<>(2));
+        }
+        // у каждого "бегуна" метка последнего блока, который в его DF уже добавлен
+        int[] lastAdded = new int[n];
+        Arrays.fill(lastAdded, NONE);
+        for (int b = 0; b < blocks.size(); b++) {
+            // вход - тоже точка слияния: в него еще "входят" извне метода
+            if (pre[b] == NONE || (graph.predecessorCount(b) < 2 && b != root)) continue;
+            for (int k = 0; k < graph.predecessorCount(b); k++) {
+                int runner = graph.predecessor(b, k);
+                while (runner != NONE && pre[runner] != NONE && (b == root || runner != idom[b])) {
+                    if (runner < blocks.size() && lastAdded[runner] != b) {
+                        df.get(runner).add(blocks.get(b));
+                        lastAdded[runner] = b;
+                    }
+                    if (runner == root) break;
+                    runner = idom[runner];
+                }
+            }
+        }
+        for (int b = 0; b < df.size(); b++) {
+            df.set(b, Collections.unmodifiableList(df.get(b)));
+        }
+        return df;
+    }
+
+    private static int[][] childrenOf(int[] idom, int root) {
+        int n = idom.length;
+        int[] count = new int[n];
+        for (int b = 0; b < n; b++) {
+            if (b != root && idom[b] != NONE) count[idom[b]]++;
+        }
+        int[][] kids = new int[n][];
+        for (int b = 0; b < n; b++) {
+            kids[b] = new int[count[b]];
+            count[b] = 0;
+        }
+        for (int b = 0; b < n; b++) {
+            if (b != root && idom[b] != NONE) {
+                kids[idom[b]][count[idom[b]]++] = b;
+            }
+        }
+        return kids;
+    }
+
+    /**
+     * Номера входа/выхода итеративного обхода дерева от корня.
+     */
+    private void number(int[][] kids) {
+        if (root == NONE) return;
+        int n = kids.length;
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        int sp = 0;
+        int clock = 0;
+        stack[sp++] = root;
+        pre[root] = clock++;
+        while (sp > 0) {
+            int v = stack[sp - 1];
+            if (next[sp - 1] < kids[v].length) {
+                int c = kids[v][next[sp - 1]++];
+                pre[c] = clock++;
+                next[sp] = 0;
+                stack[sp++] = c;
+            } else {
+                postNum[v] = clock++;
+                sp--;
+            }
+        }
+    }
+
+    private static int[] reversePostorder(int root, CsrGraph graph) {
+        int n = graph.nodeCount();
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        int[] order = new int[n];
+        int count = 0;
+        int sp = 0;
+        stack[sp++] = root;
+        visited[root] = true;
+        while (sp > 0) {
+            int v = stack[sp - 1];
+            if (next[sp - 1] < graph.successorCount(v)) {
+                int s = graph.successor(v, next[sp - 1]++);
+                if (!visited[s]) {
+                    visited[s] = true;
+                    next[sp] = 0;
+                    stack[sp++] = s;
+                }
+            } else {
+                order[count++] = v;
+                sp--;
+            }
+        }
+        int[] rpo = new int[count];
+        for (int i = 0; i < count; i++) {
+            rpo[i] = order[count - 1 - i];
+        }
+        return rpo;
+    }
+
+    private static int[] ids(List<BasicBlock> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i).id();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,244 @@
+package net.letsdank.jd.cfg.exception;
+
+import net.letsdank.jd.model.attribute.CodeAttribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс защищенных диапазонов exception_table.
+ * <p>
+ * Записи с одинаковыми [startPc, endPc) объединяются в один {@link Range}.
+ * Диапазоны лежат в массиве, отсортированном по startPc, поверх которого
+ * неявное сбалансированное дерево (середина отрезка - корень) с максимумом
+ * endPc в поддереве: запрос "какие диапазоны накрывают pc" отсекает
+ * поддеревья, целиком закончившиеся до pc, и стоит O(log n + k).
+ * <p>
+ * Заодно строится дерево вложенности: родитель диапазона - ближайший
+ * накрывающий его целиком. Частично пересекающиеся диапазоны (javac их
+ * не делает) друг другу не родители.
+ */
+public final class ExceptionRangeIndex {
+    private final List<CodeAttribute.ExceptionTableEntry> table;
+    // диапазоны по возрастанию startPc, при равенстве - длинный первым
+    private final Range[] ranges;
+    private final int[] maxEnd;
+    private final List<Range> roots;
+
+    private ExceptionRangeIndex(List<CodeAttribute.ExceptionTableEntry> table, Range[] ranges) {
+        this.table = table;
+        this.ranges = ranges;
+        this.maxEnd = new int[ranges.length];
+        buildMaxEnd(0, ranges.length - 1);
+        this.roots = Collections.unmodifiableList(buildNesting(ranges));
+    }
+
+    public static ExceptionRangeIndex build(List<CodeAttribute.ExceptionTableEntry> exceptionTable) {
+        List<CodeAttribute.ExceptionTableEntry> table = exceptionTable == null ? List.of() : exceptionTable;
+
+        Map<Long, Range> byBounds = new HashMap<>();
+        List<Range> list = new ArrayList<>();
+        for (int i = 0; i < table.size(); i++) {
+            CodeAttribute.ExceptionTableEntry e = table.get(i);
+            long key = ((long) e.startPc() << 32) | (e.endPc() & 0xFFFFFFFFL);
+            Range r = byBounds.get(key);
+            if (r == null) {
+                r = new Range(e.startPc(), e.endPc());
+                byBounds.put(key, r);
+                list.add(r);
+            }
+            r.addEntry(i, e);
+        }
+
+        Range[] ranges = list.toArray(new Range[0]);
+        Arrays.sort(ranges, Comparator.comparingInt(Range::startPc)
+                .thenComparing(Comparator.comparingInt(Range::endPc).reversed()));
+        return new ExceptionRangeIndex(table, ranges);
+    }
+
+    /**
+     * Все диапазоны по возрастанию startPc (при равенстве - внешний первым).
+     */
+    public List<Range> ranges() {
+        return List.of(ranges);
+    }
+
+    /**
+     * Диапазоны, не вложенные ни в какой другой.
+     */
+    public List<Range> roots() {
+        return roots;
+    }
+
+    /**
+     * Диапазоны, накрывающие pc, от внешнего к внутреннему.
+     */
+    public List<Range> rangesAt(int pc) {
+        List<Range> result = new ArrayList<>();
+        stab(0, ranges.length - 1, pc, result);
+        return result;
+    }
+
+    /**
+     * Самый внутренний диапазон, накрывающий pc, или null.
+     */
+    public Range innermostAt(int pc) {
+        List<Range> covering = rangesAt(pc);
+        return covering.isEmpty() ? null : covering.getLast();
+    }
+
+    /**
+     * Записи exception_table, чьи диапазоны накрывают pc, в порядке таблицы:
+     * именно в нем JVM ищет подходящий обработчик.
+     */
+    public List<CodeAttribute.ExceptionTableEntry> handlersAt(int pc) {
+        List<Range> covering = rangesAt(pc);
+        if (covering.isEmpty()) return List.of();
+        int count = 0;
+        for (Range r : covering) count += r.entryIndices.length;
+        int[] indices = new int[count];
+        int k = 0;
+        for (Range r : covering) {
+            for (int i : r.entryIndices) indices[k++] = i;
+        }
+        Arrays.sort(indices);
+        List<CodeAttribute.ExceptionTableEntry> result = new ArrayList<>(count);
+        for (int i : indices) result.add(table.get(i));
+        return result;
+    }
+
+    /**
+     * Все диапазоны, целиком лежащие внутри outer (без него самого), по возрастанию startPc.
+     */
+    public List<Range> enclosedBy(Range outer) {
+        List<Range> result = new ArrayList<>();
+        // отсортированы по startPc: вложенные идут сразу после outer
+        for (int i = firstStartingAtOrAfter(outer.startPc()); i < ranges.length; i++) {
+            Range r = ranges[i];
+            if (r.startPc() >= outer.endPc()) break;
+            if (r != outer && r.endPc() <= outer.endPc()) result.add(r);
+        }
+        return result;
+    }
+
+    // --- дерево ---
+
+    private int buildMaxEnd(int lo, int hi) {
+        if (lo > hi) return Integer.MIN_VALUE;
+        int mid = (lo + hi) >>> 1;
+        int max = ranges[mid].endPc();
+        max = Math.max(max, buildMaxEnd(lo, mid - 1));
+        max = Math.max(max, buildMaxEnd(mid + 1, hi));
+        maxEnd[mid] = max;
+        return max;
+    }
+
+    private void stab(int lo, int hi, int pc, List<Range> out) {
+        if (lo > hi) return;
+        int mid = (lo + hi) >>> 1;
+        // все в поддереве закончились до pc
+        if (maxEnd[mid] <= pc) return;
+        stab(lo, mid - 1, pc, out);
+        Range r = ranges[mid];
+        if (r.startPc() > pc) return; // правее старты еще больше
+        if (pc < r.endPc()) out.add(r);
+        stab(mid + 1, hi, pc, out);
+    }
+
+    private int firstStartingAtOrAfter(int pc) {
+        int lo = 0;
+        int hi = ranges.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ranges[mid].startPc() < pc) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static List<Range> buildNesting(Range[] sorted) {
+        List<Range> roots = new ArrayList<>();
+        List<Range> open = new ArrayList<>();
+        for (Range r : sorted) {
+            // закрытые к началу r диапазоны больше никого не накроют
+            while (!open.isEmpty() && open.getLast().endPc() <= r.startPc()) {
+                open.removeLast();
+            }
+            Range parent = null;
+            for (int i = open.size() - 1; i >= 0; i--) {
+                if (open.get(i).endPc() >= r.endPc()) {
+                    parent = open.get(i);
+                    break;
+                }
+            }
+            r.parent = parent;
+            if (parent == null) roots.add(r);
+            else parent.children.add(r);
+            open.add(r);
+        }
+        return roots;
+    }
+
+    /**
+     * Один защищенный диапазон [startPc, endPc) и его записи в порядке таблицы.
+     */
+    public static final class Range {
+        private final int startPc;
+        private final int endPc;
+        private final List<CodeAttribute.ExceptionTableEntry> entries = new ArrayList<>(1);
+        private int[] entryIndices = new int[0];
+        private Range parent;
+        private final List<Range> children = new ArrayList<>();
+
+        Range(int startPc, int endPc) {
+            this.startPc = startPc;
+            this.endPc = endPc;
+        }
+
+        public int startPc() {
+            return startPc;
+        }
+
+        public int endPc() {
+            return endPc;
+        }
+
+        public boolean covers(int pc) {
+            return startPc <= pc && pc < endPc;
+        }
+
+        public List<CodeAttribute.ExceptionTableEntry> entries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Ближайший диапазон, целиком накрывающий этот, или null.
+         */
+        public Range parent() {
+            return parent;
+        }
+
+        /**
+         * Непосредственно вложенные диапазоны по возрастанию startPc.
+         */
+        public List<Range> children() {
+            return Collections.unmodifiableList(children);
+        }
+
+        private void addEntry(int index, CodeAttribute.ExceptionTableEntry e) {
+            entries.add(e);
+            entryIndices = Arrays.copyOf(entryIndices, entryIndices.length + 1);
+            entryIndices[entryIndices.length - 1] = index;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + startPc + ", " + endPc + ") x" + entries.size();
+        }
+    }
+}
@@ -8,8 +8,10 @@ import java.util.List;
  * Структурированное представление одного try/catch(/finally) региона.
  * <p>
  * Ровно один "protected range" (диапазон PC) и набор "обработчиков".
+ * protectedBlocks - блоки CFG внутри диапазона, в порядке адресов.
  */
-public record ExceptionRegion(int startPc, int endPc, List<Handler> handlers) {
+public record ExceptionRegion(int startPc, int endPc, List<Handler> handlers,
+                              List<BasicBlock> protectedBlocks) {
 
     /**
      * Описание одного обработчика.
@@ -1,19 +1,21 @@
 package net.letsdank.jd.cfg.exception;
 
 import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
 import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.ExceptionEdge;
 import net.letsdank.jd.model.attribute.CodeAttribute;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Построитель структурированных exception- регионов.
  * <p>
- * Задача: сгруппировать записи из exception_table в осмысленные ExceptionRegion'ы,
- * привязать handlerPc к BasicBlock'ам и выдать список регионов.
+ * Задача: сгруппировать записи из exception_table в осмысленные ExceptionRegion'ы
+ * и выдать список регионов. Обработчики и защищенные блоки берутся из графа:
+ * CFG, построенный {@link CfgBuilder#build(CodeAttribute)}, режет блоки по
+ * границам диапазонов и обработчиков и хранит исключительные ребра.
  */
 public final class ExceptionStructurer {
     private final CodeAttribute code;
@@ -24,47 +26,55 @@ public final class ExceptionStructurer {
         this.cfg = cfg;
     }
 
+    public ExceptionStructurer(CodeAttribute code) {
+        this(code, new CfgBuilder().build(code));
+    }
+
+    /**
+     * Регионы по возрастанию startPc, внешний раньше вложенного.
+     */
     public List<ExceptionRegion> buildRegions() {
         List<ExceptionRegion> result = new ArrayList<>();
 
-        // сгруппируем по startPc/endPc
-        Map<RangeKey, List<CodeAttribute.ExceptionTableEntry>> grouped = groupEntriesByRange();
-
-        for (Map.Entry<RangeKey, List<CodeAttribute.ExceptionTableEntry>> entry : grouped.entrySet()) {
-            RangeKey key = entry.getKey();
-            List<CodeAttribute.ExceptionTableEntry> entries = entry.getValue();
+        // записи уже сгруппированы по startPc/endPc
+        for (ExceptionRangeIndex.Range range : ExceptionRangeIndex.build(code.exceptionTable()).ranges()) {
+            List<CodeAttribute.ExceptionTableEntry> entries = range.entries();
 
             List<ExceptionRegion.Handler> handlers = new ArrayList<>();
             for (CodeAttribute.ExceptionTableEntry e : entries) {
                 BasicBlock handlerBlock = cfg.blockByStartOffset(e.handlerPc());
                 if (handlerBlock == null) {
-                    // может быть странный класс или мы еще не построили блоки это этого pc
-                    // логируем и продолжаем
-                    System.out.println("No basic block for handlerPc=" + e.handlerPc());
+                    // handlerPc не на границе инструкции - битый класс, запись пропускаем
                     continue;
                 }
                 handlers.add(new ExceptionRegion.Handler(e.catchTypeIndex(), handlerBlock));
             }
 
             if (!handlers.isEmpty()) {
-                result.add(new ExceptionRegion(key.startPc, key.endPc, handlers));
+                result.add(new ExceptionRegion(range.startPc(), range.endPc(), handlers,
+                        protectedBlocks(range, handlers.getFirst())));
             }
         }
 
         return result;
     }
 
-    private Map<RangeKey, List<CodeAttribute.ExceptionTableEntry>> groupEntriesByRange() {
-        Map<RangeKey, List<CodeAttribute.ExceptionTableEntry>> grouped = new LinkedHashMap<>();
-
-        for (CodeAttribute.ExceptionTableEntry e : code.exceptionTable()) {
-            RangeKey key = new RangeKey(e.startPc(), e.endPc());
-            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(e);
+    /**
+     * Блоки диапазона с исключительным ребром в обработчик, в порядке адресов.
+     * Один обработчик может обслуживать несколько диапазонов (копии finally),
+     * поэтому блоки отбираются еще и по адресу.
+     */
+    private List<BasicBlock> protectedBlocks(ExceptionRangeIndex.Range range, ExceptionRegion.Handler handler) {
+        List<BasicBlock> blocks = new ArrayList<>();
+        for (BasicBlock bb : cfg.allPredecessors(handler.handleBlock())) {
+            if (!range.covers(bb.startOffset())) continue;
+            for (ExceptionEdge edge : bb.exceptionSuccessors()) {
+                if (edge.handler() == handler.handleBlock() && edge.catchTypeIndex() == handler.catchTypeIndex()) {
+                    blocks.add(bb);
+                    break;
+                }
+            }
         }
-
-        return grouped;
-    }
-
-    private record RangeKey(int startPc, int endPc) {
+        return blocks;
     }
 }
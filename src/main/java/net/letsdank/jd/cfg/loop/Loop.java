@@ -0,0 +1,118 @@
+package net.letsdank.jd.cfg.loop;
+
+import net.letsdank.jd.cfg.BasicBlock;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Один цикл из {@link LoopForest}.
+ * <p>
+ * Тело включает заголовок и все вложенные циклы. Для неприводимого цикла
+ * (вход не только через заголовок) заголовком считается первый по DFS
+ * вход, а остальные входы видны в {@link #entries()}.
+ */
+public final class Loop {
+    private final int index;
+    private final BasicBlock header;
+    private final boolean reducible;
+    final BitSet body = new BitSet();
+    final List<Loop> children = new ArrayList<>();
+    final List<BasicBlock> latches = new ArrayList<>();
+    final List<BasicBlock> exits = new ArrayList<>();
+    final List<BasicBlock> entries = new ArrayList<>();
+    Loop parent;
+    int depth;
+    // интервал обхода леса: вложенность циклов проверяется сравнением чисел
+    int pre;
+    int post;
+
+    Loop(int index, BasicBlock header, boolean reducible) {
+        this.index = index;
+        this.header = header;
+        this.reducible = reducible;
+    }
+
+    /**
+     * Номер цикла в {@link LoopForest#loops()}.
+     */
+    public int index() {
+        return index;
+    }
+
+    public BasicBlock header() {
+        return header;
+    }
+
+    public boolean isReducible() {
+        return reducible;
+    }
+
+    /**
+     * Объемлющий цикл или null для цикла верхнего уровня.
+     */
+    public Loop parent() {
+        return parent;
+    }
+
+    public List<Loop> children() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Глубина вложенности: 1 у циклов верхнего уровня.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Id блоков тела (вместе с вложенными циклами); не модифицировать.
+     */
+    public BitSet body() {
+        return body;
+    }
+
+    public boolean contains(BasicBlock bb) {
+        return body.get(bb.id());
+    }
+
+    /**
+     * Вложен ли other в этот цикл (рефлексивно).
+     */
+    public boolean encloses(Loop other) {
+        return pre <= other.pre && other.post <= post;
+    }
+
+    /**
+     * Блоки тела с ребром обратно в заголовок, в порядке адресов.
+     */
+    public List<BasicBlock> latches() {
+        return Collections.unmodifiableList(latches);
+    }
+
+    /**
+     * Блоки вне цикла, в которые из него есть ребро, в порядке адресов.
+     */
+    public List<BasicBlock> exits() {
+        return Collections.unmodifiableList(exits);
+    }
+
+    /**
+     * Заголовок и прочие блоки тела, в которые есть ребро снаружи.
+     * У приводимого цикла - только заголовок.
+     */
+    public List<BasicBlock> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public String toString() {
+        return "Loop#" + index + " @ " + header.startOffset() +
+                " (blocks=" + body.cardinality() +
+                ", depth=" + depth +
+                (reducible ? "" : ", irreducible") + ")";
+    }
+}
@@ -0,0 +1,351 @@
+package net.letsdank.jd.cfg.loop;
+
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Лес вложенности циклов метода.
+ * <p>
+ * Строится один раз алгоритмом Havlak (с поправкой Ramalingam для
+ * неприводимых графов): DFS от входа делит ребра на обратные и прочие,
+ * затем узлы обходятся в обратном preorder, и каждый заголовок через
+ * union-find поглощает тело своего цикла, уже свернутое до вложенных
+ * заголовков. Почти линейно по числу ребер, без повторных обходов на
+ * каждый цикл.
+ * <p>
+ * В отличие от сравнения адресов, цикл определяется по структуре графа,
+ * так что расположение тела в байткоде не важно. Ребра берутся вместе с
+ * исключительными: обработчик, возвращающийся в цикл, - часть его тела.
+ * Недостижимые от входа блоки ни в какой цикл не входят.
+ */
+public final class LoopForest {
+    private static final int NONE = -1;
+
+    private final List<Loop> loops;
+    private final List<Loop> topLevel;
+    // innermost[id блока] - самый внутренний цикл или null
+    private final Loop[] innermost;
+
+    private LoopForest(List<Loop> loops, List<Loop> topLevel, Loop[] innermost) {
+        this.loops = loops;
+        this.topLevel = topLevel;
+        this.innermost = innermost;
+    }
+
+    public static LoopForest compute(ControlFlowGraph cfg) {
+        List<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        Loop[] innermost = new Loop[n];
+        if (cfg.entryBlock() == null) {
+            return new LoopForest(List.of(), List.of(), innermost);
+        }
+
+        // 1. DFS: preorder-номера и last[w] - максимальный номер в поддереве w
+        int[] number = new int[n];
+        Arrays.fill(number, NONE);
+        int[] node = new int[n];
+        int[] last = new int[n];
+        CsrGraph graph = cfg.allEdges();
+        int count = dfs(graph, cfg.entryBlock().id(), number, node, last);
+
+        // 2. обратные ребра идут в DFS-предка, остальные - прочие
+        int[][] backPreds = new int[count][];
+        IntList[] nonBackPreds = new IntList[count];
+        for (int w = 0; w < count; w++) {
+            int b = node[w];
+            IntList back = new IntList();
+            IntList other = new IntList();
+            for (int k = 0; k < graph.predecessorCount(b); k++) {
+                int v = number[graph.predecessor(b, k)];
+                if (v == NONE) continue;
+                if (w <= v && v <= last[w]) back.add(v);
+                else other.add(v);
+            }
+            backPreds[w] = back.toArray();
+            nonBackPreds[w] = other;
+        }
+
+        // 3. снизу вверх сворачиваем тела циклов в заголовки
+        int[] header = new int[count];
+        Arrays.fill(header, NONE);
+        boolean[] isHeader = new boolean[count];
+        boolean[] irreducible = new boolean[count];
+        int[] uf = new int[count];
+        for (int i = 0; i < count; i++) uf[i] = i;
+        BitSet inPool = new BitSet(count);
+        IntList pool = new IntList();
+        IntList work = new IntList();
+
+        for (int w = count - 1; w >= 0; w--) {
+            pool.clear();
+            for (int v : backPreds[w]) {
+                if (v == w) {
+                    isHeader[w] = true; // петля на себя
+                    continue;
+                }
+                int x = find(uf, v);
+                if (!inPool.get(x)) {
+                    inPool.set(x);
+                    pool.add(x);
+                }
+            }
+            if (pool.size() > 0) isHeader[w] = true;
+
+            work.clear();
+            for (int i = 0; i < pool.size(); i++) work.add(pool.get(i));
+            while (work.size() > 0) {
+                int x = work.pop();
+                IntList preds = nonBackPreds[x];
+                for (int i = 0; i < preds.size(); i++) {
+                    int y = find(uf, preds.get(i));
+                    if (!(w <= y && y <= last[w])) {
+                        // вход в цикл в обход заголовка
+                        irreducible[w] = true;
+                        if (!nonBackPreds[w].contains(y)) nonBackPreds[w].add(y);
+                    } else if (y != w && !inPool.get(y)) {
+                        inPool.set(y);
+                        pool.add(y);
+                        work.add(y);
+                    }
+                }
+            }
+            for (int i = 0; i < pool.size(); i++) {
+                int x = pool.get(i);
+                header[x] = w;
+                uf[x] = w;
+                inPool.clear(x);
+            }
+        }
+
+        // 4. объекты циклов в порядке адресов заголовков
+        List<Integer> headers = new ArrayList<>();
+        for (int w = 0; w < count; w++) {
+            if (isHeader[w]) headers.add(w);
+        }
+        headers.sort(Comparator.comparingInt(w -> node[w]));
+        Loop[] loopOfHeader = new Loop[count];
+        List<Loop> loops = new ArrayList<>(headers.size());
+        for (int w : headers) {
+            Loop loop = new Loop(loops.size(), blocks.get(node[w]), !irreducible[w]);
+            loopOfHeader[w] = loop;
+            loops.add(loop);
+        }
+
+        // родитель заголовка - DFS-предок, так что в preorder он обрабатывается раньше
+        List<Loop> topLevel = new ArrayList<>();
+        for (int w = 0; w < count; w++) {
+            Loop own = loopOfHeader[w];
+            Loop enclosing = header[w] == NONE ? null : loopOfHeader[header[w]];
+            if (own != null) {
+                own.parent = enclosing;
+                own.depth = enclosing == null ? 1 : enclosing.depth + 1;
+                if (enclosing == null) topLevel.add(own);
+                else enclosing.children.add(own);
+                innermost[node[w]] = own;
+            } else {
+                innermost[node[w]] = enclosing;
+            }
+        }
+        Comparator<Loop> byAddress = Comparator.comparingInt(l -> l.header().id());
+        topLevel.sort(byAddress);
+        for (Loop loop : loops) loop.children.sort(byAddress);
+        numberForest(topLevel);
+
+        // 5. тела, латчи, выходы и входы
+        for (int b = 0; b < n; b++) {
+            for (Loop l = innermost[b]; l != null; l = l.parent) {
+                l.body.set(b);
+            }
+        }
+        for (Loop loop : loops) {
+            int h = loop.header().id();
+            loop.entries.add(loop.header());
+            BitSet exits = new BitSet(n);
+            for (int b = loop.body.nextSetBit(0); b >= 0; b = loop.body.nextSetBit(b + 1)) {
+                for (int k = 0; k < graph.successorCount(b); k++) {
+                    int succ = graph.successor(b, k);
+                    if (succ == h) loop.latches.add(blocks.get(b));
+                    else if (!loop.body.get(succ)) exits.set(succ);
+                }
+                if (b != h) {
+                    for (int k = 0; k < graph.predecessorCount(b); k++) {
+                        int p = graph.predecessor(b, k);
+                        if (!loop.body.get(p) && number[p] != NONE) {
+                            loop.entries.add(blocks.get(b));
+                            break;
+                        }
+                    }
+                }
+            }
+            for (int b = exits.nextSetBit(0); b >= 0; b = exits.nextSetBit(b + 1)) {
+                loop.exits.add(blocks.get(b));
+            }
+        }
+
+        return new LoopForest(Collections.unmodifiableList(loops),
+                Collections.unmodifiableList(topLevel), innermost);
+    }
+
+    /**
+     * Все циклы в порядке адресов заголовков.
+     */
+    public List<Loop> loops() {
+        return loops;
+    }
+
+    /**
+     * Циклы, не вложенные ни в какой другой.
+     */
+    public List<Loop> topLevel() {
+        return topLevel;
+    }
+
+    public boolean isEmpty() {
+        return loops.isEmpty();
+    }
+
+    /**
+     * Самый внутренний цикл, содержащий блок, или null.
+     */
+    public Loop loopOf(BasicBlock bb) {
+        return innermost[bb.id()];
+    }
+
+    /**
+     * Цикл с заголовком bb или null, если bb - не заголовок.
+     */
+    public Loop loopWithHeader(BasicBlock bb) {
+        Loop l = innermost[bb.id()];
+        return l != null && l.header() == bb ? l : null;
+    }
+
+    public boolean isHeader(BasicBlock bb) {
+        return loopWithHeader(bb) != null;
+    }
+
+    /**
+     * Число циклов, содержащих блок (0 - вне циклов).
+     */
+    public int depth(BasicBlock bb) {
+        Loop l = innermost[bb.id()];
+        return l == null ? 0 : l.depth();
+    }
+
+    /**
+     * Входит ли блок в тело цикла (с учетом вложенных). O(1).
+     */
+    public boolean contains(Loop loop, BasicBlock bb) {
+        Loop l = innermost[bb.id()];
+        return l != null && loop.encloses(l);
+    }
+
+    /**
+     * Все ли циклы приводимы (с единственным входом через заголовок).
+     */
+    public boolean isReducible() {
+        for (Loop l : loops) {
+            if (!l.isReducible()) return false;
+        }
+        return true;
+    }
+
+    // --- детали ---
+
+    private static int dfs(CsrGraph graph, int entry, int[] number, int[] node, int[] last) {
+        int n = number.length;
+        int[] stack = new int[n];
+        int[] nextSucc = new int[n];
+        int sp = 0;
+        int count = 0;
+        number[entry] = count;
+        node[count++] = entry;
+        stack[sp++] = entry;
+        while (sp > 0) {
+            int b = stack[sp - 1];
+            if (nextSucc[sp - 1] < graph.successorCount(b)) {
+                int succ = graph.successor(b, nextSucc[sp - 1]++);
+                if (number[succ] == NONE) {
+                    number[succ] = count;
+                    node[count++] = succ;
+                    nextSucc[sp] = 0;
+                    stack[sp++] = succ;
+                }
+            } else {
+                last[number[b]] = count - 1;
+                sp--;
+            }
+        }
+        return count;
+    }
+
+    private static int find(int[] uf, int x) {
+        int root = x;
+        while (uf[root] != root) root = uf[root];
+        while (uf[x] != root) {
+            int next = uf[x];
+            uf[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    private static void numberForest(List<Loop> roots) {
+        int[] clock = {0};
+        for (Loop root : roots) number(root, clock);
+    }
+
+    private static void number(Loop loop, int[] clock) {
+        // глубина вложенности циклов мала, рекурсия здесь безопасна
+        loop.pre = clock[0]++;
+        for (Loop child : loop.children) number(child, clock);
+        loop.post = clock[0]++;
+    }
+
+    /**
+     * Растущий массив int без упаковки.
+     */
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        int pop() {
+            return data[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean contains(int v) {
+            for (int i = 0; i < size; i++) {
+                if (data[i] == v) return true;
+            }
+            return false;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package net.letsdank.jd.cfg.ssa;
+
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.cfg.CsrGraph;
+import net.letsdank.jd.cfg.dataflow.LocalSlots;
+import net.letsdank.jd.cfg.dataflow.Liveness;
+import net.letsdank.jd.cfg.dominance.DominatorTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SSA-форма локальных переменных метода.
+ * <p>
+ * Каждая запись в слот (xstore, iinc) и каждое входное значение слота
+ * получают свой номер значения, чтения связываются с единственным
+ * значением, а на слияниях ставятся {@link Phi}. Построение по Cytron et al.:
+ * phi - в итерированной границе доминирования блоков с записями, только
+ * там, где слот жив ({@link Liveness}, "pruned SSA"), затем переименование
+ * обходом дерева доминаторов и удаление тривиальных phi. Обработчики
+ * исключений получают phi для всех живых слотов.
+ * <p>
+ * Поверх этого одним проходом считаются:
+ * <ul>
+ *     <li>использования: какие значения кто-то читает ({@link #isUsed}) -
+ *     остальные записи мертвые;</li>
+ *     <li>копии: xload a; xstore b ({@link #copySource});</li>
+ *     <li>выход из SSA: значения, связанные через phi, - одна переменная
+ *     исходника ({@link #variableOf}). Так слот, переиспользованный под
+ *     несвязанные переменные, распадается на несколько.</li>
+ * </ul>
+ * Значения стека операндов сюда не входят: они живут внутри одного
+ * выражения, и их собирает построитель выражений.
+ */
+public final class LocalSsa {
+    public enum Kind {
+        /**
+         * Параметр (или this) на входе метода.
+         */
+        PARAMETER,
+        /**
+         * Слот, еще не записанный на входе метода.
+         */
+        UNDEFINED,
+        STORE,
+        PHI
+    }
+
+    private static final int NONE = -1;
+
+    private final ControlFlowGraph cfg;
+    private final int slots;
+    // по номеру значения
+    private Kind[] kind = new Kind[16];
+    private int[] slotOf = new int[16];
+    private int[] defInsn = new int[16];
+    private Phi[] phiOf = new Phi[16];
+    private int valueCount;
+    // по номеру инструкции
+    private final int[] readValue;
+    private final int[] writtenValue;
+    // phis[id блока] - phi блока по слотам (или null)
+    private final Phi[][] phis;
+    private final List<List<Phi>> phiLists;
+
+    private int[] alias;
+    private BitSet used;
+    private int[] variable;
+    private int variableCount;
+    private int[] variableSlot;
+    private int[] variableIndexInSlot;
+
+    private LocalSsa(ControlFlowGraph cfg, int slots) {
+        this.cfg = cfg;
+        this.slots = slots;
+        this.readValue = new int[cfg.instructionCount()];
+        this.writtenValue = new int[cfg.instructionCount()];
+        Arrays.fill(readValue, NONE);
+        Arrays.fill(writtenValue, NONE);
+        this.phis = new Phi[cfg.blocks().size()][];
+        this.phiLists = new ArrayList<>(cfg.blocks().size());
+    }
+
+    /**
+     * parameterSlots - сколько слотов занимают this и параметры.
+     */
+    public static LocalSsa build(ControlFlowGraph cfg, int parameterSlots) {
+        Liveness liveness = Liveness.compute(cfg);
+        int slots = Math.max(liveness.slotCount(), parameterSlots);
+        LocalSsa ssa = new LocalSsa(cfg, slots);
+        if (cfg.entryBlock() == null) {
+            ssa.finish();
+            return ssa;
+        }
+        ssa.placePhis(liveness);
+        ssa.rename(parameterSlots);
+        ssa.removeTrivialPhis();
+        ssa.finish();
+        return ssa;
+    }
+
+    // --- запросы ---
+
+    public int slotCount() {
+        return slots;
+    }
+
+    public int valueCount() {
+        return valueCount;
+    }
+
+    public Kind kind(int value) {
+        return kind[value];
+    }
+
+    public int slot(int value) {
+        return slotOf[value];
+    }
+
+    /**
+     * Номер инструкции записи для {@link Kind#STORE}, иначе -1.
+     */
+    public int definingInsn(int value) {
+        return kind[value] == Kind.STORE ? defInsn[value] : NONE;
+    }
+
+    /**
+     * phi, определяющий значение, или null.
+     */
+    public Phi phi(int value) {
+        return phiOf[value];
+    }
+
+    /**
+     * phi на входе блока в порядке слотов.
+     */
+    public List<Phi> phis(BasicBlock bb) {
+        return phiLists.get(bb.id());
+    }
+
+    /**
+     * Значение, которое читает i-я инструкция, или -1 (не читает слот или недостижима).
+     */
+    public int valueRead(int insnIndex) {
+        return readValue[insnIndex];
+    }
+
+    /**
+     * Значение, которое записывает i-я инструкция, или -1.
+     */
+    public int valueWritten(int insnIndex) {
+        return writtenValue[insnIndex];
+    }
+
+    /**
+     * Читает ли значение хоть одна инструкция (напрямую или через цепочку phi).
+     */
+    public boolean isUsed(int value) {
+        return used.get(value);
+    }
+
+    /**
+     * Мертвая ли запись i-й инструкции: ее значение никто не читает.
+     */
+    public boolean isDeadStore(int insnIndex) {
+        int v = writtenValue[insnIndex];
+        return v != NONE && !used.get(v);
+    }
+
+    /**
+     * Для записи вида xload a; xstore b - значение a, иначе -1.
+     */
+    public int copySource(int value) {
+        if (kind[value] != Kind.STORE) return NONE;
+        int i = defInsn[value];
+        if (i == 0) return NONE;
+        BasicBlock bb = cfg.blockOfInsn(i);
+        if (i == cfg.firstInsnIndex(bb)) return NONE;
+        Insn store = insnAt(bb, i);
+        Insn load = insnAt(bb, i - 1);
+        if (!LocalSlots.reads(load) || LocalSlots.writes(load) || readValue[i - 1] == NONE) return NONE;
+        // один тип: первая буква мнемоники (iload/istore, aload/astore, ...)
+        if (load.opcode().mnemonic().charAt(0) != store.opcode().mnemonic().charAt(0)) return NONE;
+        return readValue[i - 1];
+    }
+
+    /**
+     * Значение после снятия цепочки копий.
+     */
+    public int resolveCopies(int value) {
+        int v = value;
+        for (int guard = 0; guard < valueCount; guard++) {
+            int src = copySource(v);
+            if (src == NONE) return v;
+            v = src;
+        }
+        return v;
+    }
+
+    /**
+     * Переменная исходника, к которой относится значение, или -1 для
+     * {@link Kind#UNDEFINED}.
+     */
+    public int variableOf(int value) {
+        return variable[value];
+    }
+
+    public int variableCount() {
+        return variableCount;
+    }
+
+    public int variableSlot(int variable) {
+        return variableSlot[variable];
+    }
+
+    /**
+     * Порядковый номер переменной среди переменных того же слота (0 - первая).
+     */
+    public int variableIndexInSlot(int variable) {
+        return variableIndexInSlot[variable];
+    }
+
+    /**
+     * Переменная, которую читает или пишет i-я инструкция, или -1.
+     */
+    public int variableOfInsn(int insnIndex) {
+        int v = writtenValue[insnIndex] != NONE ? writtenValue[insnIndex] : readValue[insnIndex];
+        return v == NONE ? NONE : variable[v];
+    }
+
+    // --- построение ---
+
+    private void placePhis(Liveness liveness) {
+        List<BasicBlock> blocks = cfg.blocks();
+        DominatorTree dom = cfg.dominators();
+        BitSet[] defBlocks = new BitSet[slots];
+        for (int s = 0; s < slots; s++) {
+            defBlocks[s] = new BitSet(blocks.size());
+            defBlocks[s].set(cfg.entryBlock().id());
+        }
+        for (BasicBlock bb : blocks) {
+            for (Insn insn : bb.instructions()) {
+                if (LocalSlots.writes(insn)) defBlocks[LocalSlots.slotOf(insn)].set(bb.id());
+            }
+        }
+
+        List<BasicBlock> handlers = cfg.handlerBlocks();
+        int[] work = new int[blocks.size()];
+        for (int s = 0; s < slots; s++) {
+            BitSet queued = (BitSet) defBlocks[s].clone();
+            int sp = 0;
+            for (int b = queued.nextSetBit(0); b >= 0; b = queued.nextSetBit(b + 1)) work[sp++] = b;
+            for (BasicBlock h : handlers) {
+                if (dom.contains(h) && liveness.isLiveIn(h, s) && addPhi(h, s) && !queued.get(h.id())) {
+                    queued.set(h.id());
+                    work[sp++] = h.id();
+                }
+            }
+            while (sp > 0) {
+                BasicBlock bb = blocks.get(work[--sp]);
+                if (!dom.contains(bb)) continue;
+                for (BasicBlock f : dom.frontier(bb)) {
+                    if (!liveness.isLiveIn(f, s) || !addPhi(f, s)) continue;
+                    if (!queued.get(f.id())) {
+                        queued.set(f.id());
+                        work[sp++] = f.id();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ставит phi слота в блок; false, если он там уже есть.
+     */
+    private boolean addPhi(BasicBlock bb, int slot) {
+        Phi[] row = phis[bb.id()];
+        if (row == null) {
+            row = new Phi[slots];
+            phis[bb.id()] = row;
+        }
+        if (row[slot] != null) return false;
+        int v = newValue(Kind.PHI, slot, bb.id());
+        row[slot] = new Phi(bb, slot, v);
+        phiOf[v] = row[slot];
+        return true;
+    }
+
+    private int newValue(Kind k, int slot, int def) {
+        if (valueCount == kind.length) {
+            int size = valueCount * 2;
+            kind = Arrays.copyOf(kind, size);
+            slotOf = Arrays.copyOf(slotOf, size);
+            defInsn = Arrays.copyOf(defInsn, size);
+            phiOf = Arrays.copyOf(phiOf, size);
+        }
+        kind[valueCount] = k;
+        slotOf[valueCount] = slot;
+        defInsn[valueCount] = def;
+        return valueCount++;
+    }
+
+    /**
+     * Переименование: обход дерева доминаторов со стеком текущих значений
+     * на каждый слот. Стеки - один общий массив значений с откатом по журналу.
+     */
+    private void rename(int parameterSlots) {
+        List<BasicBlock> blocks = cfg.blocks();
+        DominatorTree dom = cfg.dominators();
+        CsrGraph normal = cfg.edges();
+        CsrGraph exceptional = cfg.exceptionEdges();
+
+        int[] current = new int[slots];
+        for (int s = 0; s < slots; s++) {
+            current[s] = newValue(s < parameterSlots ? Kind.PARAMETER : Kind.UNDEFINED, s, NONE);
+        }
+        // вход метода - тоже ребро в первый блок, если он заголовок цикла
+        feedAll(cfg.entryBlock().id(), current);
+
+        // журнал (слот, прежнее значение) для отката при выходе из поддерева
+        int[] undoSlot = new int[16];
+        int[] undoValue = new int[16];
+        int undoSize = 0;
+
+        int n = blocks.size();
+        int[] stack = new int[n];
+        int[] nextChild = new int[n];
+        int[] undoMark = new int[n];
+        int sp = 0;
+        stack[sp++] = cfg.entryBlock().id();
+        boolean entering = true;
+        while (sp > 0) {
+            int b = stack[sp - 1];
+            BasicBlock bb = blocks.get(b);
+            if (entering) {
+                undoMark[sp - 1] = undoSize;
+                nextChild[sp - 1] = 0;
+                Phi[] own = phis[b];
+                if (own != null) {
+                    for (Phi phi : own) {
+                        if (phi == null) continue;
+                        if (undoSize == undoSlot.length) {
+                            undoSlot = Arrays.copyOf(undoSlot, undoSize * 2);
+                            undoValue = Arrays.copyOf(undoValue, undoSize * 2);
+                        }
+                        undoSlot[undoSize] = phi.slot();
+                        undoValue[undoSize++] = current[phi.slot()];
+                        current[phi.slot()] = phi.value();
+                    }
+                }
+                // исключение может вылететь еще до первой инструкции
+                for (int k = 0; k < exceptional.successorCount(b); k++) {
+                    feedAll(exceptional.successor(b, k), current);
+                }
+                int index = cfg.firstInsnIndex(bb);
+                for (Insn insn : bb.instructions()) {
+                    int s = LocalSlots.slotOf(insn);
+                    if (s != LocalSlots.NONE) {
+                        if (LocalSlots.reads(insn)) readValue[index] = current[s];
+                        if (LocalSlots.writes(insn)) {
+                            int v = newValue(Kind.STORE, s, index);
+                            writtenValue[index] = v;
+                            if (undoSize == undoSlot.length) {
+                                undoSlot = Arrays.copyOf(undoSlot, undoSize * 2);
+                                undoValue = Arrays.copyOf(undoValue, undoSize * 2);
+                            }
+                            undoSlot[undoSize] = s;
+                            undoValue[undoSize++] = current[s];
+                            current[s] = v;
+                            for (int k = 0; k < exceptional.successorCount(b); k++) {
+                                feed(exceptional.successor(b, k), s, v);
+                            }
+                        }
+                    }
+                    index++;
+                }
+                for (int k = 0; k < normal.successorCount(b); k++) {
+                    feedAll(normal.successor(b, k), current);
+                }
+            }
+
+            List<BasicBlock> children = dom.children(bb);
+            if (nextChild[sp - 1] < children.size()) {
+                BasicBlock child = children.get(nextChild[sp - 1]++);
+                stack[sp++] = child.id();
+                entering = true;
+            } else {
+                while (undoSize > undoMark[sp - 1]) {
+                    undoSize--;
+                    current[undoSlot[undoSize]] = undoValue[undoSize];
+                }
+                sp--;
+                entering = false;
+            }
+        }
+    }
+
+    private void feedAll(int block, int[] current) {
+        Phi[] row = phis[block];
+        if (row == null) return;
+        for (Phi phi : row) {
+            if (phi != null) phi.addOperand(current[phi.slot()]);
+        }
+    }
+
+    private void feed(int block, int slot, int value) {
+        Phi[] row = phis[block];
+        if (row != null && row[slot] != null) row[slot].addOperand(value);
+    }
+
+    /**
+     * phi, у которого все операнды (кроме него самого) - одно значение,
+     * заменяется этим значением. Повторяем, пока что-то меняется: снятие
+     * одного phi может сделать тривиальным другой.
+     */
+    private void removeTrivialPhis() {
+        alias = new int[valueCount];
+        for (int v = 0; v < valueCount; v++) alias[v] = v;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Phi[] row : phis) {
+                if (row == null) continue;
+                for (Phi phi : row) {
+                    if (phi == null || alias[phi.value()] != phi.value()) continue;
+                    int same = NONE;
+                    boolean trivial = true;
+                    for (int i = 0; i < phi.operandCount; i++) {
+                        int op = resolve(phi.operands[i]);
+                        if (op == phi.value() || op == same) continue;
+                        if (same != NONE) {
+                            trivial = false;
+                            break;
+                        }
+                        same = op;
+                    }
+                    if (trivial && same != NONE) {
+                        alias[phi.value()] = same;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private int resolve(int v) {
+        while (alias[v] != v) v = alias[v];
+        return v;
+    }
+
+    /**
+     * Снимает псевдонимы, собирает списки phi, использования и переменные.
+     */
+    private void finish() {
+        if (alias == null) {
+            alias = new int[valueCount];
+            for (int v = 0; v < valueCount; v++) alias[v] = v;
+        }
+        for (int i = 0; i < readValue.length; i++) {
+            if (readValue[i] != NONE) readValue[i] = resolve(readValue[i]);
+        }
+        List<Phi> live = new ArrayList<>();
+        for (int b = 0; b < phis.length; b++) {
+            Phi[] row = phis[b];
+            List<Phi> list = new ArrayList<>(0);
+            if (row != null) {
+                for (int s = 0; s < row.length; s++) {
+                    Phi phi = row[s];
+                    if (phi == null) continue;
+                    if (alias[phi.value()] != phi.value()) {
+                        row[s] = null;
+                        phiOf[phi.value()] = null;
+                        continue;
+                    }
+                    int[] ops = new int[phi.operandCount];
+                    int count = 0;
+                    for (int i = 0; i < phi.operandCount; i++) {
+                        int op = resolve(phi.operands[i]);
+                        if (op != phi.value()) ops[count++] = op;
+                    }
+                    Arrays.sort(ops, 0, count);
+                    phi.operands = ops;
+                    phi.operandCount = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (i == 0 || ops[i] != ops[i - 1]) ops[phi.operandCount++] = ops[i];
+                    }
+                    list.add(phi);
+                    live.add(phi);
+                }
+            }
+            phiLists.add(Collections.unmodifiableList(list));
+        }
+
+        // использования: прочитанные значения и, транзитивно, операнды нужных phi
+        used = new BitSet(valueCount);
+        int[] work = new int[valueCount];
+        int sp = 0;
+        for (int v : readValue) {
+            if (v != NONE && !used.get(v)) {
+                used.set(v);
+                work[sp++] = v;
+            }
+        }
+        while (sp > 0) {
+            Phi phi = phiOf[work[--sp]];
+            if (phi == null) continue;
+            for (int i = 0; i < phi.operandCount; i++) {
+                int op = phi.operands[i];
+                if (!used.get(op)) {
+                    used.set(op);
+                    work[sp++] = op;
+                }
+            }
+        }
+
+        // переменные: значения, связанные через phi; "еще не записан" никого не связывает
+        int[] uf = new int[valueCount];
+        for (int v = 0; v < valueCount; v++) uf[v] = v;
+        for (Phi phi : live) {
+            for (int i = 0; i < phi.operandCount; i++) {
+                int op = phi.operands[i];
+                if (kind[op] != Kind.UNDEFINED) union(uf, phi.value(), op);
+            }
+        }
+        variable = new int[valueCount];
+        variableSlot = new int[valueCount];
+        variableIndexInSlot = new int[valueCount];
+        Arrays.fill(variable, NONE);
+        int[] rootVariable = new int[valueCount];
+        Arrays.fill(rootVariable, NONE);
+        int[] perSlot = new int[slots];
+        // нумеруем в порядке появления: параметры, затем по ходу инструкций
+        for (int v = 0; v < valueCount; v++) {
+            if (kind[v] == Kind.PARAMETER) assignVariable(v, uf, rootVariable, perSlot);
+        }
+        for (int i = 0; i < readValue.length; i++) {
+            if (writtenValue[i] != NONE) assignVariable(writtenValue[i], uf, rootVariable, perSlot);
+            if (readValue[i] != NONE) assignVariable(readValue[i], uf, rootVariable, perSlot);
+        }
+        for (int v = 0; v < valueCount; v++) {
+            assignVariable(v, uf, rootVariable, perSlot);
+        }
+    }
+
+    private void assignVariable(int v, int[] uf, int[] rootVariable, int[] perSlot) {
+        // "еще не записан" - не переменная
+        if (variable[v] != NONE || kind[v] == Kind.UNDEFINED) return;
+        int root = find(uf, resolve(v));
+        if (rootVariable[root] == NONE) {
+            rootVariable[root] = variableCount;
+            variableSlot[variableCount] = slotOf[v];
+            variableIndexInSlot[variableCount] = perSlot[slotOf[v]]++;
+            variableCount++;
+        }
+        variable[v] = rootVariable[root];
+    }
+
+    private static void union(int[] uf, int a, int b) {
+        int ra = find(uf, a);
+        int rb = find(uf, b);
+        if (ra != rb) uf[Math.max(ra, rb)] = Math.min(ra, rb);
+    }
+
+    private static int find(int[] uf, int x) {
+        int root = x;
+        while (uf[root] != root) root = uf[root];
+        while (uf[x] != root) {
+            int next = uf[x];
+            uf[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    private Insn insnAt(BasicBlock bb, int insnIndex) {
+        return bb.instructions().get(insnIndex - cfg.firstInsnIndex(bb));
+    }
+}
@@ -0,0 +1,61 @@
+package net.letsdank.jd.cfg.ssa;
+
+import net.letsdank.jd.cfg.BasicBlock;
+
+import java.util.Arrays;
+
+/**
+ * phi-узел слота на входе блока: значение {@link #value()} равно одному из
+ * {@link #operands()} в зависимости от того, откуда пришло управление.
+ * <p>
+ * У обработчика исключений операндами становятся все версии слота из
+ * защищенных блоков: исключение могло вылететь между любыми записями.
+ */
+public final class Phi {
+    private final BasicBlock block;
+    private final int slot;
+    private final int value;
+    int[] operands = new int[2];
+    int operandCount;
+
+    Phi(BasicBlock block, int slot, int value) {
+        this.block = block;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    public BasicBlock block() {
+        return block;
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    /**
+     * Номер значения, которое определяет phi.
+     */
+    public int value() {
+        return value;
+    }
+
+    /**
+     * Различные входящие значения по возрастанию номера.
+     */
+    public int[] operands() {
+        return Arrays.copyOf(operands, operandCount);
+    }
+
+    void addOperand(int v) {
+        for (int i = 0; i < operandCount; i++) {
+            if (operands[i] == v) return;
+        }
+        if (operandCount == operands.length) operands = Arrays.copyOf(operands, operandCount * 2);
+        operands[operandCount++] = v;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + value + " = phi" + Arrays.toString(operands()) + " @" + block.startOffset() + " slot " + slot;
+    }
+}
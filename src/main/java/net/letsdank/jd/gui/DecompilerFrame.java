@@ -2,17 +2,17 @@ package net.letsdank.jd.gui;
 
 import net.letsdank.jd.ast.DecompilerOptions;
 import net.letsdank.jd.ast.MethodDecompiler;
-import net.letsdank.jd.bytecode.BytecodeDecoder;
-import net.letsdank.jd.bytecode.insn.*;
+import net.letsdank.jd.io.BytecodeStore;
 import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.io.OffHeapBytecodeStore;
 import net.letsdank.jd.lang.Language;
 import net.letsdank.jd.lang.LanguageBackend;
 import net.letsdank.jd.lang.LanguageBackends;
 import net.letsdank.jd.model.ClassFile;
 import net.letsdank.jd.model.ConstantPool;
 import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.AttributeInfo;
 import net.letsdank.jd.model.attribute.CodeAttribute;
-import net.letsdank.jd.model.cp.*;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -22,6 +22,8 @@ import java.awt.*;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -45,6 +47,21 @@ public final class DecompilerFrame extends JFrame {
     private File currentFile; // .class или .jar
     private boolean currentIsJar;
 
+    // Хранилище байткода текущего открытого файла
+    private BytecodeStore bytecodeStore = BytecodeStore.heap();
+
+    // Вкладка Bytecode: методы до этого размера рендерим сразу, большие - в фоне кусками
+    private static final int SYNC_DISASSEMBLY_LIMIT = 4 * 1024;
+    private static final int DISASSEMBLY_CHUNK_CHARS = 64 * 1024;
+
+    private final DisassemblyRenderer disassemblyRenderer = new DisassemblyRenderer();
+    private final MethodTextCache disassemblyCache = new MethodTextCache(16L * 1024 * 1024);
+    private DisassemblyWorker disassemblyWorker;
+
+    // Вкладка Java: декомпиляция метода всегда в фоне, готовый текст - в кеше
+    private final MethodTextCache sourceCache = new MethodTextCache(16L * 1024 * 1024);
+    private DecompileWorker decompileWorker;
+
     public DecompilerFrame() {
         super("Java Decompiler");
 
@@ -160,18 +177,38 @@ public final class DecompilerFrame extends JFrame {
         recentFilesMenu = new JMenu("Recent files");
         rebuildRecentFilesMenu();
 
+        // Где хранить байткод методов открытых файлов
+        JMenu storageMenu = new JMenu("Bytecode storage");
+        ButtonGroup storageGroup = new ButtonGroup();
+        for (BytecodeStorageMode mode : BytecodeStorageMode.values()) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(mode.title, settings.storageMode == mode);
+            item.addActionListener(e -> {
+                settings.storageMode = mode;
+                settings.save();
+            });
+            storageGroup.add(item);
+            storageMenu.add(item);
+        }
+
         fileMenu.add(openClassItem);
         fileMenu.add(openJarItem);
         fileMenu.addSeparator();
         fileMenu.add(reloadItem);
         fileMenu.addSeparator();
         fileMenu.add(recentFilesMenu);
+        fileMenu.addSeparator();
+        fileMenu.add(storageMenu);
 
         bar.add(fileMenu);
         return bar;
     }
 
+    /**
+     * Перерисовка после смены настроек: готовые исходники с этого момента устарели.
+     */
     private void refreshCurrentSelection() {
+        cancelDecompile();
+        sourceCache.clear();
         Object node = tree.getLastSelectedPathComponent();
         if (node == null) return;
 
@@ -204,9 +241,11 @@ public final class DecompilerFrame extends JFrame {
     }
 
     private void openClassFile(File file) {
+        BytecodeStore store = createBytecodeStore();
         try (FileInputStream in = new FileInputStream(file)) {
-            ClassFileReader reader = new ClassFileReader();
+            ClassFileReader reader = new ClassFileReader(store);
             ClassFile cf = reader.read(in);
+            replaceBytecodeStore(store);
             // Автоопределение языка на основе class-файла
             currentBackend = LanguageBackends.autoDetect(cf);
 
@@ -220,6 +259,7 @@ public final class DecompilerFrame extends JFrame {
 
             showClassFile(file, cf);
         } catch (IOException ex) {
+            store.close();
             JOptionPane.showMessageDialog(this, "Failed to read class file: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
             ex.printStackTrace(System.err);
@@ -245,8 +285,9 @@ public final class DecompilerFrame extends JFrame {
     }
 
     private void openJarFile(File jarFile) {
+        BytecodeStore store = createBytecodeStore();
         try (JarFile jar = new JarFile(jarFile)) {
-            ClassFileReader reader = new ClassFileReader();
+            ClassFileReader reader = new ClassFileReader(store);
 
             DefaultMutableTreeNode root = new DefaultMutableTreeNode(jarFile.getName());
             Map<String, DefaultMutableTreeNode> packageNodes = new HashMap<>();
@@ -296,6 +337,7 @@ public final class DecompilerFrame extends JFrame {
             }
 
             tree.setModel(new DefaultTreeModel(root));
+            replaceBytecodeStore(store);
 
             bytecodeArea.setText("Opened JAR: " + jarFile.getAbsolutePath()
                     + "\nSelect a class or method in the tree.");
@@ -312,12 +354,43 @@ public final class DecompilerFrame extends JFrame {
             settings.save();
             rebuildRecentFilesMenu();
         } catch (IOException ex) {
+            store.close();
             JOptionPane.showMessageDialog(this, "Failed to read jar file: " + ex.getMessage(),
                     "Error", JOptionPane.ERROR_MESSAGE);
             ex.printStackTrace(System.err);
         }
     }
 
+    private BytecodeStore createBytecodeStore() {
+        try {
+            return switch (settings.storageMode) {
+                case HEAP -> BytecodeStore.heap();
+                case DIRECT -> OffHeapBytecodeStore.direct();
+                case MAPPED -> OffHeapBytecodeStore.mappedTempFile();
+            };
+        } catch (IOException ex) {
+            // не получилось создать кеш-файл - откатываемся на кучу
+            ex.printStackTrace(System.err);
+            return BytecodeStore.heap();
+        }
+    }
+
+    /**
+     * Делает store текущим и закрывает хранилище ранее открытого файла:
+     * его классы к этому моменту уже убраны из дерева.
+     */
+    private void replaceBytecodeStore(BytecodeStore store) {
+        cancelDisassembly();
+        cancelDecompile();
+        disassemblyCache.clear();
+        sourceCache.clear();
+        BytecodeStore old = bytecodeStore;
+        bytecodeStore = store;
+        if (old != store) {
+            old.close();
+        }
+    }
+
     private void reloadCurrentFile() {
         if (currentFile == null) return;
         if (!currentFile.exists()) {
@@ -395,72 +468,243 @@ public final class DecompilerFrame extends JFrame {
     }
 
     private void showMethodDetails(ClassFile cf, MethodInfo method) {
-        // --- заголовок ---
-        ConstantPool cp = cf.constantPool();
-        String className = cf.thisClassFqn();
-        String methodName = cp.getUtf8(method.nameIndex());
-        String desc = cp.getUtf8(method.descriptorIndex());
-
-        // --- байткод ---
-        StringBuilder bc = new StringBuilder();
-        bc.append("Class: ").append(className).append('\n');
-        bc.append("Method: ").append(methodName).append(desc).append('\n');
-        bc.append('\n');
-
         CodeAttribute codeAttr = method.findCodeAttribute();
+        showDisassembly(cf, method, codeAttr);
+
         if (codeAttr == null) {
-            bc.append("<no code>\n");
-            bytecodeArea.setText(bc.toString());
-            bytecodeArea.setCaretPosition(0);
+            cancelDecompile();
+            javaArea.setText(bytecodeArea.getText());
+            javaArea.setCaretPosition(0);
+            return;
+        }
+
+        // --- Java (AST) ---
+
+        showSource(cf, method, codeAttr);
+    }
 
-            javaArea.setText(bc.toString());
+    /**
+     * Вкладка Java: готовый исходник из кеша, иначе декомпиляция в фоне.
+     * Время декомпиляции от размера метода зависит плохо, поэтому порога,
+     * как у дизассемблера, нет.
+     */
+    private void showSource(ClassFile cf, MethodInfo method, CodeAttribute codeAttr) {
+        cancelDecompile();
+
+        String cached = sourceCache.get(cf, method);
+        if (cached != null) {
+            javaArea.setText(cached);
             javaArea.setCaretPosition(0);
             return;
         }
 
-        byte[] code = codeAttr.code();
-        BytecodeDecoder decoder = new BytecodeDecoder();
-        List<Insn> insns = decoder.decode(code);
-
-        bc.append("Bytecode:\n\n");
-        for (Insn insn : insns) {
-            if (insn instanceof SimpleInsn s) {
-                bc.append(String.format("  %4d: %s\n",
-                        s.offset(), s.opcode().mnemonic()));
-            } else if (insn instanceof LocalVarInsn lv) {
-                bc.append(String.format("  %4d: %s %d%n",
-                        lv.offset(), lv.opcode().mnemonic(), lv.localIndex()));
-            } else if (insn instanceof IincInsn inc) {
-                bc.append(String.format("  %4d: %s %d %d%n",
-                        inc.offset(), inc.opcode().mnemonic(), inc.localIndex(), inc.delta()));
-            } else if (insn instanceof IntOperandInsn io) {
-                bc.append(String.format("  %4d: %s %d%n",
-                        io.offset(), io.opcode().mnemonic(), io.operand()));
-            } else if (insn instanceof JumpInsn j) {
-                bc.append(String.format("  %4d: %s %d  ; target=%d%n",
-                        j.offset(), j.opcode().mnemonic(), j.rawOffsetDelta(), j.targetOffset()));
-            } else if (insn instanceof ConstantPoolInsn cpi) {
-                int cpIndex = cpi.cpIndex();
-                String cpText = formatCpEntry(cp, cpIndex);
-                bc.append(String.format("  %4d: %s #%d    ; %s%n",
-                        cpi.offset(), cpi.opcode().mnemonic(), cpIndex, cpText));
-            } else if (insn instanceof UnknownInsn u) {
-                bc.append(String.format("  %4d: <unknown opcode 0x%02X, %d bytes remaining>\n",
-                        u.offset(), u.opcodeByte(), u.remainingBytes().length));
+        javaArea.setText("// decompiling...");
+        // как и для дизассемблера, байт-код забираем на EDT
+        decompileWorker = new DecompileWorker(cf, method, onHeap(method, codeAttr), currentBackend);
+        decompileWorker.execute();
+    }
+
+    /**
+     * Копия метода, чей Code держит байт-код в обычном массиве, а не в хранилище.
+     */
+    private static MethodInfo onHeap(MethodInfo method, CodeAttribute codeAttr) {
+        AttributeInfo[] attrs = method.attributes().clone();
+        for (int i = 0; i < attrs.length; i++) {
+            if (attrs[i] == codeAttr) {
+                attrs[i] = new CodeAttribute(codeAttr.name(), codeAttr.maxStack(), codeAttr.maxLocals(),
+                        codeAttr.code(), codeAttr.exceptionTable(), codeAttr.lineNumberTable(),
+                        codeAttr.localVariableAttribute());
             }
         }
+        return new MethodInfo(method.accessFlags(), method.nameIndex(), method.descriptorIndex(), attrs);
+    }
 
-        bytecodeArea.setText(bc.toString());
-        bytecodeArea.setCaretPosition(0);
+    private void cancelDecompile() {
+        if (decompileWorker != null) {
+            decompileWorker.cancel(false);
+            decompileWorker = null;
+        }
+    }
 
-        // --- Java (AST) ---
+    /**
+     * Фоновая декомпиляция метода. Сам декомпилятор прерываний не проверяет,
+     * так что отмененная задача доработает, но ее результат игнорируется.
+     */
+    private final class DecompileWorker extends SwingWorker<String, Void> {
+        private final ClassFile cf;
+        private final MethodInfo method;
+        private final MethodInfo detached;
+        private final LanguageBackend backend;
+
+        DecompileWorker(ClassFile cf, MethodInfo method, MethodInfo detached, LanguageBackend backend) {
+            this.cf = cf;
+            this.method = method;
+            this.detached = detached;
+            this.backend = backend;
+        }
 
-        String source = currentBackend.decompileMethod(cf, method, methodDecompiler.decompile(method, cf));
-        javaArea.setText(source);
-        javaArea.setCaretPosition(0);
+        @Override
+        protected String doInBackground() {
+            return backend.decompileMethod(cf, detached, methodDecompiler.decompile(detached, cf));
+        }
+
+        @Override
+        protected void done() {
+            if (decompileWorker != this || isCancelled()) return;
+            decompileWorker = null;
+            String source;
+            try {
+                source = get();
+                sourceCache.put(cf, method, source);
+            } catch (InterruptedException | ExecutionException e) {
+                // ошибку не кешируем: после смены настроек метод может декомпилироваться
+                e.printStackTrace(System.err);
+                source = "// decompilation failed: " + e.getCause();
+            }
+            javaArea.setText(source);
+            javaArea.setCaretPosition(0);
+        }
+    }
+
+    /**
+     * Вкладка Bytecode: готовый текст из кеша, маленький метод - сразу,
+     * большой - в фоне с постепенным выводом, чтобы не блокировать EDT.
+     */
+    private void showDisassembly(ClassFile cf, MethodInfo method, CodeAttribute codeAttr) {
+        cancelDisassembly();
+
+        String cached = disassemblyCache.get(cf, method);
+        if (cached != null) {
+            bytecodeArea.setText(cached);
+            bytecodeArea.setCaretPosition(0);
+            return;
+        }
+
+        // байт-код забираем на EDT: фоновая задача не должна трогать хранилище,
+        // которое может закрыться при открытии другого файла
+        byte[] code = codeAttr != null ? codeAttr.code() : null;
+        if (code == null || code.length <= SYNC_DISASSEMBLY_LIMIT) {
+            StringBuilder sb = new StringBuilder(code == null ? 128 : code.length * 16);
+            try {
+                disassemblyRenderer.render(cf, method, code, sb);
+            } catch (IOException e) {
+                // StringBuilder не бросает IOException
+                throw new UncheckedIOException(e);
+            }
+            String text = sb.toString();
+            disassemblyCache.put(cf, method, text);
+            bytecodeArea.setText(text);
+            bytecodeArea.setCaretPosition(0);
+            return;
+        }
+
+        bytecodeArea.setText("");
+        disassemblyWorker = new DisassemblyWorker(cf, method, code);
+        disassemblyWorker.execute();
+    }
+
+    private void cancelDisassembly() {
+        if (disassemblyWorker != null) {
+            disassemblyWorker.cancel(false);
+            disassemblyWorker = null;
+        }
+    }
+
+    /**
+     * Фоновый рендер большого метода: текст уходит в область кусками
+     * по {@link #DISASSEMBLY_CHUNK_CHARS}, полный результат попадает в кеш.
+     * Куски отмененной или замененной задачи игнорируются.
+     */
+    private final class DisassemblyWorker extends SwingWorker<String, String> {
+        private final ClassFile cf;
+        private final MethodInfo method;
+        private final byte[] code;
+        private boolean firstChunk = true;
+
+        DisassemblyWorker(ClassFile cf, MethodInfo method, byte[] code) {
+            this.cf = cf;
+            this.method = method;
+            this.code = code;
+        }
+
+        @Override
+        protected String doInBackground() throws IOException {
+            ChunkedSink sink = new ChunkedSink(code.length * 16);
+            disassemblyRenderer.render(cf, method, code, sink);
+            sink.publishRest();
+            return sink.full.toString();
+        }
+
+        /**
+         * Копит весь текст и публикует каждый новый кусок, как только он дорос до порога.
+         */
+        private final class ChunkedSink implements Appendable {
+            private final StringBuilder full;
+            private int published;
+
+            ChunkedSink(int capacity) {
+                this.full = new StringBuilder(capacity);
+            }
+
+            @Override
+            public Appendable append(CharSequence csq) {
+                full.append(csq);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                full.append(csq, start, end);
+                return this;
+            }
+
+            @Override
+            public Appendable append(char c) {
+                full.append(c);
+                // рендерер пишет построчно - проверяем порог на концах строк
+                if (c == '\n') {
+                    if (isCancelled()) throw new CancellationException();
+                    if (full.length() - published >= DISASSEMBLY_CHUNK_CHARS) publishRest();
+                }
+                return this;
+            }
+
+            void publishRest() {
+                if (published < full.length()) {
+                    publish(full.substring(published));
+                    published = full.length();
+                }
+            }
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            if (disassemblyWorker != this) return;
+            for (String chunk : chunks) {
+                bytecodeArea.append(chunk);
+            }
+            if (firstChunk) {
+                firstChunk = false;
+                bytecodeArea.setCaretPosition(0);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (disassemblyWorker != this || isCancelled()) return;
+            disassemblyWorker = null;
+            try {
+                disassemblyCache.put(cf, method, get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace(System.err);
+            }
+        }
     }
 
     private void showClassSummary(ClassFile cf) {
+        // поздние куски и результаты фоновых задач метода сюда не попадут
+        cancelDisassembly();
+        cancelDecompile();
         StringBuilder sb = new StringBuilder();
         sb.append("Class: ").append(cf.thisClassFqn()).append('\n');
         sb.append("Super: ").append(cf.superClassIndex()).append('\n');
@@ -479,49 +723,21 @@ public final class DecompilerFrame extends JFrame {
         javaArea.setCaretPosition(0);
     }
 
-    private String formatCpEntry(ConstantPool cp, int index) {
-        if (index <= 0 || index >= cp.size()) {
-            return "#" + index;
+    private static void expandAll(JTree tree) {
+        for (int i = 0; i < tree.getRowCount(); i++) {
+            tree.expandRow(i);
         }
+    }
 
-        CpInfo e = cp.entry(index);
-        if (e instanceof CpClass cls) {
-            String name = cp.getUtf8(cls.nameIndex());
-            return name;
-        }
-        if (e instanceof CpString s) {
-            String value = cp.getUtf8(s.stringIndex());
-            return "\"" + value + "\"";
-        }
-        if (e instanceof CpFieldref fr) {
-            String owner = cp.getClassName(fr.classIndex());
-            CpNameAndType nt = (CpNameAndType) cp.entry(fr.nameAndTypeIndex());
-            String name = cp.getUtf8(nt.nameIndex());
-            String desc = cp.getUtf8(nt.descriptorIndex());
-            return owner + "." + name + ":" + desc;
-        }
-        if (e instanceof CpMethodref mr) {
-            String owner = cp.getClassName(mr.classIndex());
-            CpNameAndType nt = (CpNameAndType) cp.entry(mr.nameAndTypeIndex());
-            String name = cp.getUtf8(nt.nameIndex());
-            String desc = cp.getUtf8(nt.descriptorIndex());
-            return owner + "." + name + desc;
-        }
-        if (e instanceof CpInterfaceMethodref imr) {
-            String owner = cp.getClassName(imr.classIndex());
-            CpNameAndType nt = (CpNameAndType) cp.entry(imr.nameAndTypeIndex());
-            String name = cp.getUtf8(nt.nameIndex());
-            String desc = cp.getUtf8(nt.descriptorIndex());
-            return owner + "." + name + desc;
-        }
+    private enum BytecodeStorageMode {
+        HEAP("Java heap"),
+        DIRECT("Off-heap (direct buffers)"),
+        MAPPED("Off-heap (mapped cache file)");
 
-        // fallback
-        return "#" + index + " (" + e.getClass().getSimpleName() + ")";
-    }
+        private final String title;
 
-    private static void expandAll(JTree tree) {
-        for (int i = 0; i < tree.getRowCount(); i++) {
-            tree.expandRow(i);
+        BytecodeStorageMode(String title) {
+            this.title = title;
         }
     }
 
@@ -530,6 +746,7 @@ public final class DecompilerFrame extends JFrame {
 
         private final List<File> recentFiles = new ArrayList<>();
         private File lastDirectory;
+        private BytecodeStorageMode storageMode = BytecodeStorageMode.HEAP;
 
         static AppSettings load() {
             AppSettings s = new AppSettings();
@@ -552,6 +769,15 @@ public final class DecompilerFrame extends JFrame {
                 }
             }
 
+            String storageStr = p.getProperty("bytecodeStorage");
+            if (storageStr != null) {
+                try {
+                    s.storageMode = BytecodeStorageMode.valueOf(storageStr);
+                } catch (IllegalArgumentException e) {
+                    // неизвестное значение - оставляем хранение на куче
+                }
+            }
+
             for (int i = 0; ; i++) {
                 String path = p.getProperty("recent." + i);
                 if (path == null) break;
@@ -577,6 +803,8 @@ public final class DecompilerFrame extends JFrame {
                 p.setProperty("lastDirectory", lastDirectory.getAbsolutePath());
             }
 
+            p.setProperty("bytecodeStorage", storageMode.name());
+
             int idx = 0;
             for (File f : recentFiles) {
                 p.setProperty("recent." + idx++, f.getAbsolutePath());
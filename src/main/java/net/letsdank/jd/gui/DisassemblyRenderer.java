@@ -0,0 +1,230 @@
+package net.letsdank.jd.gui;
+
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.BytecodeVisitor;
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.SwitchTable;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.cp.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Текст вкладки "Bytecode" для метода.
+ * <p>
+ * Пишет прямо в переданный {@link Appendable} по мере обхода байткода
+ * (через {@link BytecodeVisitor}, без списка {@code Insn} и без
+ * {@code String.format} на каждую строку), поэтому получатель может
+ * показывать текст кусками.
+ */
+final class DisassemblyRenderer {
+    private final BytecodeDecoder decoder = new BytecodeDecoder();
+
+    /**
+     * Заголовок и листинг метода. code == null - у метода нет атрибута Code.
+     */
+    void render(ClassFile cf, MethodInfo method, byte[] code, Appendable out) throws IOException {
+        ConstantPool cp = cf.constantPool();
+        out.append("Class: ").append(cf.thisClassFqn()).append('\n');
+        out.append("Method: ").append(cp.getUtf8(method.nameIndex()))
+                .append(cp.getUtf8(method.descriptorIndex())).append('\n');
+        out.append('\n');
+
+        if (code == null) {
+            out.append("<no code>\n");
+            return;
+        }
+
+        out.append("Bytecode:\n\n");
+        try {
+            decoder.accept(code, new LineWriter(cp, code.length, out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * По строке на инструкцию: "  offset: mnemonic operands  ; комментарий".
+     */
+    private static final class LineWriter implements BytecodeVisitor {
+        private final ConstantPool cp;
+        private final int codeLength;
+        private final Appendable out;
+
+        LineWriter(ConstantPool cp, int codeLength, Appendable out) {
+            this.cp = cp;
+            this.codeLength = codeLength;
+            this.out = out;
+        }
+
+        @Override
+        public void visitInsn(int offset, Opcode opcode) {
+            start(offset, opcode);
+            end();
+        }
+
+        @Override
+        public void visitLocalVar(int offset, Opcode opcode, int localIndex) {
+            start(offset, opcode);
+            write(' ').write(localIndex);
+            end();
+        }
+
+        @Override
+        public void visitIntOperand(int offset, Opcode opcode, int operand) {
+            start(offset, opcode);
+            write(' ').write(operand);
+            end();
+        }
+
+        @Override
+        public void visitIinc(int offset, Opcode opcode, int localIndex, int delta) {
+            start(offset, opcode);
+            write(' ').write(localIndex).write(' ').write(delta);
+            end();
+        }
+
+        @Override
+        public void visitJump(int offset, Opcode opcode, int targetOffset, int delta) {
+            start(offset, opcode);
+            write(' ').write(delta).write("  ; target=").write(targetOffset);
+            end();
+        }
+
+        @Override
+        public void visitLdc(int offset, Opcode opcode, int cpIndex) {
+            cpInsn(offset, opcode, cpIndex);
+        }
+
+        @Override
+        public void visitType(int offset, Opcode opcode, int cpIndex) {
+            cpInsn(offset, opcode, cpIndex);
+        }
+
+        @Override
+        public void visitField(int offset, Opcode opcode, int cpIndex) {
+            cpInsn(offset, opcode, cpIndex);
+        }
+
+        @Override
+        public void visitInvoke(int offset, Opcode opcode, int cpIndex) {
+            cpInsn(offset, opcode, cpIndex);
+        }
+
+        @Override
+        public void visitMultiANewArray(int offset, int cpIndex, int dimensions) {
+            cpInsn(offset, Opcode.MULTIANEWARRAY, cpIndex);
+        }
+
+        @Override
+        public void visitSwitch(int offset, Opcode opcode, int defaultTarget, SwitchTable table) {
+            start(offset, opcode);
+            write("  ; default=").write(defaultTarget);
+            end();
+            for (int i = 0; i < table.size(); i++) {
+                write("          ").write(table.key(i)).write(": ").write(table.target(i));
+                end();
+            }
+        }
+
+        @Override
+        public void visitUnknown(int offset, int opcodeByte) {
+            pc(offset);
+            write("<unknown opcode 0x").write(String.format("%02X", opcodeByte))
+                    .write(", ").write(codeLength - offset).write(" bytes remaining>");
+            end();
+        }
+
+        private void cpInsn(int offset, Opcode opcode, int cpIndex) {
+            start(offset, opcode);
+            write(" #").write(cpIndex).write("    ; ").write(formatCpEntry(cp, cpIndex));
+            end();
+        }
+
+        private void start(int offset, Opcode opcode) {
+            pc(offset);
+            write(opcode.mnemonic());
+        }
+
+        /**
+         * Адрес, выровненный вправо на 4 символа, как "%4d".
+         */
+        private void pc(int offset) {
+            write("  ");
+            for (int w = Integer.toString(offset).length(); w < 4; w++) {
+                write(' ');
+            }
+            write(offset).write(": ");
+        }
+
+        private void end() {
+            write('\n');
+        }
+
+        private LineWriter write(CharSequence s) {
+            try {
+                out.append(s);
+            } catch (IOException e) {
+                // visitor не может бросать checked-исключения; render() разворачивает обратно
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        private LineWriter write(char c) {
+            try {
+                out.append(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        private LineWriter write(int v) {
+            return write(Integer.toString(v));
+        }
+    }
+
+    static String formatCpEntry(ConstantPool cp, int index) {
+        if (index <= 0 || index >= cp.size()) {
+            return "#" + index;
+        }
+
+        CpInfo e = cp.entry(index);
+        if (e instanceof CpClass cls) {
+            String name = cp.getUtf8(cls.nameIndex());
+            return name;
+        }
+        if (e instanceof CpString s) {
+            String value = cp.getUtf8(s.stringIndex());
+            return "\"" + value + "\"";
+        }
+        if (e instanceof CpFieldref fr) {
+            String owner = cp.getClassName(fr.classIndex());
+            CpNameAndType nt = (CpNameAndType) cp.entry(fr.nameAndTypeIndex());
+            String name = cp.getUtf8(nt.nameIndex());
+            String desc = cp.getUtf8(nt.descriptorIndex());
+            return owner + "." + name + ":" + desc;
+        }
+        if (e instanceof CpMethodref mr) {
+            String owner = cp.getClassName(mr.classIndex());
+            CpNameAndType nt = (CpNameAndType) cp.entry(mr.nameAndTypeIndex());
+            String name = cp.getUtf8(nt.nameIndex());
+            String desc = cp.getUtf8(nt.descriptorIndex());
+            return owner + "." + name + desc;
+        }
+        if (e instanceof CpInterfaceMethodref imr) {
+            String owner = cp.getClassName(imr.classIndex());
+            CpNameAndType nt = (CpNameAndType) cp.entry(imr.nameAndTypeIndex());
+            String name = cp.getUtf8(nt.nameIndex());
+            String desc = cp.getUtf8(nt.descriptorIndex());
+            return owner + "." + name + desc;
+        }
+
+        // fallback
+        return "#" + index + " (" + e.getClass().getSimpleName() + ")";
+    }
+}
@@ -0,0 +1,60 @@
+package net.letsdank.jd.gui;
+
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-кеш готового текста метода: дизассемблер или декомпилированный исходник.
+ * <p>
+ * Ключ - пара (ClassFile, MethodInfo) по ссылке: после переоткрытия файла
+ * это уже другие объекты, так что устаревший текст не вернется.
+ * Размер ограничен суммарным числом символов, чтобы пара огромных
+ * методов не держала память. Используется только из EDT.
+ */
+final class MethodTextCache {
+    private final long maxChars;
+    private long totalChars;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    MethodTextCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    String get(ClassFile cf, MethodInfo method) {
+        return entries.get(new Key(cf, method));
+    }
+
+    void put(ClassFile cf, MethodInfo method, String text) {
+        if (text.length() > maxChars) return;
+        String old = entries.put(new Key(cf, method), text);
+        if (old != null) totalChars -= old.length();
+        totalChars += text.length();
+
+        Iterator<Map.Entry<Key, String>> it = entries.entrySet().iterator();
+        while (totalChars > maxChars && it.hasNext()) {
+            totalChars -= it.next().getValue().length();
+            it.remove();
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        totalChars = 0;
+    }
+
+    private record Key(ClassFile cf, MethodInfo method) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.cf == cf && k.method == method;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cf) + System.identityHashCode(method);
+        }
+    }
+}
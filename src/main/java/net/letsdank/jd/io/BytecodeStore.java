@@ -0,0 +1,47 @@
+package net.letsdank.jd.io;
+
+import net.letsdank.jd.model.CodeBytes;
+
+/**
+ * Хранилище байткода методов, в которое {@link ClassFileReader}
+ * складывает содержимое атрибутов Code.
+ * <p>
+ * По умолчанию используется {@link #heap()} - обычные массивы на куче.
+ * Для больших сессий (несколько крупных JAR) можно подключить
+ * {@link OffHeapBytecodeStore}, тогда на куче остаются только дескрипторы.
+ */
+public interface BytecodeStore extends AutoCloseable {
+    /**
+     * Сохраняет байткод и возвращает дескриптор на него.
+     * Переданный массив после вызова может больше не использоваться.
+     */
+    CodeBytes store(byte[] bytes);
+
+    /**
+     * Освобождает ресурсы хранилища. Дескрипторы, выданные хранилищем,
+     * после закрытия использовать не нужно.
+     */
+    @Override
+    void close();
+
+    static BytecodeStore heap() {
+        return HeapStore.INSTANCE;
+    }
+
+    /**
+     * Хранение на куче: массив просто оборачивается в дескриптор.
+     */
+    enum HeapStore implements BytecodeStore {
+        INSTANCE;
+
+        @Override
+        public CodeBytes store(byte[] bytes) {
+            return CodeBytes.of(bytes);
+        }
+
+        @Override
+        public void close() {
+            // нечего освобождать
+        }
+    }
+}
@@ -36,6 +36,17 @@ public final class ClassFileInput implements AutoCloseable {
         return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
     }
 
+    /**
+     * Читает ровно {@code length} байт одним блоком.
+     */
+    public byte[] readBytes(int length) throws IOException {
+        byte[] result = in.readNBytes(length);
+        if (result.length != length) {
+            throw new IOException("Unexpected EOF while reading " + length + " bytes");
+        }
+        return result;
+    }
+
     @Override
     public void close() throws Exception {
         in.close();
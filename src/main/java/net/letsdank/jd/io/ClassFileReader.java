@@ -18,6 +18,19 @@ import java.util.List;
  * Читает минимальный заголовок .class-файла.
  */
 public final class ClassFileReader {
+    private final BytecodeStore bytecodeStore;
+
+    public ClassFileReader() {
+        this(BytecodeStore.heap());
+    }
+
+    /**
+     * @param bytecodeStore куда складывать байткод методов (например, off-heap)
+     */
+    public ClassFileReader(BytecodeStore bytecodeStore) {
+        this.bytecodeStore = bytecodeStore;
+    }
+
     public ClassFile read(InputStream rawInput) throws IOException {
         try (ClassFileInput in = new ClassFileInput(rawInput)) {
             long magic = in.readU4();
@@ -225,10 +238,7 @@ public final class ClassFileReader {
             int maxStack = in.readU2();
             int maxLocals = in.readU2();
             long codeLength = in.readU4();
-            byte[] code = new byte[(int) codeLength];
-            for (int i = 0; i < codeLength; i++) {
-                code[i] = (byte) in.readU1();
-            }
+            byte[] code = in.readBytes((int) codeLength);
 
             // exception_table
             int exceptionTableLength = in.readU2();
@@ -271,7 +281,7 @@ public final class ClassFileReader {
                 }
             }
 
-            return new CodeAttribute(name, maxStack, maxLocals, code, exceptionTable, lnt, lvt);
+            return new CodeAttribute(name, maxStack, maxLocals, bytecodeStore.store(code), exceptionTable, lnt, lvt);
         } else if ("RuntimeVisibleAnnotations".equals(name)) {
             // читаем bytes целиком и разбираем уже в отдельном потоке
             byte[] data = new byte[(int) length];
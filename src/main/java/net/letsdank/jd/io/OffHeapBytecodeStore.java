@@ -0,0 +1,182 @@
+package net.letsdank.jd.io;
+
+import net.letsdank.jd.model.CodeBytes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap хранилище байткода.
+ * <p>
+ * Байты складываются подряд в крупные сегменты (чанки): либо direct
+ * ByteBuffer, либо участки отображенного в память кеш-файла. На куче
+ * остаются только небольшие дескрипторы {@link Segment} (ссылка на чанк,
+ * смещение и длина), поэтому GC не приходится сканировать и копировать
+ * мегабайты байткода из открытых JAR-файлов.
+ */
+public final class OffHeapBytecodeStore implements BytecodeStore {
+    /**
+     * Размер одного чанка по умолчанию.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+    private final int chunkSize;
+    private final FileChannel channel;
+    private final Path cacheFile;
+    private final boolean deleteOnClose;
+
+    private ByteBuffer current;
+    private long mappedSize;
+    private long storedBytes;
+    private boolean closed;
+
+    private OffHeapBytecodeStore(int chunkSize, FileChannel channel, Path cacheFile, boolean deleteOnClose) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.channel = channel;
+        this.cacheFile = cacheFile;
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    /**
+     * Хранилище на direct-буферах.
+     */
+    public static OffHeapBytecodeStore direct() {
+        return direct(DEFAULT_CHUNK_SIZE);
+    }
+
+    public static OffHeapBytecodeStore direct(int chunkSize) {
+        return new OffHeapBytecodeStore(chunkSize, null, null, false);
+    }
+
+    /**
+     * Хранилище в отображенном в память файле. Файл создается (или
+     * перезаписывается) и остается на диске после закрытия.
+     */
+    public static OffHeapBytecodeStore mapped(Path file) throws IOException {
+        return mapped(file, DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * Хранилище во временном кеш-файле, который удаляется при закрытии.
+     */
+    public static OffHeapBytecodeStore mappedTempFile() throws IOException {
+        Path file = Files.createTempFile("jd-bytecode-", ".cache");
+        return mapped(file, DEFAULT_CHUNK_SIZE, true);
+    }
+
+    private static OffHeapBytecodeStore mapped(Path file, int chunkSize, boolean deleteOnClose) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new OffHeapBytecodeStore(chunkSize, channel, file, deleteOnClose);
+    }
+
+    @Override
+    public synchronized CodeBytes store(byte[] bytes) {
+        if (closed) {
+            throw new IllegalStateException("Bytecode store is closed");
+        }
+        int length = bytes.length;
+        if (length == 0) {
+            return CodeBytes.EMPTY;
+        }
+
+        if (current == null || current.remaining() < length) {
+            // Слишком большой метод получает собственный чанк точного размера,
+            // иначе начинаем новый чанк обычного размера.
+            ByteBuffer chunk = allocateChunk(Math.max(chunkSize, length));
+            if (length >= chunkSize) {
+                chunk.put(0, bytes);
+                storedBytes += length;
+                return new Segment(chunk, 0, length);
+            }
+            current = chunk;
+        }
+
+        int offset = current.position();
+        current.put(bytes);
+        storedBytes += length;
+        return new Segment(current, offset, length);
+    }
+
+    /**
+     * Сколько байт байткода сейчас лежит в хранилище.
+     */
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Путь к кеш-файлу или {@code null} для direct-буферов.
+     */
+    public Path cacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Закрывает хранилище. Direct-буферы и отображения освобождаются
+     * сборщиком мусора вместе с последними дескрипторами; временный
+     * кеш-файл удаляется сразу.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        current = null;
+        if (channel != null) {
+            try {
+                channel.close();
+                if (deleteOnClose) {
+                    Files.deleteIfExists(cacheFile);
+                }
+            } catch (IOException e) {
+                // fail-soft: кеш-файл - не критичный ресурс
+            }
+        }
+    }
+
+    private ByteBuffer allocateChunk(int size) {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, mappedSize, size);
+            mappedSize += size;
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map bytecode cache chunk", e);
+        }
+    }
+
+    /**
+     * Дескриптор одного массива байткода внутри чанка.
+     * Чтение идет абсолютными операциями и не трогает позицию буфера,
+     * поэтому безопасно из нескольких потоков.
+     */
+    public record Segment(ByteBuffer chunk, int offset, int length) implements CodeBytes {
+        @Override
+        public byte get(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + length);
+            }
+            return chunk.get(offset + index);
+        }
+
+        @Override
+        public byte[] toArray() {
+            byte[] result = new byte[length];
+            chunk.get(offset, result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.letsdank.jd.model;
+
+/**
+ * Небольшой дескриптор байткода метода.
+ * <p>
+ * Сами байты могут лежать как в обычном массиве на куче, так и во
+ * off-heap сегменте (direct buffer или отображенный в память файл).
+ * На куче остается только этот объект, а массив собирается по запросу.
+ */
+public interface CodeBytes {
+    CodeBytes EMPTY = new Heap(new byte[0]);
+
+    /**
+     * Длина байткода в байтах.
+     */
+    int length();
+
+    /**
+     * Один байт по смещению.
+     */
+    byte get(int index);
+
+    /**
+     * Байткод в виде массива. Для off-heap хранилища каждый вызов
+     * создает новую короткоживущую копию.
+     */
+    byte[] toArray();
+
+    static CodeBytes of(byte[] bytes) {
+        return bytes.length == 0 ? EMPTY : new Heap(bytes);
+    }
+
+    /**
+     * Обычное хранение на куче: массив отдается как есть, без копирования.
+     */
+    record Heap(byte[] bytes) implements CodeBytes {
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public byte get(int index) {
+            return bytes[index];
+        }
+
+        @Override
+        public byte[] toArray() {
+            return bytes;
+        }
+    }
+}
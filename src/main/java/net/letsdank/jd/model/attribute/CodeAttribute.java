@@ -1,5 +1,6 @@
 package net.letsdank.jd.model.attribute;
 
+import net.letsdank.jd.model.CodeBytes;
 import net.letsdank.jd.model.LineNumberTableAttribute;
 import net.letsdank.jd.model.LocalVariableTableAttribute;
 
@@ -12,16 +13,35 @@ import java.util.List;
  * @param name                   Всегда "Code"
  * @param maxStack               Максимальная глубина стека
  * @param maxLocals              Кол-во локальных переменных
- * @param code                   Байткод
+ * @param codeBytes              Байткод (на куче или в off-heap хранилище)
  * @param exceptionTable         Таблица обработчиков исключений (exception_table из spec)
  * @param lineNumberTable        Атрибут LineNumberTable, если есть
  * @param localVariableAttribute Атрибут LocalVariableTable, если есть
  */
-public record CodeAttribute(String name, int maxStack, int maxLocals, byte[] code,
+public record CodeAttribute(String name, int maxStack, int maxLocals, CodeBytes codeBytes,
                             List<ExceptionTableEntry> exceptionTable,
                             LineNumberTableAttribute lineNumberTable,
                             LocalVariableTableAttribute localVariableAttribute) implements AttributeInfo {
 
+    public CodeAttribute(String name, int maxStack, int maxLocals, byte[] code,
+                         List<ExceptionTableEntry> exceptionTable,
+                         LineNumberTableAttribute lineNumberTable,
+                         LocalVariableTableAttribute localVariableAttribute) {
+        this(name, maxStack, maxLocals, CodeBytes.of(code), exceptionTable, lineNumberTable, localVariableAttribute);
+    }
+
+    /**
+     * Байткод метода. Для off-heap хранилища массив собирается заново
+     * при каждом вызове, поэтому результат лучше не кешировать надолго.
+     */
+    public byte[] code() {
+        return codeBytes.toArray();
+    }
+
+    public int codeLength() {
+        return codeBytes.length();
+    }
+
     /**
      * Одна запись из exception_table.
      * <p>
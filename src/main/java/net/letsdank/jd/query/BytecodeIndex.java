@@ -0,0 +1,474 @@
+package net.letsdank.jd.query;
+
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.InsnStream;
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.model.cp.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Индекс байткода набора классов (обычно целого JAR) для запросов {@link Query}.
+ * <p>
+ * При построении каждый метод декодируется один раз (параллельно по классам)
+ * в компактные колонки: адрес, опкод и до трех символов на инструкцию.
+ * Символы - интернированные строки вида
+ * <ul>
+ *     <li>{@code C:owner} - класс (владелец вызова/поля, тип в new/checkcast/ldc);</li>
+ *     <li>{@code M:owner.name}, {@code D:owner.name(desc)} - вызываемый метод;</li>
+ *     <li>{@code F:owner.name} - поле;</li>
+ *     <li>{@code S:text} - строковая константа.</li>
+ * </ul>
+ * Поверх колонок строятся инвертированные индексы "опкод -> методы" и
+ * "символ -> методы". Запрос сначала пересекает множества методов по всем
+ * конкретным шагам и только потом проходит по инструкциям оставшихся методов.
+ */
+public final class BytecodeIndex {
+    private static final int NONE = -1;
+
+    private final List<IndexedMethod> methods;
+    private final String[] symbols;
+    private final Map<String, Integer> symbolIds;
+    private final BitSet[] byOpcode = new BitSet[256];
+    private final BitSet[] bySymbol;
+
+    private BytecodeIndex(List<IndexedMethod> methods, Map<String, Integer> symbolIds) {
+        this.methods = methods;
+        this.symbolIds = symbolIds;
+        this.symbols = new String[symbolIds.size()];
+        symbolIds.forEach((s, id) -> symbols[id] = s);
+        this.bySymbol = new BitSet[symbols.length];
+
+        for (int m = 0; m < methods.size(); m++) {
+            IndexedMethod im = methods.get(m);
+            for (int i = 0; i < im.size(); i++) {
+                int op = im.opcodes[i] & 0xFF;
+                if (byOpcode[op] == null) byOpcode[op] = new BitSet();
+                byOpcode[op].set(m);
+                post(im.sym1[i], m);
+                post(im.sym2[i], m);
+                post(im.sym3[i], m);
+            }
+        }
+    }
+
+    private void post(int symbol, int method) {
+        if (symbol == NONE) return;
+        if (bySymbol[symbol] == null) bySymbol[symbol] = new BitSet();
+        bySymbol[symbol].set(method);
+    }
+
+    /**
+     * Индекс по уже прочитанным классам.
+     */
+    public static BytecodeIndex build(Collection<ClassFile> classes) {
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        List<IndexedMethod> methods = classes.parallelStream()
+                .flatMap(cf -> indexClass(cf, ids, next))
+                .toList();
+        return new BytecodeIndex(methods, ids);
+    }
+
+    /**
+     * Читает все классы JAR-а и строит по ним индекс.
+     */
+    public static BytecodeIndex ofJar(Path jarPath) throws IOException {
+        List<ClassFile> classes = new ArrayList<>();
+        ClassFileReader reader = new ClassFileReader();
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+                try (InputStream in = jar.getInputStream(entry)) {
+                    classes.add(reader.read(in));
+                }
+            }
+        }
+        return build(classes);
+    }
+
+    public int methodCount() {
+        return methods.size();
+    }
+
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    public List<QueryHit> search(String query) {
+        return search(Query.parse(query));
+    }
+
+    /**
+     * Все совпадения шаблона: в каждом методе - по одному на каждую
+     * стартовую инструкцию (самое короткое). Порядок - по методам, затем по адресу.
+     */
+    public List<QueryHit> search(Query query) {
+        Matcher matcher = new Matcher(query.steps());
+        BitSet candidates = new BitSet();
+        candidates.set(0, methods.size());
+        for (int s = 0; s < matcher.steps.length; s++) {
+            BitSet postings = matcher.postings(s);
+            if (postings != null) candidates.and(postings);
+            if (candidates.isEmpty()) return List.of();
+        }
+
+        return candidates.stream()
+                .parallel()
+                .mapToObj(m -> matcher.match(methods.get(m)))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private BitSet union(Opcode... ops) {
+        BitSet result = new BitSet();
+        for (Opcode op : ops) {
+            if (byOpcode[op.code()] != null) result.or(byOpcode[op.code()]);
+        }
+        return result;
+    }
+
+    private static BitSet orEmpty(BitSet b) {
+        return b == null ? new BitSet() : b;
+    }
+
+    // --- построение ---
+
+    private static Stream<IndexedMethod> indexClass(ClassFile cf, Map<String, Integer> ids, AtomicInteger next) {
+        ConstantPool cp = cf.constantPool();
+        String owner = cf.thisClassInternalName();
+        BytecodeDecoder decoder = new BytecodeDecoder();
+        List<IndexedMethod> result = new ArrayList<>(cf.methods().length);
+        for (MethodInfo m : cf.methods()) {
+            CodeAttribute codeAttr = m.findCodeAttribute();
+            if (codeAttr == null) continue;
+            InsnStream s = decoder.decodeStream(codeAttr.code());
+            IndexedMethod im = new IndexedMethod(owner, cp.getUtf8(m.nameIndex()),
+                    cp.getUtf8(m.descriptorIndex()), s.size());
+            for (int i = 0; i < s.size(); i++) {
+                im.offsets[i] = s.offset(i);
+                if (s.isUnknown(i)) {
+                    // нераспознанный байт помечаем зарезервированным impdep2, чтобы он не совпал с запросом
+                    im.opcodes[i] = (byte) 0xFF;
+                    continue;
+                }
+                im.opcodes[i] = (byte) s.opcodeCode(i);
+                Opcode op = s.opcode(i);
+                switch (op) {
+                    case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE -> {
+                        String[] ref = memberRef(cp, s.operand1(i));
+                        if (ref == null) break;
+                        im.sym1[i] = intern(ids, next, "C:" + ref[0]);
+                        im.sym2[i] = intern(ids, next, "M:" + ref[0] + "." + ref[1]);
+                        im.sym3[i] = intern(ids, next, "D:" + ref[0] + "." + ref[1] + ref[2]);
+                    }
+                    case GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC -> {
+                        String[] ref = memberRef(cp, s.operand1(i));
+                        if (ref == null) break;
+                        im.sym1[i] = intern(ids, next, "C:" + ref[0]);
+                        im.sym2[i] = intern(ids, next, "F:" + ref[0] + "." + ref[1]);
+                    }
+                    case NEW, ANEWARRAY, CHECKCAST, INSTANCEOF, MULTIANEWARRAY, LDC, LDC_W -> {
+                        String sym = constantSymbol(cp, s.operand1(i));
+                        if (sym != null) im.sym1[i] = intern(ids, next, sym);
+                    }
+                    default -> {
+                    }
+                }
+            }
+            result.add(im);
+        }
+        return result.stream();
+    }
+
+    private static int intern(Map<String, Integer> ids, AtomicInteger next, String symbol) {
+        return ids.computeIfAbsent(symbol, s -> next.getAndIncrement());
+    }
+
+    /**
+     * {owner, name, descriptor} для Fieldref/Methodref/InterfaceMethodref или null.
+     */
+    private static String[] memberRef(ConstantPool cp, int index) {
+        CpInfo e = entryOrNull(cp, index);
+        int classIndex;
+        int natIndex;
+        switch (e) {
+            case CpMethodref r -> {
+                classIndex = r.classIndex();
+                natIndex = r.nameAndTypeIndex();
+            }
+            case CpInterfaceMethodref r -> {
+                classIndex = r.classIndex();
+                natIndex = r.nameAndTypeIndex();
+            }
+            case CpFieldref r -> {
+                classIndex = r.classIndex();
+                natIndex = r.nameAndTypeIndex();
+            }
+            case null, default -> {
+                return null;
+            }
+        }
+        if (!(entryOrNull(cp, classIndex) instanceof CpClass)
+                || !(entryOrNull(cp, natIndex) instanceof CpNameAndType nat)) {
+            return null;
+        }
+        return new String[]{cp.getClassName(classIndex), cp.getUtf8(nat.nameIndex()), cp.getUtf8(nat.descriptorIndex())};
+    }
+
+    /**
+     * Символ для класса или строковой константы; числа и прочие константы не индексируются.
+     */
+    private static String constantSymbol(ConstantPool cp, int index) {
+        return switch (entryOrNull(cp, index)) {
+            case CpClass c -> "C:" + cp.getUtf8(c.nameIndex());
+            case CpString s -> "S:" + cp.getUtf8(s.stringIndex());
+            case null, default -> null;
+        };
+    }
+
+    private static CpInfo entryOrNull(ConstantPool cp, int index) {
+        return index > 0 && index < cp.size() ? cp.entry(index) : null;
+    }
+
+    /**
+     * Колонки одного метода.
+     */
+    private static final class IndexedMethod {
+        final String owner;
+        final String name;
+        final String descriptor;
+        final int[] offsets;
+        final byte[] opcodes;
+        final int[] sym1;
+        final int[] sym2;
+        final int[] sym3;
+
+        IndexedMethod(String owner, String name, String descriptor, int size) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.offsets = new int[size];
+            this.opcodes = new byte[size];
+            this.sym1 = new int[size];
+            this.sym2 = new int[size];
+            this.sym3 = new int[size];
+            Arrays.fill(sym1, NONE);
+            Arrays.fill(sym2, NONE);
+            Arrays.fill(sym3, NONE);
+        }
+
+        int size() {
+            return offsets.length;
+        }
+    }
+
+    // --- сопоставление ---
+
+    /**
+     * Скомпилированный шаблон. Шаги с символами (вызов, поле, тип, строка)
+     * заранее превращаются в множество подходящих id символов, так что
+     * проверка инструкции - это чтение колонки и бит в BitSet.
+     * <p>
+     * Прогон по инструкциям идет как по НКА: множество активных шагов
+     * продвигается на каждую инструкцию, пропуски могут оставаться на месте.
+     */
+    private final class Matcher {
+        private static final int COL_NONE = 0;
+        private static final int COL_SYM1 = 1;
+        private static final int COL_SYM2 = 2;
+        private static final int COL_SYM3 = 3;
+
+        final Query.Step[] steps;
+        // для шагов с символами: какие id подходят и в какой колонке их искать
+        private final BitSet[] accepted;
+        private final int[] column;
+
+        Matcher(List<Query.Step> stepList) {
+            this.steps = stepList.toArray(new Query.Step[0]);
+            this.accepted = new BitSet[steps.length];
+            this.column = new int[steps.length];
+            for (int s = 0; s < steps.length; s++) {
+                compile(s);
+            }
+        }
+
+        private void compile(int s) {
+            switch (steps[s]) {
+                case Query.Call c -> {
+                    if (c.owner() == null && c.name() == null && c.descriptor() == null) return;
+                    column[s] = c.descriptor() != null ? COL_SYM3 : COL_SYM2;
+                    if (c.owner() != null && c.name() != null) {
+                        String member = c.owner() + "." + c.name();
+                        accepted[s] = exact(c.descriptor() != null ? "D:" + member + c.descriptor() : "M:" + member);
+                    } else {
+                        accepted[s] = scan(c.descriptor() != null ? "D:" : "M:", c.owner(), c.name(), c.descriptor());
+                    }
+                }
+                case Query.Field f -> {
+                    if (f.owner() == null && f.name() == null) return;
+                    column[s] = COL_SYM2;
+                    accepted[s] = f.owner() != null && f.name() != null
+                            ? exact("F:" + f.owner() + "." + f.name())
+                            : scan("F:", f.owner(), f.name(), null);
+                }
+                case Query.Type t -> {
+                    column[s] = COL_SYM1;
+                    accepted[s] = exact("C:" + t.internalName());
+                }
+                case Query.Ldc l -> {
+                    column[s] = COL_SYM1;
+                    accepted[s] = exact("S:" + l.value());
+                }
+                default -> column[s] = COL_NONE;
+            }
+        }
+
+        private BitSet exact(String symbol) {
+            BitSet ids = new BitSet();
+            Integer id = symbolIds.get(symbol);
+            if (id != null) ids.set(id);
+            return ids;
+        }
+
+        /**
+         * Перебор символов с заданным префиксом ("M:owner.name(desc)"). В internal name
+         * точек нет, поэтому владелец и имя делятся по последней точке перед '('.
+         */
+        private BitSet scan(String prefix, String owner, String name, String desc) {
+            BitSet ids = new BitSet();
+            for (int id = 0; id < symbols.length; id++) {
+                String sym = symbols[id];
+                if (!sym.startsWith(prefix)) continue;
+                int paren = sym.indexOf('(');
+                int end = paren < 0 ? sym.length() : paren;
+                int dot = sym.lastIndexOf('.', end - 1);
+                if (dot < 0) continue;
+                if (owner != null && !(dot - 2 == owner.length() && sym.startsWith(owner, 2))) continue;
+                if (name != null && !(end - dot - 1 == name.length() && sym.startsWith(name, dot + 1))) continue;
+                if (desc != null && (paren < 0 || !sym.substring(paren).equals(desc))) continue;
+                ids.set(id);
+            }
+            return ids;
+        }
+
+        /**
+         * Методы, в которых шаг может совпасть хоть где-то, или null, если
+         * шаг ничего не сужает (пропуски, "любая инструкция").
+         */
+        BitSet postings(int s) {
+            if (accepted[s] != null) {
+                BitSet result = new BitSet();
+                for (int id = accepted[s].nextSetBit(0); id >= 0; id = accepted[s].nextSetBit(id + 1)) {
+                    if (bySymbol[id] != null) result.or(bySymbol[id]);
+                }
+                return result;
+            }
+            return switch (steps[s]) {
+                case Query.Insn i -> orEmpty(byOpcode[i.opcode().code()]);
+                case Query.Call c -> union(Opcode.INVOKEVIRTUAL, Opcode.INVOKESPECIAL, Opcode.INVOKESTATIC,
+                        Opcode.INVOKEINTERFACE, Opcode.INVOKEDYNAMIC);
+                case Query.Field f -> union(Opcode.GETFIELD, Opcode.PUTFIELD, Opcode.GETSTATIC, Opcode.PUTSTATIC);
+                default -> null;
+            };
+        }
+
+        List<QueryHit> match(IndexedMethod m) {
+            List<QueryHit> hits = new ArrayList<>();
+            int n = m.size();
+            boolean[] active = new boolean[steps.length + 1];
+            boolean[] nextActive = new boolean[steps.length + 1];
+            for (int start = 0; start < n; start++) {
+                if (!matches(0, m, start)) continue;
+                Arrays.fill(active, false);
+                active[1] = true;
+                int end = closure(active) ? start : -1;
+                for (int j = start + 1; j < n && end < 0; j++) {
+                    Arrays.fill(nextActive, false);
+                    boolean any = false;
+                    for (int s = 0; s < steps.length; s++) {
+                        if (!active[s]) continue;
+                        if (steps[s] instanceof Query.Gap gap) {
+                            if (gap.excluded() == null || (m.opcodes[j] & 0xFF) != gap.excluded().code()) {
+                                nextActive[s] = true;
+                                any = true;
+                            }
+                        } else if (matches(s, m, j)) {
+                            nextActive[s + 1] = true;
+                            any = true;
+                        }
+                    }
+                    if (!any) break;
+                    boolean[] t = active;
+                    active = nextActive;
+                    nextActive = t;
+                    if (closure(active)) end = j;
+                }
+                if (end >= 0) {
+                    hits.add(new QueryHit(m.owner, m.name, m.descriptor, m.offsets[start], m.offsets[end]));
+                }
+            }
+            return hits;
+        }
+
+        /**
+         * Пропуск может совпасть с пустой последовательностью: активируем шаг за ним.
+         * Возвращает true, если шаблон пройден целиком.
+         */
+        private boolean closure(boolean[] active) {
+            for (int s = 0; s < steps.length; s++) {
+                if (active[s] && steps[s] instanceof Query.Gap) active[s + 1] = true;
+            }
+            return active[steps.length];
+        }
+
+        private boolean matches(int s, IndexedMethod m, int i) {
+            int op = m.opcodes[i] & 0xFF;
+            boolean opcodeOk = switch (steps[s]) {
+                case Query.AnyInsn any -> true;
+                case Query.Gap gap -> false;
+                case Query.Insn insn -> op == insn.opcode().code();
+                case Query.Call c -> isInvoke(op);
+                case Query.Field f -> isField(op);
+                case Query.Type t -> isTypeInsn(op);
+                case Query.Ldc l -> op == Opcode.LDC.code() || op == Opcode.LDC_W.code();
+            };
+            if (!opcodeOk || accepted[s] == null) return opcodeOk;
+            int symbol = switch (column[s]) {
+                case COL_SYM1 -> m.sym1[i];
+                case COL_SYM2 -> m.sym2[i];
+                case COL_SYM3 -> m.sym3[i];
+                default -> NONE;
+            };
+            return symbol != NONE && accepted[s].get(symbol);
+        }
+    }
+
+    private static boolean isInvoke(int op) {
+        return op >= Opcode.INVOKEVIRTUAL.code() && op <= Opcode.INVOKEDYNAMIC.code();
+    }
+
+    private static boolean isField(int op) {
+        return op >= Opcode.GETSTATIC.code() && op <= Opcode.PUTFIELD.code();
+    }
+
+    private static boolean isTypeInsn(int op) {
+        return op == Opcode.NEW.code() || op == Opcode.ANEWARRAY.code() || op == Opcode.CHECKCAST.code()
+                || op == Opcode.INSTANCEOF.code() || op == Opcode.MULTIANEWARRAY.code();
+    }
+}
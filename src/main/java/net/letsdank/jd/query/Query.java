@@ -0,0 +1,230 @@
+package net.letsdank.jd.query;
+
+import net.letsdank.jd.bytecode.Opcode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Шаблон - последовательность шагов, каждый из которых сопоставляется
+ * с инструкциями метода подряд.
+ * <p>
+ * Текстовый синтаксис ({@link #parse(String)}), шаги через пробел:
+ * <ul>
+ *     <li>{@code monitorenter}, {@code athrow}, ... - инструкция по мнемонике;</li>
+ *     <li>{@code ?} - одна любая инструкция;</li>
+ *     <li>{@code *} - любое число инструкций (в том числе ноль);</li>
+ *     <li>{@code *!monitorexit} - любое число инструкций, среди которых нет указанной;</li>
+ *     <li>{@code call:java/lang/Thread.sleep}, {@code call:java/lang/System.exit(I)V},
+ *     {@code call:*.exit}, {@code call:java/lang/Thread} - вызов метода;</li>
+ *     <li>{@code field:java/lang/System.out} - чтение или запись поля;</li>
+ *     <li>{@code type:java/lang/StringBuilder} - new/checkcast/instanceof/anewarray;</li>
+ *     <li>{@code ldc:"text"} - загрузка строковой константы.</li>
+ * </ul>
+ * Пример: {@code monitorenter *!monitorexit call:java/lang/Thread.sleep}.
+ */
+public final class Query {
+    private final List<Step> steps;
+
+    Query(List<Step> steps) {
+        this.steps = List.copyOf(steps);
+    }
+
+    public static Query of(Step... steps) {
+        return normalize(List.of(steps));
+    }
+
+    public List<Step> steps() {
+        return steps;
+    }
+
+    /**
+     * Разбирает текстовый шаблон.
+     *
+     * @throws IllegalArgumentException если шаблон пустой или шаг не распознан
+     */
+    public static Query parse(String text) {
+        List<Step> steps = new ArrayList<>();
+        for (String token : tokenize(text)) {
+            steps.add(parseStep(token));
+        }
+        return normalize(steps);
+    }
+
+    /**
+     * Пропуски в начале и в конце ничего не меняют - отбрасываем их,
+     * чтобы первый шаг всегда был конкретной инструкцией.
+     */
+    private static Query normalize(List<Step> steps) {
+        int from = 0;
+        int to = steps.size();
+        while (from < to && steps.get(from) instanceof Gap) from++;
+        while (to > from && steps.get(to - 1) instanceof Gap) to--;
+        if (from == to) {
+            throw new IllegalArgumentException("query has no instruction steps");
+        }
+        return new Query(steps.subList(from, to));
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                cur.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!cur.isEmpty()) {
+                    tokens.add(cur.toString());
+                    cur.setLength(0);
+                }
+            } else {
+                cur.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated string in query: " + text);
+        }
+        if (!cur.isEmpty()) tokens.add(cur.toString());
+        return tokens;
+    }
+
+    private static Step parseStep(String token) {
+        if (token.equals("?")) return new AnyInsn();
+        if (token.equals("*")) return new Gap(null);
+        if (token.startsWith("*!")) return new Gap(parseOpcode(token.substring(2)));
+
+        int colon = token.indexOf(':');
+        if (colon < 0) return new Insn(parseOpcode(token));
+
+        String kind = token.substring(0, colon);
+        String arg = token.substring(colon + 1);
+        return switch (kind) {
+            case "call" -> {
+                String[] m = parseMember(arg);
+                yield new Call(m[0], m[1], m[2]);
+            }
+            case "field" -> {
+                String[] m = parseMember(arg);
+                yield new Field(m[0], m[1]);
+            }
+            case "type" -> new Type(arg);
+            case "ldc" -> {
+                if (arg.length() < 2 || !arg.startsWith("\"") || !arg.endsWith("\"")) {
+                    throw new IllegalArgumentException("ldc expects a quoted string: " + token);
+                }
+                yield new Ldc(arg.substring(1, arg.length() - 1));
+            }
+            default -> throw new IllegalArgumentException("unknown query step: " + token);
+        };
+    }
+
+    /**
+     * owner.name(desc) -> {owner, name, desc}; {@code *} и отсутствующие части - null.
+     */
+    private static String[] parseMember(String arg) {
+        String desc = null;
+        int paren = arg.indexOf('(');
+        if (paren >= 0) {
+            desc = arg.substring(paren);
+            arg = arg.substring(0, paren);
+        }
+        String owner = arg;
+        String name = null;
+        int dot = arg.lastIndexOf('.');
+        if (dot >= 0) {
+            owner = arg.substring(0, dot);
+            name = arg.substring(dot + 1);
+        }
+        return new String[]{wildcard(owner), wildcard(name), desc};
+    }
+
+    private static String wildcard(String s) {
+        return s == null || s.isEmpty() || s.equals("*") ? null : s;
+    }
+
+    private static Opcode parseOpcode(String mnemonic) {
+        String m = mnemonic.toLowerCase(Locale.ROOT);
+        for (Opcode op : Opcode.values()) {
+            if (op.mnemonic().equals(m)) return op;
+        }
+        throw new IllegalArgumentException("unknown opcode: " + mnemonic);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Step s : steps) {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    // --- шаги ---
+
+    /**
+     * Один шаг шаблона. Все шаги, кроме {@link Gap}, съедают ровно одну инструкцию.
+     */
+    public sealed interface Step permits Insn, AnyInsn, Gap, Call, Field, Type, Ldc {
+    }
+
+    public record Insn(Opcode opcode) implements Step {
+        @Override
+        public String toString() {
+            return opcode.mnemonic();
+        }
+    }
+
+    public record AnyInsn() implements Step {
+        @Override
+        public String toString() {
+            return "?";
+        }
+    }
+
+    /**
+     * Любое число инструкций; если excluded не null, такой инструкции среди них быть не должно.
+     */
+    public record Gap(Opcode excluded) implements Step {
+        @Override
+        public String toString() {
+            return excluded == null ? "*" : "*!" + excluded.mnemonic();
+        }
+    }
+
+    /**
+     * Вызов метода. Null в любой части - "что угодно".
+     */
+    public record Call(String owner, String name, String descriptor) implements Step {
+        @Override
+        public String toString() {
+            return "call:" + (owner == null ? "*" : owner) + "." + (name == null ? "*" : name)
+                    + (descriptor == null ? "" : descriptor);
+        }
+    }
+
+    public record Field(String owner, String name) implements Step {
+        @Override
+        public String toString() {
+            return "field:" + (owner == null ? "*" : owner) + "." + (name == null ? "*" : name);
+        }
+    }
+
+    public record Type(String internalName) implements Step {
+        @Override
+        public String toString() {
+            return "type:" + internalName;
+        }
+    }
+
+    public record Ldc(String value) implements Step {
+        @Override
+        public String toString() {
+            return "ldc:\"" + value + "\"";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.letsdank.jd.query;
+
+/**
+ * Совпадение шаблона в методе.
+ *
+ * @param owner      внутреннее имя класса (com/example/Foo)
+ * @param name       имя метода
+ * @param descriptor дескриптор метода
+ * @param startPc    адрес первой инструкции совпадения
+ * @param endPc      адрес последней инструкции совпадения
+ */
+public record QueryHit(String owner, String name, String descriptor, int startPc, int endPc) {
+    @Override
+    public String toString() {
+        return owner + "." + name + descriptor + " @" + startPc + (endPc != startPc ? ".." + endPc : "");
+    }
+}
@@ -6,12 +6,13 @@ import net.letsdank.jd.model.ConstantPool;
 import net.letsdank.jd.model.MethodInfo;
 
 public class JDUtils {
+    /**
+     * Условные переходы, которые сейчас умеют структурировать проходы
+     * MethodDecompiler: сравнения int с нулем и друг с другом.
+     * Полный список условных переходов - {@link Opcode#isConditional()}.
+     */
     public static boolean isConditional(Opcode opcode) {
-        return switch (opcode) {
-            case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE,
-                 IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE -> true;
-            default -> false;
-        };
+        return opcode.isConditional() && opcode.code() <= Opcode.IF_ICMPLE.code();
     }
 
     public static MethodInfo findMethod(ClassFile cf, ConstantPool cp, String name, String desc) {
@@ -0,0 +1,55 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.Expr;
+import net.letsdank.jd.ast.expr.VarExpr;
+import net.letsdank.jd.ast.stmt.AssignStmt;
+import net.letsdank.jd.ast.stmt.Stmt;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.fixtures.StructuredMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntryStacksTest {
+
+    @Test
+    void ternaryJoinGetsSyntheticVariable() throws IOException {
+        // 0: iload_1; 1: iload_2; 2: if_icmple 9; 5: iload_1; 6: goto 10
+        // 9: iload_2; 10: invokestatic Math.abs; 13: ireturn
+        InputStream in = StructuredMethods.class.getResourceAsStream("StructuredMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "max", "(II)I");
+        MethodContext ctx = new MethodContext(m, cf, m.findCodeAttribute(), new DecompilerOptions(), new CfgBuilder());
+        EntryStacks stacks = ctx.regionEntryStacks();
+        ControlFlowGraph cfg = ctx.regionCfg();
+
+        assertTrue(stacks.entry(cfg.entryBlock()).isEmpty());
+        BasicBlock join = cfg.blockByStartOffset(10);
+        Deque<Expr> atJoin = stacks.entry(join);
+        assertEquals(1, atJoin.size());
+        assertTrue(EntryStacks.isTemp(atJoin.peek()));
+
+        // ветка then кладет a, ветка else - b
+        Deque<Expr> thenExit = stacks.entry(cfg.blockByStartOffset(5));
+        assertTrue(thenExit.isEmpty());
+        List<Stmt> moves = stacks.transfer(join, new ArrayDeque<>(List.of(new VarExpr("a"))));
+        assertEquals(List.of(new AssignStmt(atJoin.peek(), new VarExpr("a"))), moves);
+        assertNull(stacks.transfer(join, new ArrayDeque<>()));
+
+        // перед if_icmple лежат оба операнда
+        assertEquals(2, stacks.beforeBranch(cfg.entryBlock()).size());
+    }
+}
@@ -0,0 +1,49 @@
+package net.letsdank.jd.ast;
+
+import net.letsdank.jd.ast.expr.Expr;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodContextTest {
+
+    @Test
+    void analysesAreComputedOnceAndStacksAreCopied() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo abs = JDUtils.findMethod(cf, cf.constantPool(), "abs", "(I)I");
+
+        MethodContext ctx = new MethodContext(abs, cf, abs.findCodeAttribute(),
+                new DecompilerOptions(), new CfgBuilder());
+
+        // Стратегии должны видеть один и тот же разбор метода
+        assertSame(ctx.insns(), ctx.insns());
+        assertSame(ctx.cfg(), ctx.cfg());
+        assertSame(ctx.exprBuilder(), ctx.exprBuilder());
+
+        BasicBlock entry = ctx.cfg().entryBlock();
+        assertTrue(ctx.predecessors(entry).isEmpty());
+        for (BasicBlock succ : entry.successors()) {
+            assertTrue(ctx.predecessors(succ).contains(entry));
+        }
+
+        // Снятие операндов одной стратегией не портит кэш для следующей
+        Deque<Expr> first = ctx.stackBeforeBranch(entry);
+        assertFalse(first.isEmpty());
+        int depth = first.size();
+        first.clear();
+        assertEquals(depth, ctx.stackBeforeBranch(entry).size());
+    }
+}
@@ -0,0 +1,72 @@
+package net.letsdank.jd.ast.fixture;
+
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Класс Irr с одним public static методом m и заданным байткодом: для форм,
+ * которые javac не порождает (неприводимые графы, synchronized от kotlinc).
+ */
+final class HandmadeClass {
+    private HandmadeClass() {
+    }
+
+    /**
+     * @param handlers записи exception_table {startPc, endPc, handlerPc}, все catch-any
+     */
+    static ClassFile withMethod(String descriptor, int maxLocals, byte[] code, int[]... handlers)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        // #1 Irr, #2 Class Irr, #3 Object, #4 Class Object, #5 m, #6 дескриптор, #7 Code
+        out.writeShort(8);
+        out.writeByte(1);
+        out.writeUTF("Irr");
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        out.writeByte(1);
+        out.writeUTF("m");
+        out.writeByte(1);
+        out.writeUTF(descriptor);
+        out.writeByte(1);
+        out.writeUTF("Code");
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(0x0009);
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);
+        out.writeShort(7);
+        out.writeInt(12 + code.length + 8 * handlers.length);
+        out.writeShort(4);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(handlers.length);
+        for (int[] h : handlers) {
+            out.writeShort(h[0]);
+            out.writeShort(h[1]);
+            out.writeShort(h[2]);
+            out.writeShort(0);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+        return new ClassFileReader().read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
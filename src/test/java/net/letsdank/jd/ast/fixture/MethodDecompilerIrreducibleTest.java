@@ -0,0 +1,106 @@
+package net.letsdank.jd.ast.fixture;
+
+import net.letsdank.jd.ast.JavaPrettyPrinter;
+import net.letsdank.jd.ast.MethodAst;
+import net.letsdank.jd.ast.MethodDecompiler;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * javac неприводимых графов не строит, поэтому классы собираются вручную.
+ */
+class MethodDecompilerIrreducibleTest {
+    //  0: iload_0; 1: ifeq 11        вход в цикл мимо 4
+    //  4: iload_0; 5: ifle 15
+    //  8: iinc 0, -1
+    // 11: iload_0; 12: ifgt 4
+    private static final byte[] TWO_ENTRY_LOOP = {0x1A, (byte) 0x99, 0x00, 0x0A, 0x1A, (byte) 0x9E, 0x00, 0x0A,
+            (byte) 0x84, 0x00, (byte) 0xFF, 0x1A, (byte) 0x9D, (byte) 0xFF, (byte) 0xF8};
+
+    private static String decompile(ClassFile cf, String descriptor) {
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "m", descriptor);
+        MethodAst ast = new MethodDecompiler().decompile(m, cf);
+        String text = new JavaPrettyPrinter().printMethod(cf, m, ast);
+        System.out.println("m decompiled:\n" + text);
+        assertFalse(text.contains("WARNING"), text);
+        assertTrue(text.contains("dispatch:"), text);
+        assertTrue(text.contains("while (true)"), text);
+        return text;
+    }
+
+    @Test
+    void twoEntryLoopBecomesStateMachine() throws IOException {
+        // 15: iload_0; 16: ireturn
+        byte[] code = new byte[TWO_ENTRY_LOOP.length + 2];
+        System.arraycopy(TWO_ENTRY_LOOP, 0, code, 0, TWO_ENTRY_LOOP.length);
+        code[15] = 0x1A;
+        code[16] = (byte) 0xAC;
+        String text = decompile(HandmadeClass.withMethod("(I)I", 1, code), "(I)I");
+
+        assertTrue(text.contains("switch (state)"), text);
+        // вход, два входа в цикл и общий выход; блок 8 печатается на ребре
+        for (int k = 0; k <= 3; k++) {
+            assertTrue(text.contains("case " + k + ":"), text);
+        }
+        assertFalse(text.contains("case 4:"), text);
+        assertTrue(text.contains("continue dispatch;"), text);
+        assertTrue(text.contains("return "), text);
+    }
+
+    @Test
+    void longInlineChainIsSplitIntoCases() throws Exception {
+        // за циклом 2000 раз iload_0; ifeq END: каждый блок цепочки - с одним предшественником
+        int n = 2000;
+        int end = 15 + n * 4;
+        byte[] code = new byte[end + 2];
+        System.arraycopy(TWO_ENTRY_LOOP, 0, code, 0, TWO_ENTRY_LOOP.length);
+        for (int k = 0; k < n; k++) {
+            int pc = 15 + k * 4;
+            int offset = end - (pc + 1);
+            code[pc] = 0x1A;
+            code[pc + 1] = (byte) 0x99;
+            code[pc + 2] = (byte) (offset >> 8);
+            code[pc + 3] = (byte) offset;
+        }
+        code[end] = 0x1A;
+        code[end + 1] = (byte) 0xAC;
+        ClassFile cf = HandmadeClass.withMethod("(I)I", 1, code);
+
+        Throwable[] failure = new Throwable[1];
+        String[] text = new String[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                text[0] = decompile(cf, "(I)I");
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "small-stack", 256 * 1024);
+        t.start();
+        t.join();
+        assertNull(failure[0], String.valueOf(failure[0]));
+        assertTrue(text[0].contains("case 20:"), text[0]);
+    }
+
+    @Test
+    void caughtExceptionReachesHandlerCase() throws IOException {
+        // 15: iload_0; 16: ireturn
+        // 17: astore_1; 18: aload_1; 19: athrow    обработчик [8, 11)
+        byte[] code = new byte[TWO_ENTRY_LOOP.length + 5];
+        System.arraycopy(TWO_ENTRY_LOOP, 0, code, 0, TWO_ENTRY_LOOP.length);
+        System.arraycopy(new byte[]{0x1A, (byte) 0xAC, 0x4C, 0x2B, (byte) 0xBF}, 0, code, 15, 5);
+        String text = decompile(HandmadeClass.withMethod("(I)I", 2, code, new int[]{8, 11, 17}), "(I)I");
+
+        assertTrue(text.contains("catch (Throwable caught) {"), text);
+        int assign = text.indexOf(" = caught;");
+        assertTrue(assign >= 0, text);
+        String local = text.substring(text.lastIndexOf(' ', assign - 1) + 1, assign);
+        // case обработчика читает тот же локал, которому присвоил catch
+        assertTrue(text.contains("throw " + local + ";"), text);
+    }
+}
@@ -0,0 +1,148 @@
+package net.letsdank.jd.ast.fixture;
+
+import net.letsdank.jd.ast.JavaPrettyPrinter;
+import net.letsdank.jd.ast.MethodAst;
+import net.letsdank.jd.ast.MethodDecompiler;
+import net.letsdank.jd.fixtures.StructuredMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodDecompilerRegionTest {
+
+    private static String decompile(String name, String descriptor) throws IOException {
+        InputStream in = StructuredMethods.class.getResourceAsStream("StructuredMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), name, descriptor);
+        MethodAst ast = new MethodDecompiler().decompile(m, cf);
+        String text = new JavaPrettyPrinter().printMethod(cf, m, ast);
+        System.out.println(name + " decompiled:\n" + text);
+        assertFalse(text.contains("WARNING"), name + " must be structured");
+        return text;
+    }
+
+    @Test
+    void loopWithBreak() throws IOException {
+        String text = decompile("firstNegative", "([I)I");
+        assertTrue(text.contains("break;"));
+        assertFalse(text.contains("goto"));
+    }
+
+    @Test
+    void tryInsideLoop() throws IOException {
+        String text = decompile("sumParsed", "([Ljava/lang/String;)I");
+        int loop = text.indexOf("for (");
+        assertTrue(loop >= 0);
+        assertTrue(text.indexOf("try {") > loop, "try must be nested in the loop");
+    }
+
+    @Test
+    void tryCatch() throws IOException {
+        String text = decompile("parseOrZero", "(Ljava/lang/String;)I");
+        assertTrue(text.contains("try {"));
+        assertTrue(text.contains("catch (java.lang.NumberFormatException"));
+    }
+
+    @Test
+    void switchWithDefault() throws IOException {
+        String text = decompile("classify", "(I)I");
+        assertTrue(text.contains("switch ("));
+        assertTrue(text.contains("default:"));
+    }
+
+    @Test
+    void ternaryArgumentIsInlined() throws IOException {
+        String text = decompile("max", "(II)I");
+        assertTrue(text.contains("Math.abs(((a > b) ? a : b))"));
+        assertFalse(text.contains("stack"), "synthetic stack variable must be inlined");
+    }
+
+    @Test
+    void booleanValueOfAndChain() throws IOException {
+        String text = decompile("both", "(II)Z");
+        assertTrue(text.contains("&&"));
+        assertFalse(text.contains("stack"));
+    }
+
+    @Test
+    void kotlinSynchronizedKeepsMonitorValue() throws IOException {
+        // kotlinc: монитор сначала сохраняется в локал, обычный monitorexit - вне try
+        //  0: aload_0; 1: astore_1; 2: aload_1; 3: monitorenter
+        //  4: iconst_1; 5: istore_2              [4, 6) -> 10
+        //  6: aload_1; 7: monitorexit; 8: iload_2; 9: ireturn
+        // 10: astore_3; 11: aload_1; 12: monitorexit; 13: aload_3; 14: athrow
+        byte[] code = {0x2A, 0x4C, 0x2B, (byte) 0xC2, 0x04, 0x3D, 0x2B, (byte) 0xC3, 0x1C, (byte) 0xAC,
+                0x4E, 0x2B, (byte) 0xC3, 0x2D, (byte) 0xBF};
+        ClassFile cf = HandmadeClass.withMethod("(Ljava/lang/Object;)I", 4, code, new int[]{4, 6, 10});
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "m", "(Ljava/lang/Object;)I");
+        MethodAst ast = new MethodDecompiler().decompile(m, cf);
+        String text = new JavaPrettyPrinter().printMethod(cf, m, ast);
+        System.out.println("kotlin synchronized decompiled:\n" + text);
+
+        assertFalse(text.contains("WARNING"), text);
+        assertFalse(text.contains("monitorexit"), text);
+        assertFalse(text.contains("monitorenter"), text);
+        // монитор - сам аргумент, а не временная переменная без присваивания
+        assertTrue(text.contains("synchronized (a) {"), text);
+        assertTrue(text.contains("return "), text);
+    }
+
+    @Test
+    void dupAstoreEvaluatesOnce() throws IOException {
+        // invokevirtual make; dup; astore_1; ifnull
+        String text = decompile("hashOfMade", "()I");
+        assertEquals(text.indexOf("make()"), text.lastIndexOf("make()"), text);
+    }
+
+    @Test
+    void dupIstoreEvaluatesOnce() throws IOException {
+        // invokevirtual count; dup; istore_1; ifle
+        String text = decompile("countOrMinus", "()I");
+        assertEquals(text.indexOf("count()"), text.lastIndexOf("count()"), text);
+    }
+
+    @Test
+    void longIfChainDoesNotDependOnThreadStack() throws Exception {
+        // 2000 раз if (a > k) b += k: iload_0; sipush k; if_icmple +9; iload_1; sipush k; iadd; istore_1
+        int n = 2000;
+        byte[] code = new byte[n * 13 + 2];
+        for (int k = 0; k < n; k++) {
+            byte hi = (byte) (k >> 8);
+            byte lo = (byte) k;
+            System.arraycopy(new byte[]{0x1A, 0x11, hi, lo, (byte) 0xA4, 0x00, 0x09,
+                    0x1B, 0x11, hi, lo, 0x60, 0x3C}, 0, code, k * 13, 13);
+        }
+        code[n * 13] = 0x1B;
+        code[n * 13 + 1] = (byte) 0xAC;
+        ClassFile cf = HandmadeClass.withMethod("(II)I", 2, code);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "m", "(II)I");
+
+        Throwable[] failure = new Throwable[1];
+        String[] text = new String[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                text[0] = new JavaPrettyPrinter().printMethod(cf, m, new MethodDecompiler().decompile(m, cf));
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "small-stack", 256 * 1024);
+        t.start();
+        t.join();
+        assertNull(failure[0], String.valueOf(failure[0]));
+        assertFalse(text[0].contains("WARNING"), text[0]);
+        // каждое условие на месте, а не только первые
+        for (int k = 0; k < n; k++) {
+            assertTrue(text[0].contains("if ((a > " + k + ")) {"), "if (a > " + k + ")");
+        }
+        assertTrue(text[0].contains("b = (b + 1999);"), text[0]);
+        assertTrue(text[0].contains("return b;"), text[0]);
+    }
+}
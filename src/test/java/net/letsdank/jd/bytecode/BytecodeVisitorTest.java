@@ -0,0 +1,53 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytecodeVisitorTest {
+
+    @Test
+    void visitorSeesSameInstructionsAsDecode() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        BytecodeDecoder decoder = new BytecodeDecoder();
+
+        for (MethodInfo m : cf.methods()) {
+            CodeAttribute codeAttr = m.findCodeAttribute();
+            if (codeAttr == null) continue;
+            byte[] code = codeAttr.code();
+
+            // Анализу нужны только вызовы - остальные callback-и остаются пустыми
+            int[] invokes = new int[1];
+            int[] total = new int[1];
+            decoder.accept(code, new BytecodeVisitor() {
+                @Override
+                public void visitInvoke(int offset, Opcode opcode, int cpIndex) {
+                    assertTrue(opcode.isInvoke());
+                    invokes[0]++;
+                }
+
+                @Override
+                public void visitEnd() {
+                    total[0]++;
+                }
+            });
+
+            List<Insn> insns = decoder.decode(code);
+            long expected = insns.stream().filter(i -> i.opcode() != null && i.opcode().isInvoke()).count();
+            assertEquals(expected, invokes[0]);
+            assertEquals(1, total[0], "visitEnd must be called exactly once");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.ConstantPool;
+import net.letsdank.jd.model.FieldInfo;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.AttributeInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.model.cp.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprinterTest {
+
+    /**
+     * Класс с одним методом {@code int f() { return CONST; }}, где CONST лежит
+     * в пуле по индексу constIndex. Остальные записи - заглушки.
+     */
+    private static ClassFile classWithLdc(CpInfo[] entries, int constIndex, boolean wide) {
+        byte[] code = wide
+                ? new byte[]{0x13, 0, (byte) constIndex, (byte) 0xAC}   // ldc_w #i; ireturn
+                : new byte[]{0x12, (byte) constIndex, (byte) 0xAC};     // ldc #i; ireturn
+        CodeAttribute codeAttr = new CodeAttribute("Code", 1, 1, code, List.of(), null, null);
+        MethodInfo m = new MethodInfo(0, 1, 2, new AttributeInfo[]{codeAttr});
+        return new ClassFile(0, 65, new ConstantPool(entries), 0, 0, 0, new int[0],
+                new FieldInfo[0], new MethodInfo[]{m}, new AttributeInfo[0]);
+    }
+
+    @Test
+    void fingerprintIgnoresConstantPoolLayout() {
+        CpInfo name = new CpUtf8(1, "f");
+        CpInfo desc = new CpUtf8(1, "()I");
+
+        ClassFile a = classWithLdc(new CpInfo[]{null, name, desc, new CpInteger(3, 100_000)}, 3, false);
+        ClassFile b = classWithLdc(new CpInfo[]{null, name, desc, new CpUtf8(1, "pad"), new CpInteger(3, 100_000)}, 4, true);
+        ClassFile c = classWithLdc(new CpInfo[]{null, name, desc, new CpInteger(3, 100_001)}, 3, false);
+
+        Fingerprinter fp = new Fingerprinter();
+        assertEquals(fp.method(a.methods()[0], a), fp.method(b.methods()[0], b));
+        assertEquals(fp.classFile(a), fp.classFile(b));
+        assertNotEquals(fp.method(a.methods()[0], a), fp.method(c.methods()[0], c));
+        assertEquals(32, fp.classFile(a).toHex().length());
+    }
+
+    @Test
+    void differentMethodsGetDifferentFingerprints() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        Fingerprinter fp = new Fingerprinter();
+
+        ConstantPool cp = cf.constantPool();
+        Fingerprint abs = null;
+        Fingerprint loop = null;
+        for (MethodInfo m : cf.methods()) {
+            String name = cp.getUtf8(m.nameIndex());
+            if (name.equals("abs")) abs = fp.method(m, cf);
+            if (name.equals("loop")) loop = fp.method(m, cf);
+        }
+        assertNotNull(abs);
+        assertNotNull(loop);
+        assertNotEquals(abs, loop);
+        // повторный расчет детерминирован
+        assertEquals(fp.classFile(cf), fp.classFile(cf));
+    }
+
+    // общий пул для классов ниже
+    private static final CpInfo[] POOL = {
+            null,
+            new CpUtf8(1, "m"),                                        // 1
+            new CpUtf8(1, "(I)I"),                                     // 2
+            new CpUtf8(1, "(Z)Z"),                                     // 3
+            new CpUtf8(1, "()Ljava/lang/Object;"),                     // 4
+            new CpUtf8(1, "(Ljava/lang/Object;)Ljava/lang/Object;"),   // 5
+            new CpUtf8(1, "java/lang/Object"),                         // 6
+            new CpClass(7, 6),                                         // 7
+            new CpUtf8(1, "java/lang/Number"),                         // 8
+            new CpClass(7, 8),                                         // 9
+            new CpUtf8(1, "java/io/Serializable"),                     // 10
+            new CpClass(7, 10),                                        // 11
+            new CpUtf8(1, "x"),                                        // 12
+            new CpUtf8(1, "I"),                                        // 13
+            new CpUtf8(1, "Foo"),                                      // 14
+            new CpClass(7, 14),                                        // 15
+    };
+
+    private static MethodInfo method(int flags, int descIndex, byte... code) {
+        CodeAttribute codeAttr = new CodeAttribute("Code", 1, 1, code, List.of(), null, null);
+        return new MethodInfo(flags, 1, descIndex, new AttributeInfo[]{codeAttr});
+    }
+
+    private static ClassFile classOf(int superIndex, int[] interfaces, FieldInfo[] fields, MethodInfo... methods) {
+        return new ClassFile(0, 65, new ConstantPool(POOL), 0x21, 15, superIndex, interfaces,
+                fields, methods, new AttributeInfo[0]);
+    }
+
+    @Test
+    void descriptorAndStaticAreHashed() {
+        Fingerprinter fp = new Fingerprinter();
+        // iload_0; ireturn
+        MethodInfo f = method(0x0008, 2, (byte) 0x1A, (byte) 0xAC);
+        MethodInfo g = method(0x0008, 3, (byte) 0x1A, (byte) 0xAC);
+        ClassFile cf = classOf(7, new int[0], new FieldInfo[0], f, g);
+        assertNotEquals(fp.method(f, cf), fp.method(g, cf));
+        assertEquals(fp.method(f, cf), fp.method(method(0x0008, 2, (byte) 0x1A, (byte) 0xAC), cf));
+
+        // aload_0; areturn: this у экземплярного и параметр у статического
+        MethodInfo h = method(0, 4, (byte) 0x2A, (byte) 0xB0);
+        MethodInfo k = method(0x0008, 5, (byte) 0x2A, (byte) 0xB0);
+        assertNotEquals(fp.method(h, cf), fp.method(k, cf));
+        assertNotEquals(fp.method(h, cf), fp.method(method(0x0008, 4, (byte) 0x2A, (byte) 0xB0), cf));
+    }
+
+    @Test
+    void classHeaderAndFieldsAreHashed() {
+        Fingerprinter fp = new Fingerprinter();
+        MethodInfo m = method(0x0008, 2, (byte) 0x1A, (byte) 0xAC);
+        FieldInfo x = new FieldInfo(0x0002, 12, 13, new AttributeInfo[0]);
+        Fingerprint base = fp.classFile(classOf(7, new int[0], new FieldInfo[]{x}, m));
+
+        assertEquals(base, fp.classFile(classOf(7, new int[0], new FieldInfo[]{x}, m)));
+        assertNotEquals(base, fp.classFile(classOf(9, new int[0], new FieldInfo[]{x}, m)));
+        assertNotEquals(base, fp.classFile(classOf(7, new int[]{11}, new FieldInfo[]{x}, m)));
+        assertNotEquals(base, fp.classFile(classOf(7, new int[0], new FieldInfo[0], m)));
+        FieldInfo publicX = new FieldInfo(0x0001, 12, 13, new AttributeInfo[0]);
+        assertNotEquals(base, fp.classFile(classOf(7, new int[0], new FieldInfo[]{publicX}, m)));
+    }
+}
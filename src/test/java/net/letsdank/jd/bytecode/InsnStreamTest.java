@@ -0,0 +1,128 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.JumpInsn;
+import net.letsdank.jd.bytecode.insn.LookupSwitchInsn;
+import net.letsdank.jd.bytecode.insn.TableSwitchInsn;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InsnStreamTest {
+
+    @Test
+    void cursorAndAdapterAgree() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        BytecodeDecoder decoder = new BytecodeDecoder();
+
+        for (MethodInfo m : cf.methods()) {
+            CodeAttribute codeAttr = m.findCodeAttribute();
+            if (codeAttr == null) continue;
+
+            InsnStream stream = decoder.decodeStream(codeAttr.code());
+            List<Insn> insns = stream.asList();
+
+            InsnStream.Cursor c = stream.cursor();
+            int i = 0;
+            while (c.next()) {
+                Insn insn = insns.get(i);
+                assertEquals(insn.offset(), c.offset());
+                assertSame(insn.opcode(), c.opcode());
+                if (insn instanceof JumpInsn j) {
+                    assertEquals(j.targetOffset(), c.operand1());
+                }
+                // адаптер отдает один и тот же объект
+                assertSame(insn, stream.insn(i));
+                i++;
+            }
+            assertEquals(stream.size(), i);
+        }
+    }
+
+    @Test
+    void tableSwitchTargetsGoToSideTable() {
+        // 0: tableswitch (padding 3) default=+26 low=1 high=2 targets=+24,+25
+        // 24: return, 25: return, 26: return
+        byte[] code = new byte[27];
+        code[0] = (byte) 0xAA;
+        putInt(code, 4, 26);
+        putInt(code, 8, 1);
+        putInt(code, 12, 2);
+        putInt(code, 16, 24);
+        putInt(code, 20, 25);
+        code[24] = (byte) 0xB1;
+        code[25] = (byte) 0xB1;
+        code[26] = (byte) 0xB1;
+
+        InsnStream stream = new BytecodeDecoder().decodeStream(code);
+        assertEquals(4, stream.size());
+        assertSame(Opcode.TABLESWITCH, stream.opcode(0));
+
+        int sw = stream.operand1(0);
+        assertEquals(26, stream.switchDefault(sw));
+        assertEquals(2, stream.switchTargetCount(sw));
+        assertEquals(25, stream.switchTarget(sw, 1));
+
+        TableSwitchInsn ts = (TableSwitchInsn) stream.insn(0);
+        assertEquals(1, ts.key(0));
+        assertEquals(24, ts.target(0));
+        assertEquals(2, ts.high());
+    }
+
+    @Test
+    void lookupSwitchPairsAreDecodedWithAbsolutePadding() {
+        // 0: iload_0
+        // 1: lookupswitch (padding 2 до адреса 4) default=+29 npairs=2
+        //    -5 -> +27, 100 -> +28
+        // 28: return, 29: return, 30: return
+        byte[] code = new byte[31];
+        code[0] = (byte) 0x1A;
+        code[1] = (byte) 0xAB;
+        putInt(code, 4, 29);
+        putInt(code, 8, 2);
+        putInt(code, 12, -5);
+        putInt(code, 16, 27);
+        putInt(code, 20, 100);
+        putInt(code, 24, 28);
+        code[28] = (byte) 0xB1;
+        code[29] = (byte) 0xB1;
+        code[30] = (byte) 0xB1;
+
+        List<Insn> insns = new BytecodeDecoder().decode(code);
+        LookupSwitchInsn ls = assertInstanceOf(LookupSwitchInsn.class, insns.get(1));
+        assertEquals(2, ls.caseCount());
+        assertEquals(-5, ls.key(0));
+        assertEquals(28, ls.target(0));
+        assertEquals(100, ls.key(1));
+        assertEquals(29, ls.target(1));
+        assertEquals(30, ls.defaultTarget());
+        assertEquals(28, insns.get(2).offset());
+
+        InsnStream stream = new BytecodeDecoder().decodeStream(code);
+        int sw = stream.operand1(1);
+        assertTrue(stream.isLookupSwitch(sw));
+        assertEquals(100, stream.switchKey(sw, 1));
+        assertEquals(29, stream.switchTarget(sw, 1));
+        LookupSwitchInsn adapted = (LookupSwitchInsn) stream.insn(1);
+        assertArrayEquals(ls.keys(), adapted.keys());
+        assertArrayEquals(ls.targets(), adapted.targets());
+    }
+
+    private static void putInt(byte[] code, int offset, int value) {
+        code[offset] = (byte) (value >>> 24);
+        code[offset + 1] = (byte) (value >>> 16);
+        code[offset + 2] = (byte) (value >>> 8);
+        code[offset + 3] = (byte) value;
+    }
+}
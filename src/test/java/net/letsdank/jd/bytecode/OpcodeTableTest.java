@@ -0,0 +1,54 @@
+package net.letsdank.jd.bytecode;
+
+import net.letsdank.jd.bytecode.insn.ConstantPoolInsn;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.SimpleInsn;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpcodeTableTest {
+
+    @Test
+    void fromCodeMatchesEveryOpcode() {
+        for (Opcode op : Opcode.values()) {
+            assertSame(op, Opcode.fromCode(op.code()));
+        }
+        assertNull(Opcode.fromCode(0xCA));
+        assertNull(Opcode.fromCode(-1));
+        assertNull(Opcode.fromCode(256));
+    }
+
+    @Test
+    void stackEffectsAndFlags() {
+        assertEquals(4, Opcode.LADD.stackPop());
+        assertEquals(2, Opcode.LADD.stackPush());
+        assertEquals(3, Opcode.LSHL.stackPop());
+        assertEquals(Opcode.VARIES, Opcode.INVOKEVIRTUAL.stackPop());
+        assertEquals(Opcode.VARIES, Opcode.GETFIELD.stackPush());
+
+        assertTrue(Opcode.IFNULL.isConditional());
+        assertTrue(Opcode.GOTO_W.isUnconditionalJump());
+        assertTrue(Opcode.ATHROW.isTerminator());
+        assertFalse(Opcode.ATHROW.isReturn());
+        assertTrue(Opcode.LOOKUPSWITCH.isSwitch());
+        assertTrue(Opcode.INVOKEINTERFACE.isInvoke());
+        assertFalse(Opcode.IADD.isBranch());
+
+        assertEquals(5, Opcode.INVOKEINTERFACE.length());
+        assertEquals(Opcode.VARIES, Opcode.TABLESWITCH.length());
+    }
+
+    @Test
+    void invokeInterfaceConsumesAllOperands() {
+        // invokeinterface #1, 1, 0; return
+        byte[] code = {(byte) 0xB9, 0x00, 0x01, 0x01, 0x00, (byte) 0xB1};
+        List<Insn> insns = new BytecodeDecoder().decode(code);
+
+        assertEquals(2, insns.size());
+        assertInstanceOf(ConstantPoolInsn.class, insns.get(0));
+        assertEquals(new SimpleInsn(5, Opcode.RETURN), insns.get(1));
+    }
+}
@@ -0,0 +1,78 @@
+package net.letsdank.jd.cfg;
+
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.insn.Insn;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CfgSimplifierTest {
+
+    private static ControlFlowGraph simplify(byte[] code) {
+        List<Insn> insns = new BytecodeDecoder().decode(code);
+        int[] pcToIndex = BytecodeDecoder.pcToIndex(insns, code.length);
+        ControlFlowGraph raw = new CfgBuilder().build(code, insns, pcToIndex);
+        return CfgSimplifier.simplify(raw, insns, pcToIndex);
+    }
+
+    @Test
+    void threadsGotoChainsAndDropsDeadCode() {
+        // 0: iload_0; 1: ifeq 12; 4: iinc 0, 1; 7: goto 18
+        // 10: iconst_0; 11: pop (мертвый код)
+        // 12: goto 15; 15: goto 7; 18: iload_0; 19: pop; 20: return
+        byte[] code = {0x1A, (byte) 0x99, 0x00, 0x0B, (byte) 0x84, 0x00, 0x01, (byte) 0xA7, 0x00, 0x0B,
+                0x03, 0x57, (byte) 0xA7, 0x00, 0x03, (byte) 0xA7, (byte) 0xFF, (byte) 0xF8,
+                0x1A, 0x57, (byte) 0xB1};
+        ControlFlowGraph cfg = simplify(code);
+
+        assertEquals(List.of(0, 4, 18), cfg.blocks().stream().map(BasicBlock::startOffset).toList());
+        BasicBlock entry = cfg.entryBlock();
+        BasicBlock body = cfg.blockByStartOffset(4);
+        BasicBlock exit = cfg.blockByStartOffset(18);
+        assertEquals(List.of(exit, body), entry.successors());
+        assertEquals(List.of(exit), body.successors());
+        for (int i = 0; i < cfg.blocks().size(); i++) {
+            assertEquals(i, cfg.blocks().get(i).id());
+        }
+
+        // переходы на выброшенные goto ведут в конец цепочки
+        assertSame(exit, cfg.jumpTarget(12));
+        assertSame(exit, cfg.jumpTarget(15));
+        assertSame(exit, cfg.jumpTarget(7));
+        assertSame(body, cfg.jumpTarget(4));
+
+        assertNull(cfg.blockAt(10));
+        assertNull(cfg.blockOfInsn(cfg.insnIndexAt(11)));
+        assertEquals(cfg.insnIndexAt(18), cfg.firstInsnIndex(exit));
+        assertEquals(3, exit.instructions().size());
+        assertEquals(1, body.instructions().size());
+    }
+
+    @Test
+    void mergesFallthroughPairLeftByDeadJump() {
+        // 0: goto 6; 3: goto 7 (мертвый, но делает 7 лидером); 6: nop; 7: return
+        byte[] code = {(byte) 0xA7, 0x00, 0x06, (byte) 0xA7, 0x00, 0x04, 0x00, (byte) 0xB1};
+        ControlFlowGraph cfg = simplify(code);
+
+        assertEquals(2, cfg.blocks().size());
+        BasicBlock merged = cfg.blocks().get(1);
+        assertEquals(6, merged.startOffset());
+        assertEquals(2, merged.instructions().size());
+        assertTrue(merged.successors().isEmpty());
+        assertNull(cfg.blockByStartOffset(7));
+        assertSame(merged, cfg.blockAt(7));
+        assertEquals(List.of(merged), cfg.entryBlock().successors());
+    }
+
+    @Test
+    void cleanGraphIsReturnedAsIs() {
+        // 0: iload_0; 1: ifeq 7; 4: iinc 0, 1; 7: return
+        byte[] code = {0x1A, (byte) 0x99, 0x00, 0x06, (byte) 0x84, 0x00, 0x01, (byte) 0xB1};
+        List<Insn> insns = new BytecodeDecoder().decode(code);
+        int[] pcToIndex = BytecodeDecoder.pcToIndex(insns, code.length);
+        ControlFlowGraph raw = new CfgBuilder().build(code, insns, pcToIndex);
+        assertSame(raw, CfgSimplifier.simplify(raw, insns, pcToIndex));
+    }
+}
@@ -4,6 +4,7 @@ import net.letsdank.jd.bytecode.Opcode;
 import net.letsdank.jd.bytecode.insn.Insn;
 import net.letsdank.jd.bytecode.insn.JumpInsn;
 import net.letsdank.jd.bytecode.insn.SimpleInsn;
+import net.letsdank.jd.bytecode.insn.TableSwitchInsn;
 import net.letsdank.jd.fixtures.SimpleMethods;
 import net.letsdank.jd.io.ClassFileReader;
 import net.letsdank.jd.model.ClassFile;
@@ -94,6 +95,210 @@ class ControlFlowGraphTest {
         }
     }
 
+    @Test
+    void offsetTablesMatchBlockContents() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        CfgBuilder cfgBuilder = new CfgBuilder();
+
+        for (MethodInfo m : cf.methods()) {
+            CodeAttribute codeAttr = m.findCodeAttribute();
+            if (codeAttr == null) continue;
+            byte[] code = codeAttr.code();
+            ControlFlowGraph cfg = cfgBuilder.build(code);
+
+            int index = 0;
+            for (BasicBlock bb : cfg.blocks()) {
+                assertSame(bb, cfg.blockByStartOffset(bb.startOffset()));
+                for (Insn insn : bb.instructions()) {
+                    assertEquals(index, cfg.insnIndexAt(insn.offset()));
+                    assertSame(bb, cfg.blockAt(insn.offset()));
+                    assertSame(bb, cfg.blockOfInsn(index));
+                    index++;
+                }
+            }
+            assertEquals(index, cfg.instructionCount());
+
+            // Байты операндов не являются началом инструкции
+            int starts = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                if (cfg.insnIndexAt(pc) >= 0) starts++;
+            }
+            assertEquals(index, starts);
+            assertEquals(-1, cfg.insnIndexAt(code.length));
+        }
+    }
+
+    @Test
+    void predecessorsAndOrdersAgreeWithSuccessors() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo loop = JDUtils.findMethod(cf, cf.constantPool(), "loop", "(I)V");
+        ControlFlowGraph cfg = new CfgBuilder().build(loop.findCodeAttribute().code());
+
+        for (BasicBlock bb : cfg.blocks()) {
+            for (BasicBlock succ : bb.successors()) {
+                assertTrue(cfg.predecessors(succ).contains(bb));
+            }
+            assertEquals(cfg.predecessors(bb).size(), cfg.predecessorCount(bb));
+        }
+
+        List<BasicBlock> rpo = cfg.reversePostorder();
+        assertSame(cfg.entryBlock(), rpo.getFirst());
+        assertSame(cfg.entryBlock(), cfg.postorder().getLast());
+        assertSame(rpo, cfg.reversePostorder());
+        for (int i = 0; i < rpo.size(); i++) {
+            assertEquals(i, cfg.rpoNumber(rpo.get(i)));
+            assertEquals(rpo.size() - 1 - i, cfg.postorderNumber(rpo.get(i)));
+        }
+
+        // в RPO каждое ребро идет вперед, кроме обратного ребра цикла
+        int backEdges = 0;
+        for (BasicBlock bb : rpo) {
+            for (BasicBlock succ : bb.successors()) {
+                if (cfg.rpoNumber(succ) <= cfg.rpoNumber(bb)) backEdges++;
+            }
+        }
+        assertEquals(1, backEdges);
+    }
+
+    @Test
+    void switchCasesSharingTargetGiveOneSuccessorEach() {
+        // 0: tableswitch 0..3 -> {20, 20, 21, 20}, default 21
+        // 20: return, 21: return
+        List<Insn> insns = List.of(
+                new TableSwitchInsn(0, 21, 0, new int[]{20, 20, 21, 20}),
+                new SimpleInsn(20, Opcode.RETURN),
+                new SimpleInsn(21, Opcode.RETURN));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+
+        assertEquals(3, cfg.blocks().size());
+        BasicBlock sw = cfg.entryBlock();
+        assertEquals(List.of(cfg.blockByStartOffset(21), cfg.blockByStartOffset(20)), sw.successors());
+    }
+
+    @Test
+    void jumpToNextBlockGivesSingleEdgeAndCachedViews() {
+        // 0: ifeq 3; 3: return - цель и fall-through совпадают
+        List<Insn> insns = List.of(
+                new JumpInsn(0, Opcode.IFEQ, 3, 3),
+                new SimpleInsn(3, Opcode.RETURN));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+
+        BasicBlock entry = cfg.entryBlock();
+        assertEquals(List.of(cfg.blockByStartOffset(3)), entry.successors());
+        assertSame(entry.successors(), entry.successors());
+        assertSame(entry.exceptionSuccessors(), entry.exceptionSuccessors());
+        assertThrows(UnsupportedOperationException.class,
+                () -> entry.exceptionSuccessors().add(new ExceptionEdge(entry, 0)));
+    }
+
+    @Test
+    void switchTargetsAndPostJumpInstructionsStartBlocks() {
+        // 0: iload_0
+        // 1: ifeq +24 -> 25
+        // 4: iload_0
+        // 5: tableswitch (padding 2) default=+20 low=0 high=0 targets=+21
+        // 25: return, 26: return
+        byte[] code = new byte[27];
+        code[0] = (byte) 0x1A;
+        code[1] = (byte) 0x99;
+        code[3] = 24;
+        code[4] = (byte) 0x1A;
+        code[5] = (byte) 0xAA;
+        putInt(code, 8, 20);
+        putInt(code, 12, 0);
+        putInt(code, 16, 0);
+        putInt(code, 20, 21);
+        code[25] = (byte) 0xB1;
+        code[26] = (byte) 0xB1;
+
+        ControlFlowGraph cfg = new CfgBuilder().build(code);
+        // 4 - после перехода, 25 - таргет ifeq и кейса, 26 - default
+        List<Integer> starts = new ArrayList<>();
+        for (BasicBlock bb : cfg.blocks()) {
+            starts.add(bb.startOffset());
+        }
+        assertEquals(List.of(0, 4, 25, 26), starts);
+    }
+
+    private static void putInt(byte[] code, int offset, int value) {
+        code[offset] = (byte) (value >>> 24);
+        code[offset + 1] = (byte) (value >>> 16);
+        code[offset + 2] = (byte) (value >>> 8);
+        code[offset + 3] = (byte) value;
+    }
+
+    @Test
+    void reducibilityIsDecidedByRetreatingEdges() {
+        //  0: ifeq 7            -->  B2 (второй вход в цикл)
+        //  3: nop                    B1
+        //  4: goto 8            -->  B3
+        //  7: nop                    B2
+        //  8: ifne 3            -->  B1 B3
+        // 11: return                 B4
+        List<Insn> twoEntries = List.of(
+                new JumpInsn(0, Opcode.IFEQ, 7, 7),
+                new SimpleInsn(3, Opcode.NOP),
+                new JumpInsn(4, Opcode.GOTO, 8, 4),
+                new SimpleInsn(7, Opcode.NOP),
+                new JumpInsn(8, Opcode.IFNE, 3, -5),
+                new SimpleInsn(11, Opcode.RETURN));
+        ControlFlowGraph irreducible = new CfgBuilder().buildFromInsns(twoEntries);
+        assertFalse(irreducible.isReducible());
+        assertEquals(irreducible.loops().isReducible(), irreducible.isReducible());
+
+        // тот же цикл с единственным входом через 3
+        List<Insn> oneEntry = List.of(
+                new JumpInsn(0, Opcode.IFEQ, 11, 11),
+                new SimpleInsn(3, Opcode.NOP),
+                new JumpInsn(4, Opcode.GOTO, 8, 4),
+                new SimpleInsn(7, Opcode.NOP),
+                new JumpInsn(8, Opcode.IFNE, 3, -5),
+                new SimpleInsn(11, Opcode.RETURN));
+        ControlFlowGraph reducible = new CfgBuilder().buildFromInsns(oneEntry);
+        assertTrue(reducible.isReducible());
+        assertEquals(reducible.loops().isReducible(), reducible.isReducible());
+    }
+
+    @Test
+    void csrEdgesAndInsnRangesMatchBlocks() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo loop = JDUtils.findMethod(cf, cf.constantPool(), "loop", "(I)V");
+        ControlFlowGraph cfg = new CfgBuilder().build(loop.findCodeAttribute().code());
+
+        CsrGraph g = cfg.edges();
+        assertSame(g, cfg.edges());
+        assertEquals(cfg.blocks().size(), g.nodeCount());
+        int edges = 0;
+        for (BasicBlock bb : cfg.blocks()) {
+            int id = bb.id();
+            assertEquals(bb.successors().size(), g.successorCount(id));
+            for (int k = 0; k < g.successorCount(id); k++) {
+                assertEquals(bb.successors().get(k).id(), g.successor(id, k));
+                assertTrue(g.hasEdge(id, g.successor(id, k)));
+            }
+            assertEquals(cfg.predecessorCount(bb), g.predecessorCount(id));
+            for (int k = 0; k < g.predecessorCount(id); k++) {
+                assertEquals(cfg.predecessors(bb).get(k).id(), g.predecessor(id, k));
+            }
+            edges += g.successorCount(id);
+
+            // инструкции блока - отрезок общего списка, аксессоры не создают новых списков
+            assertEquals(bb.instructions().size(), cfg.endInsnIndex(bb) - cfg.firstInsnIndex(bb));
+            assertSame(bb, cfg.blockOfInsn(cfg.firstInsnIndex(bb)));
+            assertSame(bb.instructions(), bb.instructions());
+            assertSame(bb.successors(), bb.successors());
+        }
+        assertEquals(edges, g.edgeCount());
+        assertEquals(g.predecessorCount(0), g.reversed().successorCount(0));
+        assertSame(cfg.blocks(), cfg.blocks());
+    }
+
     private boolean pathLeadsToReturn(ControlFlowGraph cfg, BasicBlock start) {
         Set<BasicBlock> visited = new HashSet<>();
         Deque<BasicBlock> stack = new ArrayDeque<>();
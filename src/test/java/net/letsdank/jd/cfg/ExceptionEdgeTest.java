@@ -0,0 +1,83 @@
+package net.letsdank.jd.cfg;
+
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.cfg.exception.ExceptionRegion;
+import net.letsdank.jd.cfg.exception.ExceptionStructurer;
+import net.letsdank.jd.fixtures.FixtureSimpleTryCatch;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExceptionEdgeTest {
+
+    // 0: aload_1; 1: invokeinterface readInt; 6: ireturn
+    // 7: astore_2; 8: iconst_m1; 9: ireturn
+    // exception table: 0..6 -> 7 EOFException
+    private static CodeAttribute readIntOrMinusOne() throws IOException {
+        InputStream in = FixtureSimpleTryCatch.class.getResourceAsStream("FixtureSimpleTryCatch.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "readIntOrMinusOne", "(Ljava/io/DataInput;)I");
+        return m.findCodeAttribute();
+    }
+
+    @Test
+    void protectedRangeAndHandlerGetOwnBlocks() throws IOException {
+        CodeAttribute codeAttr = readIntOrMinusOne();
+        ControlFlowGraph cfg = new CfgBuilder().build(codeAttr);
+
+        assertEquals(List.of(0, 6, 7), cfg.blocks().stream().map(BasicBlock::startOffset).toList());
+        BasicBlock body = cfg.blockByStartOffset(0);
+        BasicBlock ret = cfg.blockByStartOffset(6);
+        BasicBlock handler = cfg.blockByStartOffset(7);
+
+        assertEquals(1, body.exceptionSuccessors().size());
+        ExceptionEdge edge = body.exceptionSuccessors().getFirst();
+        assertSame(handler, edge.handler());
+        assertFalse(edge.isCatchAll());
+        assertTrue(ret.exceptionSuccessors().isEmpty());
+
+        // по обычным ребрам обработчик недостижим, по всем - нет
+        assertTrue(cfg.predecessors(handler).isEmpty());
+        assertEquals(List.of(body), cfg.allPredecessors(handler));
+        assertEquals(List.of(ret, handler), cfg.allSuccessors(body));
+        assertEquals(List.of(handler), cfg.handlerBlocks());
+        assertTrue(cfg.dominators().contains(handler));
+        assertSame(body, cfg.dominators().immediateDominator(handler));
+    }
+
+    @Test
+    void withoutRangeSplitOnlyHandlerStartsBlock() throws IOException {
+        CodeAttribute codeAttr = readIntOrMinusOne();
+        byte[] code = codeAttr.code();
+        List<Insn> insns = new BytecodeDecoder().decode(code);
+        ControlFlowGraph cfg = new CfgBuilder().build(code, insns,
+                BytecodeDecoder.pcToIndex(insns, code.length), codeAttr.exceptionTable(), false);
+
+        assertEquals(List.of(0, 7), cfg.blocks().stream().map(BasicBlock::startOffset).toList());
+        assertSame(cfg.blockByStartOffset(7), cfg.entryBlock().exceptionSuccessors().getFirst().handler());
+    }
+
+    @Test
+    void structurerTakesRegionsFromGraph() throws IOException {
+        CodeAttribute codeAttr = readIntOrMinusOne();
+        List<ExceptionRegion> regions = new ExceptionStructurer(codeAttr).buildRegions();
+
+        assertEquals(1, regions.size());
+        ExceptionRegion region = regions.getFirst();
+        assertEquals(0, region.startPc());
+        assertEquals(6, region.endPc());
+        assertEquals(7, region.handlers().getFirst().handleBlock().startOffset());
+        assertEquals(List.of(0), region.protectedBlocks().stream().map(BasicBlock::startOffset).toList());
+    }
+}
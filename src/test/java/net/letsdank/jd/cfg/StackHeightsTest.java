@@ -0,0 +1,69 @@
+package net.letsdank.jd.cfg;
+
+import net.letsdank.jd.bytecode.BytecodeDecoder;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StackHeightsTest {
+
+    private static ClassFile readFixture() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        return new ClassFileReader().read(in);
+    }
+
+    private static MethodInfo method(ClassFile cf, String name) {
+        for (MethodInfo m : cf.methods()) {
+            if (name.equals(cf.constantPool().getUtf8(m.nameIndex()))) return m;
+        }
+        throw new AssertionError("no method " + name);
+    }
+
+    private static StackHeights heightsOf(ClassFile cf, String name) {
+        CodeAttribute codeAttr = method(cf, name).findCodeAttribute();
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(new BytecodeDecoder().decode(codeAttr.code()));
+        return StackHeights.compute(cfg, codeAttr.code(), cf.constantPool(), codeAttr.exceptionTable());
+    }
+
+    @Test
+    void heightsFollowArithmetic() throws IOException {
+        // add: iload_1, iload_2, iadd, ireturn
+        StackHeights h = heightsOf(readFixture(), "add");
+        assertEquals(0, h.heightBefore(0));
+        assertEquals(1, h.heightBefore(1));
+        assertEquals(2, h.heightBefore(2));
+        assertEquals(1, h.heightBefore(3));
+        assertTrue(h.underflows().isEmpty());
+    }
+
+    @Test
+    void invokeUsesDescriptorForArgumentsAndResult() throws IOException {
+        // printHello: getstatic System.out, ldc "Hello", invokevirtual println(String), return
+        StackHeights h = heightsOf(readFixture(), "printHello");
+        assertEquals(2, h.heightBefore(2));
+        assertEquals(0, h.heightBefore(3));
+    }
+
+    @Test
+    void sliceStartingMidExpressionNeedsIncomingStack() throws IOException {
+        ClassFile cf = readFixture();
+        StackHeights h = heightsOf(cf, "add");
+        List<Insn> insns = new BytecodeDecoder().decode(method(cf, "add").findCodeAttribute().code());
+
+        assertFalse(h.needsIncomingStack(insns));
+        // iadd снимает операнды, положенные до куска
+        assertTrue(h.needsIncomingStack(insns.subList(2, 4)));
+        assertFalse(h.needsIncomingStack(insns.subList(1, 2)));
+    }
+}
@@ -0,0 +1,123 @@
+package net.letsdank.jd.cfg.dataflow;
+
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataflowTest {
+
+    // 0: iconst_0; 1: istore_2; 2: iload_2; 3: iload_1; 4: if_icmpge 13
+    // 7: iinc 2, 1; 10: goto 2; 13: return
+    private static ControlFlowGraph loop() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "loop", "(I)V");
+        return new CfgBuilder().build(m.findCodeAttribute().code());
+    }
+
+    @Test
+    void livenessAroundLoop() throws IOException {
+        ControlFlowGraph cfg = loop();
+        Liveness live = Liveness.compute(cfg);
+        BasicBlock entry = cfg.entryBlock();
+        BasicBlock header = cfg.blockByStartOffset(2);
+        BasicBlock body = cfg.blockByStartOffset(7);
+        BasicBlock exit = cfg.blockByStartOffset(13);
+
+        assertEquals(3, live.slotCount());
+        // n нужен во всем цикле, i пишется до первого чтения
+        assertTrue(live.isLiveIn(entry, 1));
+        assertFalse(live.isLiveIn(entry, 2));
+        assertTrue(live.isLiveIn(header, 1));
+        assertTrue(live.isLiveIn(header, 2));
+        assertTrue(live.isLiveOut(body, 2));
+        assertTrue(live.liveIn(exit).isEmpty());
+        assertTrue(live.isStoreLive(cfg.insnIndexAt(1)));
+        assertTrue(live.isStoreLive(cfg.insnIndexAt(7)));
+        assertFalse(live.isStoreLive(cfg.insnIndexAt(0)));
+    }
+
+    @Test
+    void reachingDefinitionsAroundLoop() throws IOException {
+        ControlFlowGraph cfg = loop();
+        ReachingDefinitions rd = ReachingDefinitions.compute(cfg);
+
+        // чтение i в условии видит и начальную запись, и iinc из тела
+        BitSet defs = rd.reaching(cfg.insnIndexAt(2), 2);
+        assertEquals(2, defs.cardinality());
+        int first = defs.nextSetBit(0);
+        int second = defs.nextSetBit(first + 1);
+        assertEquals(cfg.insnIndexAt(1), rd.definitionInsn(first));
+        assertEquals(cfg.insnIndexAt(7), rd.definitionInsn(second));
+        assertEquals(-1, rd.uniqueReaching(cfg.insnIndexAt(2)));
+
+        // n - параметр, его никто не перезаписывает
+        int n = rd.uniqueReaching(cfg.insnIndexAt(3));
+        assertTrue(rd.isEntryDefinition(n));
+        assertEquals(1, rd.definitionSlot(n));
+
+        // iinc читает только свою же переменную из условия
+        assertEquals(defs, rd.reaching(cfg.insnIndexAt(7), 2));
+    }
+
+    @Test
+    void handlerSeesEveryStoreOfProtectedBlock() {
+        // 0: iconst_1; 1: istore_1; 2: iconst_2; 3: istore_1; 4: return
+        // 5: astore_2; 6: iload_1; 7: return
+        // exception table: 0..5 -> 5 (catch all)
+        byte[] code = {0x04, 0x3C, 0x05, 0x3C, (byte) 0xB1, 0x4D, 0x1B, (byte) 0xB1};
+        CodeAttribute codeAttr = new CodeAttribute("Code", 1, 3, code,
+                List.of(new CodeAttribute.ExceptionTableEntry(0, 5, 5, 0)), null, null);
+        ControlFlowGraph cfg = new CfgBuilder().build(codeAttr);
+        ReachingDefinitions rd = ReachingDefinitions.compute(cfg);
+        Liveness live = Liveness.compute(cfg);
+
+        // исключение могло вылететь до любой из записей
+        BitSet defs = rd.reaching(cfg.insnIndexAt(6), 1);
+        assertEquals(3, defs.cardinality());
+        assertTrue(rd.isEntryDefinition(defs.nextSetBit(0)));
+
+        // по обычному пути до return доходит только последняя
+        BitSet normal = rd.reaching(cfg.insnIndexAt(4), 1);
+        assertEquals(1, normal.cardinality());
+        assertEquals(cfg.insnIndexAt(3), rd.definitionInsn(normal.nextSetBit(0)));
+
+        // slot 1 читает обработчик, значит обе записи живы; исключение в обработчик не пишут
+        assertTrue(live.isStoreLive(cfg.insnIndexAt(1)));
+        assertTrue(live.isStoreLive(cfg.insnIndexAt(3)));
+        assertFalse(live.isStoreLive(cfg.insnIndexAt(5)));
+        assertTrue(live.isLiveIn(cfg.entryBlock(), 1));
+    }
+
+    @Test
+    void intersectionMeetKeepsOnlyFactsFromAllPaths() throws IOException {
+        // "слот точно записан": must-задача, бит - номер слота
+        ControlFlowGraph cfg = loop();
+        GenKillProblem problem = new GenKillProblem(GenKillProblem.Direction.FORWARD,
+                GenKillProblem.Meet.INTERSECTION, cfg.blocks().size(), 3);
+        problem.gen().set(cfg.entryBlock().id(), 2);
+        problem.boundary().set(0, 1);
+        DataflowSolution solution = DataflowSolution.solve(cfg, problem);
+
+        BasicBlock header = cfg.blockByStartOffset(2);
+        assertTrue(solution.in(header, 1));
+        assertTrue(solution.in(header, 2));
+        assertFalse(solution.in(header, 0));
+        assertTrue(solution.out(cfg.blockByStartOffset(13), 2));
+    }
+}
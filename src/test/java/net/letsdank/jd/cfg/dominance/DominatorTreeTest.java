@@ -0,0 +1,101 @@
+package net.letsdank.jd.cfg.dominance;
+
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.JumpInsn;
+import net.letsdank.jd.bytecode.insn.SimpleInsn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DominatorTreeTest {
+
+    /**
+     * Ромб внутри цикла:
+     * <pre>
+     *  0: iload_0            B0
+     *  1: ifeq 8         --> B2
+     *  4: nop                B1
+     *  7: nop
+     *  8: iload_0            B2 (join, заголовок цикла)
+     *  9: ifne 0         --> B0
+     * 12: return             B3
+     * </pre>
+     * B1 без перехода, так что проваливается в B2.
+     */
+    private static ControlFlowGraph loopWithDiamond() {
+        List<Insn> insns = List.of(
+                new SimpleInsn(0, Opcode.ILOAD_0),
+                new JumpInsn(1, Opcode.IFEQ, 8, 7),
+                new SimpleInsn(4, Opcode.NOP),
+                new SimpleInsn(7, Opcode.NOP),
+                new SimpleInsn(8, Opcode.ILOAD_0),
+                new JumpInsn(9, Opcode.IFNE, 0, -9),
+                new SimpleInsn(12, Opcode.RETURN));
+        return new CfgBuilder().buildFromInsns(insns);
+    }
+
+    @Test
+    void dominatorsOfDiamondInLoop() {
+        ControlFlowGraph cfg = loopWithDiamond();
+        List<BasicBlock> b = cfg.blocks();
+        assertEquals(4, b.size());
+        DominatorTree dom = cfg.dominators();
+        assertSame(dom, cfg.dominators());
+
+        assertNull(dom.immediateDominator(b.get(0)));
+        assertSame(b.get(0), dom.immediateDominator(b.get(1)));
+        assertSame(b.get(0), dom.immediateDominator(b.get(2)));
+        assertSame(b.get(2), dom.immediateDominator(b.get(3)));
+        assertEquals(List.of(b.get(1), b.get(2)), dom.children(b.get(0)));
+
+        assertTrue(dom.dominates(b.get(0), b.get(3)));
+        assertTrue(dom.dominates(b.get(2), b.get(2)));
+        assertFalse(dom.strictlyDominates(b.get(2), b.get(2)));
+        assertFalse(dom.dominates(b.get(1), b.get(2)));
+
+        // B1 перестает доминировать в B2; B2 через обратное ребро - в B0
+        assertEquals(List.of(b.get(2)), dom.frontier(b.get(1)));
+        assertEquals(List.of(b.get(0)), dom.frontier(b.get(2)));
+        assertEquals(List.of(b.get(0)), dom.frontier(b.get(0)));
+    }
+
+    @Test
+    void postDominatorsUseVirtualExit() {
+        ControlFlowGraph cfg = loopWithDiamond();
+        List<BasicBlock> b = cfg.blocks();
+        DominatorTree pdom = cfg.postDominators();
+        assertTrue(pdom.isPostDominatorTree());
+
+        assertSame(b.get(2), pdom.immediateDominator(b.get(0)));
+        assertSame(b.get(2), pdom.immediateDominator(b.get(1)));
+        assertSame(b.get(3), pdom.immediateDominator(b.get(2)));
+        assertNull(pdom.immediateDominator(b.get(3)));
+        assertTrue(pdom.dominates(b.get(3), b.get(0)));
+
+        // B1 выполняется в зависимости от ветвления в B0
+        assertEquals(List.of(b.get(0)), pdom.frontier(b.get(1)));
+    }
+
+    @Test
+    void unreachableBlocksAreOutsideTree() {
+        // 0: goto 4; 3: nop (недостижим); 4: return
+        List<Insn> insns = List.of(
+                new JumpInsn(0, Opcode.GOTO, 4, 4),
+                new SimpleInsn(3, Opcode.NOP),
+                new SimpleInsn(4, Opcode.RETURN));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+        BasicBlock dead = cfg.blockByStartOffset(3);
+        DominatorTree dom = cfg.dominators();
+
+        assertFalse(dom.contains(dead));
+        assertNull(dom.immediateDominator(dead));
+        assertFalse(dom.dominates(cfg.entryBlock(), dead));
+        assertSame(cfg.entryBlock(), dom.immediateDominator(cfg.blockByStartOffset(4)));
+    }
+}
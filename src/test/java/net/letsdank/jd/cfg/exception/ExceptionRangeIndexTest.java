@@ -0,0 +1,64 @@
+package net.letsdank.jd.cfg.exception;
+
+import net.letsdank.jd.model.attribute.CodeAttribute.ExceptionTableEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExceptionRangeIndexTest {
+
+    @Test
+    void nestedTryBlocksFormTree() {
+        // try { try { 10..20 } catch(#5) 30 } catch(#6) 40, + finally(0) на том же внешнем диапазоне
+        List<ExceptionTableEntry> table = List.of(
+                new ExceptionTableEntry(10, 20, 30, 5),
+                new ExceptionTableEntry(0, 35, 40, 6),
+                new ExceptionTableEntry(0, 35, 50, 0),
+                new ExceptionTableEntry(60, 70, 80, 0));
+        ExceptionRangeIndex index = ExceptionRangeIndex.build(table);
+
+        assertEquals(3, index.ranges().size());
+        assertEquals(2, index.roots().size());
+        ExceptionRangeIndex.Range outer = index.roots().getFirst();
+        assertEquals(0, outer.startPc());
+        assertEquals(2, outer.entries().size());
+        ExceptionRangeIndex.Range inner = outer.children().getFirst();
+        assertEquals(10, inner.startPc());
+        assertSame(outer, inner.parent());
+        assertEquals(List.of(inner), index.enclosedBy(outer));
+
+        assertEquals(List.of(outer, inner), index.rangesAt(15));
+        assertSame(inner, index.innermostAt(15));
+        assertSame(outer, index.innermostAt(20));
+        assertNull(index.innermostAt(35));
+
+        // порядок таблицы: внутренний catch записан первым
+        assertEquals(List.of(table.get(0), table.get(1), table.get(2)), index.handlersAt(12));
+        assertEquals(List.of(table.get(3)), index.handlersAt(69));
+        assertTrue(index.handlersAt(70).isEmpty());
+    }
+
+    @Test
+    void stabbingAgreesWithLinearScan() {
+        Random rnd = new Random(42);
+        List<ExceptionTableEntry> table = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int start = rnd.nextInt(1000);
+            int end = start + 1 + rnd.nextInt(200);
+            table.add(new ExceptionTableEntry(start, end, 1200 + i, i % 7));
+        }
+        ExceptionRangeIndex index = ExceptionRangeIndex.build(table);
+
+        for (int pc = 0; pc < 1250; pc += 3) {
+            List<ExceptionTableEntry> expected = new ArrayList<>();
+            for (ExceptionTableEntry e : table) {
+                if (e.startPc() <= pc && pc < e.endPc()) expected.add(e);
+            }
+            assertEquals(expected, index.handlersAt(pc), "pc=" + pc);
+        }
+    }
+}
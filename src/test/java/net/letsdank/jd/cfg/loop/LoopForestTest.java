@@ -0,0 +1,132 @@
+package net.letsdank.jd.cfg.loop;
+
+import net.letsdank.jd.bytecode.Opcode;
+import net.letsdank.jd.bytecode.insn.Insn;
+import net.letsdank.jd.bytecode.insn.JumpInsn;
+import net.letsdank.jd.bytecode.insn.SimpleInsn;
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopForestTest {
+
+    private static JumpInsn jump(int offset, Opcode op, int target) {
+        return new JumpInsn(offset, op, target, target - offset);
+    }
+
+    @Test
+    void fixtureLoopHasOneReducibleLoop() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo loop = JDUtils.findMethod(cf, cf.constantPool(), "loop", "(I)V");
+        ControlFlowGraph cfg = new CfgBuilder().build(loop.findCodeAttribute().code());
+
+        LoopForest forest = cfg.loops();
+        assertSame(forest, cfg.loops());
+        assertEquals(1, forest.loops().size());
+        Loop l = forest.loops().getFirst();
+        assertTrue(l.isReducible());
+        assertEquals(1, l.depth());
+        assertEquals(List.of(l.header()), l.entries());
+        assertEquals(1, l.latches().size());
+        assertEquals(1, l.exits().size());
+        assertFalse(forest.contains(l, cfg.entryBlock()));
+        assertEquals(0, forest.depth(cfg.entryBlock()));
+    }
+
+    @Test
+    void nestedLoopsFormTree() {
+        //  0: nop                    B0
+        //  1: nop                    B1 внешний заголовок
+        //  2: nop                    B2 внутренний цикл - петля на себя
+        //  3: ifne 2            -->  B2
+        //  6: ifne 1            -->  B1 B3 (внешний latch)
+        //  9: return                 B4
+        List<Insn> insns = List.of(
+                new SimpleInsn(0, Opcode.NOP),
+                new SimpleInsn(1, Opcode.NOP),
+                new SimpleInsn(2, Opcode.NOP),
+                jump(3, Opcode.IFNE, 2),
+                jump(6, Opcode.IFNE, 1),
+                new SimpleInsn(9, Opcode.RETURN));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+        LoopForest forest = cfg.loops();
+
+        assertEquals(2, forest.loops().size());
+        Loop outer = forest.loopWithHeader(cfg.blockByStartOffset(1));
+        Loop inner = forest.loopWithHeader(cfg.blockByStartOffset(2));
+        assertNotNull(outer);
+        assertNotNull(inner);
+        assertEquals(List.of(outer), forest.topLevel());
+        assertSame(outer, inner.parent());
+        assertEquals(List.of(inner), outer.children());
+        assertEquals(2, inner.depth());
+
+        BasicBlock innerLatch = cfg.blockAt(3);
+        BasicBlock outerLatch = cfg.blockAt(6);
+        assertSame(inner, forest.loopOf(innerLatch));
+        assertSame(outer, forest.loopOf(outerLatch));
+        assertTrue(forest.contains(outer, innerLatch));
+        assertFalse(forest.contains(inner, outerLatch));
+        assertTrue(outer.encloses(inner));
+        assertEquals(List.of(outerLatch), inner.exits());
+        assertEquals(List.of(cfg.blockAt(9)), outer.exits());
+        assertTrue(forest.isReducible());
+    }
+
+    @Test
+    void twoEntryCycleIsIrreducible() {
+        //  0: ifeq 7            -->  B2 (второй вход)
+        //  3: nop                    B1
+        //  4: goto 8            -->  B3
+        //  7: nop                    B2
+        //  8: ifne 3            -->  B1 B3
+        // 11: return                 B4
+        List<Insn> insns = List.of(
+                jump(0, Opcode.IFEQ, 7),
+                new SimpleInsn(3, Opcode.NOP),
+                jump(4, Opcode.GOTO, 8),
+                new SimpleInsn(7, Opcode.NOP),
+                jump(8, Opcode.IFNE, 3),
+                new SimpleInsn(11, Opcode.RETURN));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+        LoopForest forest = cfg.loops();
+
+        assertEquals(1, forest.loops().size());
+        Loop l = forest.loops().getFirst();
+        assertFalse(l.isReducible());
+        assertFalse(forest.isReducible());
+        assertEquals(2, l.entries().size());
+        assertTrue(l.contains(cfg.blockAt(3)));
+        assertTrue(l.contains(cfg.blockAt(8)));
+        assertFalse(l.contains(cfg.entryBlock()));
+    }
+
+    @Test
+    void backwardJumpWithoutCycleIsNotLoop() {
+        //  0: goto 5            -->  B2
+        //  3: nop                    B1
+        //  4: return
+        //  5: goto 3            -->  B1, назад по адресу, но без цикла
+        List<Insn> insns = List.of(
+                jump(0, Opcode.GOTO, 5),
+                new SimpleInsn(3, Opcode.NOP),
+                new SimpleInsn(4, Opcode.RETURN),
+                jump(5, Opcode.GOTO, 3));
+        ControlFlowGraph cfg = new CfgBuilder().buildFromInsns(insns);
+        assertTrue(cfg.loops().isEmpty());
+    }
+}
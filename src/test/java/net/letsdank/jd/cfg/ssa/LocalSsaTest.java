@@ -0,0 +1,85 @@
+package net.letsdank.jd.cfg.ssa;
+
+import net.letsdank.jd.cfg.BasicBlock;
+import net.letsdank.jd.cfg.CfgBuilder;
+import net.letsdank.jd.cfg.ControlFlowGraph;
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalSsaTest {
+
+    @Test
+    void loopCounterGetsPhiAtHeader() throws IOException {
+        // 0: iconst_0; 1: istore_2; 2: iload_2; 3: iload_1; 4: if_icmpge 13
+        // 7: iinc 2, 1; 10: goto 2; 13: return
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "loop", "(I)V");
+        ControlFlowGraph cfg = new CfgBuilder().build(m.findCodeAttribute().code());
+        LocalSsa ssa = LocalSsa.build(cfg, 2);
+
+        BasicBlock header = cfg.blockByStartOffset(2);
+        List<Phi> phis = ssa.phis(header);
+        assertEquals(1, phis.size());
+        Phi phi = phis.getFirst();
+        assertEquals(2, phi.slot());
+
+        int init = ssa.valueWritten(cfg.insnIndexAt(1));
+        int inc = ssa.valueWritten(cfg.insnIndexAt(7));
+        assertArrayEquals(new int[]{init, inc}, phi.operands());
+        assertEquals(phi.value(), ssa.valueRead(cfg.insnIndexAt(2)));
+        assertEquals(phi.value(), ssa.valueRead(cfg.insnIndexAt(7)));
+
+        // n - параметр без phi: его никто не перезаписывает
+        int n = ssa.valueRead(cfg.insnIndexAt(3));
+        assertEquals(LocalSsa.Kind.PARAMETER, ssa.kind(n));
+        assertTrue(ssa.phis(cfg.entryBlock()).isEmpty());
+
+        // все версии счетчика - одна переменная
+        int counter = ssa.variableOf(phi.value());
+        assertEquals(counter, ssa.variableOf(init));
+        assertEquals(counter, ssa.variableOf(inc));
+        assertFalse(ssa.isDeadStore(cfg.insnIndexAt(7)));
+    }
+
+    @Test
+    void reusedSlotSplitsIntoVariablesAndFindsCopiesAndDeadStores() {
+        // 0: aconst_null; 1: astore_1; 2: aload_1; 3: pop
+        // 4: iconst_0; 5: istore_1; 6: iload_1; 7: istore_3; 8: iload_3; 9: pop
+        // 10: iconst_5; 11: istore_2; 12: return
+        byte[] code = {0x01, 0x4C, 0x2B, 0x57, 0x03, 0x3C, 0x1B, 0x3E, 0x1D, 0x57, 0x08, 0x3D, (byte) 0xB1};
+        ControlFlowGraph cfg = new CfgBuilder().build(code);
+        LocalSsa ssa = LocalSsa.build(cfg, 0);
+
+        int ref = ssa.variableOfInsn(cfg.insnIndexAt(1));
+        int num = ssa.variableOfInsn(cfg.insnIndexAt(5));
+        assertNotEquals(ref, num);
+        assertEquals(1, ssa.variableSlot(ref));
+        assertEquals(1, ssa.variableSlot(num));
+        assertEquals(0, ssa.variableIndexInSlot(ref));
+        assertEquals(1, ssa.variableIndexInSlot(num));
+        assertEquals(ref, ssa.variableOfInsn(cfg.insnIndexAt(2)));
+        assertEquals(num, ssa.variableOfInsn(cfg.insnIndexAt(6)));
+
+        // istore_3 - копия slot 1, цепочка копий приводит к istore_1
+        int copy = ssa.valueWritten(cfg.insnIndexAt(7));
+        int original = ssa.valueWritten(cfg.insnIndexAt(5));
+        assertEquals(original, ssa.copySource(copy));
+        assertEquals(original, ssa.resolveCopies(ssa.valueRead(cfg.insnIndexAt(8))));
+        assertEquals(-1, ssa.copySource(original));
+
+        assertTrue(ssa.isDeadStore(cfg.insnIndexAt(11)));
+        assertFalse(ssa.isDeadStore(cfg.insnIndexAt(1)));
+    }
+}
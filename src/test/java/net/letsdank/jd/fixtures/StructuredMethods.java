@@ -0,0 +1,83 @@
+package net.letsdank.jd.fixtures;
+
+public class StructuredMethods {
+
+    public int firstNegative(int[] a) {
+        int i = 0;
+        while (i < a.length) {
+            if (a[i] < 0) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    public int sumParsed(String[] a) {
+        int s = 0;
+        for (int i = 0; i < a.length; i++) {
+            try {
+                s += Integer.parseInt(a[i]);
+            } catch (NumberFormatException e) {
+                s--;
+            }
+        }
+        return s;
+    }
+
+    public int parseOrZero(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public int classify(int x) {
+        switch (x) {
+            case 1:
+                return 10;
+            case 2:
+                return 20;
+            default:
+                return 0;
+        }
+    }
+
+    public int max(int a, int b) {
+        return Math.abs(a > b ? a : b);
+    }
+
+    public String pick(boolean flag, String a, String b) {
+        return String.valueOf(flag ? a : b).trim();
+    }
+
+    public boolean both(int a, int b) {
+        boolean r = a > 0 && b > 0;
+        return !r;
+    }
+
+    public int hashOfMade() {
+        Object o;
+        if ((o = make()) != null) {
+            return o.hashCode();
+        }
+        return 0;
+    }
+
+    public int countOrMinus() {
+        int n;
+        if ((n = count()) > 0) {
+            return n;
+        }
+        return -1;
+    }
+
+    private Object make() {
+        return new Object();
+    }
+
+    private int count() {
+        return 3;
+    }
+}
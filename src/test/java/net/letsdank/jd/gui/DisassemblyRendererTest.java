@@ -0,0 +1,90 @@
+package net.letsdank.jd.gui;
+
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.fixtures.StructuredMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import net.letsdank.jd.utils.JDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisassemblyRendererTest {
+
+    private static ClassFile load(Class<?> fixture) throws IOException {
+        InputStream in = fixture.getResourceAsStream(fixture.getSimpleName() + ".class");
+        assertNotNull(in);
+        return new ClassFileReader().read(in);
+    }
+
+    private static List<String> render(ClassFile cf, String name, String desc, byte[] code) throws IOException {
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), name, desc);
+        StringBuilder out = new StringBuilder();
+        new DisassemblyRenderer().render(cf, m, code == null ? m.findCodeAttribute().code() : code, out);
+        return out.toString().lines().toList();
+    }
+
+    @Test
+    void headerAndJumpLines() throws IOException {
+        // 0: iload_1; 1: iflt 6; 4: iload_1; 5: ireturn; 6: iload_1; 7: ineg; 8: ireturn
+        List<String> lines = render(load(SimpleMethods.class), "abs", "(I)I", null);
+
+        assertEquals("Class: net.letsdank.jd.fixtures.SimpleMethods", lines.get(0));
+        assertEquals("Method: abs(I)I", lines.get(1));
+        assertEquals("Bytecode:", lines.get(3));
+        assertTrue(lines.contains("     0: iload_1"), lines.toString());
+        // смещение перехода относительно самой инструкции и абсолютная цель
+        assertTrue(lines.contains("     1: iflt 5  ; target=6"), lines.toString());
+        assertTrue(lines.contains("     8: ireturn"), lines.toString());
+    }
+
+    @Test
+    void switchCasesGetOwnLines() throws IOException {
+        // 1: lookupswitch {1: 28, 2: 31, default: 34}
+        List<String> lines = render(load(StructuredMethods.class), "classify", "(I)I", null);
+
+        int sw = lines.indexOf("     1: lookupswitch  ; default=34");
+        assertTrue(sw >= 0, lines.toString());
+        assertEquals("          1: 28", lines.get(sw + 1));
+        assertEquals("          2: 31", lines.get(sw + 2));
+        assertEquals("    28: bipush 10", lines.get(sw + 3));
+    }
+
+    @Test
+    void constantPoolOperandsAreResolved() throws IOException {
+        List<String> lines = render(load(SimpleMethods.class), "printHello", "()V", null);
+
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("     0: getstatic #")
+                && l.endsWith("    ; java/lang/System.out:Ljava/io/PrintStream;")), lines.toString());
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("     3: ldc #")
+                && l.endsWith("    ; \"Hello\"")), lines.toString());
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("     5: invokevirtual #")
+                && l.endsWith("    ; java/io/PrintStream.println(Ljava/lang/String;)V")), lines.toString());
+    }
+
+    @Test
+    void unknownOpcodeAndMissingCode() throws IOException {
+        ClassFile cf = load(SimpleMethods.class);
+        // 0: nop; 1: 0xCB - такого опкода нет
+        List<String> lines = render(cf, "empty", "()V", new byte[]{0x00, (byte) 0xCB, 0x00, 0x00});
+        assertTrue(lines.contains("     0: nop"), lines.toString());
+        assertTrue(lines.contains("     1: <unknown opcode 0xCB, 3 bytes remaining>"), lines.toString());
+
+        MethodInfo m = JDUtils.findMethod(cf, cf.constantPool(), "empty", "()V");
+        StringBuilder out = new StringBuilder();
+        new DisassemblyRenderer().render(cf, m, null, out);
+        assertTrue(out.toString().endsWith("<no code>\n"), out.toString());
+    }
+
+    @Test
+    void cpEntryOutOfRangeFallsBackToIndex() throws IOException {
+        ClassFile cf = load(SimpleMethods.class);
+        assertEquals("#0", DisassemblyRenderer.formatCpEntry(cf.constantPool(), 0));
+        assertEquals("#99999", DisassemblyRenderer.formatCpEntry(cf.constantPool(), 99999));
+    }
+}
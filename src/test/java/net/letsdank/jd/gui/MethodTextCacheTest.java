@@ -0,0 +1,69 @@
+package net.letsdank.jd.gui;
+
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.MethodInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodTextCacheTest {
+
+    private static ClassFile load() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        return new ClassFileReader().read(in);
+    }
+
+    @Test
+    void keyedByIdentityOfClassAndMethod() throws IOException {
+        ClassFile cf = load();
+        MethodInfo m = cf.methods()[0];
+        MethodTextCache cache = new MethodTextCache(1000);
+        cache.put(cf, m, "text");
+        assertEquals("text", cache.get(cf, m));
+
+        // равная по содержимому копия - это уже другой открытый файл
+        MethodInfo sameFields = new MethodInfo(m.accessFlags(), m.nameIndex(), m.descriptorIndex(), m.attributes());
+        assertEquals(m, sameFields);
+        assertNull(cache.get(cf, sameFields));
+        assertNull(cache.get(load(), m));
+
+        cache.clear();
+        assertNull(cache.get(cf, m));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByCharBudget() throws IOException {
+        ClassFile cf = load();
+        MethodInfo a = cf.methods()[0];
+        MethodInfo b = cf.methods()[1];
+        MethodInfo c = cf.methods()[2];
+        MethodTextCache cache = new MethodTextCache(10);
+
+        cache.put(cf, a, "aaaa");
+        cache.put(cf, b, "bbbb");
+        // обращение делает a самым свежим, вытеснять будем b
+        assertEquals("aaaa", cache.get(cf, a));
+        cache.put(cf, c, "cccc");
+        assertNull(cache.get(cf, b));
+        assertEquals("aaaa", cache.get(cf, a));
+        assertEquals("cccc", cache.get(cf, c));
+
+        // замена учитывает длину старого текста
+        cache.put(cf, c, "cc");
+        cache.put(cf, b, "bbbb");
+        assertEquals("aaaa", cache.get(cf, a));
+        assertEquals("cc", cache.get(cf, c));
+        assertEquals("bbbb", cache.get(cf, b));
+
+        // текст больше всего бюджета не кладется и ничего не вытесняет
+        cache.put(cf, b, "x".repeat(11));
+        assertEquals("bbbb", cache.get(cf, b));
+        assertEquals("aaaa", cache.get(cf, a));
+    }
+}
@@ -0,0 +1,63 @@
+package net.letsdank.jd.io;
+
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.model.ClassFile;
+import net.letsdank.jd.model.attribute.CodeAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapBytecodeStoreTest {
+    private static ClassFile read(BytecodeStore store) throws IOException {
+        try (InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class")) {
+            assertNotNull(in, "Failed to load SimpleMethods.class");
+            return new ClassFileReader(store).read(in);
+        }
+    }
+
+    private static void assertSameCode(ClassFile expected, ClassFile actual) {
+        assertEquals(expected.methods().length, actual.methods().length);
+        for (int i = 0; i < expected.methods().length; i++) {
+            CodeAttribute e = expected.methods()[i].findCodeAttribute();
+            CodeAttribute a = actual.methods()[i].findCodeAttribute();
+            if (e == null) {
+                assertNull(a);
+                continue;
+            }
+            assertEquals(e.codeLength(), a.codeLength());
+            assertArrayEquals(e.code(), a.code());
+            assertEquals(e.code()[0], a.codeBytes().get(0));
+        }
+    }
+
+    @Test
+    void directStoreKeepsSameBytecode() throws IOException {
+        ClassFile heap = read(BytecodeStore.heap());
+        // маленький чанк, чтобы проверить переход на следующие чанки
+        try (OffHeapBytecodeStore store = OffHeapBytecodeStore.direct(16)) {
+            ClassFile offHeap = read(store);
+            assertSameCode(heap, offHeap);
+            assertTrue(store.storedBytes() > 0);
+        }
+    }
+
+    @Test
+    void mappedTempFileIsDeletedOnClose() throws IOException {
+        ClassFile heap = read(BytecodeStore.heap());
+        OffHeapBytecodeStore store = OffHeapBytecodeStore.mappedTempFile();
+        Path file = store.cacheFile();
+        try {
+            ClassFile offHeap = read(store);
+            assertSameCode(heap, offHeap);
+            assertTrue(Files.exists(file));
+        } finally {
+            store.close();
+        }
+        assertFalse(Files.exists(file));
+    }
+}
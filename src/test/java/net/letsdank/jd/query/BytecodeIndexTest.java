@@ -0,0 +1,64 @@
+package net.letsdank.jd.query;
+
+import net.letsdank.jd.fixtures.SimpleMethods;
+import net.letsdank.jd.io.ClassFileReader;
+import net.letsdank.jd.model.ClassFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytecodeIndexTest {
+
+    private static BytecodeIndex buildIndex() throws IOException {
+        InputStream in = SimpleMethods.class.getResourceAsStream("SimpleMethods.class");
+        assertNotNull(in);
+        ClassFile cf = new ClassFileReader().read(in);
+        return BytecodeIndex.build(List.of(cf));
+    }
+
+    @Test
+    void callQueryFindsBothPrintlnCallers() throws IOException {
+        BytecodeIndex index = buildIndex();
+        List<QueryHit> hits = index.search("call:java/io/PrintStream.println");
+        assertEquals(List.of("forLoop", "printHello"), hits.stream().map(QueryHit::name).sorted().toList());
+
+        // только println(String) - из printHello
+        List<QueryHit> strHits = index.search("call:*.println(Ljava/lang/String;)V");
+        assertEquals(1, strHits.size());
+        assertEquals("printHello", strHits.get(0).name());
+    }
+
+    @Test
+    void sequenceWithWildcardsReportsStartAndEndPc() throws IOException {
+        BytecodeIndex index = buildIndex();
+        // getstatic System.out; ldc "Hello" / iload_2; invokevirtual println
+        List<QueryHit> hits = index.search("field:java/lang/System.out ? call:*.println");
+        assertEquals(2, hits.size());
+        QueryHit hit = hits.stream().filter(h -> h.name().equals("printHello")).findFirst().orElseThrow();
+        assertEquals(0, hit.startPc());
+        assertEquals(5, hit.endPc());
+
+        assertEquals(1, index.search("field:java/lang/System.out * call:*.println(I)V").size());
+        assertEquals(1, index.search("ldc:\"Hello\"").size());
+        assertTrue(index.search("ldc:\"Bye\"").isEmpty());
+    }
+
+    @Test
+    void gapExclusionStopsAtForbiddenInstruction() throws IOException {
+        BytecodeIndex index = buildIndex();
+        // в loop(): iinc идет после if_icmpge, так что через goto пропуск не проходит
+        assertFalse(index.search("if_icmpge * iinc").isEmpty());
+        assertTrue(index.search("if_icmpge *!iinc goto * iinc").isEmpty());
+    }
+
+    @Test
+    void malformedQueriesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("*"));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("frobnicate"));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("ldc:\"open"));
+    }
+}